@@ -1,6 +1,12 @@
 package com.bonlimousin.content.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Properties specific to Bon Content Service.
@@ -10,4 +16,390 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final ImageStore imageStore = new ImageStore();
+
+    private final ImageResize imageResize = new ImageResize();
+
+    private final ImageIngest imageIngest = new ImageIngest();
+
+    private final StorySnapshot storySnapshot = new StorySnapshot();
+
+    private final Localization localization = new Localization();
+
+    private final Query query = new Query();
+
+    private final SearchOutbox searchOutbox = new SearchOutbox();
+
+    private final SearchReindex searchReindex = new SearchReindex();
+
+    public ImageStore getImageStore() {
+        return imageStore;
+    }
+
+    public ImageResize getImageResize() {
+        return imageResize;
+    }
+
+    public ImageIngest getImageIngest() {
+        return imageIngest;
+    }
+
+    public StorySnapshot getStorySnapshot() {
+        return storySnapshot;
+    }
+
+    public Localization getLocalization() {
+        return localization;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public SearchOutbox getSearchOutbox() {
+        return searchOutbox;
+    }
+
+    public SearchReindex getSearchReindex() {
+        return searchReindex;
+    }
+
+    public static class ImageStore {
+
+        private String directory = "images";
+
+        private DataSize maxSize = DataSize.ofMegabytes(20);
+
+        private int migrationBatchSize = 20;
+
+        private String migrationCron = "0 */10 * * * ?";
+
+        private Duration sweepGracePeriod = Duration.ofHours(1);
+
+        private String sweepCron = "0 30 * * * ?";
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMigrationBatchSize() {
+            return migrationBatchSize;
+        }
+
+        public void setMigrationBatchSize(int migrationBatchSize) {
+            this.migrationBatchSize = migrationBatchSize;
+        }
+
+        public String getMigrationCron() {
+            return migrationCron;
+        }
+
+        public void setMigrationCron(String migrationCron) {
+            this.migrationCron = migrationCron;
+        }
+
+        public Duration getSweepGracePeriod() {
+            return sweepGracePeriod;
+        }
+
+        public void setSweepGracePeriod(Duration sweepGracePeriod) {
+            this.sweepGracePeriod = sweepGracePeriod;
+        }
+
+        public String getSweepCron() {
+            return sweepCron;
+        }
+
+        public void setSweepCron(String sweepCron) {
+            this.sweepCron = sweepCron;
+        }
+    }
+
+    public static class ImageResize {
+
+        private String cacheDirectory = "image-cache";
+
+        private DataSize cacheMaxSize = DataSize.ofMegabytes(256);
+
+        private int maxDimension = 2048;
+
+        private int defaultQuality = 80;
+
+        private int poolSize = 2;
+
+        private int queueCapacity = 50;
+
+        public String getCacheDirectory() {
+            return cacheDirectory;
+        }
+
+        public void setCacheDirectory(String cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+        }
+
+        public DataSize getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(DataSize cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public int getMaxDimension() {
+            return maxDimension;
+        }
+
+        public void setMaxDimension(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        public int getDefaultQuality() {
+            return defaultQuality;
+        }
+
+        public void setDefaultQuality(int defaultQuality) {
+            this.defaultQuality = defaultQuality;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class ImageIngest {
+
+        private boolean enabled = false;
+
+        private boolean keepOriginal = false;
+
+        private int quality = 85;
+
+        private int minQuality = 60;
+
+        private DataSize maxSize = DataSize.ofMegabytes(1);
+
+        private int maxDimension = 2560;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isKeepOriginal() {
+            return keepOriginal;
+        }
+
+        public void setKeepOriginal(boolean keepOriginal) {
+            this.keepOriginal = keepOriginal;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public void setQuality(int quality) {
+            this.quality = quality;
+        }
+
+        public int getMinQuality() {
+            return minQuality;
+        }
+
+        public void setMinQuality(int minQuality) {
+            this.minQuality = minQuality;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxDimension() {
+            return maxDimension;
+        }
+
+        public void setMaxDimension(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+    }
+
+    public static class StorySnapshot {
+
+        private boolean gzip = true;
+
+        private Duration rebuildDelay = Duration.ofMillis(500);
+
+        private int maxEntries = 1000;
+
+        public boolean isGzip() {
+            return gzip;
+        }
+
+        public void setGzip(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        public Duration getRebuildDelay() {
+            return rebuildDelay;
+        }
+
+        public void setRebuildDelay(Duration rebuildDelay) {
+            this.rebuildDelay = rebuildDelay;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class Localization {
+
+        private List<String> fallbackLanguages = new ArrayList<>(Collections.singletonList("en"));
+
+        public List<String> getFallbackLanguages() {
+            return fallbackLanguages;
+        }
+
+        public void setFallbackLanguages(List<String> fallbackLanguages) {
+            this.fallbackLanguages = fallbackLanguages;
+        }
+    }
+
+    public static class Query {
+
+        private CollectionFilter collectionFilter = CollectionFilter.SEMI_JOIN;
+
+        public CollectionFilter getCollectionFilter() {
+            return collectionFilter;
+        }
+
+        public void setCollectionFilter(CollectionFilter collectionFilter) {
+            this.collectionFilter = collectionFilter;
+        }
+
+        /**
+         * How the criteria filter entities on the ids of their collections.
+         */
+        public enum CollectionFilter {
+            /**
+             * An {@code exists} subquery per filter, each entity matches once.
+             */
+            SEMI_JOIN,
+            /**
+             * A left join per filter, an entity matches once per matching element of the collection.
+             */
+            JOIN
+        }
+    }
+
+    public static class SearchOutbox {
+
+        private String flushCron = "*/2 * * * * ?";
+
+        private int batchSize = 500;
+
+        private int maxAttempts = 10;
+
+        private Duration retryDelay = Duration.ofSeconds(5);
+
+        private Duration maxRetryDelay = Duration.ofMinutes(10);
+
+        public String getFlushCron() {
+            return flushCron;
+        }
+
+        public void setFlushCron(String flushCron) {
+            this.flushCron = flushCron;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(Duration retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public Duration getMaxRetryDelay() {
+            return maxRetryDelay;
+        }
+
+        public void setMaxRetryDelay(Duration maxRetryDelay) {
+            this.maxRetryDelay = maxRetryDelay;
+        }
+    }
+
+    public static class SearchReindex {
+
+        private int parallelism = 4;
+
+        private int batchSize = 1000;
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
 }
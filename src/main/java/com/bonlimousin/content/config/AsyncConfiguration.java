@@ -24,8 +24,11 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
     private final TaskExecutionProperties taskExecutionProperties;
 
-    public AsyncConfiguration(TaskExecutionProperties taskExecutionProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    public AsyncConfiguration(TaskExecutionProperties taskExecutionProperties, ApplicationProperties applicationProperties) {
         this.taskExecutionProperties = taskExecutionProperties;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -40,6 +43,21 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * Executor dedicated to image resizing, bounded so that bursts of resize requests are rejected instead of
+     * piling up on the request threads.
+     */
+    @Bean(name = "imageResizeExecutor")
+    public ThreadPoolTaskExecutor imageResizeExecutor() {
+        log.debug("Creating Image Resize Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getImageResize().getPoolSize());
+        executor.setMaxPoolSize(applicationProperties.getImageResize().getPoolSize());
+        executor.setQueueCapacity(applicationProperties.getImageResize().getQueueCapacity());
+        executor.setThreadNamePrefix("image-resize-");
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
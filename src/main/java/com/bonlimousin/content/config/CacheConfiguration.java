@@ -2,6 +2,8 @@ package com.bonlimousin.content.config;
 
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
+import com.bonlimousin.content.service.LocalizedFragmentService;
+import com.bonlimousin.content.service.snapshot.StorySnapshotService;
 
 import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
@@ -43,12 +45,16 @@ public class CacheConfiguration {
 
     private final DiscoveryClient discoveryClient;
 
+    private final ApplicationProperties applicationProperties;
+
     private Registration registration;
 
-    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient) {
+    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient,
+                              ApplicationProperties applicationProperties) {
         this.env = env;
         this.serverProperties = serverProperties;
         this.discoveryClient = discoveryClient;
+        this.applicationProperties = applicationProperties;
     }
 
     @Autowired(required = false)
@@ -114,6 +120,8 @@ public class CacheConfiguration {
         // Full reference is available at: https://docs.hazelcast.org/docs/management-center/3.9/manual/html/Deploying_and_Starting.html
         config.setManagementCenterConfig(initializeDefaultManagementCenterConfig(jHipsterProperties));
         config.getMapConfigs().put("com.bonlimousin.content.domain.*", initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(LocalizedFragmentService.LOCALIZED_FRAGMENTS_CACHE, initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(StorySnapshotService.SNAPSHOTS_MAP, initializeStorySnapshotMapConfig(jHipsterProperties));
         return Hazelcast.newHazelcastInstance(config);
     }
 
@@ -161,6 +169,24 @@ public class CacheConfiguration {
         return mapConfig;
     }
 
+    private MapConfig initializeStorySnapshotMapConfig(JHipsterProperties jHipsterProperties) {
+        MapConfig mapConfig = new MapConfig();
+        mapConfig.setBackupCount(jHipsterProperties.getCache().getHazelcast().getBackupCount());
+        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(applicationProperties.getStorySnapshot().getMaxEntries(),
+            MaxSizeConfig.MaxSizePolicy.PER_NODE));
+
+        /*
+        Snapshots are read far more often than written: keep them deserialized
+        next to the readers, invalidated when a member rebuilds one.
+        */
+        NearCacheConfig nearCacheConfig = new NearCacheConfig();
+        nearCacheConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+        nearCacheConfig.setInvalidateOnChange(true);
+        mapConfig.setNearCacheConfig(nearCacheConfig);
+        return mapConfig;
+    }
+
     @Autowired(required = false)
     public void setGitProperties(GitProperties gitProperties) {
         this.gitProperties = gitProperties;
@@ -2,8 +2,14 @@ package com.bonlimousin.content.config;
 
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.h2.H2ConfigurationHelper;
+import com.bonlimousin.content.repository.PageReader;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.type.StandardBasicTypes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -31,6 +37,18 @@ public class DatabaseConfiguration {
         this.env = env;
     }
 
+    /**
+     * Register the SQL functions which the criteria queries of the repositories use beyond JPQL.
+     *
+     * @return the customizer of the Hibernate properties.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer sqlFunctionsCustomizer() {
+        MetadataBuilderContributor contributor = metadataBuilder -> metadataBuilder
+            .applySqlFunction(PageReader.COUNT_OVER, new SQLFunctionTemplate(StandardBasicTypes.LONG, "count(*) over ()"));
+        return properties -> properties.put(EntityManagerFactoryBuilderImpl.METADATA_BUILDER_CONTRIBUTOR, contributor);
+    }
+
     /**
      * Open the TCP port for the H2 database, so it is available remotely.
      *
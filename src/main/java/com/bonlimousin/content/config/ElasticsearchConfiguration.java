@@ -1,5 +1,6 @@
 package com.bonlimousin.content.config;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -18,7 +19,6 @@ import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMa
 import org.springframework.data.mapping.MappingException;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
@@ -48,8 +48,15 @@ public class ElasticsearchConfiguration {
             new DefaultJestResultsMapper(mappingContext, entityMapper));
     }
 
+    /**
+     * Entity mapper converting between objects and maps through Jackson token buffers, without writing and parsing
+     * intermediate JSON strings.
+     */
     public class CustomEntityMapper implements EntityMapper {
 
+        private final TypeReference<Map<String, Object>> mapType = new TypeReference<Map<String, Object>>() {
+        };
+
         private ObjectMapper objectMapper;
 
         public CustomEntityMapper(ObjectMapper objectMapper) {
@@ -74,8 +81,8 @@ public class ElasticsearchConfiguration {
         @Override
         public Map<String, Object> mapObject(Object source) {
             try {
-                return objectMapper.readValue(mapToString(source), HashMap.class);
-            } catch (IOException e) {
+                return objectMapper.convertValue(source, mapType);
+            } catch (IllegalArgumentException e) {
                 throw new MappingException(e.getMessage(), e);
             }
         }
@@ -83,8 +90,8 @@ public class ElasticsearchConfiguration {
         @Override
         public <T> T readObject(Map<String, Object> source, Class<T> targetType) {
             try {
-                return mapToObject(mapToString(source), targetType);
-            } catch (IOException e) {
+                return objectMapper.convertValue(source, targetType);
+            } catch (IllegalArgumentException e) {
                 throw new MappingException(e.getMessage(), e);
             }
         }
@@ -1,6 +1,8 @@
 package com.bonlimousin.content.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
@@ -8,7 +10,6 @@ import org.hibernate.annotations.Type;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
-import org.springframework.data.elasticsearch.annotations.FieldType;
 import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
@@ -23,7 +24,6 @@ import com.bonlimousin.content.domain.enumeration.UserRole;
 @Entity
 @Table(name = "bon_content_fragment")
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "fragment")
 public class FragmentEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -33,6 +33,10 @@ public class FragmentEntity implements Serializable {
     @SequenceGenerator(name = "sequenceGenerator")
     private Long id;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     @NotNull
     @Enumerated(EnumType.STRING)
     @Column(name = "template", nullable = false)
@@ -56,13 +60,47 @@ public class FragmentEntity implements Serializable {
     @Column(name = "body")
     private String body;
 
-    @Lob
-    @Column(name = "image")
-    private byte[] image;
+    /**
+     * Not persisted with the fragment, the bytes are stored in {@link FragmentImageEntity}.
+     */
+    private transient byte[] image;
 
     @Column(name = "image_content_type")
     private String imageContentType;
 
+    @Size(max = 64)
+    @Column(name = "image_sha_256", length = 64)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String imageSha256;
+
+    @Column(name = "image_size")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long imageSize;
+
+    /**
+     * Key of the image as uploaded, when the ingest stage replaced it and was configured to keep it.
+     */
+    @Size(max = 64)
+    @Column(name = "image_original_sha_256", length = 64)
+    @JsonIgnore
+    private String imageOriginalSha256;
+
+    /**
+     * Tiny blurred rendition of the image as data URI, shown while the image loads.
+     */
+    @Size(max = 2048)
+    @Column(name = "image_placeholder", length = 2048)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String imagePlaceholder;
+
+    /**
+     * Dominant color of the image as {@code #rrggbb}.
+     */
+    @Size(max = 7)
+    @Column(name = "image_color", length = 7)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String imageColor;
+
     @Size(max = 255)
     @Column(name = "caption", length = 255)
     private String caption;
@@ -83,6 +121,7 @@ public class FragmentEntity implements Serializable {
 
     @OneToMany(mappedBy = "fragment")
     @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @JsonIgnoreProperties(value = "fragment", allowSetters = true)
     private Set<LocalizedEntity> localizedFragments = new HashSet<>();
 
     @ManyToMany
@@ -106,6 +145,19 @@ public class FragmentEntity implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public FragmentEntity version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public FragmentTemplate getTemplate() {
         return template;
     }
@@ -171,6 +223,12 @@ public class FragmentEntity implements Serializable {
         this.body = body;
     }
 
+    /**
+     * Get the image to store, only present on write. Read the stored image through {@link #getImageUrl()}.
+     *
+     * @return the image bytes.
+     */
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     public byte[] getImage() {
         return image;
     }
@@ -197,6 +255,84 @@ public class FragmentEntity implements Serializable {
         this.imageContentType = imageContentType;
     }
 
+    public String getImageSha256() {
+        return imageSha256;
+    }
+
+    public FragmentEntity imageSha256(String imageSha256) {
+        this.imageSha256 = imageSha256;
+        return this;
+    }
+
+    public void setImageSha256(String imageSha256) {
+        this.imageSha256 = imageSha256;
+    }
+
+    public Long getImageSize() {
+        return imageSize;
+    }
+
+    public FragmentEntity imageSize(Long imageSize) {
+        this.imageSize = imageSize;
+        return this;
+    }
+
+    public void setImageSize(Long imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public String getImageOriginalSha256() {
+        return imageOriginalSha256;
+    }
+
+    public FragmentEntity imageOriginalSha256(String imageOriginalSha256) {
+        this.imageOriginalSha256 = imageOriginalSha256;
+        return this;
+    }
+
+    public void setImageOriginalSha256(String imageOriginalSha256) {
+        this.imageOriginalSha256 = imageOriginalSha256;
+    }
+
+    public String getImagePlaceholder() {
+        return imagePlaceholder;
+    }
+
+    public FragmentEntity imagePlaceholder(String imagePlaceholder) {
+        this.imagePlaceholder = imagePlaceholder;
+        return this;
+    }
+
+    public void setImagePlaceholder(String imagePlaceholder) {
+        this.imagePlaceholder = imagePlaceholder;
+    }
+
+    public String getImageColor() {
+        return imageColor;
+    }
+
+    public FragmentEntity imageColor(String imageColor) {
+        this.imageColor = imageColor;
+        return this;
+    }
+
+    public void setImageColor(String imageColor) {
+        this.imageColor = imageColor;
+    }
+
+    /**
+     * Get the location of the raw image, relative to the service root.
+     *
+     * @return the image url, or {@code null} if the fragment has no image.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public String getImageUrl() {
+        if (id == null || imageContentType == null) {
+            return null;
+        }
+        return "/api/fragments/" + id + "/image";
+    }
+
     public String getCaption() {
         return caption;
     }
@@ -354,6 +490,11 @@ public class FragmentEntity implements Serializable {
             ", body='" + getBody() + "'" +
             ", image='" + getImage() + "'" +
             ", imageContentType='" + getImageContentType() + "'" +
+            ", imageSha256='" + getImageSha256() + "'" +
+            ", imageSize=" + getImageSize() +
+            ", imageOriginalSha256='" + getImageOriginalSha256() + "'" +
+            ", imagePlaceholder='" + getImagePlaceholder() + "'" +
+            ", imageColor='" + getImageColor() + "'" +
             ", caption='" + getCaption() + "'" +
             ", width=" + getWidth() +
             ", height=" + getHeight() +
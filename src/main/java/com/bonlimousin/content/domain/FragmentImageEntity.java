@@ -0,0 +1,80 @@
+package com.bonlimousin.content.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+
+/**
+ * The image bytes of a {@link FragmentEntity}, as stored before the image store was introduced.
+ * <p>
+ * Kept in its own table, keyed by the id of the fragment, so the blob is only read when it is explicitly
+ * requested and never ends up in list queries, the second level cache or the search index.
+ * Rows are moved to the image store in batches and removed.
+ */
+@Entity
+@Table(name = "bon_content_fragment_image")
+public class FragmentImageEntity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "fragment_id")
+    private Long fragmentId;
+
+    @NotNull
+    @Lob
+    @Column(name = "image", nullable = false)
+    private byte[] image;
+
+    public Long getFragmentId() {
+        return fragmentId;
+    }
+
+    public FragmentImageEntity fragmentId(Long fragmentId) {
+        this.fragmentId = fragmentId;
+        return this;
+    }
+
+    public void setFragmentId(Long fragmentId) {
+        this.fragmentId = fragmentId;
+    }
+
+    public byte[] getImage() {
+        return image;
+    }
+
+    public FragmentImageEntity image(byte[] image) {
+        this.image = image;
+        return this;
+    }
+
+    public void setImage(byte[] image) {
+        this.image = image;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FragmentImageEntity)) {
+            return false;
+        }
+        return fragmentId != null && fragmentId.equals(((FragmentImageEntity) o).fragmentId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FragmentImageEntity{" +
+            "fragmentId=" + getFragmentId() +
+            ", image='" + getImage() + "'" +
+            "}";
+    }
+}
@@ -8,7 +8,6 @@ import org.hibernate.annotations.Type;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
-import org.springframework.data.elasticsearch.annotations.FieldType;
 import java.io.Serializable;
 
 import com.bonlimousin.content.domain.enumeration.UserRole;
@@ -19,7 +18,6 @@ import com.bonlimousin.content.domain.enumeration.UserRole;
 @Entity
 @Table(name = "bon_content_localized")
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "localized")
 public class LocalizedEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -29,6 +27,10 @@ public class LocalizedEntity implements Serializable {
     @SequenceGenerator(name = "sequenceGenerator")
     private Long id;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     @NotNull
     @Size(min = 2)
     @Pattern(regexp = "[a-z]+")
@@ -72,6 +74,19 @@ public class LocalizedEntity implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public LocalizedEntity version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String geti18n() {
         return i18n;
     }
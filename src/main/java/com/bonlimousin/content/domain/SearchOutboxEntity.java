@@ -0,0 +1,167 @@
+package com.bonlimousin.content.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * An entity whose search document is to be brought up to date, written in the transaction changing the entity.
+ * <p>
+ * The document is indexed from the state of the entity when the outbox is flushed, or deleted if the entity no
+ * longer exists, so that several changes of one entity are indexed once and in any order. An entry with a part only
+ * updates that field of the document, from the state of its related entities.
+ */
+@Entity
+@Table(name = "bon_content_search_outbox")
+public class SearchOutboxEntity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    @NotNull
+    @Size(max = 64)
+    @Column(name = "index_name", length = 64, nullable = false)
+    private String indexName;
+
+    @NotNull
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Size(max = 32)
+    @Column(name = "part", length = 32)
+    private String part;
+
+    @NotNull
+    @Column(name = "created_date", nullable = false)
+    private Instant createdDate;
+
+    @NotNull
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @NotNull
+    @Column(name = "next_attempt_date", nullable = false)
+    private Instant nextAttemptDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public SearchOutboxEntity indexName(String indexName) {
+        this.indexName = indexName;
+        return this;
+    }
+
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public SearchOutboxEntity entityId(Long entityId) {
+        this.entityId = entityId;
+        return this;
+    }
+
+    public void setEntityId(Long entityId) {
+        this.entityId = entityId;
+    }
+
+    public String getPart() {
+        return part;
+    }
+
+    public SearchOutboxEntity part(String part) {
+        this.part = part;
+        return this;
+    }
+
+    public void setPart(String part) {
+        this.part = part;
+    }
+
+    public Instant getCreatedDate() {
+        return createdDate;
+    }
+
+    public SearchOutboxEntity createdDate(Instant createdDate) {
+        this.createdDate = createdDate;
+        return this;
+    }
+
+    public void setCreatedDate(Instant createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public SearchOutboxEntity attempts(Integer attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    public SearchOutboxEntity nextAttemptDate(Instant nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+        return this;
+    }
+
+    public void setNextAttemptDate(Instant nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchOutboxEntity)) {
+            return false;
+        }
+        return id != null && id.equals(((SearchOutboxEntity) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SearchOutboxEntity{" +
+            "id=" + getId() +
+            ", indexName='" + getIndexName() + "'" +
+            ", entityId=" + getEntityId() +
+            ", part='" + getPart() + "'" +
+            ", createdDate='" + getCreatedDate() + "'" +
+            ", attempts=" + getAttempts() +
+            ", nextAttemptDate='" + getNextAttemptDate() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,111 @@
+package com.bonlimousin.content.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A search index being rebuilt into a new index, to which the search outbox writes the documents as well until
+ * the read alias is swapped, on every instance.
+ */
+@Entity
+@Table(name = "bon_content_search_rebuild")
+public class SearchRebuildEntity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    @NotNull
+    @Size(max = 64)
+    @Column(name = "index_name", length = 64, nullable = false, unique = true)
+    private String indexName;
+
+    @NotNull
+    @Size(max = 128)
+    @Column(name = "rebuild_index_name", length = 128, nullable = false)
+    private String rebuildIndexName;
+
+    @NotNull
+    @Column(name = "started_date", nullable = false)
+    private Instant startedDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public SearchRebuildEntity indexName(String indexName) {
+        this.indexName = indexName;
+        return this;
+    }
+
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public String getRebuildIndexName() {
+        return rebuildIndexName;
+    }
+
+    public SearchRebuildEntity rebuildIndexName(String rebuildIndexName) {
+        this.rebuildIndexName = rebuildIndexName;
+        return this;
+    }
+
+    public void setRebuildIndexName(String rebuildIndexName) {
+        this.rebuildIndexName = rebuildIndexName;
+    }
+
+    public Instant getStartedDate() {
+        return startedDate;
+    }
+
+    public SearchRebuildEntity startedDate(Instant startedDate) {
+        this.startedDate = startedDate;
+        return this;
+    }
+
+    public void setStartedDate(Instant startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchRebuildEntity)) {
+            return false;
+        }
+        return id != null && id.equals(((SearchRebuildEntity) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SearchRebuildEntity{" +
+            "id=" + getId() +
+            ", indexName='" + getIndexName() + "'" +
+            ", rebuildIndexName='" + getRebuildIndexName() + "'" +
+            ", startedDate='" + getStartedDate() + "'" +
+            "}";
+    }
+}
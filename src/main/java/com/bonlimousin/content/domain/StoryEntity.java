@@ -1,12 +1,12 @@
 package com.bonlimousin.content.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
-import org.springframework.data.elasticsearch.annotations.FieldType;
 import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
@@ -21,7 +21,6 @@ import com.bonlimousin.content.domain.enumeration.UserRole;
 @Entity
 @Table(name = "bon_content_story")
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "story")
 public class StoryEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -31,6 +30,10 @@ public class StoryEntity implements Serializable {
     @SequenceGenerator(name = "sequenceGenerator")
     private Long id;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     @NotNull
     @Enumerated(EnumType.STRING)
     @Column(name = "category", nullable = false)
@@ -47,6 +50,7 @@ public class StoryEntity implements Serializable {
 
     @OneToMany(mappedBy = "story")
     @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @JsonIgnoreProperties(value = "story", allowSetters = true)
     private Set<FragmentEntity> fragments = new HashSet<>();
 
     // jhipster-needle-entity-add-field - JHipster will add fields here
@@ -58,6 +62,19 @@ public class StoryEntity implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public StoryEntity version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public StoryCategory getCategory() {
         return category;
     }
@@ -0,0 +1,458 @@
+package com.bonlimousin.content.domain.search;
+
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.domain.enumeration.StoryCategory;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The search document of a {@link FragmentEntity}, with its searchable fields only.
+ * <p>
+ * The document includes its story, its tags and its translations, so that one search returns all a result needs.
+ * The translations are nested, so that a query on the fields of one language matches within one translation, and
+ * included in the parent as well, so that they match a query string. The {@link #STORY}, {@link #TAGS} and
+ * {@link #LOCALIZATIONS} parts are updated on their own when the related entities change.
+ */
+@Document(indexName = "fragment", type = "fragment")
+@Setting(settingPath = "config/elasticsearch/fragment-settings.json")
+public class FragmentDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String STORY = "story";
+
+    public static final String TAGS = "tags";
+
+    public static final String LOCALIZATIONS = "localizations";
+
+    @Id
+    private Long id;
+
+    @Field(type = FieldType.Keyword)
+    private FragmentTemplate template;
+
+    @MultiField(mainField = @Field(type = FieldType.Text, analyzer = "content"),
+        otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
+    private String name;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String title;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String ingress;
+
+    @Field(type = FieldType.Text, analyzer = "content_html")
+    private String body;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String caption;
+
+    @Field(type = FieldType.Integer)
+    private Integer orderNo;
+
+    @Field(type = FieldType.Keyword)
+    private UserRole visibility;
+
+    @Field(type = FieldType.Object)
+    private Story story;
+
+    @Field(type = FieldType.Object)
+    private List<Tag> tags = new ArrayList<>();
+
+    @Field(type = FieldType.Nested, includeInParent = true)
+    private List<Localization> localizations = new ArrayList<>();
+
+    /**
+     * Build the document of a fragment.
+     *
+     * @param fragmentEntity the fragment, with its tags and translations loaded.
+     * @return the document.
+     */
+    public static FragmentDocument of(FragmentEntity fragmentEntity) {
+        FragmentDocument document = new FragmentDocument();
+        document.setId(fragmentEntity.getId());
+        document.setTemplate(fragmentEntity.getTemplate());
+        document.setName(fragmentEntity.getName());
+        document.setTitle(fragmentEntity.getTitle());
+        document.setIngress(fragmentEntity.getIngress());
+        document.setBody(fragmentEntity.getBody());
+        document.setCaption(fragmentEntity.getCaption());
+        document.setOrderNo(fragmentEntity.getOrderNo());
+        document.setVisibility(fragmentEntity.getVisibility());
+        document.setStory(Story.of(fragmentEntity));
+        document.setTags(Tag.of(fragmentEntity));
+        document.setLocalizations(Localization.of(fragmentEntity));
+        return document;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public FragmentTemplate getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(FragmentTemplate template) {
+        this.template = template;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getIngress() {
+        return ingress;
+    }
+
+    public void setIngress(String ingress) {
+        this.ingress = ingress;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public void setCaption(String caption) {
+        this.caption = caption;
+    }
+
+    public Integer getOrderNo() {
+        return orderNo;
+    }
+
+    public void setOrderNo(Integer orderNo) {
+        this.orderNo = orderNo;
+    }
+
+    public UserRole getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(UserRole visibility) {
+        this.visibility = visibility;
+    }
+
+    public Story getStory() {
+        return story;
+    }
+
+    public void setStory(Story story) {
+        this.story = story;
+    }
+
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
+
+    public List<Localization> getLocalizations() {
+        return localizations;
+    }
+
+    public void setLocalizations(List<Localization> localizations) {
+        this.localizations = localizations;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FragmentDocument{" +
+            "id=" + getId() +
+            ", template='" + getTemplate() + "'" +
+            ", name='" + getName() + "'" +
+            ", orderNo=" + getOrderNo() +
+            ", visibility='" + getVisibility() + "'" +
+            ", story=" + getStory() +
+            ", tags=" + getTags() +
+            ", localizations=" + getLocalizations() +
+            "}";
+    }
+
+    /**
+     * The {@link #STORY} part: the story of the fragment.
+     */
+    public static class Story implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Field(type = FieldType.Long)
+        private Long id;
+
+        @Field(type = FieldType.Keyword)
+        private StoryCategory category;
+
+        @MultiField(mainField = @Field(type = FieldType.Text, analyzer = "content"),
+            otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
+        private String name;
+
+        @Field(type = FieldType.Keyword)
+        private UserRole visibility;
+
+        /**
+         * Build the story part of the document of a fragment.
+         *
+         * @param fragmentEntity the fragment.
+         * @return the story of the fragment, {@code null} if it has none.
+         */
+        public static Story of(FragmentEntity fragmentEntity) {
+            StoryEntity storyEntity = fragmentEntity.getStory();
+            if (storyEntity == null) {
+                return null;
+            }
+            Story story = new Story();
+            story.setId(storyEntity.getId());
+            story.setCategory(storyEntity.getCategory());
+            story.setName(storyEntity.getName());
+            story.setVisibility(storyEntity.getVisibility());
+            return story;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public StoryCategory getCategory() {
+            return category;
+        }
+
+        public void setCategory(StoryCategory category) {
+            this.category = category;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public UserRole getVisibility() {
+            return visibility;
+        }
+
+        public void setVisibility(UserRole visibility) {
+            this.visibility = visibility;
+        }
+
+        @Override
+        public String toString() {
+            return "Story{id=" + getId() + ", name='" + getName() + "'}";
+        }
+    }
+
+    /**
+     * An item of the {@link #TAGS} part: a tag of the fragment.
+     */
+    public static class Tag implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Field(type = FieldType.Long)
+        private Long id;
+
+        @MultiField(mainField = @Field(type = FieldType.Text, analyzer = "content"),
+            otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
+        private String name;
+
+        /**
+         * Build the tags part of the document of a fragment.
+         *
+         * @param fragmentEntity the fragment, with its tags loaded.
+         * @return the tags of the fragment, by id.
+         */
+        public static List<Tag> of(FragmentEntity fragmentEntity) {
+            return fragmentEntity.getTags().stream()
+                .sorted(Comparator.comparing(TagEntity::getId))
+                .map(tagEntity -> {
+                    Tag tag = new Tag();
+                    tag.setId(tagEntity.getId());
+                    tag.setName(tagEntity.getName());
+                    return tag;
+                })
+                .collect(Collectors.toList());
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "Tag{id=" + getId() + ", name='" + getName() + "'}";
+        }
+    }
+
+    /**
+     * An item of the {@link #LOCALIZATIONS} part: a translation of the fragment.
+     */
+    public static class Localization implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Field(type = FieldType.Long)
+        private Long id;
+
+        @Field(type = FieldType.Keyword)
+        private String i18n;
+
+        @Field(type = FieldType.Text, analyzer = "content")
+        private String title;
+
+        @Field(type = FieldType.Text, analyzer = "content")
+        private String ingress;
+
+        @Field(type = FieldType.Text, analyzer = "content_html")
+        private String body;
+
+        @Field(type = FieldType.Text, analyzer = "content")
+        private String caption;
+
+        @Field(type = FieldType.Keyword)
+        private UserRole visibility;
+
+        /**
+         * Build the localizations part of the document of a fragment.
+         *
+         * @param fragmentEntity the fragment, with its translations loaded.
+         * @return the translations of the fragment, by id.
+         */
+        public static List<Localization> of(FragmentEntity fragmentEntity) {
+            return fragmentEntity.getLocalizedFragments().stream()
+                .sorted(Comparator.comparing(LocalizedEntity::getId))
+                .map(localizedEntity -> {
+                    Localization localization = new Localization();
+                    localization.setId(localizedEntity.getId());
+                    localization.setI18n(localizedEntity.geti18n());
+                    localization.setTitle(localizedEntity.getTitle());
+                    localization.setIngress(localizedEntity.getIngress());
+                    localization.setBody(localizedEntity.getBody());
+                    localization.setCaption(localizedEntity.getCaption());
+                    localization.setVisibility(localizedEntity.getVisibility());
+                    return localization;
+                })
+                .collect(Collectors.toList());
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getI18n() {
+            return i18n;
+        }
+
+        public void setI18n(String i18n) {
+            this.i18n = i18n;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getIngress() {
+            return ingress;
+        }
+
+        public void setIngress(String ingress) {
+            this.ingress = ingress;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public void setBody(String body) {
+            this.body = body;
+        }
+
+        public String getCaption() {
+            return caption;
+        }
+
+        public void setCaption(String caption) {
+            this.caption = caption;
+        }
+
+        public UserRole getVisibility() {
+            return visibility;
+        }
+
+        public void setVisibility(UserRole visibility) {
+            this.visibility = visibility;
+        }
+
+        @Override
+        public String toString() {
+            return "Localization{id=" + getId() + ", i18n='" + getI18n() + "', title='" + getTitle() + "'}";
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.bonlimousin.content.domain.search;
+
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.io.Serializable;
+
+/**
+ * The search document of a {@link LocalizedEntity}, with its searchable fields only.
+ */
+@Document(indexName = "localized", type = "localized")
+@Setting(settingPath = "config/elasticsearch/localized-settings.json")
+public class LocalizedDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long id;
+
+    @Field(type = FieldType.Keyword)
+    private String i18n;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String title;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String ingress;
+
+    @Field(type = FieldType.Text, analyzer = "content_html")
+    private String body;
+
+    @Field(type = FieldType.Text, analyzer = "content")
+    private String caption;
+
+    @Field(type = FieldType.Keyword)
+    private UserRole visibility;
+
+    @Field(type = FieldType.Long)
+    private Long fragmentId;
+
+    /**
+     * Build the document of a localized.
+     *
+     * @param localizedEntity the localized.
+     * @return the document.
+     */
+    public static LocalizedDocument of(LocalizedEntity localizedEntity) {
+        LocalizedDocument document = new LocalizedDocument();
+        document.setId(localizedEntity.getId());
+        document.setI18n(localizedEntity.geti18n());
+        document.setTitle(localizedEntity.getTitle());
+        document.setIngress(localizedEntity.getIngress());
+        document.setBody(localizedEntity.getBody());
+        document.setCaption(localizedEntity.getCaption());
+        document.setVisibility(localizedEntity.getVisibility());
+        document.setFragmentId(localizedEntity.getFragment() != null ? localizedEntity.getFragment().getId() : null);
+        return document;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getI18n() {
+        return i18n;
+    }
+
+    public void setI18n(String i18n) {
+        this.i18n = i18n;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getIngress() {
+        return ingress;
+    }
+
+    public void setIngress(String ingress) {
+        this.ingress = ingress;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public void setCaption(String caption) {
+        this.caption = caption;
+    }
+
+    public UserRole getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(UserRole visibility) {
+        this.visibility = visibility;
+    }
+
+    public Long getFragmentId() {
+        return fragmentId;
+    }
+
+    public void setFragmentId(Long fragmentId) {
+        this.fragmentId = fragmentId;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "LocalizedDocument{" +
+            "id=" + getId() +
+            ", i18n='" + getI18n() + "'" +
+            ", title='" + getTitle() + "'" +
+            ", visibility='" + getVisibility() + "'" +
+            ", fragmentId=" + getFragmentId() +
+            "}";
+    }
+}
@@ -0,0 +1,95 @@
+package com.bonlimousin.content.domain.search;
+
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.enumeration.StoryCategory;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.io.Serializable;
+
+/**
+ * The search document of a {@link StoryEntity}, with its searchable fields only.
+ */
+@Document(indexName = "story", type = "story")
+@Setting(settingPath = "config/elasticsearch/story-settings.json")
+public class StoryDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long id;
+
+    @Field(type = FieldType.Keyword)
+    private StoryCategory category;
+
+    @MultiField(mainField = @Field(type = FieldType.Text, analyzer = "content"),
+        otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
+    private String name;
+
+    @Field(type = FieldType.Keyword)
+    private UserRole visibility;
+
+    /**
+     * Build the document of a story.
+     *
+     * @param storyEntity the story.
+     * @return the document.
+     */
+    public static StoryDocument of(StoryEntity storyEntity) {
+        StoryDocument document = new StoryDocument();
+        document.setId(storyEntity.getId());
+        document.setCategory(storyEntity.getCategory());
+        document.setName(storyEntity.getName());
+        document.setVisibility(storyEntity.getVisibility());
+        return document;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public StoryCategory getCategory() {
+        return category;
+    }
+
+    public void setCategory(StoryCategory category) {
+        this.category = category;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public UserRole getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(UserRole visibility) {
+        this.visibility = visibility;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "StoryDocument{" +
+            "id=" + getId() +
+            ", category='" + getCategory() + "'" +
+            ", name='" + getName() + "'" +
+            ", visibility='" + getVisibility() + "'" +
+            "}";
+    }
+}
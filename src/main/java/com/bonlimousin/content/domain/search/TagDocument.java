@@ -0,0 +1,67 @@
+package com.bonlimousin.content.domain.search;
+
+import com.bonlimousin.content.domain.TagEntity;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.io.Serializable;
+
+/**
+ * The search document of a {@link TagEntity}.
+ */
+@Document(indexName = "tag", type = "tag")
+@Setting(settingPath = "config/elasticsearch/tag-settings.json")
+public class TagDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long id;
+
+    @MultiField(mainField = @Field(type = FieldType.Text, analyzer = "content"),
+        otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
+    private String name;
+
+    /**
+     * Build the document of a tag.
+     *
+     * @param tagEntity the tag.
+     * @return the document.
+     */
+    public static TagDocument of(TagEntity tagEntity) {
+        TagDocument document = new TagDocument();
+        document.setId(tagEntity.getId());
+        document.setName(tagEntity.getName());
+        return document;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "TagDocument{" +
+            "id=" + getId() +
+            ", name='" + getName() + "'" +
+            "}";
+    }
+}
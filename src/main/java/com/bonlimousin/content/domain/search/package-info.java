@@ -0,0 +1,4 @@
+/**
+ * Elasticsearch documents of the JPA domain objects.
+ */
+package com.bonlimousin.content.domain.search;
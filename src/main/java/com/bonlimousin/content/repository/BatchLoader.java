@@ -0,0 +1,79 @@
+package com.bonlimousin.content.repository;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Repository loading entities by their ids in a single statement.
+ * <p>
+ * The entities of the current persistence context and of the second level cache are served from there, only the
+ * others are queried, with an {@code in} list whose parameters Hibernate pads to a power of two so that the
+ * statements of lists of similar lengths share their cached plans.
+ */
+@Repository
+public class BatchLoader {
+
+    private static final String ID = "id";
+
+    private final Logger log = LoggerFactory.getLogger(BatchLoader.class);
+
+    private final EntityManager em;
+
+    public BatchLoader(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Load entities by their ids.
+     *
+     * @param type the type of the entities.
+     * @param ids the ids of the entities.
+     * @param <T> the type of the entities.
+     * @return the entities which exist, in the order of their ids, each once.
+     */
+    public <T> List<T> findAllById(Class<T> type, List<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(type);
+        Cache cache = em.getEntityManagerFactory().getCache();
+        Map<Long, T> entities = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : requested) {
+            Object managed = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+            if (managed != null) {
+                entities.put(id, type.cast(managed));
+            } else if (cache.contains(type, id)) {
+                entities.put(id, em.find(type, id));
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            log.debug("Loading {} of {} {} entities", misses.size(), requested.size(), persister.getEntityName());
+            String name = em.getMetamodel().entity(type).getName();
+            em.createQuery("select e from " + name + " e where e." + ID + " in :ids", type)
+                .setParameter("ids", misses)
+                .getResultList()
+                .forEach(entity -> entities.put((Long) persister.getIdentifier(entity, session), entity));
+        }
+        return requested.stream()
+            .map(entities::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+}
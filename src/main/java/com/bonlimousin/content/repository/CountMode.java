@@ -0,0 +1,27 @@
+package com.bonlimousin.content.repository;
+
+/**
+ * How to count the entities of a paged query, read by {@link PageReader}.
+ */
+public enum CountMode {
+
+    /**
+     * Count the entities by a separate count query.
+     */
+    EXACT,
+
+    /**
+     * Count the entities in the statement reading the page, through a window function.
+     */
+    WINDOW,
+
+    /**
+     * Do not count the entities, only tell if there is a next page.
+     */
+    NONE,
+
+    /**
+     * Estimate the number of entities from the statistics of the database, when no filter applies.
+     */
+    ESTIMATE
+}
@@ -0,0 +1,30 @@
+package com.bonlimousin.content.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+/**
+ * A slice of entities read by {@link PageReader}, with an estimate of the number of entities.
+ *
+ * @param <T> the type of the entities.
+ */
+public class EstimatedSlice<T> extends SliceImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long estimatedTotal;
+
+    public EstimatedSlice(List<T> content, Pageable pageable, boolean hasNext, long estimatedTotal) {
+        super(content, pageable, hasNext);
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    /**
+     * @return the estimated number of entities, at least the number of entities up to this slice.
+     */
+    public long getEstimatedTotal() {
+        return estimatedTotal;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bonlimousin.content.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+/**
+ * Repository reading some columns of the entities matching a {@link Specification}, without loading the entities.
+ */
+@Repository
+public class FieldProjector {
+
+    private static final String ID = "id";
+
+    private final EntityManager em;
+
+    public FieldProjector(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Read a page of the values of some attributes of the entities matching a specification.
+     * <p>
+     * The id and the sort keys are selected along with the attributes, so that distinct rows are distinct entities
+     * when the joins of the specification repeat them.
+     *
+     * @param type the type of the entities.
+     * @param specification the specification the entities must match, or {@code null}.
+     * @param pageable the pagination information.
+     * @param fields the names of the basic attributes to read.
+     * @param distinct whether the specification joins collections repeating the entities, which are made distinct.
+     * @param <T> the type of the entities.
+     * @return the page of values by attribute name, in the order of the fields.
+     * @throws IllegalArgumentException if a field is not an attribute of the type.
+     */
+    public <T> Page<Map<String, Object>> findAll(Class<T> type, Specification<T> specification, Pageable pageable,
+                                                 Collection<String> fields, boolean distinct) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(type);
+        List<Selection<?>> selections = fields.stream()
+            .map(field -> root.get(field).alias(field))
+            .collect(Collectors.toList());
+        if (!fields.contains(ID)) {
+            selections.add(root.get(ID).alias(ID));
+        }
+        List<Order> orders = toOrders(pageable.getSort(), root, cb);
+        for (int i = 0; i < orders.size(); i++) {
+            // Paths are shared by the root, a sort on a selected attribute is selected already
+            Selection<?> sortKey = orders.get(i).getExpression();
+            if (selections.stream().noneMatch(selection -> selection == sortKey)) {
+                selections.add(sortKey.alias("sort" + i));
+            }
+        }
+        query.multiselect(selections).distinct(distinct).orderBy(orders);
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        TypedQuery<Tuple> typedQuery = em.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        List<Map<String, Object>> content = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (String field : fields) {
+                values.put(field, tuple.get(field));
+            }
+            content.add(values);
+        }
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(type, specification, distinct));
+    }
+
+    private <T> long count(Class<T> type, Specification<T> specification, boolean distinct) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(type);
+        query.select(distinct ? cb.countDistinct(root) : cb.count(root));
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return em.createQuery(query).getSingleResult();
+    }
+}
@@ -0,0 +1,19 @@
+package com.bonlimousin.content.repository;
+
+import com.bonlimousin.content.domain.FragmentImageEntity;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Spring Data  repository for the FragmentImageEntity entity.
+ */
+@Repository
+public interface FragmentImageRepository extends JpaRepository<FragmentImageEntity, Long> {
+
+    @Query("select fragmentImage.fragmentId from FragmentImageEntity fragmentImage order by fragmentImage.fragmentId")
+    List<Long> findAllFragmentIds(Pageable pageable);
+}
@@ -1,6 +1,7 @@
 package com.bonlimousin.content.repository;
 
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.enumeration.UserRole;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -8,6 +9,7 @@ import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,4 +28,62 @@ public interface FragmentRepository extends JpaRepository<FragmentEntity, Long>,
 
     @Query("select fragment from FragmentEntity fragment left join fetch fragment.tags where fragment.id =:id")
     Optional<FragmentEntity> findOneWithEagerRelationships(@Param("id") Long id);
+
+    @Query("select distinct fragment from FragmentEntity fragment left join fetch fragment.tags" +
+        " where fragment.story.id =:storyId order by fragment.orderNo, fragment.id")
+    List<FragmentEntity> findAllWithEagerRelationshipsByStoryId(@Param("storyId") Long storyId);
+
+    @Query("select distinct fragment from FragmentEntity fragment left join fetch fragment.tags where fragment.id in :ids")
+    List<FragmentEntity> findAllWithEagerRelationshipsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select fragment.id from FragmentEntity fragment where fragment.story.id =:storyId" +
+        " and (fragment.visibility is null or fragment.visibility in :visibilities) order by fragment.orderNo, fragment.id")
+    List<Long> findIdsByStoryIdAndVisibilityIn(@Param("storyId") Long storyId, @Param("visibilities") Collection<UserRole> visibilities);
+
+    @Query("select fragment.id from FragmentEntity fragment where fragment.story.id =:storyId")
+    List<Long> findIdsByStoryId(@Param("storyId") Long storyId);
+
+    @Query("select fragment.id from FragmentEntity fragment join fragment.tags tag where tag.id =:tagId")
+    List<Long> findIdsByTagId(@Param("tagId") Long tagId);
+
+    @Query("select fragment.story.id from FragmentEntity fragment where fragment.id =:id")
+    Optional<Long> findStoryIdById(@Param("id") Long id);
+
+    @Query("select distinct fragment.story.id from FragmentEntity fragment join fragment.tags tag where tag.id =:tagId")
+    List<Long> findStoryIdsByTagId(@Param("tagId") Long tagId);
+
+    @Query("select fragment.version from FragmentEntity fragment where fragment.id =:id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select fragment.imageContentType as imageContentType, fragment.imageSha256 as imageSha256, fragment.imageSize as imageSize," +
+        " fragment.imageOriginalSha256 as imageOriginalSha256, fragment.imagePlaceholder as imagePlaceholder, fragment.imageColor as imageColor," +
+        " fragment.width as width, fragment.height as height" +
+        " from FragmentEntity fragment where fragment.id =:id")
+    Optional<FragmentImageMetadata> findImageMetadataById(@Param("id") Long id);
+
+    @Query("select count(fragment) from FragmentEntity fragment" +
+        " where fragment.imageSha256 =:sha256 or fragment.imageOriginalSha256 =:sha256")
+    long countImageReferences(@Param("sha256") String sha256);
+
+    /**
+     * Projection of the image columns of a FragmentEntity, read without loading the entity graph.
+     */
+    interface FragmentImageMetadata {
+
+        String getImageContentType();
+
+        String getImageSha256();
+
+        Long getImageSize();
+
+        String getImageOriginalSha256();
+
+        String getImagePlaceholder();
+
+        String getImageColor();
+
+        Integer getWidth();
+
+        Integer getHeight();
+    }
 }
@@ -0,0 +1,189 @@
+package com.bonlimousin.content.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Repository reading the entities matching a {@link Specification} page by page with keyset pagination.
+ * <p>
+ * A page starts after the sort keys of the last entity of the previous page, carried by an opaque cursor, instead of
+ * skipping the entities of the previous pages: the database seeks to the position in the index of the sort keys, so
+ * that every page costs the same however deep it is. The id completes the sort keys to order the entities totally.
+ */
+@Repository
+public class KeysetPager {
+
+    private static final String ID = "id";
+
+    private final EntityManager em;
+
+    private final ObjectMapper objectMapper;
+
+    public KeysetPager(EntityManager em, ObjectMapper objectMapper) {
+        this.em = em;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Read a page of the entities matching a specification.
+     *
+     * @param type the type of the entities.
+     * @param specification the specification the entities must match, or {@code null}.
+     * @param pageable the size and sort of the page, its number is ignored.
+     * @param after the cursor of the previous page, or {@code null} or empty for the first page.
+     * @param distinct whether the specification joins collections repeating the entities, which are made distinct at
+     * the cost of sorting the rows instead of reading them in the order of the index of the sort keys.
+     * @param <T> the type of the entities.
+     * @return the page of entities, with the cursor of the next page.
+     * @throws IllegalArgumentException if the entities cannot be sorted by a property, or the cursor is invalid or
+     * was not read with the same sort.
+     */
+    public <T> KeysetSlice<T> findAll(Class<T> type, Specification<T> specification, Pageable pageable, String after,
+                                     boolean distinct) {
+        EntityType<T> entityType = em.getMetamodel().entity(type);
+        List<SingularAttribute<? super T, ?>> keys = new ArrayList<>();
+        List<Boolean> ascending = new ArrayList<>();
+        List<Sort.Order> sortOrders = new ArrayList<>();
+        for (Sort.Order order : pageable.getSort()) {
+            keys.add(key(entityType, order.getProperty()));
+            ascending.add(order.isAscending());
+            sortOrders.add(new Sort.Order(order.getDirection(), order.getProperty()));
+            if (order.getProperty().equals(ID)) {
+                break;
+            }
+        }
+        if (keys.stream().noneMatch(key -> key.getName().equals(ID))) {
+            keys.add(key(entityType, ID));
+            ascending.add(true);
+            sortOrders.add(Sort.Order.asc(ID));
+        }
+        Sort sort = Sort.by(sortOrders);
+
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(type);
+        List<Selection<?>> selections = new ArrayList<>();
+        List<Order> orders = new ArrayList<>();
+        List<Predicate> predicates = new ArrayList<>();
+        selections.add(root);
+        for (int i = 0; i < keys.size(); i++) {
+            Path<?> path = root.get(keys.get(i));
+            selections.add(path);
+            orders.add(ascending.get(i) ? cb.asc(path) : cb.desc(path));
+        }
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
+        if (after != null && !after.isEmpty()) {
+            predicates.add(after(cb, root, keys, ascending, decode(after, sort, keys)));
+        }
+        query.multiselect(selections).distinct(distinct).where(predicates.toArray(new Predicate[0])).orderBy(orders);
+        List<Tuple> rows = em.createQuery(query)
+            .setMaxResults(pageable.getPageSize() + 1)
+            .getResultList();
+
+        List<T> content = new ArrayList<>();
+        for (Tuple row : rows.subList(0, Math.min(rows.size(), pageable.getPageSize()))) {
+            content.add(row.get(0, type));
+        }
+        String nextCursor = rows.size() > pageable.getPageSize() ? encode(sort, rows.get(pageable.getPageSize() - 1)) : null;
+        return new KeysetSlice<>(content, PageRequest.of(0, pageable.getPageSize(), sort), nextCursor);
+    }
+
+    private <T> SingularAttribute<? super T, ?> key(EntityType<T> entityType, String property) {
+        Attribute<? super T, ?> attribute = entityType.getAttribute(property);
+        if (!(attribute instanceof SingularAttribute) || attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC
+            || !Comparable.class.isAssignableFrom(attribute.getJavaType())) {
+            throw new IllegalArgumentException(property + " is not a sort key of " + entityType.getName());
+        }
+        SingularAttribute<? super T, ?> key = (SingularAttribute<? super T, ?>) attribute;
+        // Null sort keys have no position to seek to
+        if (key.isOptional() && !key.isId()) {
+            throw new IllegalArgumentException(property + " of " + entityType.getName() + " is optional, it is not a sort key");
+        }
+        return key;
+    }
+
+    /**
+     * The entities after the sort keys of the last entity of the previous page: the first key is beyond the previous
+     * one, or it is equal and the second key is beyond, and so on.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> Predicate after(CriteriaBuilder cb, Root<T> root, List<SingularAttribute<? super T, ?>> keys,
+                                List<Boolean> ascending, List<Object> values) {
+        List<Predicate> alternatives = new ArrayList<>();
+        List<Predicate> equalities = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Path<Comparable> path = (Path<Comparable>) root.get(keys.get(i));
+            Comparable value = (Comparable) values.get(i);
+            List<Predicate> alternative = new ArrayList<>(equalities);
+            alternative.add(ascending.get(i) ? cb.greaterThan(path, value) : cb.lessThan(path, value));
+            alternatives.add(cb.and(alternative.toArray(new Predicate[0])));
+            equalities.add(cb.equal(path, value));
+        }
+        return cb.or(alternatives.toArray(new Predicate[0]));
+    }
+
+    private String encode(Sort sort, Tuple row) {
+        ArrayNode cursor = objectMapper.createArrayNode();
+        cursor.add(sort.toString());
+        for (int i = 1; i < row.getElements().size(); i++) {
+            cursor.addPOJO(row.get(i));
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode cursor", e);
+        }
+    }
+
+    private <T> List<Object> decode(String after, Sort sort, List<SingularAttribute<? super T, ?>> keys) {
+        JsonNode cursor;
+        try {
+            cursor = objectMapper.readTree(Base64.getUrlDecoder().decode(after));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid cursor " + after, e);
+        }
+        if (!cursor.isArray() || cursor.size() != keys.size() + 1 || !cursor.get(0).asText().equals(sort.toString())) {
+            throw new IllegalArgumentException("Cursor " + after + " was not read sorted by " + sort);
+        }
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            JsonNode value = cursor.get(i + 1);
+            if (value.isNull()) {
+                throw new IllegalArgumentException("Invalid cursor " + after);
+            }
+            try {
+                values.add(objectMapper.treeToValue(value, keys.get(i).getJavaType()));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Invalid cursor " + after, e);
+            }
+        }
+        return values;
+    }
+}
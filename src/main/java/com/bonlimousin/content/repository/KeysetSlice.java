@@ -0,0 +1,30 @@
+package com.bonlimousin.content.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+/**
+ * A slice of entities read by {@link KeysetPager}, with the cursor continuing after its last entity.
+ *
+ * @param <T> the type of the entities.
+ */
+public class KeysetSlice<T> extends SliceImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String nextCursor;
+
+    public KeysetSlice(List<T> content, Pageable pageable, String nextCursor) {
+        super(content, pageable, nextCursor != null);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the opaque cursor reading the entities after this slice, or {@code null} if this slice is the last one.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -3,12 +3,32 @@ package com.bonlimousin.content.repository;
 import com.bonlimousin.content.domain.LocalizedEntity;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Spring Data  repository for the LocalizedEntity entity.
  */
 @SuppressWarnings("unused")
 @Repository
 public interface LocalizedRepository extends JpaRepository<LocalizedEntity, Long>, JpaSpecificationExecutor<LocalizedEntity> {
+
+    @Query("select localized from LocalizedEntity localized where localized.fragment.story.id =:storyId order by localized.id")
+    List<LocalizedEntity> findAllByStoryId(@Param("storyId") Long storyId);
+
+    @Query("select localized from LocalizedEntity localized where localized.fragment.id in :fragmentIds order by localized.id")
+    List<LocalizedEntity> findAllByFragmentIdIn(@Param("fragmentIds") Collection<Long> fragmentIds);
+
+    @Query("select localized.fragment.id from LocalizedEntity localized where localized.id =:id")
+    Optional<Long> findFragmentIdById(@Param("id") Long id);
+
+    @Query("select localized.fragment.story.id from LocalizedEntity localized where localized.id =:id")
+    Optional<Long> findStoryIdById(@Param("id") Long id);
+
+    @Query("select localized.version from LocalizedEntity localized where localized.id =:id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
@@ -0,0 +1,181 @@
+package com.bonlimousin.content.repository;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+/**
+ * Repository reading a page of the entities matching a {@link Specification}, counting them as a {@link CountMode}
+ * tells.
+ * <p>
+ * The exact count of the paged queries of Spring Data costs a second statement, as expensive as the page when the
+ * specification joins. Counting through a window function reads the count along with the page, and skipping the count
+ * only reads one more entity than the page to tell if there is a next one.
+ */
+@Repository
+public class PageReader {
+
+    /**
+     * The SQL function counting the rows of a query along with them, {@code count(*) over ()}.
+     */
+    public static final String COUNT_OVER = "count_over";
+
+    private final Logger log = LoggerFactory.getLogger(PageReader.class);
+
+    private final EntityManager em;
+
+    public PageReader(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Read a page of the entities matching a specification.
+     *
+     * @param type the type of the entities.
+     * @param specification the specification the entities must match, or {@code null}.
+     * @param pageable the pagination information.
+     * @param count how to count the entities.
+     * @param <T> the type of the entities.
+     * @return a {@link org.springframework.data.domain.Page} if the entities are counted, an {@link EstimatedSlice}
+     * if their number is estimated, a {@link Slice} otherwise.
+     */
+    public <T> Slice<T> findAll(Class<T> type, Specification<T> specification, Pageable pageable, CountMode count) {
+        switch (count) {
+            case WINDOW:
+                return findAllCounted(type, specification, pageable);
+            case NONE:
+                return findSlice(type, specification, pageable);
+            case ESTIMATE:
+                return findSliceEstimated(type, specification, pageable);
+            case EXACT:
+            default:
+                List<T> content = query(type, specification, pageable, pageable.getPageSize()).getResultList();
+                return PageableExecutionUtils.getPage(content, pageable, () -> count(type, specification));
+        }
+    }
+
+    private <T> Slice<T> findAllCounted(Class<T> type, Specification<T> specification, Pageable pageable) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(type);
+        query.multiselect(root, cb.function(COUNT_OVER, Long.class));
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(toOrders(pageable.getSort(), root, cb));
+        List<Tuple> rows = em.createQuery(query)
+            .setFirstResult((int) pageable.getOffset())
+            .setMaxResults(pageable.getPageSize())
+            .getResultList();
+        if (rows.isEmpty()) {
+            // Beyond the last page there is no row to carry the count
+            return PageableExecutionUtils.getPage(new ArrayList<>(), pageable, () -> count(type, specification));
+        }
+        List<T> content = new ArrayList<>();
+        for (Tuple row : rows) {
+            content.add(row.get(0, type));
+        }
+        return new PageImpl<>(content, pageable, rows.get(0).get(1, Long.class));
+    }
+
+    private <T> Slice<T> findSlice(Class<T> type, Specification<T> specification, Pageable pageable) {
+        List<T> content = query(type, specification, pageable, pageable.getPageSize() + 1).getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    private <T> Slice<T> findSliceEstimated(Class<T> type, Specification<T> specification, Pageable pageable) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(type);
+        boolean filtered = specification != null && specification.toPredicate(query.from(type), query, cb) != null;
+        OptionalLong estimate = filtered ? OptionalLong.empty() : estimateCount(type);
+        if (!estimate.isPresent()) {
+            // The statistics describe whole tables, filtered entities are counted exactly
+            return findAllCounted(type, specification, pageable);
+        }
+        Slice<T> slice = findSlice(type, specification, pageable);
+        long minimum = pageable.getOffset() + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0);
+        return new EstimatedSlice<>(slice.getContent(), pageable, slice.hasNext(), Math.max(estimate.getAsLong(), minimum));
+    }
+
+    private <T> TypedQuery<T> query(Class<T> type, Specification<T> specification, Pageable pageable, int maxResults) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(type);
+        Root<T> root = query.from(type);
+        query.select(root);
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(toOrders(pageable.getSort(), root, cb));
+        return em.createQuery(query)
+            .setFirstResult((int) pageable.getOffset())
+            .setMaxResults(maxResults);
+    }
+
+    private <T> long count(Class<T> type, Specification<T> specification) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(type);
+        query.select(cb.count(root));
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return em.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Estimate the number of rows of the table of an entity from the statistics the database keeps for its planner.
+     */
+    private OptionalLong estimateCount(Class<?> type) {
+        SessionFactoryImplementor sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(type);
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        String sql;
+        if (dialect instanceof PostgreSQL81Dialect) {
+            sql = "select cast(reltuples as bigint) from pg_class where oid = to_regclass(:table)";
+        } else if (dialect instanceof H2Dialect) {
+            sql = "select row_count_estimate from information_schema.tables where upper(table_name) = upper(:table)";
+        } else {
+            return OptionalLong.empty();
+        }
+        if (!(persister instanceof AbstractEntityPersister)) {
+            return OptionalLong.empty();
+        }
+        String table = ((AbstractEntityPersister) persister).getTableName();
+        List<?> result = em.createNativeQuery(sql).setParameter("table", table).getResultList();
+        // Tables never analyzed have no statistics
+        if (result.isEmpty() || result.get(0) == null || ((Number) result.get(0)).longValue() < 0) {
+            log.debug("No statistics for table {}", table);
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(((Number) result.get(0)).longValue());
+    }
+}
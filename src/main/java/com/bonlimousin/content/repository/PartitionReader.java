@@ -0,0 +1,102 @@
+package com.bonlimousin.content.repository;
+
+import org.springframework.data.domain.Range;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository reading all the entities of a type in id range partitions, which can be read in parallel.
+ * <p>
+ * A partition is read chunk by chunk, each chunk starting after the last id of the previous one, so that the
+ * database seeks in the primary key index and every chunk costs the same however far the partition is read.
+ */
+@Repository
+public class PartitionReader {
+
+    private static final String ID = "id";
+
+    private final EntityManager em;
+
+    public PartitionReader(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Split the ids of the entities of a type into ranges of equal width.
+     *
+     * @param type the type of the entities.
+     * @param partitions the maximum number of ranges.
+     * @return the closed ranges of ids, in order, none if there is no entity.
+     */
+    public List<Range<Long>> findIdPartitions(Class<?> type, int partitions) {
+        Object[] bounds = em.createQuery("select min(e." + ID + "), max(e." + ID + ") from " + entityName(type) + " e",
+            Object[].class).getSingleResult();
+        List<Range<Long>> ranges = new ArrayList<>();
+        if (bounds[0] == null) {
+            return ranges;
+        }
+        long min = (Long) bounds[0];
+        long max = (Long) bounds[1];
+        long width = Math.max(1, (max - min) / partitions + 1);
+        for (long lower = min; lower <= max; lower += width) {
+            ranges.add(Range.closed(lower, Math.min(lower + width - 1, max)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Read a chunk of a partition.
+     *
+     * @param type the type of the entities.
+     * @param partition the closed range of ids of the partition.
+     * @param after the last id of the previous chunk, or {@code null} for the first chunk.
+     * @param size the maximum number of entities of the chunk.
+     * @param <T> the type of the entities.
+     * @return the entities of the chunk ordered by id, fewer than the size for the last chunk.
+     */
+    public <T> List<T> findChunk(Class<T> type, Range<Long> partition, Long after, int size) {
+        boolean first = after == null;
+        return em.createQuery("select e from " + entityName(type) + " e where e." + ID + (first ? " >= " : " > ") +
+            ":after and e." + ID + " <= :last order by e." + ID, type)
+            .setParameter("after", first ? partition.getLowerBound().getValue().get() : after)
+            .setParameter("last", partition.getUpperBound().getValue().get())
+            .setMaxResults(size)
+            .getResultList();
+    }
+
+    /**
+     * Tell which entities still exist.
+     *
+     * @param type the type of the entities.
+     * @param ids the ids of the entities.
+     * @return the ids of the entities which exist.
+     */
+    public List<Long> findExistingIds(Class<?> type, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return em.createQuery("select e." + ID + " from " + entityName(type) + " e where e." + ID + " in :ids", Long.class)
+            .setParameter("ids", ids)
+            .getResultList();
+    }
+
+    /**
+     * Read the last id of a chunk.
+     *
+     * @param chunk a chunk read by {@link #findChunk}.
+     * @param <T> the type of the entities.
+     * @return the id of the last entity of the chunk.
+     */
+    public <T> Long lastId(List<T> chunk) {
+        return (Long) em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(chunk.get(chunk.size() - 1));
+    }
+
+    private String entityName(Class<?> type) {
+        return em.getMetamodel().entity(type).getName();
+    }
+}
@@ -0,0 +1,62 @@
+package com.bonlimousin.content.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Repository loading the relations of entities already loaded in the current persistence context.
+ * <p>
+ * Each relation is loaded for all the entities by a single fetch join statement, skipped when the relation is
+ * loaded already. Fetching the collections after the entities keeps pagination in the database and avoids the
+ * cartesian product of fetching several collections at once.
+ */
+@Repository
+public class RelationFetcher {
+
+    private final Logger log = LoggerFactory.getLogger(RelationFetcher.class);
+
+    private final EntityManager em;
+
+    public RelationFetcher(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Load relations of managed entities.
+     *
+     * @param type the type of the entities.
+     * @param entities the entities, managed by the current persistence context.
+     * @param relations the names of the association attributes of the type to load.
+     * @param <T> the type of the entities.
+     * @throws IllegalArgumentException if a relation is not an association of the type.
+     */
+    public <T> void fetch(Class<T> type, Collection<T> entities, Collection<String> relations) {
+        EntityType<T> entityType = em.getMetamodel().entity(type);
+        PersistenceUnitUtil persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        for (String relation : relations) {
+            Attribute<? super T, ?> attribute = entityType.getAttribute(relation);
+            if (!attribute.isAssociation()) {
+                throw new IllegalArgumentException(relation + " is not a relation of " + entityType.getName());
+            }
+            List<T> unloaded = entities.stream()
+                .filter(entity -> !persistenceUnitUtil.isLoaded(entity, relation))
+                .collect(Collectors.toList());
+            if (!unloaded.isEmpty()) {
+                log.debug("Fetching {}.{} of {} entities", entityType.getName(), relation, unloaded.size());
+                em.createQuery("select distinct e from " + entityType.getName() + " e left join fetch e." + relation +
+                    " where e in :entities", type)
+                    .setParameter("entities", unloaded)
+                    .getResultList();
+            }
+        }
+    }
+}
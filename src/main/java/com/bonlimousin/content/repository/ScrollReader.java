@@ -0,0 +1,83 @@
+package com.bonlimousin.content.repository;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.function.Consumer;
+
+/**
+ * Repository reading all the entities matching a {@link Specification} one by one from a forward-only cursor.
+ * <p>
+ * The database sends the rows by batches of the fetch size, PostgreSQL only does within a transaction, and the
+ * persistence context is cleared after each batch, so that the memory used stays the same however many entities
+ * are read. The entities are read-only and bypass the second level cache.
+ */
+@Repository
+public class ScrollReader {
+
+    /**
+     * The number of rows fetched at once from the cursor.
+     */
+    public static final int FETCH_SIZE = 500;
+
+    private static final String ID = "id";
+
+    private final Logger log = LoggerFactory.getLogger(ScrollReader.class);
+
+    private final EntityManager em;
+
+    public ScrollReader(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Read the entities matching a specification, ordered by id.
+     *
+     * @param type the type of the entities.
+     * @param specification the specification the entities must match, or {@code null}.
+     * @param action the action applied to each entity, which is detached right after.
+     * @param <T> the type of the entities.
+     * @return the number of entities read.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> long forEach(Class<T> type, Specification<T> specification, Consumer<? super T> action) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(type);
+        Root<T> root = query.from(type);
+        query.select(root);
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, cb) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.asc(root.get(ID)));
+        Query<T> scrolled = em.createQuery(query).unwrap(Query.class);
+        scrolled.setFetchSize(FETCH_SIZE);
+        scrolled.setReadOnly(true);
+        scrolled.setCacheMode(CacheMode.IGNORE);
+        long count = 0;
+        try (ScrollableResults results = scrolled.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                T entity = type.cast(results.get(0));
+                action.accept(entity);
+                em.detach(entity);
+                if (++count % FETCH_SIZE == 0) {
+                    // The relations loaded along with the entities are managed too
+                    em.clear();
+                }
+            }
+        }
+        log.debug("Read {} {} entities", count, type.getSimpleName());
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package com.bonlimousin.content.repository;
+
+import com.bonlimousin.content.domain.SearchOutboxEntity;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the SearchOutboxEntity entity.
+ */
+@Repository
+public interface SearchOutboxRepository extends JpaRepository<SearchOutboxEntity, Long> {
+
+    /**
+     * Lock the entries due to be indexed, skipping those another instance is indexing.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("select searchOutbox from SearchOutboxEntity searchOutbox where searchOutbox.nextAttemptDate <= :now order by searchOutbox.id")
+    List<SearchOutboxEntity> findAllDue(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Lock the entries of entities, due or not, skipping those another instance is indexing.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("select searchOutbox from SearchOutboxEntity searchOutbox where searchOutbox.indexName = :indexName and searchOutbox.entityId in :entityIds order by searchOutbox.id")
+    List<SearchOutboxEntity> findAllOfEntities(@Param("indexName") String indexName, @Param("entityIds") Collection<Long> entityIds);
+
+    /**
+     * Find the entities which have entries other than the given ones, those another instance is indexing.
+     */
+    @Query("select distinct searchOutbox.entityId from SearchOutboxEntity searchOutbox where searchOutbox.indexName = :indexName and searchOutbox.entityId in :entityIds and searchOutbox.id not in :ids")
+    List<Long> findAllEntityIdsWithOtherEntries(@Param("indexName") String indexName,
+                                                @Param("entityIds") Collection<Long> entityIds, @Param("ids") Collection<Long> ids);
+
+    @Query("select min(searchOutbox.createdDate) from SearchOutboxEntity searchOutbox")
+    Optional<Instant> findOldestCreatedDate();
+
+    long countByIndexNameAndEntityId(String indexName, Long entityId);
+}
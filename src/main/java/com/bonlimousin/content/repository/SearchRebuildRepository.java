@@ -0,0 +1,17 @@
+package com.bonlimousin.content.repository;
+
+import com.bonlimousin.content.domain.SearchRebuildEntity;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the SearchRebuildEntity entity.
+ */
+@Repository
+public interface SearchRebuildRepository extends JpaRepository<SearchRebuildEntity, Long> {
+
+    Optional<SearchRebuildEntity> findOneByIndexName(String indexName);
+}
@@ -3,12 +3,18 @@ package com.bonlimousin.content.repository;
 import com.bonlimousin.content.domain.StoryEntity;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 /**
  * Spring Data  repository for the StoryEntity entity.
  */
 @SuppressWarnings("unused")
 @Repository
 public interface StoryRepository extends JpaRepository<StoryEntity, Long>, JpaSpecificationExecutor<StoryEntity> {
+
+    @Query("select story.version from StoryEntity story where story.id =:id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
@@ -3,12 +3,18 @@ package com.bonlimousin.content.repository;
 import com.bonlimousin.content.domain.TagEntity;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 /**
  * Spring Data  repository for the TagEntity entity.
  */
 @SuppressWarnings("unused")
 @Repository
 public interface TagRepository extends JpaRepository<TagEntity, Long>, JpaSpecificationExecutor<TagEntity> {
+
+    @Query("select tag.version from TagEntity tag where tag.id =:id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
@@ -1,11 +1,11 @@
 package com.bonlimousin.content.repository.search;
 
-import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 
 
 /**
- * Spring Data Elasticsearch repository for the {@link FragmentEntity} entity.
+ * Spring Data Elasticsearch repository for the {@link FragmentDocument} document.
  */
-public interface FragmentSearchRepository extends ElasticsearchRepository<FragmentEntity, Long> {
+public interface FragmentSearchRepository extends ElasticsearchRepository<FragmentDocument, Long> {
 }
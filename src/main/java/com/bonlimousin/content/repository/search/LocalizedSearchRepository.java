@@ -1,11 +1,11 @@
 package com.bonlimousin.content.repository.search;
 
-import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 
 
 /**
- * Spring Data Elasticsearch repository for the {@link LocalizedEntity} entity.
+ * Spring Data Elasticsearch repository for the {@link LocalizedDocument} document.
  */
-public interface LocalizedSearchRepository extends ElasticsearchRepository<LocalizedEntity, Long> {
+public interface LocalizedSearchRepository extends ElasticsearchRepository<LocalizedDocument, Long> {
 }
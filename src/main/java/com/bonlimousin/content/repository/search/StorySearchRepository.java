@@ -1,11 +1,11 @@
 package com.bonlimousin.content.repository.search;
 
-import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.search.StoryDocument;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 
 
 /**
- * Spring Data Elasticsearch repository for the {@link StoryEntity} entity.
+ * Spring Data Elasticsearch repository for the {@link StoryDocument} document.
  */
-public interface StorySearchRepository extends ElasticsearchRepository<StoryEntity, Long> {
+public interface StorySearchRepository extends ElasticsearchRepository<StoryDocument, Long> {
 }
@@ -1,11 +1,11 @@
 package com.bonlimousin.content.repository.search;
 
-import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.search.TagDocument;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 
 
 /**
- * Spring Data Elasticsearch repository for the {@link TagEntity} entity.
+ * Spring Data Elasticsearch repository for the {@link TagDocument} document.
  */
-public interface TagSearchRepository extends ElasticsearchRepository<TagEntity, Long> {
+public interface TagSearchRepository extends ElasticsearchRepository<TagDocument, Long> {
 }
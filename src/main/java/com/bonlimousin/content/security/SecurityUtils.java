@@ -1,5 +1,7 @@
 package com.bonlimousin.content.security;
 
+import com.bonlimousin.content.domain.enumeration.UserRole;
+
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
@@ -77,6 +79,21 @@ public final class SecurityUtils {
             getAuthorities(authentication).anyMatch(authority::equals);
     }
 
+    /**
+     * Get the highest {@link UserRole} of the current user, which decides the content visible to the user.
+     *
+     * @return {@link UserRole#ROLE_ADMIN}, {@link UserRole#ROLE_USER} or {@link UserRole#ROLE_ANONYMOUS}.
+     */
+    public static UserRole getCurrentUserRole() {
+        if (isCurrentUserInRole(AuthoritiesConstants.ADMIN)) {
+            return UserRole.ROLE_ADMIN;
+        }
+        if (isCurrentUserInRole(AuthoritiesConstants.USER)) {
+            return UserRole.ROLE_USER;
+        }
+        return UserRole.ROLE_ANONYMOUS;
+    }
+
     private static Stream<String> getAuthorities(Authentication authentication) {
         return authentication.getAuthorities().stream()
             .map(GrantedAuthority::getAuthority);
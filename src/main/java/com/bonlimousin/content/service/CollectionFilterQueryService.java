@@ -0,0 +1,131 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.config.ApplicationProperties.Query.CollectionFilter;
+import io.github.jhipster.service.QueryService;
+import io.github.jhipster.service.filter.Filter;
+import io.github.jhipster.service.filter.RangeFilter;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.SetJoin;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.SetAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Base service for executing complex queries for entities filtered on the elements of their collections.
+ * <p>
+ * With the {@link CollectionFilter#SEMI_JOIN} strategy, a filter on a collection is an {@code exists} subquery
+ * correlated to the entity: each entity matches at most once, however many elements of its collection match, so that
+ * pages and counts need no {@code distinct}. With the {@link CollectionFilter#JOIN} strategy, it is a left join, as
+ * generated by JHipster, which repeats the entity for each matching element.
+ *
+ * @param <ENTITY> the type of the entities.
+ */
+public abstract class CollectionFilterQueryService<ENTITY> extends QueryService<ENTITY> {
+
+    private final CollectionFilter collectionFilter;
+
+    protected CollectionFilterQueryService(CollectionFilter collectionFilter) {
+        this.collectionFilter = collectionFilter;
+    }
+
+    /**
+     * Whether the queries of the entities matching the specifications of this service must select distinct rows: the
+     * joins of the {@link CollectionFilter#JOIN} strategy repeat the entities, the subqueries of the
+     * {@link CollectionFilter#SEMI_JOIN} strategy do not.
+     *
+     * @return {@code true} if the rows must be distinct.
+     */
+    protected boolean isDistinct() {
+        return collectionFilter == CollectionFilter.JOIN;
+    }
+
+    /**
+     * Build a specification filtering on a field of the elements of a collection of the entity.
+     *
+     * @param filter the filter on the field of the elements.
+     * @param reference the collection of the entity.
+     * @param valueField the field of the elements.
+     * @param <OTHER> the type of the elements.
+     * @param <X> the type of the field.
+     * @return the specification.
+     */
+    protected <OTHER, X> Specification<ENTITY> buildCollectionSpecification(Filter<X> filter,
+            SetAttribute<ENTITY, OTHER> reference, SingularAttribute<OTHER, X> valueField) {
+        return buildCollectionSpecification(filter, reference, valueField,
+            (copy, metaclassFunction) -> buildSpecification(copy, metaclassFunction));
+    }
+
+    /**
+     * Build a specification filtering on a field of the elements of a collection of the entity.
+     *
+     * @param filter the filter on the field of the elements.
+     * @param reference the collection of the entity.
+     * @param valueField the field of the elements.
+     * @param <OTHER> the type of the elements.
+     * @param <X> the type of the field.
+     * @return the specification.
+     */
+    protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> buildCollectionSpecification(
+            RangeFilter<X> filter, SetAttribute<ENTITY, OTHER> reference, SingularAttribute<OTHER, X> valueField) {
+        return buildCollectionSpecification(filter, reference, valueField,
+            (copy, metaclassFunction) -> buildSpecification((RangeFilter<X>) copy, metaclassFunction));
+    }
+
+    private <OTHER, X> Specification<ENTITY> buildCollectionSpecification(Filter<X> filter,
+            SetAttribute<ENTITY, OTHER> reference, SingularAttribute<OTHER, X> valueField,
+            ValueSpecificationBuilder<ENTITY, X> valueSpecificationBuilder) {
+        if (collectionFilter == CollectionFilter.JOIN) {
+            return valueSpecificationBuilder.build(filter, root -> root.join(reference, JoinType.LEFT).get(valueField));
+        }
+        // Whether the collection is empty is a subquery of its own, the elements of the other one match the values
+        Boolean specified = filter.getSpecified();
+        Filter<X> valueFilter = filter.copy();
+        valueFilter.setSpecified(null);
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (specified != null) {
+                Predicate exists = cb.exists(elements(root, query, cb, reference, elements -> null));
+                predicates.add(specified ? exists : cb.not(exists));
+            }
+            Subquery<Integer> matching = elements(root, query, cb, reference, elements -> {
+                Specification<ENTITY> valueSpecification = valueSpecificationBuilder.build(valueFilter,
+                    ignored -> elements.get(valueField));
+                return valueSpecification != null ? valueSpecification.toPredicate(root, query, cb) : null;
+            });
+            if (matching.getRestriction() != null) {
+                predicates.add(cb.exists(matching));
+            }
+            return predicates.isEmpty() ? null : cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Create a subquery of the elements of a collection of the entity of the query which match a condition.
+     */
+    private <OTHER> Subquery<Integer> elements(Root<ENTITY> root, CriteriaQuery<?> query, CriteriaBuilder cb,
+            SetAttribute<ENTITY, OTHER> reference, Function<SetJoin<ENTITY, OTHER>, Predicate> condition) {
+        Subquery<Integer> subquery = query.subquery(Integer.class);
+        SetJoin<ENTITY, OTHER> elements = subquery.correlate(root).join(reference);
+        subquery.select(cb.literal(1));
+        Predicate predicate = condition.apply(elements);
+        if (predicate != null) {
+            subquery.where(predicate);
+        }
+        return subquery;
+    }
+
+    @FunctionalInterface
+    private interface ValueSpecificationBuilder<ENTITY, X> {
+        Specification<ENTITY> build(Filter<X> filter, Function<Root<ENTITY>, Expression<X>> metaclassFunction);
+    }
+}
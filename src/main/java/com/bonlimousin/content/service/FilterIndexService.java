@@ -0,0 +1,213 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.service.dto.FilterIndexDTO;
+import com.bonlimousin.content.service.dto.FragmentCriteria;
+import com.bonlimousin.content.service.dto.LocalizedCriteria;
+import com.bonlimousin.content.service.dto.StoryCriteria;
+import com.bonlimousin.content.service.dto.TagCriteria;
+import io.github.jhipster.service.filter.Filter;
+import io.github.jhipster.service.filter.StringFilter;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Service checking that the columns read by the filters of the criteria are indexed.
+ * <p>
+ * A filter on a field reads its column, a filter on a relation reads its foreign key: the column of the entity for a
+ * to-one relation, the key column of the table of the collection for a to-many one. A column is indexed when it leads
+ * an index of its table, the primary key included. On PostgreSQL, the {@code contains} searches of a text filter,
+ * {@code upper(column) like '%VALUE%'}, are served by a {@code pg_trgm} index of {@code upper(column)}.
+ */
+@Service
+public class FilterIndexService {
+
+    private static final Map<Class<?>, Class<?>> CRITERIA = new LinkedHashMap<>();
+
+    static {
+        CRITERIA.put(FragmentCriteria.class, FragmentEntity.class);
+        CRITERIA.put(LocalizedCriteria.class, LocalizedEntity.class);
+        CRITERIA.put(StoryCriteria.class, StoryEntity.class);
+        CRITERIA.put(TagCriteria.class, TagEntity.class);
+    }
+
+    private static final String ID_SUFFIX = "Id";
+
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    /**
+     * The definition of a trigram index of the upper case of a column, as PostgreSQL prints it.
+     */
+    private static final Pattern TRIGRAM_INDEX = Pattern.compile("upper\\(\\(?(\\w+)\\)?(?:::text)?\\)\\s+gin_trgm_ops");
+
+    private final Logger log = LoggerFactory.getLogger(FilterIndexService.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final DataSource dataSource;
+
+    public FilterIndexService(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Check the indexes of the columns read by the filters of the criteria.
+     *
+     * @return the filters of all the criteria, with the column they read and whether it is indexed.
+     * @throws SQLException if the indexes cannot be read from the database metadata.
+     */
+    public List<FilterIndexDTO> findFilterIndexes() throws SQLException {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        List<FilterIndexDTO> result = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, Set<String>> indexedColumns = new HashMap<>();
+            Map<String, Set<String>> trigramIndexedColumns = new HashMap<>();
+            for (Map.Entry<Class<?>, Class<?>> criteria : CRITERIA.entrySet()) {
+                AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(criteria.getValue());
+                for (Field field : criteria.getKey().getDeclaredFields()) {
+                    if (!Filter.class.isAssignableFrom(field.getType())) {
+                        continue;
+                    }
+                    String[] column = column(sessionFactory, persister, field.getName());
+                    Set<String> indexed = indexedColumns.computeIfAbsent(column[0],
+                        table -> leadingIndexColumns(metaData, connection, table));
+                    Set<String> trigramIndexed = StringFilter.class.isAssignableFrom(field.getType())
+                        ? trigramIndexedColumns.computeIfAbsent(column[0], table -> trigramIndexColumns(metaData, connection, table))
+                        : new HashSet<>();
+                    result.add(new FilterIndexDTO(criteria.getKey().getSimpleName(), field.getName(), column[0], column[1],
+                        !column[2].isEmpty(), indexed.contains(column[1].toLowerCase(Locale.ROOT)),
+                        trigramIndexed.contains(column[1].toLowerCase(Locale.ROOT))));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report the filters of the criteria reading columns which are not indexed, once the application is ready.
+     * Filters on relations scan whole tables without an index and are warned about.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportMissingIndexes() {
+        List<FilterIndexDTO> missing;
+        try {
+            missing = findFilterIndexes().stream()
+                .filter(filterIndex -> !filterIndex.isIndexed() && !filterIndex.isTrigramIndexed())
+                .collect(Collectors.toList());
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Cannot check the indexes of the criteria filters: {}", e.getMessage());
+            return;
+        }
+        List<FilterIndexDTO> relations = missing.stream().filter(FilterIndexDTO::isRelation).collect(Collectors.toList());
+        if (!relations.isEmpty()) {
+            log.warn("Criteria filters on relations without index: {}", relations);
+        }
+        missing.removeAll(relations);
+        if (!missing.isEmpty()) {
+            log.info("Criteria filters on fields without index: {}", missing);
+        }
+    }
+
+    /**
+     * Resolve the column read by a filter.
+     *
+     * @return the table, the column and the relation of the filter, empty if it filters on a field.
+     */
+    private String[] column(SessionFactoryImplementor sessionFactory, AbstractEntityPersister persister, String filter) {
+        if (filter.equals(persister.getIdentifierPropertyName())) {
+            return new String[] {persister.getTableName(), persister.getIdentifierColumnNames()[0], ""};
+        }
+        List<String> properties = Arrays.asList(persister.getPropertyNames());
+        if (properties.contains(filter)) {
+            return new String[] {persister.getTableName(), persister.getPropertyColumnNames(filter)[0], ""};
+        }
+        // The filter on a relation is named after the relation, singular even for a collection
+        String relation = filter.endsWith(ID_SUFFIX) ? filter.substring(0, filter.length() - ID_SUFFIX.length()) : filter;
+        String property = properties.contains(relation) ? relation : relation + "s";
+        if (!properties.contains(property)) {
+            throw new IllegalStateException("No relation of " + persister.getEntityName() + " for the filter " + filter);
+        }
+        if (persister.getPropertyType(property).isCollectionType()) {
+            AbstractCollectionPersister collectionPersister = (AbstractCollectionPersister) sessionFactory.getMetamodel()
+                .collectionPersister(persister.getEntityName() + "." + property);
+            return new String[] {collectionPersister.getTableName(), collectionPersister.getKeyColumnNames()[0], property};
+        }
+        return new String[] {persister.getTableName(), persister.getPropertyColumnNames(property)[0], property};
+    }
+
+    private Set<String> leadingIndexColumns(DatabaseMetaData metaData, Connection connection, String table) {
+        Set<String> columns = new HashSet<>();
+        try {
+            String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+            try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), name, false, true)) {
+                while (indexes.next()) {
+                    if (indexes.getShort("ORDINAL_POSITION") == 1 && indexes.getString("COLUMN_NAME") != null) {
+                        columns.add(indexes.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read the indexes of " + table, e);
+        }
+        return columns;
+    }
+
+    /**
+     * Read the columns of a table whose upper case has a trigram index, none if the database is not PostgreSQL.
+     */
+    private Set<String> trigramIndexColumns(DatabaseMetaData metaData, Connection connection, String table) {
+        Set<String> columns = new HashSet<>();
+        try {
+            if (!POSTGRESQL.equals(metaData.getDatabaseProductName())) {
+                return columns;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                "select indexdef from pg_indexes where tablename = ? and indexdef like '%gin_trgm_ops%'")) {
+                statement.setString(1, table);
+                try (ResultSet indexes = statement.executeQuery()) {
+                    while (indexes.next()) {
+                        Matcher matcher = TRIGRAM_INDEX.matcher(indexes.getString(1));
+                        if (matcher.find()) {
+                            columns.add(matcher.group(1).toLowerCase(Locale.ROOT));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read the trigram indexes of " + table, e);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,91 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.service.image.ImageAnalysis;
+import com.bonlimousin.content.service.image.ImageAnalyzer;
+import com.bonlimousin.content.service.image.ImageStore;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service computing the size, placeholder and dominant color of the image of a {@link FragmentEntity}
+ * off the write path, once the image has been stored.
+ */
+@Service
+public class FragmentImageAnalysisService {
+
+    private final Logger log = LoggerFactory.getLogger(FragmentImageAnalysisService.class);
+
+    private final FragmentRepository fragmentRepository;
+
+    private final SearchOutboxService searchOutboxService;
+
+    private final ImageStore imageStore;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public FragmentImageAnalysisService(FragmentRepository fragmentRepository, SearchOutboxService searchOutboxService,
+                                        ImageStore imageStore, ApplicationEventPublisher applicationEventPublisher,
+                                        PlatformTransactionManager transactionManager) {
+        this.fragmentRepository = fragmentRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.imageStore = imageStore;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Analyze a stored image and save the result on a fragment, unless the fragment has changed image meanwhile.
+     * <p>
+     * The result is saved as an update of the fragment, which changes its version and entity tag: the cached
+     * representations of the fragment are revalidated, and a client updating it reads it again first.
+     *
+     * @param fragmentId the id of the entity.
+     * @param sha256 the key of the image in the image store.
+     * @return the analysis, empty if the image is not stored or cannot be decoded.
+     */
+    @Async
+    public CompletableFuture<Optional<ImageAnalysis>> analyze(Long fragmentId, String sha256) {
+        log.debug("Request to analyze image {} of Fragment : {}", sha256, fragmentId);
+        Optional<ImageAnalysis> analysis = imageStore.load(sha256).flatMap(this::analyze);
+        analysis.ifPresent(result -> transactionTemplate.execute(status -> {
+            fragmentRepository.findById(fragmentId)
+                .filter(fragmentEntity -> sha256.equals(fragmentEntity.getImageSha256()))
+                .ifPresent(fragmentEntity -> {
+                    fragmentEntity.width(result.getWidth())
+                        .height(result.getHeight())
+                        .imagePlaceholder(result.getPlaceholder())
+                        .imageColor(result.getColor());
+                    searchOutboxService.enqueue(FragmentEntity.class, fragmentEntity.getId());
+                    applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(fragmentEntity.getStory().getId()));
+                });
+            return null;
+        }));
+        return CompletableFuture.completedFuture(analysis);
+    }
+
+    private Optional<ImageAnalysis> analyze(Resource image) {
+        try (InputStream in = image.getInputStream()) {
+            return ImageAnalyzer.analyze(in);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not analyze image {}", image, e);
+            return Optional.empty();
+        }
+    }
+}
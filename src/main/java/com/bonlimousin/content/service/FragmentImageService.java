@@ -0,0 +1,376 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.FragmentImageEntity;
+import com.bonlimousin.content.repository.FragmentImageRepository;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.service.dto.FragmentImageDTO;
+import com.bonlimousin.content.service.image.FragmentImage;
+import com.bonlimousin.content.service.image.ImageDigest;
+import com.bonlimousin.content.service.image.ImageIngestService;
+import com.bonlimousin.content.service.image.ImageStore;
+import com.bonlimousin.content.service.image.ImageTooLargeException;
+import com.bonlimousin.content.service.image.IngestedImage;
+import com.bonlimousin.content.service.image.SizeLimitedInputStream;
+import com.bonlimousin.content.service.image.StoredImage;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Service Implementation for managing the images of {@link FragmentEntity}.
+ * <p>
+ * Image bytes live in the {@link ImageStore}, the fragment only keeps their key and metadata.
+ * Images saved before the store was introduced are still served from {@link FragmentImageEntity}
+ * until {@link #migrateLegacyImages()} has moved them.
+ * <p>
+ * The images a fragment no longer uses, and those stored by a transaction which rolled back, are released: they are
+ * deleted unless another fragment uses them or they were stored within the grace period, as an upload of the same
+ * image may not have committed yet. The images released within their grace period are deleted by
+ * {@link #sweepUnusedImages()}.
+ */
+@Service
+@Transactional
+public class FragmentImageService {
+
+    private final Logger log = LoggerFactory.getLogger(FragmentImageService.class);
+
+    private final FragmentRepository fragmentRepository;
+
+    private final FragmentImageRepository fragmentImageRepository;
+
+    private final SearchOutboxService searchOutboxService;
+
+    private final ImageStore imageStore;
+
+    private final ImageIngestService imageIngestService;
+
+    private final FragmentImageAnalysisService fragmentImageAnalysisService;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public FragmentImageService(FragmentRepository fragmentRepository, FragmentImageRepository fragmentImageRepository,
+                                SearchOutboxService searchOutboxService, ImageStore imageStore,
+                                ImageIngestService imageIngestService, FragmentImageAnalysisService fragmentImageAnalysisService,
+                                ApplicationProperties applicationProperties, ApplicationEventPublisher applicationEventPublisher,
+                                PlatformTransactionManager transactionManager) {
+        this.fragmentRepository = fragmentRepository;
+        this.fragmentImageRepository = fragmentImageRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.imageStore = imageStore;
+        this.imageIngestService = imageIngestService;
+        this.fragmentImageAnalysisService = fragmentImageAnalysisService;
+        this.applicationProperties = applicationProperties;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Store the image of a fragment about to be saved, and keep its image metadata in sync.
+     * <p>
+     * A non-null image replaces the stored one, after going through the {@link ImageIngestService}. A null image keeps
+     * the stored one, unless the image content type is cleared as well, in which case the stored image is removed.
+     * <p>
+     * Once the transaction has committed, a new image is analyzed asynchronously for its size, placeholder and color.
+     *
+     * @param fragmentEntity the entity about to be saved.
+     */
+    public void prepareSave(FragmentEntity fragmentEntity) {
+        Optional<FragmentRepository.FragmentImageMetadata> previous = fragmentEntity.getId() == null
+            ? Optional.empty() : fragmentRepository.findImageMetadataById(fragmentEntity.getId());
+        if (fragmentEntity.getImage() != null) {
+            IngestedImage ingestedImage = imageIngestService.ingest(store(fragmentEntity.getImage()), fragmentEntity.getImageContentType());
+            applyIngestedImage(fragmentEntity, ingestedImage, previous);
+        } else if (fragmentEntity.getImageContentType() == null) {
+            fragmentEntity.imageSha256(null).imageSize(null).imageOriginalSha256(null).imagePlaceholder(null).imageColor(null);
+            deleteLegacyImage(fragmentEntity.getId());
+            releaseReplaced(fragmentEntity, previous);
+        } else {
+            previous.ifPresent(metadata -> carryOverAnalysis(fragmentEntity.imageSha256(metadata.getImageSha256())
+                .imageSize(metadata.getImageSize()).imageOriginalSha256(metadata.getImageOriginalSha256()), metadata));
+        }
+    }
+
+    /**
+     * Replace the image of a fragment with content streamed from a client.
+     * <p>
+     * The content is copied to the image store in fixed-size chunks before any database work, so neither the image
+     * nor a database connection is held while the client uploads. The stored content is released again if the
+     * fragment does not exist.
+     *
+     * @param id the id of the entity.
+     * @param contentType the content type of the image.
+     * @param content the image bytes, not closed by this method.
+     * @return the image metadata of the fragment, or empty if the fragment does not exist.
+     * @throws ImageTooLargeException if the content is larger than {@code application.image-store.max-size}.
+     * @throws IOException if the content cannot be read or stored.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<FragmentImageDTO> replaceImage(Long id, String contentType, InputStream content) throws IOException {
+        log.debug("Request to replace image of Fragment : {}", id);
+        long maxSize = applicationProperties.getImageStore().getMaxSize().toBytes();
+        StoredImage storedImage = imageStore.store(new SizeLimitedInputStream(content, maxSize));
+        IngestedImage ingestedImage = imageIngestService.ingest(storedImage, contentType);
+        return transactionTemplate.execute(status -> {
+            Optional<FragmentRepository.FragmentImageMetadata> previous = fragmentRepository.findImageMetadataById(id);
+            Optional<FragmentEntity> fragment = fragmentRepository.findById(id);
+            if (!fragment.isPresent()) {
+                releaseAfterCommit(ingestedImage.getImage().getSha256());
+                Optional.ofNullable(ingestedImage.getOriginal()).map(StoredImage::getSha256).ifPresent(this::releaseAfterCommit);
+                return Optional.empty();
+            }
+            FragmentEntity fragmentEntity = fragment.get();
+            applyIngestedImage(fragmentEntity, ingestedImage, previous);
+            searchOutboxService.enqueue(FragmentEntity.class, fragmentEntity.getId());
+            applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(fragmentEntity.getStory().getId()));
+            return Optional.of(toImageDTO(fragmentEntity));
+        });
+    }
+
+    /**
+     * Remove the image of a fragment about to be deleted.
+     *
+     * @param id the id of the entity.
+     */
+    public void prepareDelete(Long id) {
+        fragmentRepository.findImageMetadataById(id).ifPresent(metadata -> {
+            Optional.ofNullable(metadata.getImageSha256()).ifPresent(this::releaseAfterCommit);
+            Optional.ofNullable(metadata.getImageOriginalSha256()).ifPresent(this::releaseAfterCommit);
+        });
+        deleteLegacyImage(id);
+    }
+
+    /**
+     * Get the image of one fragment by id.
+     *
+     * @param id the id of the entity.
+     * @return the image, empty if the fragment does not exist or has no image.
+     */
+    @Transactional(readOnly = true)
+    public Optional<FragmentImage> findImage(Long id) {
+        log.debug("Request to get image of Fragment : {}", id);
+        return fragmentRepository.findImageMetadataById(id).flatMap(metadata -> {
+            if (metadata.getImageSha256() != null) {
+                return imageStore.load(metadata.getImageSha256())
+                    .map(resource -> new FragmentImage(metadata.getImageContentType(), metadata.getImageSha256(), resource));
+            }
+            return fragmentImageRepository.findById(id)
+                .map(legacy -> new FragmentImage(metadata.getImageContentType(), ImageDigest.sha256Hex(legacy.getImage()),
+                    new ByteArrayResource(legacy.getImage())));
+        });
+    }
+
+    /**
+     * Move images saved before the image store was introduced out of the database, in batches of one transaction each.
+     */
+    @Scheduled(cron = "${application.image-store.migration-cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void migrateLegacyImages() {
+        int batchSize = applicationProperties.getImageStore().getMigrationBatchSize();
+        long total = 0;
+        Integer migrated;
+        do {
+            migrated = transactionTemplate.execute(status -> migrateLegacyImageBatch(batchSize));
+            total += migrated;
+        } while (migrated != null && migrated == batchSize);
+        if (total > 0) {
+            log.info("Moved {} fragment images to the image store", total);
+        }
+    }
+
+    /**
+     * Delete the images of the store no fragment uses, unless stored within the grace period.
+     */
+    @Scheduled(cron = "${application.image-store.sweep-cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void sweepUnusedImages() {
+        Instant storedBefore = Instant.now().minus(applicationProperties.getImageStore().getSweepGracePeriod());
+        long deleted = 0;
+        try (Stream<String> keys = imageStore.findAllStoredBefore(storedBefore)) {
+            for (String sha256 : (Iterable<String>) keys::iterator) {
+                if (fragmentRepository.countImageReferences(sha256) == 0 && imageStore.deleteIfStoredBefore(sha256, storedBefore)) {
+                    deleted++;
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not sweep unused images", e);
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} unused images from the image store", deleted);
+        }
+    }
+
+    private int migrateLegacyImageBatch(int batchSize) {
+        List<Long> fragmentIds = fragmentImageRepository.findAllFragmentIds(PageRequest.of(0, batchSize));
+        for (Long fragmentId : fragmentIds) {
+            fragmentImageRepository.findById(fragmentId).ifPresent(legacy -> {
+                StoredImage storedImage = store(legacy.getImage());
+                releaseAfterRollback(storedImage.getSha256());
+                fragmentRepository.findById(fragmentId).ifPresent(fragment -> {
+                    fragment.imageSha256(storedImage.getSha256()).imageSize(storedImage.getSize());
+                    analyzeAfterCommit(fragment);
+                    applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(fragment.getStory().getId()));
+                });
+                fragmentImageRepository.delete(legacy);
+            });
+        }
+        return fragmentIds.size();
+    }
+
+    private void applyIngestedImage(FragmentEntity fragmentEntity, IngestedImage ingestedImage,
+                                    Optional<FragmentRepository.FragmentImageMetadata> previous) {
+        StoredImage storedImage = ingestedImage.getImage();
+        releaseAfterRollback(storedImage.getSha256());
+        Optional.ofNullable(ingestedImage.getOriginal()).map(StoredImage::getSha256).ifPresent(this::releaseAfterRollback);
+        fragmentEntity.imageContentType(ingestedImage.getContentType())
+            .imageSha256(storedImage.getSha256())
+            .imageSize(storedImage.getSize())
+            .imageOriginalSha256(null);
+        if (ingestedImage.getOriginal() != null) {
+            if (applicationProperties.getImageIngest().isKeepOriginal()) {
+                fragmentEntity.imageOriginalSha256(ingestedImage.getOriginal().getSha256());
+            } else {
+                releaseAfterCommit(ingestedImage.getOriginal().getSha256());
+            }
+        }
+        Optional<FragmentRepository.FragmentImageMetadata> analyzed = previous
+            .filter(metadata -> storedImage.getSha256().equals(metadata.getImageSha256()) && metadata.getImagePlaceholder() != null);
+        if (analyzed.isPresent()) {
+            carryOverAnalysis(fragmentEntity, analyzed.get());
+        } else {
+            fragmentEntity.imagePlaceholder(null).imageColor(null);
+            analyzeAfterCommit(fragmentEntity);
+        }
+        deleteLegacyImage(fragmentEntity.getId());
+        releaseReplaced(fragmentEntity, previous);
+    }
+
+    private void releaseReplaced(FragmentEntity fragmentEntity, Optional<FragmentRepository.FragmentImageMetadata> previous) {
+        previous.map(FragmentRepository.FragmentImageMetadata::getImageSha256)
+            .filter(sha256 -> !sha256.equals(fragmentEntity.getImageSha256()))
+            .ifPresent(this::releaseAfterCommit);
+        previous.map(FragmentRepository.FragmentImageMetadata::getImageOriginalSha256)
+            .filter(sha256 -> !sha256.equals(fragmentEntity.getImageOriginalSha256()))
+            .ifPresent(this::releaseAfterCommit);
+    }
+
+    private static FragmentImageDTO toImageDTO(FragmentEntity fragmentEntity) {
+        FragmentImageDTO fragmentImageDTO = new FragmentImageDTO();
+        fragmentImageDTO.setId(fragmentEntity.getId());
+        fragmentImageDTO.setImageContentType(fragmentEntity.getImageContentType());
+        fragmentImageDTO.setImageSha256(fragmentEntity.getImageSha256());
+        fragmentImageDTO.setImageSize(fragmentEntity.getImageSize());
+        fragmentImageDTO.setImageUrl(fragmentEntity.getImageUrl());
+        return fragmentImageDTO;
+    }
+
+    private static void carryOverAnalysis(FragmentEntity fragmentEntity, FragmentRepository.FragmentImageMetadata metadata) {
+        fragmentEntity.imagePlaceholder(metadata.getImagePlaceholder()).imageColor(metadata.getImageColor());
+        if (fragmentEntity.getWidth() == null && fragmentEntity.getHeight() == null) {
+            fragmentEntity.width(metadata.getWidth()).height(metadata.getHeight());
+        }
+    }
+
+    /**
+     * Analyze the stored image of a fragment once the current transaction has committed, so the analysis sees the fragment.
+     */
+    private void analyzeAfterCommit(FragmentEntity fragmentEntity) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                fragmentImageAnalysisService.analyze(fragmentEntity.getId(), fragmentEntity.getImageSha256());
+            }
+        });
+    }
+
+    private StoredImage store(byte[] image) {
+        try {
+            return imageStore.store(new ByteArrayInputStream(image));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store image", e);
+        }
+    }
+
+    private void deleteLegacyImage(Long id) {
+        if (id != null && fragmentImageRepository.existsById(id)) {
+            fragmentImageRepository.deleteById(id);
+        }
+    }
+
+    /**
+     * Release an image once the current transaction has committed.
+     */
+    private void releaseAfterCommit(String sha256) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                release(sha256);
+            }
+        });
+    }
+
+    /**
+     * Release an image stored by the current transaction if it rolls back.
+     */
+    private void releaseAfterRollback(String sha256) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    release(sha256);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove an image from the store, unless another fragment uses it or it was stored within the grace period.
+     */
+    private void release(String sha256) {
+        if (fragmentRepository.countImageReferences(sha256) > 0) {
+            return;
+        }
+        try {
+            if (!imageStore.deleteIfStoredBefore(sha256, Instant.now().minus(applicationProperties.getImageStore().getSweepGracePeriod()))) {
+                log.debug("Leaving image {} to the sweep, stored within the grace period", sha256);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete unused image {}", sha256, e);
+        }
+    }
+}
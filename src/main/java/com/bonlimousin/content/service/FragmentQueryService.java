@@ -1,6 +1,9 @@
 package com.bonlimousin.content.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.criteria.JoinType;
 
@@ -8,14 +11,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import io.github.jhipster.service.QueryService;
-
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.config.ApplicationProperties;
 import com.bonlimousin.content.domain.*; // for static metamodels
+import com.bonlimousin.content.repository.RelationFetcher;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.FieldProjector;
+import com.bonlimousin.content.repository.KeysetPager;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.repository.PageReader;
+import com.bonlimousin.content.repository.ScrollReader;
 import com.bonlimousin.content.repository.FragmentRepository;
 import com.bonlimousin.content.repository.search.FragmentSearchRepository;
 import com.bonlimousin.content.service.dto.FragmentCriteria;
@@ -28,7 +38,7 @@ import com.bonlimousin.content.service.dto.FragmentCriteria;
  */
 @Service
 @Transactional(readOnly = true)
-public class FragmentQueryService extends QueryService<FragmentEntity> {
+public class FragmentQueryService extends CollectionFilterQueryService<FragmentEntity> {
 
     private final Logger log = LoggerFactory.getLogger(FragmentQueryService.class);
 
@@ -36,9 +46,28 @@ public class FragmentQueryService extends QueryService<FragmentEntity> {
 
     private final FragmentSearchRepository fragmentSearchRepository;
 
-    public FragmentQueryService(FragmentRepository fragmentRepository, FragmentSearchRepository fragmentSearchRepository) {
+    private final RelationFetcher relationFetcher;
+
+    private final FieldProjector fieldProjector;
+
+    private final KeysetPager keysetPager;
+
+    private final PageReader pageReader;
+
+    private final ScrollReader scrollReader;
+
+    public FragmentQueryService(FragmentRepository fragmentRepository, FragmentSearchRepository fragmentSearchRepository,
+                                RelationFetcher relationFetcher, FieldProjector fieldProjector,
+                                KeysetPager keysetPager, PageReader pageReader, ScrollReader scrollReader,
+                                ApplicationProperties applicationProperties) {
+        super(applicationProperties.getQuery().getCollectionFilter());
         this.fragmentRepository = fragmentRepository;
         this.fragmentSearchRepository = fragmentSearchRepository;
+        this.relationFetcher = relationFetcher;
+        this.fieldProjector = fieldProjector;
+        this.keysetPager = keysetPager;
+        this.pageReader = pageReader;
+        this.scrollReader = scrollReader;
     }
 
     /**
@@ -66,6 +95,97 @@ public class FragmentQueryService extends QueryService<FragmentEntity> {
         return fragmentRepository.findAll(specification, page);
     }
 
+    /**
+     * Return a {@link Page} of the values of some fields of the {@link FragmentEntity} which matches the criteria from the database,
+     * reading only the columns of those fields.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param fields The names of the fields to read.
+     * @return the values of the matching entities, by field name.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findFieldsByCriteria(FragmentCriteria criteria, Pageable page, Collection<String> fields) {
+        log.debug("find fields {} by criteria : {}, page: {}", fields, criteria, page);
+        final Specification<FragmentEntity> specification = createSpecification(criteria);
+        return fieldProjector.findAll(FragmentEntity.class, specification, page, fields, isDistinct());
+    }
+
+    /**
+     * Return a {@link Slice} of {@link FragmentEntity} which matches the criteria from the database, counting them as told.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<FragmentEntity> findByCriteria(FragmentCriteria criteria, Pageable page, CountMode count) {
+        if (count == CountMode.EXACT) {
+            return findByCriteria(criteria, page);
+        }
+        log.debug("find by criteria : {}, page: {}, count: {}", criteria, page, count);
+        final Specification<FragmentEntity> specification = createSpecification(criteria);
+        return pageReader.findAll(FragmentEntity.class, specification, page, count);
+    }
+
+    /**
+     * Return a {@link Slice} of {@link FragmentEntity} which matches the criteria from the database, counting them as told,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<FragmentEntity> findByCriteria(FragmentCriteria criteria, Pageable page, CountMode count, Collection<String> include) {
+        Slice<FragmentEntity> result = findByCriteria(criteria, page, count);
+        relationFetcher.fetch(FragmentEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link FragmentEntity} which matches the criteria from the database, after a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<FragmentEntity> findByCriteriaAfter(FragmentCriteria criteria, Pageable page, String after) {
+        log.debug("find by criteria : {}, page: {}, after: {}", criteria, page, after);
+        final Specification<FragmentEntity> specification = createSpecification(criteria);
+        return keysetPager.findAll(FragmentEntity.class, specification, page, after, isDistinct());
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link FragmentEntity} which matches the criteria from the database, after a cursor,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<FragmentEntity> findByCriteriaAfter(FragmentCriteria criteria, Pageable page, String after, Collection<String> include) {
+        KeysetSlice<FragmentEntity> result = findByCriteriaAfter(criteria, page, after);
+        relationFetcher.fetch(FragmentEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Apply an action to each of the matching entities in the database, read one by one from a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param action the action applied to each entity, which is detached right after.
+     * @return the number of matching entities.
+     */
+    @Transactional(readOnly = true)
+    public long forEachByCriteria(FragmentCriteria criteria, Consumer<? super FragmentEntity> action) {
+        log.debug("for each by criteria : {}", criteria);
+        final Specification<FragmentEntity> specification = createSpecification(criteria);
+        return scrollReader.forEach(FragmentEntity.class, specification, action);
+    }
+
     /**
      * Return the number of matching entities in the database.
      * @param criteria The object which holds all the filters, which the entities should match.
@@ -117,12 +237,12 @@ public class FragmentQueryService extends QueryService<FragmentEntity> {
                 specification = specification.and(buildSpecification(criteria.getVisibility(), FragmentEntity_.visibility));
             }
             if (criteria.getLocalizedFragmentId() != null) {
-                specification = specification.and(buildSpecification(criteria.getLocalizedFragmentId(),
-                    root -> root.join(FragmentEntity_.localizedFragments, JoinType.LEFT).get(LocalizedEntity_.id)));
+                specification = specification.and(buildCollectionSpecification(criteria.getLocalizedFragmentId(),
+                    FragmentEntity_.localizedFragments, LocalizedEntity_.id));
             }
             if (criteria.getTagId() != null) {
-                specification = specification.and(buildSpecification(criteria.getTagId(),
-                    root -> root.join(FragmentEntity_.tags, JoinType.LEFT).get(TagEntity_.id)));
+                specification = specification.and(buildCollectionSpecification(criteria.getTagId(),
+                    FragmentEntity_.tags, TagEntity_.id));
             }
             if (criteria.getStoryId() != null) {
                 specification = specification.and(buildSpecification(criteria.getStoryId(),
@@ -1,16 +1,26 @@
 package com.bonlimousin.content.service;
 
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.repository.BatchLoader;
 import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.RelationFetcher;
 import com.bonlimousin.content.repository.search.FragmentSearchRepository;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -26,23 +36,52 @@ public class FragmentService {
 
     private final FragmentRepository fragmentRepository;
 
+    private final FragmentImageService fragmentImageService;
+
     private final FragmentSearchRepository fragmentSearchRepository;
 
-    public FragmentService(FragmentRepository fragmentRepository, FragmentSearchRepository fragmentSearchRepository) {
+    private final SearchOutboxService searchOutboxService;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final RelationFetcher relationFetcher;
+
+    private final BatchLoader batchLoader;
+
+    public FragmentService(FragmentRepository fragmentRepository, FragmentImageService fragmentImageService,
+                           FragmentSearchRepository fragmentSearchRepository, SearchOutboxService searchOutboxService,
+                           ApplicationEventPublisher applicationEventPublisher, RelationFetcher relationFetcher,
+                           BatchLoader batchLoader) {
         this.fragmentRepository = fragmentRepository;
+        this.fragmentImageService = fragmentImageService;
         this.fragmentSearchRepository = fragmentSearchRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.relationFetcher = relationFetcher;
+        this.batchLoader = batchLoader;
     }
 
     /**
      * Save a fragment.
+     * <p>
+     * A non-null image replaces the stored one. A null image keeps the stored one, unless the image content type
+     * is cleared as well, in which case the stored image is removed.
      *
-     * @param fragmentEntity the entity to save.
+     * @param fragmentEntity the entity to save, an update without version is applied to the current version.
      * @return the persisted entity.
+     * @throws org.springframework.dao.ConcurrencyFailureException if the version of an update is not the current one.
      */
     public FragmentEntity save(FragmentEntity fragmentEntity) {
         log.debug("Request to save Fragment : {}", fragmentEntity);
+        if (fragmentEntity.getId() != null && fragmentEntity.getVersion() == null) {
+            fragmentRepository.findVersionById(fragmentEntity.getId()).ifPresent(fragmentEntity::setVersion);
+        }
+        fragmentImageService.prepareSave(fragmentEntity);
+        // The fragment may move to another story
+        Long previousStoryId = fragmentEntity.getId() != null ? fragmentRepository.findStoryIdById(fragmentEntity.getId()).orElse(null) : null;
         FragmentEntity result = fragmentRepository.save(fragmentEntity);
-        fragmentSearchRepository.save(result);
+        searchOutboxService.enqueue(FragmentEntity.class, result.getId());
+        applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(previousStoryId, result.getStory().getId()));
         return result;
     }
 
@@ -80,6 +119,50 @@ public class FragmentService {
         return fragmentRepository.findOneWithEagerRelationships(id);
     }
 
+    /**
+     * Get one fragment by id, with relations loaded.
+     *
+     * @param id the id of the entity.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entity.
+     */
+    @Transactional(readOnly = true)
+    public Optional<FragmentEntity> findOne(Long id, Collection<String> include) {
+        log.debug("Request to get Fragment : {} with {}", id, include);
+        Optional<FragmentEntity> result = fragmentRepository.findById(id);
+        result.ifPresent(entity -> relationFetcher.fetch(FragmentEntity.class, Collections.singletonList(entity), include));
+        return result;
+    }
+
+    /**
+     * Get the fragments by ids, in one statement for those not cached, with their tags as {@link #findOne(Long)}.
+     *
+     * @param ids the ids of the entities.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<FragmentEntity> findAllById(List<Long> ids) {
+        log.debug("Request to get Fragments : {}", ids);
+        List<FragmentEntity> result = batchLoader.findAllById(FragmentEntity.class, ids);
+        relationFetcher.fetch(FragmentEntity.class, result, Collections.singletonList("tags"));
+        return result;
+    }
+
+    /**
+     * Get the fragments by ids, in one statement for those not cached, with relations loaded.
+     *
+     * @param ids the ids of the entities.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<FragmentEntity> findAllById(List<Long> ids, Collection<String> include) {
+        log.debug("Request to get Fragments : {} with {}", ids, include);
+        List<FragmentEntity> result = batchLoader.findAllById(FragmentEntity.class, ids);
+        relationFetcher.fetch(FragmentEntity.class, result, include);
+        return result;
+    }
+
     /**
      * Delete the fragment by id.
      *
@@ -87,8 +170,11 @@ public class FragmentService {
      */
     public void delete(Long id) {
         log.debug("Request to delete Fragment : {}", id);
+        fragmentRepository.findStoryIdById(id)
+            .ifPresent(storyId -> applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(storyId)));
+        fragmentImageService.prepareDelete(id);
         fragmentRepository.deleteById(id);
-        fragmentSearchRepository.deleteById(id);
+        searchOutboxService.enqueue(FragmentEntity.class, id);
     }
 
     /**
@@ -96,10 +182,26 @@ public class FragmentService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @return the list of entities, loaded from the database in the order of the documents found.
      */
     @Transactional(readOnly = true)
     public Page<FragmentEntity> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Fragments for query {}", query);
-        return fragmentSearchRepository.search(queryStringQuery(query), pageable);    }
+        Page<FragmentDocument> page = fragmentSearchRepository.search(queryStringQuery(query), pageable);
+        return new PageImpl<>(findAllById(page.map(FragmentDocument::getId).getContent()), pageable, page.getTotalElements());
+    }
+
+    /**
+     * Search for the fragment documents corresponding to the query, with their story, tags and translations, without
+     * reading the database.
+     *
+     * @param query the query of the search.
+     * @param pageable the pagination information.
+     * @return the list of documents.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Page<FragmentDocument> searchDocuments(String query, Pageable pageable) {
+        log.debug("Request to search for a page of Fragment documents for query {}", query);
+        return fragmentSearchRepository.search(queryStringQuery(query), pageable);
+    }
 }
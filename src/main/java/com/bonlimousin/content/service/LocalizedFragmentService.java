@@ -0,0 +1,224 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.LocalizedRepository;
+import com.bonlimousin.content.repository.StoryRepository;
+import com.bonlimousin.content.security.SecurityUtils;
+import com.bonlimousin.content.service.dto.LocalizedFragmentDTO;
+import com.bonlimousin.content.service.dto.LocalizedStoryDTO;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service resolving the texts of {@link FragmentEntity} for the languages requested by a client.
+ * <p>
+ * The requested languages are followed by the configured fallback languages, then by the texts of the fragment
+ * itself. Only the localizations visible to the current user take part. Resolved fragments are cached per fragment,
+ * language chain and user role, and the cache is cleared when a write to the content commits.
+ */
+@Service
+public class LocalizedFragmentService {
+
+    public static final String LOCALIZED_FRAGMENTS_CACHE = "com.bonlimousin.content.service.dto.LocalizedFragmentDTO";
+
+    private final Logger log = LoggerFactory.getLogger(LocalizedFragmentService.class);
+
+    private final StoryRepository storyRepository;
+
+    private final FragmentRepository fragmentRepository;
+
+    private final LocalizedRepository localizedRepository;
+
+    private final List<String> fallbackLanguages;
+
+    private final Cache cache;
+
+    public LocalizedFragmentService(StoryRepository storyRepository, FragmentRepository fragmentRepository,
+                                    LocalizedRepository localizedRepository, ApplicationProperties applicationProperties,
+                                    CacheManager cacheManager) {
+        this.storyRepository = storyRepository;
+        this.fragmentRepository = fragmentRepository;
+        this.localizedRepository = localizedRepository;
+        this.fallbackLanguages = applicationProperties.getLocalization().getFallbackLanguages();
+        this.cache = cacheManager.getCache(LOCALIZED_FRAGMENTS_CACHE);
+    }
+
+    /**
+     * Get one fragment with its texts resolved.
+     *
+     * @param id the id of the entity.
+     * @param languages the requested languages, in order of preference.
+     * @return the fragment, empty if it does not exist or is not visible to the current user.
+     */
+    @Transactional(readOnly = true)
+    public Optional<LocalizedFragmentDTO> findOne(Long id, List<String> languages) {
+        log.debug("Request to get Fragment : {} in {}", id, languages);
+        return Optional.ofNullable(findAll(Collections.singletonList(id), languageChain(languages),
+            SecurityUtils.getCurrentUserRole()).get(id));
+    }
+
+    /**
+     * Get one story with the texts of its fragments resolved.
+     *
+     * @param id the id of the story.
+     * @param languages the requested languages, in order of preference.
+     * @return the story with the fragments visible to the current user, empty if the story does not exist.
+     */
+    @Transactional(readOnly = true)
+    public Optional<LocalizedStoryDTO> findStory(Long id, List<String> languages) {
+        log.debug("Request to get Story : {} in {}", id, languages);
+        UserRole role = SecurityUtils.getCurrentUserRole();
+        List<String> chain = languageChain(languages);
+        return storyRepository.findById(id).map(storyEntity -> {
+            List<Long> fragmentIds = fragmentRepository.findIdsByStoryIdAndVisibilityIn(id, visibleTo(role));
+            Map<Long, LocalizedFragmentDTO> fragments = findAll(fragmentIds, chain, role);
+            return new LocalizedStoryDTO(storyEntity, fragmentIds.stream()
+                .map(fragments::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        });
+    }
+
+    /**
+     * Clear the resolved fragments once a write to the content has committed.
+     *
+     * @param event the changed stories.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStoryContentChanged(StoryContentChangedEvent event) {
+        log.debug("Clearing localized fragments : {}", event);
+        cache.clear();
+    }
+
+    private List<String> languageChain(List<String> languages) {
+        List<String> chain = new ArrayList<>();
+        for (String language : languages) {
+            if (!chain.contains(language)) {
+                chain.add(language);
+            }
+        }
+        for (String language : fallbackLanguages) {
+            if (!chain.contains(language)) {
+                chain.add(language);
+            }
+        }
+        return chain;
+    }
+
+    private Map<Long, LocalizedFragmentDTO> findAll(List<Long> ids, List<String> chain, UserRole role) {
+        Map<Long, LocalizedFragmentDTO> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : ids) {
+            LocalizedFragmentDTO cached = cache.get(cacheKey(id, chain, role), LocalizedFragmentDTO.class);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        Set<UserRole> visibilities = visibleTo(role);
+        Map<Long, List<LocalizedEntity>> localizations = localizedRepository.findAllByFragmentIdIn(misses).stream()
+            .filter(localizedEntity -> isVisible(localizedEntity.getVisibility(), visibilities))
+            .collect(Collectors.groupingBy(localizedEntity -> localizedEntity.getFragment().getId()));
+        for (FragmentEntity fragmentEntity : fragmentRepository.findAllWithEagerRelationshipsByIdIn(misses)) {
+            if (isVisible(fragmentEntity.getVisibility(), visibilities)) {
+                LocalizedFragmentDTO fragment = localize(fragmentEntity,
+                    localizations.getOrDefault(fragmentEntity.getId(), Collections.emptyList()), chain);
+                cache.put(cacheKey(fragmentEntity.getId(), chain, role), fragment);
+                result.put(fragmentEntity.getId(), fragment);
+            }
+        }
+        return result;
+    }
+
+    private static LocalizedFragmentDTO localize(FragmentEntity fragmentEntity, List<LocalizedEntity> localizations, List<String> chain) {
+        List<LocalizedEntity> candidates = new ArrayList<>();
+        for (String language : chain) {
+            localizations.stream()
+                .filter(localizedEntity -> language.equals(localizedEntity.geti18n()))
+                .forEach(candidates::add);
+        }
+        LocalizedFragmentDTO fragment = new LocalizedFragmentDTO();
+        fragment.setId(fragmentEntity.getId());
+        fragment.setStoryId(fragmentEntity.getStory() != null ? fragmentEntity.getStory().getId() : null);
+        fragment.setTemplate(fragmentEntity.getTemplate());
+        fragment.setName(fragmentEntity.getName());
+        fragment.setLang(candidates.isEmpty() ? null : candidates.get(0).geti18n());
+        fragment.setTitle(resolve(candidates, LocalizedEntity::getTitle, fragmentEntity.getTitle()));
+        fragment.setIngress(resolve(candidates, LocalizedEntity::getIngress, fragmentEntity.getIngress()));
+        fragment.setBody(resolve(candidates, LocalizedEntity::getBody, fragmentEntity.getBody()));
+        fragment.setCaption(resolve(candidates, LocalizedEntity::getCaption, fragmentEntity.getCaption()));
+        fragment.setImageUrl(fragmentEntity.getImageUrl());
+        fragment.setImagePlaceholder(fragmentEntity.getImagePlaceholder());
+        fragment.setImageColor(fragmentEntity.getImageColor());
+        fragment.setWidth(fragmentEntity.getWidth());
+        fragment.setHeight(fragmentEntity.getHeight());
+        fragment.setOrderNo(fragmentEntity.getOrderNo());
+        fragment.setVisibility(fragmentEntity.getVisibility());
+        // Copies, so that the cached fragment does not hold on to the persistence context
+        fragment.setTags(fragmentEntity.getTags().stream()
+            .sorted(Comparator.comparing(TagEntity::getId))
+            .map(LocalizedFragmentService::copy)
+            .collect(Collectors.toList()));
+        return fragment;
+    }
+
+    private static TagEntity copy(TagEntity tagEntity) {
+        TagEntity tag = new TagEntity().name(tagEntity.getName()).version(tagEntity.getVersion());
+        tag.setId(tagEntity.getId());
+        return tag;
+    }
+
+    private static String resolve(List<LocalizedEntity> candidates, Function<LocalizedEntity, String> field, String fallback) {
+        return candidates.stream()
+            .map(field)
+            .filter(Objects::nonNull)
+            .findFirst()
+            .orElse(fallback);
+    }
+
+    /**
+     * @return the visibilities of the content a user with the role can see; content without visibility is public.
+     */
+    private static Set<UserRole> visibleTo(UserRole role) {
+        // Roles are declared from the most to the least privileged
+        return EnumSet.range(role, UserRole.ROLE_ANONYMOUS);
+    }
+
+    private static boolean isVisible(UserRole visibility, Collection<UserRole> visibilities) {
+        return visibility == null || visibilities.contains(visibility);
+    }
+
+    private static String cacheKey(Long id, List<String> chain, UserRole role) {
+        return id + ":" + String.join(",", chain) + ":" + role;
+    }
+}
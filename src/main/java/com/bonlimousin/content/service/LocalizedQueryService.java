@@ -1,6 +1,9 @@
 package com.bonlimousin.content.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.criteria.JoinType;
 
@@ -8,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +20,13 @@ import io.github.jhipster.service.QueryService;
 
 import com.bonlimousin.content.domain.LocalizedEntity;
 import com.bonlimousin.content.domain.*; // for static metamodels
+import com.bonlimousin.content.repository.RelationFetcher;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.FieldProjector;
+import com.bonlimousin.content.repository.KeysetPager;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.repository.PageReader;
+import com.bonlimousin.content.repository.ScrollReader;
 import com.bonlimousin.content.repository.LocalizedRepository;
 import com.bonlimousin.content.repository.search.LocalizedSearchRepository;
 import com.bonlimousin.content.service.dto.LocalizedCriteria;
@@ -36,9 +47,26 @@ public class LocalizedQueryService extends QueryService<LocalizedEntity> {
 
     private final LocalizedSearchRepository localizedSearchRepository;
 
-    public LocalizedQueryService(LocalizedRepository localizedRepository, LocalizedSearchRepository localizedSearchRepository) {
+    private final RelationFetcher relationFetcher;
+
+    private final FieldProjector fieldProjector;
+
+    private final KeysetPager keysetPager;
+
+    private final PageReader pageReader;
+
+    private final ScrollReader scrollReader;
+
+    public LocalizedQueryService(LocalizedRepository localizedRepository, LocalizedSearchRepository localizedSearchRepository,
+                                 RelationFetcher relationFetcher, FieldProjector fieldProjector,
+                                 KeysetPager keysetPager, PageReader pageReader, ScrollReader scrollReader) {
         this.localizedRepository = localizedRepository;
         this.localizedSearchRepository = localizedSearchRepository;
+        this.relationFetcher = relationFetcher;
+        this.fieldProjector = fieldProjector;
+        this.keysetPager = keysetPager;
+        this.pageReader = pageReader;
+        this.scrollReader = scrollReader;
     }
 
     /**
@@ -66,6 +94,97 @@ public class LocalizedQueryService extends QueryService<LocalizedEntity> {
         return localizedRepository.findAll(specification, page);
     }
 
+    /**
+     * Return a {@link Page} of the values of some fields of the {@link LocalizedEntity} which matches the criteria from the database,
+     * reading only the columns of those fields.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param fields The names of the fields to read.
+     * @return the values of the matching entities, by field name.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findFieldsByCriteria(LocalizedCriteria criteria, Pageable page, Collection<String> fields) {
+        log.debug("find fields {} by criteria : {}, page: {}", fields, criteria, page);
+        final Specification<LocalizedEntity> specification = createSpecification(criteria);
+        return fieldProjector.findAll(LocalizedEntity.class, specification, page, fields, false);
+    }
+
+    /**
+     * Return a {@link Slice} of {@link LocalizedEntity} which matches the criteria from the database, counting them as told.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<LocalizedEntity> findByCriteria(LocalizedCriteria criteria, Pageable page, CountMode count) {
+        if (count == CountMode.EXACT) {
+            return findByCriteria(criteria, page);
+        }
+        log.debug("find by criteria : {}, page: {}, count: {}", criteria, page, count);
+        final Specification<LocalizedEntity> specification = createSpecification(criteria);
+        return pageReader.findAll(LocalizedEntity.class, specification, page, count);
+    }
+
+    /**
+     * Return a {@link Slice} of {@link LocalizedEntity} which matches the criteria from the database, counting them as told,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<LocalizedEntity> findByCriteria(LocalizedCriteria criteria, Pageable page, CountMode count, Collection<String> include) {
+        Slice<LocalizedEntity> result = findByCriteria(criteria, page, count);
+        relationFetcher.fetch(LocalizedEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link LocalizedEntity} which matches the criteria from the database, after a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<LocalizedEntity> findByCriteriaAfter(LocalizedCriteria criteria, Pageable page, String after) {
+        log.debug("find by criteria : {}, page: {}, after: {}", criteria, page, after);
+        final Specification<LocalizedEntity> specification = createSpecification(criteria);
+        return keysetPager.findAll(LocalizedEntity.class, specification, page, after, false);
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link LocalizedEntity} which matches the criteria from the database, after a cursor,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<LocalizedEntity> findByCriteriaAfter(LocalizedCriteria criteria, Pageable page, String after, Collection<String> include) {
+        KeysetSlice<LocalizedEntity> result = findByCriteriaAfter(criteria, page, after);
+        relationFetcher.fetch(LocalizedEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Apply an action to each of the matching entities in the database, read one by one from a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param action the action applied to each entity, which is detached right after.
+     * @return the number of matching entities.
+     */
+    @Transactional(readOnly = true)
+    public long forEachByCriteria(LocalizedCriteria criteria, Consumer<? super LocalizedEntity> action) {
+        log.debug("for each by criteria : {}", criteria);
+        final Specification<LocalizedEntity> specification = createSpecification(criteria);
+        return scrollReader.forEach(LocalizedEntity.class, specification, action);
+    }
+
     /**
      * Return the number of matching entities in the database.
      * @param criteria The object which holds all the filters, which the entities should match.
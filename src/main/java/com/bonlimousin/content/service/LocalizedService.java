@@ -1,17 +1,30 @@
 package com.bonlimousin.content.service;
 
+import com.bonlimousin.content.domain.FragmentEntity;
 import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
+import com.bonlimousin.content.repository.BatchLoader;
 import com.bonlimousin.content.repository.LocalizedRepository;
+import com.bonlimousin.content.repository.RelationFetcher;
 import com.bonlimousin.content.repository.search.LocalizedSearchRepository;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
@@ -28,21 +41,48 @@ public class LocalizedService {
 
     private final LocalizedSearchRepository localizedSearchRepository;
 
-    public LocalizedService(LocalizedRepository localizedRepository, LocalizedSearchRepository localizedSearchRepository) {
+    private final SearchOutboxService searchOutboxService;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final RelationFetcher relationFetcher;
+
+    private final BatchLoader batchLoader;
+
+    public LocalizedService(LocalizedRepository localizedRepository, LocalizedSearchRepository localizedSearchRepository,
+                            SearchOutboxService searchOutboxService, ApplicationEventPublisher applicationEventPublisher,
+                            RelationFetcher relationFetcher, BatchLoader batchLoader) {
         this.localizedRepository = localizedRepository;
         this.localizedSearchRepository = localizedSearchRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.relationFetcher = relationFetcher;
+        this.batchLoader = batchLoader;
     }
 
     /**
      * Save a localized.
      *
-     * @param localizedEntity the entity to save.
+     * @param localizedEntity the entity to save, an update without version is applied to the current version.
      * @return the persisted entity.
+     * @throws org.springframework.dao.ConcurrencyFailureException if the version of an update is not the current one.
      */
     public LocalizedEntity save(LocalizedEntity localizedEntity) {
         log.debug("Request to save Localized : {}", localizedEntity);
+        if (localizedEntity.getId() != null && localizedEntity.getVersion() == null) {
+            localizedRepository.findVersionById(localizedEntity.getId()).ifPresent(localizedEntity::setVersion);
+        }
+        // The localized may move to a fragment of another story
+        Long previousStoryId = localizedEntity.getId() != null ? localizedRepository.findStoryIdById(localizedEntity.getId()).orElse(null) : null;
+        Set<Long> fragmentIds = new HashSet<>();
+        if (localizedEntity.getId() != null) {
+            localizedRepository.findFragmentIdById(localizedEntity.getId()).ifPresent(fragmentIds::add);
+        }
         LocalizedEntity result = localizedRepository.save(localizedEntity);
-        localizedSearchRepository.save(result);
+        searchOutboxService.enqueue(LocalizedEntity.class, result.getId());
+        fragmentIds.add(result.getFragment().getId());
+        searchOutboxService.enqueue(FragmentEntity.class, fragmentIds, FragmentDocument.LOCALIZATIONS);
+        applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(previousStoryId, result.getFragment().getStory().getId()));
         return result;
     }
 
@@ -71,6 +111,48 @@ public class LocalizedService {
         return localizedRepository.findById(id);
     }
 
+    /**
+     * Get one localized by id, with relations loaded.
+     *
+     * @param id the id of the entity.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entity.
+     */
+    @Transactional(readOnly = true)
+    public Optional<LocalizedEntity> findOne(Long id, Collection<String> include) {
+        log.debug("Request to get Localized : {} with {}", id, include);
+        Optional<LocalizedEntity> result = localizedRepository.findById(id);
+        result.ifPresent(entity -> relationFetcher.fetch(LocalizedEntity.class, Collections.singletonList(entity), include));
+        return result;
+    }
+
+    /**
+     * Get the localizeds by ids, in one statement for those not cached.
+     *
+     * @param ids the ids of the entities.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<LocalizedEntity> findAllById(List<Long> ids) {
+        log.debug("Request to get Localizeds : {}", ids);
+        return batchLoader.findAllById(LocalizedEntity.class, ids);
+    }
+
+    /**
+     * Get the localizeds by ids, in one statement for those not cached, with relations loaded.
+     *
+     * @param ids the ids of the entities.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<LocalizedEntity> findAllById(List<Long> ids, Collection<String> include) {
+        log.debug("Request to get Localizeds : {} with {}", ids, include);
+        List<LocalizedEntity> result = batchLoader.findAllById(LocalizedEntity.class, ids);
+        relationFetcher.fetch(LocalizedEntity.class, result, include);
+        return result;
+    }
+
     /**
      * Delete the localized by id.
      *
@@ -78,8 +160,13 @@ public class LocalizedService {
      */
     public void delete(Long id) {
         log.debug("Request to delete Localized : {}", id);
+        localizedRepository.findStoryIdById(id)
+            .ifPresent(storyId -> applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(storyId)));
+        Optional<Long> fragmentId = localizedRepository.findFragmentIdById(id);
         localizedRepository.deleteById(id);
-        localizedSearchRepository.deleteById(id);
+        searchOutboxService.enqueue(LocalizedEntity.class, id);
+        fragmentId.ifPresent(previousFragmentId -> searchOutboxService.enqueue(FragmentEntity.class,
+            Collections.singletonList(previousFragmentId), FragmentDocument.LOCALIZATIONS));
     }
 
     /**
@@ -87,10 +174,12 @@ public class LocalizedService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @return the list of entities, loaded from the database in the order of the documents found.
      */
     @Transactional(readOnly = true)
     public Page<LocalizedEntity> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Localizeds for query {}", query);
-        return localizedSearchRepository.search(queryStringQuery(query), pageable);    }
+        Page<LocalizedDocument> page = localizedSearchRepository.search(queryStringQuery(query), pageable);
+        return new PageImpl<>(findAllById(page.map(LocalizedDocument::getId).getContent()), pageable, page.getTotalElements());
+    }
 }
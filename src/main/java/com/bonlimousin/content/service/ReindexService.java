@@ -0,0 +1,445 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.domain.SearchRebuildEntity;
+import com.bonlimousin.content.repository.PartitionReader;
+import com.bonlimousin.content.repository.SearchRebuildRepository;
+import com.bonlimousin.content.service.SearchOutboxService.SearchIndex;
+import com.bonlimousin.content.service.dto.ReindexProgressDTO;
+import com.bonlimousin.content.service.dto.ReindexProgressDTO.State;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.vanroy.springdata.jest.JestElasticsearchTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.searchbox.action.Action;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Delete;
+import io.searchbox.core.Index;
+import io.searchbox.indices.CreateIndex;
+import io.searchbox.indices.DeleteIndex;
+import io.searchbox.indices.Refresh;
+import io.searchbox.indices.aliases.AddAliasMapping;
+import io.searchbox.indices.aliases.AliasMapping;
+import io.searchbox.indices.aliases.GetAliases;
+import io.searchbox.indices.aliases.ModifyAliases;
+import io.searchbox.indices.aliases.RemoveAliasMapping;
+import io.searchbox.indices.settings.UpdateSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Service rebuilding the search indexes from the database without downtime.
+ * <p>
+ * Each index is rebuilt into a new versioned index, which the read alias is swapped to at once when it is loaded,
+ * so that searches keep reading the current index meanwhile. The rows are read in parallel id range partitions,
+ * each in chunks of one read-only transaction, and bulk-loaded with refresh disabled. The new index is created with the
+ * settings and mapping of the document class, so a rebuild also applies the changes made to them. The search outbox writes the
+ * changes made during the rebuild to the new index as well: the documents are loaded with {@code create}, which
+ * leaves the documents the outbox has written already, and the rows deleted since a chunk was read are deleted from
+ * the new index after it is loaded.
+ */
+@Service
+public class ReindexService {
+
+    private static final DateTimeFormatter VERSION = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private static final int CONFLICT = 409;
+
+    private final Logger log = LoggerFactory.getLogger(ReindexService.class);
+
+    private final SearchOutboxService searchOutboxService;
+
+    private final SearchRebuildRepository searchRebuildRepository;
+
+    private final PartitionReader partitionReader;
+
+    private final JestClient jestClient;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final ApplicationProperties.SearchReindex properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicReference<List<Rebuild>> rebuilds = new AtomicReference<>(Collections.emptyList());
+
+    public ReindexService(SearchOutboxService searchOutboxService, SearchRebuildRepository searchRebuildRepository,
+                          PartitionReader partitionReader, JestClient jestClient,
+                          ElasticsearchOperations elasticsearchOperations, ObjectMapper objectMapper,
+                          PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties,
+                          MeterRegistry meterRegistry) {
+        this.searchOutboxService = searchOutboxService;
+        this.searchRebuildRepository = searchRebuildRepository;
+        this.partitionReader = partitionReader;
+        this.jestClient = jestClient;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.properties = applicationProperties.getSearchReindex();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Start rebuilding all the search indexes in the background, unless they are being rebuilt already.
+     *
+     * @return the progress of the rebuild of each index.
+     */
+    public List<ReindexProgressDTO> start() {
+        if (running.compareAndSet(false, true)) {
+            // One more thread than the partitions read at once, for the job itself
+            ExecutorService executor = newExecutor(properties.getParallelism() + 1);
+            List<Rebuild> run = newRebuilds();
+            CompletableFuture.runAsync(() -> reindex(run, executor), executor)
+                .whenComplete((result, e) -> executor.shutdown());
+        }
+        return getProgress();
+    }
+
+    /**
+     * Rebuild all the search indexes, unless they are being rebuilt already.
+     *
+     * @return the progress of the rebuild of each index, once all are swapped or failed.
+     * @throws IllegalStateException if the indexes are being rebuilt already.
+     */
+    public List<ReindexProgressDTO> reindex() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("The search indexes are being rebuilt already");
+        }
+        ExecutorService executor = newExecutor(properties.getParallelism());
+        try {
+            reindex(newRebuilds(), executor);
+        } finally {
+            executor.shutdown();
+        }
+        return getProgress();
+    }
+
+    /**
+     * Get the progress of the last rebuild of the search indexes.
+     *
+     * @return the progress of the rebuild of each index, empty if the indexes were not rebuilt since startup.
+     */
+    public List<ReindexProgressDTO> getProgress() {
+        return rebuilds.get().stream().map(Rebuild::toProgress).collect(Collectors.toList());
+    }
+
+    private ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("search-reindex-"));
+    }
+
+    private List<Rebuild> newRebuilds() {
+        String version = VERSION.format(Instant.now());
+        List<Rebuild> run = searchOutboxService.getIndexes().stream()
+            .map(index -> new Rebuild(index, index.getIndexName() + "_" + version))
+            .collect(Collectors.toList());
+        rebuilds.set(run);
+        return run;
+    }
+
+    private void reindex(List<Rebuild> run, ExecutorService executor) {
+        try {
+            for (Rebuild rebuild : run) {
+                try {
+                    rebuild(rebuild, executor);
+                } catch (Exception e) {
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    log.error("Cannot rebuild search index {}", rebuild.index.getIndexName(), e);
+                    rebuild.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                    rebuild.finish(State.FAILED);
+                    cancel(rebuild);
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void rebuild(Rebuild rebuild, ExecutorService executor) throws IOException, InterruptedException {
+        String indexName = rebuild.index.getIndexName();
+        log.info("Rebuilding search index {} into {}", indexName, rebuild.rebuildIndexName);
+        rebuild.startedDate = Instant.now();
+        rebuild.state = State.LOADING;
+        // A rebuild left by a previous run is abandoned
+        searchRebuildRepository.findOneByIndexName(indexName).ifPresent(abandoned -> {
+            log.warn("Abandoning the rebuild of search index {} into {}", indexName, abandoned.getRebuildIndexName());
+            execute(new DeleteIndex.Builder(abandoned.getRebuildIndexName()).build(), true);
+            searchRebuildRepository.delete(abandoned);
+        });
+        Map<String, Object> settings = readSettings(rebuild.index);
+        Object refreshInterval = settings.put("refresh_interval", "-1");
+        execute(new CreateIndex.Builder(rebuild.rebuildIndexName)
+            .settings(Collections.singletonMap("index", settings)).build(), false);
+        elasticsearchOperations.putMapping(rebuild.rebuildIndexName, rebuild.index.getIndexType(),
+            rebuild.index.getDocument().getType());
+        // From now on the search outbox writes the changes to the new index too
+        searchRebuildRepository.save(new SearchRebuildEntity()
+            .indexName(indexName)
+            .rebuildIndexName(rebuild.rebuildIndexName)
+            .startedDate(rebuild.startedDate));
+
+        List<Range<Long>> partitions = readOnlyTransactionTemplate.execute(status ->
+            partitionReader.findIdPartitions(rebuild.index.getEntityType(), properties.getParallelism()));
+        rebuild.partitions = partitions.size();
+        List<CompletableFuture<Void>> loads = partitions.stream()
+            .map(partition -> CompletableFuture.runAsync(() -> load(rebuild, rebuild.index, partition), executor))
+            .collect(Collectors.toList());
+        try {
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        }
+
+        execute(new UpdateSettings.Builder(objectMapper.writeValueAsString(Collections.singletonMap("index",
+            Collections.singletonMap("refresh_interval", refreshInterval))))
+            .addIndex(rebuild.rebuildIndexName).build(), false);
+        execute(new Refresh.Builder().addIndex(rebuild.rebuildIndexName).build(), false);
+        Set<String> previousIndexNames = swap(indexName, rebuild.rebuildIndexName);
+        searchRebuildRepository.findOneByIndexName(indexName).ifPresent(searchRebuildRepository::delete);
+        rebuild.finish(State.SWAPPED);
+        log.info("Rebuilt search index {} into {} with {} documents in {}", indexName, rebuild.rebuildIndexName,
+            rebuild.documents.get(), Duration.between(rebuild.startedDate, rebuild.finishedDate));
+        for (String previousIndexName : previousIndexNames) {
+            execute(new DeleteIndex.Builder(previousIndexName).build(), true);
+        }
+    }
+
+    /**
+     * Read the index settings of the document of an index, from its setting file.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readSettings(SearchIndex<?> index) throws IOException {
+        if (index.getSettingPath() == null) {
+            return new HashMap<>();
+        }
+        Map<String, Object> settings = objectMapper.readValue(
+            JestElasticsearchTemplate.readFileFromClasspath(index.getSettingPath()), Map.class);
+        Object indexSettings = settings.get("index");
+        return indexSettings instanceof Map ? new HashMap<>((Map<String, Object>) indexSettings) : new HashMap<>();
+    }
+
+    private <T> void load(Rebuild rebuild, SearchIndex<T> index, Range<Long> partition) {
+        Class<T> type = index.getEntityType();
+        int batchSize = properties.getBatchSize();
+        Long after = null;
+        int size;
+        do {
+            Long chunkAfter = after;
+            Chunk chunk = readOnlyTransactionTemplate.execute(status -> {
+                List<T> entities = partitionReader.findChunk(type, partition, chunkAfter, batchSize);
+                return new Chunk(searchOutboxService.toDocuments(index, entities),
+                    entities.isEmpty() ? null : partitionReader.lastId(entities));
+            });
+            size = chunk.documents.size();
+            if (size == 0) {
+                break;
+            }
+            List<BulkableAction<?>> creates = new ArrayList<>();
+            chunk.documents.forEach((id, source) -> creates.add(new Index.Builder(source)
+                .index(rebuild.rebuildIndexName)
+                .type(rebuild.index.getIndexType())
+                .id(id.toString())
+                .setParameter("op_type", "create")
+                .build()));
+            bulk(creates);
+            // A row deleted since the chunk was read may have been deleted from the new index before it was loaded
+            Set<Long> deleted = new HashSet<>(chunk.documents.keySet());
+            deleted.removeAll(readOnlyTransactionTemplate.execute(status ->
+                partitionReader.findExistingIds(type, chunk.documents.keySet())));
+            if (!deleted.isEmpty()) {
+                bulk(deleted.stream()
+                    .map(id -> new Delete.Builder(id.toString()).index(rebuild.rebuildIndexName)
+                        .type(rebuild.index.getIndexType()).build())
+                    .collect(Collectors.toList()));
+            }
+            rebuild.documents.addAndGet(size);
+            meterRegistry.counter("search.reindex.documents", "index", rebuild.index.getIndexName()).increment(size);
+            after = chunk.lastId;
+        } while (size == batchSize);
+    }
+
+    private void bulk(List<BulkableAction<?>> actions) {
+        try {
+            BulkResult result = jestClient.execute(new Bulk.Builder().addAction(actions).build());
+            if (result.getItems().size() != actions.size()) {
+                throw new IOException("Bulk request failed: " + result.getErrorMessage());
+            }
+            // A conflict is a document the search outbox has written already
+            for (BulkResult.BulkResultItem item : result.getItems()) {
+                if (item.error != null && item.status != CONFLICT) {
+                    throw new IOException("Cannot index document " + item.id + ": " + item.error);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Point the read alias to the new index, and away from the current indexes, in one atomic request.
+     *
+     * @return the indexes the alias pointed to.
+     */
+    private Set<String> swap(String indexName, String rebuildIndexName) throws IOException {
+        JestResult aliases = jestClient.execute(new GetAliases.Builder().addIndex(indexName).build());
+        Set<String> previousIndexNames = aliases.isSucceeded()
+            ? aliases.getJsonObject().entrySet().stream().map(Map.Entry::getKey).collect(Collectors.toSet())
+            : Collections.emptySet();
+        List<AliasMapping> mappings = new ArrayList<>();
+        mappings.add(new AddAliasMapping.Builder(rebuildIndexName, indexName).build());
+        for (String previousIndexName : previousIndexNames) {
+            // An index created before the alias has its name, it is removed along with the swap
+            mappings.add(previousIndexName.equals(indexName) ? new RemoveIndexMapping(previousIndexName)
+                : new RemoveAliasMapping.Builder(previousIndexName, indexName).build());
+        }
+        execute(new ModifyAliases.Builder(mappings).build(), false);
+        previousIndexNames.remove(indexName);
+        return previousIndexNames;
+    }
+
+    private void cancel(Rebuild rebuild) {
+        try {
+            searchRebuildRepository.findOneByIndexName(rebuild.index.getIndexName())
+                .filter(abandoned -> abandoned.getRebuildIndexName().equals(rebuild.rebuildIndexName))
+                .ifPresent(searchRebuildRepository::delete);
+            execute(new DeleteIndex.Builder(rebuild.rebuildIndexName).build(), true);
+        } catch (RuntimeException e) {
+            log.warn("Cannot delete search index {}: {}", rebuild.rebuildIndexName, e.getMessage());
+        }
+    }
+
+    private <T extends JestResult> void execute(Action<T> action, boolean lenient) {
+        try {
+            T result = jestClient.execute(action);
+            if (!result.isSucceeded()) {
+                if (!lenient) {
+                    throw new IOException(action.getClass().getSimpleName() + " failed: " + result.getErrorMessage());
+                }
+                log.warn("{} failed: {}", action.getClass().getSimpleName(), result.getErrorMessage());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Alias action removing an index, which the alias can take the name of.
+     */
+    private static class RemoveIndexMapping extends AliasMapping {
+
+        RemoveIndexMapping(String indexName) {
+            this.indices = Collections.singletonList(indexName);
+        }
+
+        @Override
+        public String getType() {
+            return "remove_index";
+        }
+
+        @Override
+        public List<Map<String, Object>> getData() {
+            return Collections.singletonList(Collections.singletonMap(getType(),
+                Collections.singletonMap("index", indices.get(0))));
+        }
+    }
+
+    private static class Chunk {
+
+        private final Map<Long, String> documents;
+
+        private final Long lastId;
+
+        Chunk(Map<Long, String> documents, Long lastId) {
+            this.documents = documents;
+            this.lastId = lastId;
+        }
+    }
+
+    private static class Rebuild {
+
+        private final SearchIndex<?> index;
+
+        private final String rebuildIndexName;
+
+        private final AtomicLong documents = new AtomicLong();
+
+        private volatile State state = State.PENDING;
+
+        private volatile int partitions;
+
+        private volatile Instant startedDate;
+
+        private volatile Instant finishedDate;
+
+        private volatile String error;
+
+        Rebuild(SearchIndex<?> index, String rebuildIndexName) {
+            this.index = index;
+            this.rebuildIndexName = rebuildIndexName;
+        }
+
+        void finish(State state) {
+            this.finishedDate = Instant.now();
+            this.state = state;
+        }
+
+        ReindexProgressDTO toProgress() {
+            ReindexProgressDTO progress = new ReindexProgressDTO();
+            progress.setIndexName(index.getIndexName());
+            progress.setRebuildIndexName(rebuildIndexName);
+            progress.setState(state);
+            progress.setPartitions(partitions);
+            progress.setDocuments(documents.get());
+            progress.setStartedDate(startedDate);
+            progress.setFinishedDate(finishedDate);
+            progress.setError(error);
+            if (startedDate != null) {
+                long millis = Duration.between(startedDate, finishedDate != null ? finishedDate : Instant.now()).toMillis();
+                progress.setDocumentsPerSecond(millis > 0 ? documents.get() * 1000.0 / millis : 0);
+            }
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.SearchOutboxEntity;
+import com.bonlimousin.content.domain.SearchRebuildEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
+import com.bonlimousin.content.domain.search.StoryDocument;
+import com.bonlimousin.content.domain.search.TagDocument;
+import com.bonlimousin.content.repository.BatchLoader;
+import com.bonlimousin.content.repository.RelationFetcher;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
+import com.bonlimousin.content.repository.SearchRebuildRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Delete;
+import io.searchbox.core.Index;
+import io.searchbox.core.Update;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service keeping the search index up to date through a transactional outbox.
+ * <p>
+ * The services changing an entity record it in the outbox, in their transaction, instead of calling Elasticsearch: a
+ * rollback leaves nothing to index, and no database connection is held during a request to Elasticsearch. The outbox is
+ * flushed in the background, in batches of one transaction and one bulk request each: the entries of an entity are
+ * folded into one document, built from the current state of the entity, or deleted if it no longer exists. The
+ * documents are the classes of {@code domain.search}, holding the searchable fields only. The entries of documents
+ * which fail are retried later, with an exponential backoff, and dropped after the maximum number of attempts. The age
+ * of the oldest entry is the indexing lag, published as a metric.
+ * <p>
+ * An entity is indexed by one instance at a time, which locks all its entries: an instance indexing the older state
+ * of an entity could otherwise overwrite the document another instance indexed from its newer state, or index again
+ * an entity another instance deleted.
+ * <p>
+ * While an index is rebuilt, the documents are written both to the index and to the new index, so that the changes
+ * made during the rebuild are not lost when the new index replaces the current one.
+ * <p>
+ * A document which includes related entities declares parts, its fields built from those entities: the entries with a
+ * part update only those fields, with a partial update of the document, unless an entry asks for the whole document.
+ * A partial update of a document missing from an index is turned into an entry for the whole document.
+ */
+@Service
+@Transactional
+public class SearchOutboxService {
+
+    private static final int NOT_FOUND = 404;
+
+    private final Logger log = LoggerFactory.getLogger(SearchOutboxService.class);
+
+    private final SearchOutboxRepository searchOutboxRepository;
+
+    private final SearchRebuildRepository searchRebuildRepository;
+
+    private final BatchLoader batchLoader;
+
+    private final RelationFetcher relationFetcher;
+
+    private final JestClient jestClient;
+
+    private final EntityMapper entityMapper;
+
+    private final PersistenceUnitUtil persistenceUnitUtil;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.SearchOutbox properties;
+
+    private final Map<String, SearchIndex<?>> indexes = new LinkedHashMap<>();
+
+    private final AtomicReference<Instant> oldestCreatedDate = new AtomicReference<>();
+
+    private final Counter indexedDocuments;
+
+    private final Counter deletedDocuments;
+
+    private final Counter failedDocuments;
+
+    private final Counter updatedDocuments;
+
+    public SearchOutboxService(SearchOutboxRepository searchOutboxRepository,
+                               SearchRebuildRepository searchRebuildRepository, BatchLoader batchLoader,
+                               RelationFetcher relationFetcher, JestClient jestClient, EntityMapper entityMapper,
+                               ElasticsearchOperations elasticsearchOperations, EntityManager em,
+                               PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.searchOutboxRepository = searchOutboxRepository;
+        this.searchRebuildRepository = searchRebuildRepository;
+        this.batchLoader = batchLoader;
+        this.relationFetcher = relationFetcher;
+        this.jestClient = jestClient;
+        this.entityMapper = entityMapper;
+        this.persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = applicationProperties.getSearchOutbox();
+        register(elasticsearchOperations, FragmentEntity.class, FragmentDocument.class, FragmentDocument::of,
+            "tags", "localizedFragments")
+            .part(FragmentDocument.STORY, FragmentDocument.Story::of)
+            .part(FragmentDocument.TAGS, FragmentDocument.Tag::of, "tags")
+            .part(FragmentDocument.LOCALIZATIONS, FragmentDocument.Localization::of, "localizedFragments");
+        register(elasticsearchOperations, LocalizedEntity.class, LocalizedDocument.class, LocalizedDocument::of);
+        register(elasticsearchOperations, StoryEntity.class, StoryDocument.class, StoryDocument::of);
+        register(elasticsearchOperations, TagEntity.class, TagDocument.class, TagDocument::of);
+        this.indexedDocuments = meterRegistry.counter("search.outbox.documents", "result", "indexed");
+        this.deletedDocuments = meterRegistry.counter("search.outbox.documents", "result", "deleted");
+        this.failedDocuments = meterRegistry.counter("search.outbox.documents", "result", "failed");
+        this.updatedDocuments = meterRegistry.counter("search.outbox.documents", "result", "updated");
+        Gauge.builder("search.outbox.lag", oldestCreatedDate, oldest -> oldest.get() == null ? 0
+            : Duration.between(oldest.get(), Instant.now()).toMillis() / 1000.0)
+            .description("Age of the oldest change not indexed yet")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Record that the search document of an entity is to be brought up to date, in the current transaction.
+     *
+     * @param type the type of the entity, one of the indexed types.
+     * @param id the id of the entity, whether it was saved or deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(Class<?> type, Long id) {
+        log.debug("Request to index {} : {}", type.getSimpleName(), id);
+        Instant now = Instant.now();
+        searchOutboxRepository.save(new SearchOutboxEntity()
+            .indexName(indexName(type))
+            .entityId(id)
+            .createdDate(now)
+            .attempts(0)
+            .nextAttemptDate(now));
+    }
+
+    /**
+     * Record that a part of the search documents of entities is to be brought up to date, in the current transaction.
+     *
+     * @param type the type of the entities, one of the indexed types.
+     * @param ids the ids of the entities whose related entities changed.
+     * @param part the part of the documents to update, one of the parts of the index.
+     * @throws IllegalArgumentException if the part is not a part of the index.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(Class<?> type, Collection<Long> ids, String part) {
+        log.debug("Request to update the {} of {} : {}", part, type.getSimpleName(), ids);
+        String indexName = indexName(type);
+        if (!indexes.get(indexName).parts.containsKey(part)) {
+            throw new IllegalArgumentException(part + " is not a part of " + indexName + ", only " +
+                indexes.get(indexName).parts.keySet());
+        }
+        Instant now = Instant.now();
+        searchOutboxRepository.saveAll(ids.stream()
+            .map(id -> new SearchOutboxEntity()
+                .indexName(indexName)
+                .entityId(id)
+                .part(part)
+                .createdDate(now)
+                .attempts(0)
+                .nextAttemptDate(now))
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Flush the outbox, in batches of one transaction each, until no entry is due.
+     */
+    @Scheduled(cron = "${application.search-outbox.flush-cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void flush() {
+        int batchSize = properties.getBatchSize();
+        Boolean more;
+        do {
+            more = transactionTemplate.execute(status -> flushBatch(batchSize));
+        } while (Boolean.TRUE.equals(more));
+        oldestCreatedDate.set(searchOutboxRepository.findOldestCreatedDate().orElse(null));
+    }
+
+    /**
+     * Flush a batch of due entries.
+     *
+     * @return whether a whole batch was flushed, so that more entries may be due.
+     */
+    private boolean flushBatch(int batchSize) {
+        Instant now = Instant.now();
+        List<SearchOutboxEntity> dueEntries = searchOutboxRepository.findAllDue(now, PageRequest.of(0, batchSize));
+        if (dueEntries.isEmpty()) {
+            return false;
+        }
+        List<SearchOutboxEntity> entries = lockEntities(dueEntries);
+        Set<Long> lockedIds = entries.stream().map(SearchOutboxEntity::getId).collect(Collectors.toSet());
+        boolean more = dueEntries.size() == batchSize && dueEntries.stream().allMatch(entry -> lockedIds.contains(entry.getId()));
+        // The documents of the indexes being rebuilt are written to the new index too
+        Map<String, String> rebuildIndexNames = searchRebuildRepository.findAll().stream()
+            .collect(Collectors.toMap(SearchRebuildEntity::getIndexName, SearchRebuildEntity::getRebuildIndexName));
+        Map<String, Map<Long, List<SearchOutboxEntity>>> documents = entries.stream()
+            .collect(Collectors.groupingBy(SearchOutboxEntity::getIndexName, LinkedHashMap::new,
+                Collectors.groupingBy(SearchOutboxEntity::getEntityId, LinkedHashMap::new, Collectors.toList())));
+        documents.entrySet().removeIf(document -> {
+            if (indexes.containsKey(document.getKey())) {
+                return false;
+            }
+            log.warn("Dropping {} search outbox entries of unknown index {}", document.getValue().size(), document.getKey());
+            document.getValue().values().forEach(searchOutboxRepository::deleteAll);
+            return true;
+        });
+        // The entries of a document, in the order of the actions of the bulk request
+        List<List<SearchOutboxEntity>> actionEntries = new ArrayList<>();
+        List<BulkableAction<?>> actions = new ArrayList<>();
+        documents.forEach((indexName, documentEntries) -> {
+            SearchIndex<?> index = indexes.get(indexName);
+            // A document is indexed whole if one of its entries asks for it, otherwise its parts are updated
+            List<Long> wholeIds = new ArrayList<>();
+            Map<Long, Set<String>> partsById = new HashMap<>();
+            documentEntries.forEach((id, idEntries) -> {
+                Set<String> parts = idEntries.stream().map(SearchOutboxEntity::getPart).collect(Collectors.toSet());
+                if (index.parts.keySet().containsAll(parts)) {
+                    partsById.put(id, parts);
+                } else {
+                    wholeIds.add(id);
+                }
+            });
+            Map<Long, String> sources = wholeIds.isEmpty() ? Collections.emptyMap() : loadDocuments(index, wholeIds);
+            Map<Long, String> updates = partsById.isEmpty() ? Collections.emptyMap() : loadParts(index, partsById);
+            List<String> targetIndexNames = rebuildIndexNames.containsKey(indexName)
+                ? Arrays.asList(indexName, rebuildIndexNames.get(indexName)) : Collections.singletonList(indexName);
+            documentEntries.forEach((id, idEntries) -> {
+                // The parts of a deleted entity are left to the entry deleting its document
+                if (partsById.containsKey(id) && !updates.containsKey(id)) {
+                    return;
+                }
+                for (String targetIndexName : targetIndexNames) {
+                    actionEntries.add(idEntries);
+                    actions.add(partsById.containsKey(id)
+                        ? new Update.Builder(updates.get(id)).index(targetIndexName).type(index.getIndexType()).id(id.toString()).build()
+                        : action(targetIndexName, index.getIndexType(), id, sources.get(id)));
+                }
+            });
+        });
+        List<BulkResult.BulkResultItem> items = Collections.emptyList();
+        if (!actions.isEmpty()) {
+            log.debug("Indexing {} documents for {} search outbox entries", actions.size(), entries.size());
+            try {
+                BulkResult result = jestClient.execute(new Bulk.Builder().addAction(actions).build());
+                items = result.getItems();
+                if (items.size() != actions.size()) {
+                    throw new IOException("Bulk request failed: " + result.getErrorMessage());
+                }
+            } catch (IOException e) {
+                log.warn("Cannot index {} documents, retrying later: {}", actions.size(), e.getMessage());
+                documents.values().forEach(documentEntries -> documentEntries.values()
+                    .forEach(idEntries -> retry(idEntries, now, e.getMessage())));
+                return more;
+            }
+        }
+        // A document is indexed once written to all its indexes
+        Map<List<SearchOutboxEntity>, String> errors = new IdentityHashMap<>();
+        Map<List<SearchOutboxEntity>, Boolean> missing = new IdentityHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResult.BulkResultItem item = items.get(i);
+            if (actions.get(i) instanceof Update && item.status == NOT_FOUND) {
+                missing.put(actionEntries.get(i), true);
+            } else if (item.error != null) {
+                errors.put(actionEntries.get(i), item.error);
+            } else if (actions.get(i) instanceof Update) {
+                updatedDocuments.increment();
+            } else {
+                (actions.get(i) instanceof Delete ? deletedDocuments : indexedDocuments).increment();
+            }
+        }
+        documents.values().forEach(documentEntries -> documentEntries.values().forEach(idEntries -> {
+            if (errors.containsKey(idEntries)) {
+                retry(idEntries, now, errors.get(idEntries));
+            } else if (missing.containsKey(idEntries)) {
+                log.debug("Search document {} is missing, indexing it whole", idEntries.get(0).getEntityId());
+                idEntries.forEach(entry -> entry.part(null));
+            } else {
+                searchOutboxRepository.deleteAll(idEntries);
+            }
+        }));
+        return more;
+    }
+
+    /**
+     * Lock all the entries of the entities of due entries. The entities with entries locked by another instance are
+     * left to a later flush, as that instance may be indexing them.
+     *
+     * @return the entries of the entities locked, due or not.
+     */
+    private List<SearchOutboxEntity> lockEntities(List<SearchOutboxEntity> dueEntries) {
+        List<SearchOutboxEntity> entries = new ArrayList<>();
+        dueEntries.stream()
+            .collect(Collectors.groupingBy(SearchOutboxEntity::getIndexName, LinkedHashMap::new,
+                Collectors.mapping(SearchOutboxEntity::getEntityId, Collectors.toCollection(LinkedHashSet::new))))
+            .forEach((indexName, entityIds) -> {
+                List<SearchOutboxEntity> locked = searchOutboxRepository.findAllOfEntities(indexName, entityIds);
+                Set<Long> indexedElsewhere = new HashSet<>(searchOutboxRepository.findAllEntityIdsWithOtherEntries(indexName,
+                    entityIds, locked.stream().map(SearchOutboxEntity::getId).collect(Collectors.toList())));
+                if (!indexedElsewhere.isEmpty()) {
+                    log.debug("Leaving {} {} to a later flush, indexed by another instance", indexName, indexedElsewhere);
+                }
+                locked.stream()
+                    .filter(entry -> !indexedElsewhere.contains(entry.getEntityId()))
+                    .forEach(entries::add);
+            });
+        return entries;
+    }
+
+    /**
+     * Get the search indexes.
+     *
+     * @return the indexed entity types, with the documents they are indexed as.
+     */
+    public Collection<SearchIndex<?>> getIndexes() {
+        return Collections.unmodifiableCollection(indexes.values());
+    }
+
+    /**
+     * Build the search documents of entities, loading the relations they include.
+     *
+     * @param index the index of the entities.
+     * @param entities the entities, managed by the current persistence context.
+     * @param <T> the type of the entities.
+     * @return the source of the document of each entity, by id.
+     */
+    public <T> Map<Long, String> toDocuments(SearchIndex<T> index, List<T> entities) {
+        relationFetcher.fetch(index.getEntityType(), entities, index.relations);
+        Map<Long, String> sources = new HashMap<>();
+        for (T entity : entities) {
+            try {
+                sources.put((Long) persistenceUnitUtil.getIdentifier(entity),
+                    entityMapper.mapToString(index.toDocument.apply(entity)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sources;
+    }
+
+    private <T> Map<Long, String> loadDocuments(SearchIndex<T> index, List<Long> ids) {
+        return toDocuments(index, batchLoader.findAllById(index.getEntityType(), ids));
+    }
+
+    /**
+     * Build the partial updates of the documents of entities, loading the relations of the parts updated only.
+     *
+     * @return the source of the update of each entity which exists, by id.
+     */
+    private <T> Map<Long, String> loadParts(SearchIndex<T> index, Map<Long, Set<String>> partsById) {
+        List<T> entities = batchLoader.findAllById(index.getEntityType(), new ArrayList<>(partsById.keySet()));
+        relationFetcher.fetch(index.getEntityType(), entities, partsById.values().stream()
+            .flatMap(Set::stream)
+            .flatMap(part -> index.parts.get(part).relations.stream())
+            .collect(Collectors.toCollection(LinkedHashSet::new)));
+        Map<Long, String> updates = new HashMap<>();
+        for (T entity : entities) {
+            Long id = (Long) persistenceUnitUtil.getIdentifier(entity);
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (String part : partsById.get(id)) {
+                fields.put(part, index.parts.get(part).toField.apply(entity));
+            }
+            try {
+                updates.put(id, entityMapper.mapToString(Collections.singletonMap("doc", fields)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return updates;
+    }
+
+    private <T> SearchIndex<T> register(ElasticsearchOperations elasticsearchOperations, Class<T> entityType,
+                              Class<?> documentType, Function<T, ?> toDocument, String... relations) {
+        SearchIndex<T> index = new SearchIndex<>(entityType, elasticsearchOperations.getPersistentEntityFor(documentType),
+            toDocument, Arrays.asList(relations));
+        indexes.put(index.getIndexName(), index);
+        return index;
+    }
+
+    private BulkableAction<?> action(String indexName, String indexType, Long id, String source) {
+        if (source == null) {
+            return new Delete.Builder(id.toString()).index(indexName).type(indexType).build();
+        }
+        return new Index.Builder(source).index(indexName).type(indexType).id(id.toString()).build();
+    }
+
+    private void retry(List<SearchOutboxEntity> entries, Instant now, String error) {
+        failedDocuments.increment();
+        for (SearchOutboxEntity entry : entries) {
+            int attempts = entry.getAttempts() + 1;
+            if (attempts >= properties.getMaxAttempts()) {
+                log.error("Dropping search outbox entry after {} attempts: {}, {}", attempts, entry, error);
+                searchOutboxRepository.delete(entry);
+            } else {
+                Duration delay = properties.getRetryDelay().multipliedBy(1L << Math.min(attempts - 1, 20));
+                entry.attempts(attempts).nextAttemptDate(now.plus(delay.compareTo(properties.getMaxRetryDelay()) < 0
+                    ? delay : properties.getMaxRetryDelay()));
+            }
+        }
+    }
+
+    private String indexName(Class<?> type) {
+        return indexes.entrySet().stream()
+            .filter(index -> index.getValue().getEntityType().equals(type))
+            .map(Map.Entry::getKey)
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(type.getName() + " is not indexed, only " +
+                indexes.values().stream().map(index -> index.getEntityType().getName()).collect(Collectors.toList())));
+    }
+
+    /**
+     * An indexed entity type, with the document it is indexed as.
+     *
+     * @param <T> the type of the entities.
+     */
+    public static final class SearchIndex<T> {
+
+        private final Class<T> entityType;
+
+        private final ElasticsearchPersistentEntity<?> document;
+
+        private final Function<T, ?> toDocument;
+
+        private final List<String> relations;
+
+        private final Map<String, Part<T>> parts = new LinkedHashMap<>();
+
+        SearchIndex(Class<T> entityType, ElasticsearchPersistentEntity<?> document, Function<T, ?> toDocument,
+                    List<String> relations) {
+            this.entityType = entityType;
+            this.document = document;
+            this.toDocument = toDocument;
+            this.relations = relations;
+        }
+
+        /**
+         * Declare a field of the document which is updated on its own when its related entities change.
+         *
+         * @param name the name of the field.
+         * @param toField the function building the value of the field from an entity.
+         * @param relations the relations of the entity the field is built from.
+         * @return this index.
+         */
+        SearchIndex<T> part(String name, Function<T, ?> toField, String... relations) {
+            parts.put(name, new Part<>(toField, Arrays.asList(relations)));
+            return this;
+        }
+
+        public Class<T> getEntityType() {
+            return entityType;
+        }
+
+        /**
+         * Get the document the entities are indexed as.
+         *
+         * @return the persistent entity of the document, with its mapping and settings.
+         */
+        public ElasticsearchPersistentEntity<?> getDocument() {
+            return document;
+        }
+
+        public String getIndexName() {
+            return document.getIndexName();
+        }
+
+        public String getIndexType() {
+            return document.getIndexType();
+        }
+
+        /**
+         * Get the classpath location of the index settings of the document.
+         *
+         * @return the setting path of the document, {@code null} if it has none.
+         */
+        public String getSettingPath() {
+            Setting setting = document.getType().getAnnotation(Setting.class);
+            return setting != null ? setting.settingPath() : null;
+        }
+
+        private static final class Part<T> {
+
+            private final Function<T, ?> toField;
+
+            private final List<String> relations;
+
+            Part(Function<T, ?> toField, List<String> relations) {
+                this.toField = toField;
+                this.relations = relations;
+            }
+        }
+    }
+}
@@ -1,21 +1,29 @@
 package com.bonlimousin.content.service;
 
+import java.util.Collection;
 import java.util.List;
-
-import javax.persistence.criteria.JoinType;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import io.github.jhipster.service.QueryService;
-
 import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.config.ApplicationProperties;
 import com.bonlimousin.content.domain.*; // for static metamodels
+import com.bonlimousin.content.repository.RelationFetcher;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.FieldProjector;
+import com.bonlimousin.content.repository.KeysetPager;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.repository.PageReader;
+import com.bonlimousin.content.repository.ScrollReader;
 import com.bonlimousin.content.repository.StoryRepository;
 import com.bonlimousin.content.repository.search.StorySearchRepository;
 import com.bonlimousin.content.service.dto.StoryCriteria;
@@ -28,7 +36,7 @@ import com.bonlimousin.content.service.dto.StoryCriteria;
  */
 @Service
 @Transactional(readOnly = true)
-public class StoryQueryService extends QueryService<StoryEntity> {
+public class StoryQueryService extends CollectionFilterQueryService<StoryEntity> {
 
     private final Logger log = LoggerFactory.getLogger(StoryQueryService.class);
 
@@ -36,9 +44,28 @@ public class StoryQueryService extends QueryService<StoryEntity> {
 
     private final StorySearchRepository storySearchRepository;
 
-    public StoryQueryService(StoryRepository storyRepository, StorySearchRepository storySearchRepository) {
+    private final RelationFetcher relationFetcher;
+
+    private final FieldProjector fieldProjector;
+
+    private final KeysetPager keysetPager;
+
+    private final PageReader pageReader;
+
+    private final ScrollReader scrollReader;
+
+    public StoryQueryService(StoryRepository storyRepository, StorySearchRepository storySearchRepository,
+                             RelationFetcher relationFetcher, FieldProjector fieldProjector,
+                             KeysetPager keysetPager, PageReader pageReader, ScrollReader scrollReader,
+                             ApplicationProperties applicationProperties) {
+        super(applicationProperties.getQuery().getCollectionFilter());
         this.storyRepository = storyRepository;
         this.storySearchRepository = storySearchRepository;
+        this.relationFetcher = relationFetcher;
+        this.fieldProjector = fieldProjector;
+        this.keysetPager = keysetPager;
+        this.pageReader = pageReader;
+        this.scrollReader = scrollReader;
     }
 
     /**
@@ -66,6 +93,97 @@ public class StoryQueryService extends QueryService<StoryEntity> {
         return storyRepository.findAll(specification, page);
     }
 
+    /**
+     * Return a {@link Page} of the values of some fields of the {@link StoryEntity} which matches the criteria from the database,
+     * reading only the columns of those fields.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param fields The names of the fields to read.
+     * @return the values of the matching entities, by field name.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findFieldsByCriteria(StoryCriteria criteria, Pageable page, Collection<String> fields) {
+        log.debug("find fields {} by criteria : {}, page: {}", fields, criteria, page);
+        final Specification<StoryEntity> specification = createSpecification(criteria);
+        return fieldProjector.findAll(StoryEntity.class, specification, page, fields, isDistinct());
+    }
+
+    /**
+     * Return a {@link Slice} of {@link StoryEntity} which matches the criteria from the database, counting them as told.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<StoryEntity> findByCriteria(StoryCriteria criteria, Pageable page, CountMode count) {
+        if (count == CountMode.EXACT) {
+            return findByCriteria(criteria, page);
+        }
+        log.debug("find by criteria : {}, page: {}, count: {}", criteria, page, count);
+        final Specification<StoryEntity> specification = createSpecification(criteria);
+        return pageReader.findAll(StoryEntity.class, specification, page, count);
+    }
+
+    /**
+     * Return a {@link Slice} of {@link StoryEntity} which matches the criteria from the database, counting them as told,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<StoryEntity> findByCriteria(StoryCriteria criteria, Pageable page, CountMode count, Collection<String> include) {
+        Slice<StoryEntity> result = findByCriteria(criteria, page, count);
+        relationFetcher.fetch(StoryEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link StoryEntity} which matches the criteria from the database, after a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<StoryEntity> findByCriteriaAfter(StoryCriteria criteria, Pageable page, String after) {
+        log.debug("find by criteria : {}, page: {}, after: {}", criteria, page, after);
+        final Specification<StoryEntity> specification = createSpecification(criteria);
+        return keysetPager.findAll(StoryEntity.class, specification, page, after, isDistinct());
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link StoryEntity} which matches the criteria from the database, after a cursor,
+     * with relations loaded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @param include The names of the relations to load, one statement each.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<StoryEntity> findByCriteriaAfter(StoryCriteria criteria, Pageable page, String after, Collection<String> include) {
+        KeysetSlice<StoryEntity> result = findByCriteriaAfter(criteria, page, after);
+        relationFetcher.fetch(StoryEntity.class, result.getContent(), include);
+        return result;
+    }
+
+    /**
+     * Apply an action to each of the matching entities in the database, read one by one from a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param action the action applied to each entity, which is detached right after.
+     * @return the number of matching entities.
+     */
+    @Transactional(readOnly = true)
+    public long forEachByCriteria(StoryCriteria criteria, Consumer<? super StoryEntity> action) {
+        log.debug("for each by criteria : {}", criteria);
+        final Specification<StoryEntity> specification = createSpecification(criteria);
+        return scrollReader.forEach(StoryEntity.class, specification, action);
+    }
+
     /**
      * Return the number of matching entities in the database.
      * @param criteria The object which holds all the filters, which the entities should match.
@@ -99,8 +217,8 @@ public class StoryQueryService extends QueryService<StoryEntity> {
                 specification = specification.and(buildSpecification(criteria.getVisibility(), StoryEntity_.visibility));
             }
             if (criteria.getFragmentId() != null) {
-                specification = specification.and(buildSpecification(criteria.getFragmentId(),
-                    root -> root.join(StoryEntity_.fragments, JoinType.LEFT).get(FragmentEntity_.id)));
+                specification = specification.and(buildCollectionSpecification(criteria.getFragmentId(),
+                    StoryEntity_.fragments, FragmentEntity_.id));
             }
         }
         return specification;
@@ -1,17 +1,37 @@
 package com.bonlimousin.content.service;
 
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
 import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.StoryDocument;
+import com.bonlimousin.content.repository.BatchLoader;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.LocalizedRepository;
+import com.bonlimousin.content.repository.RelationFetcher;
 import com.bonlimousin.content.repository.StoryRepository;
 import com.bonlimousin.content.repository.search.StorySearchRepository;
+import com.bonlimousin.content.service.dto.FragmentAggregateDTO;
+import com.bonlimousin.content.service.dto.StoryAggregateDTO;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
@@ -28,21 +48,48 @@ public class StoryService {
 
     private final StorySearchRepository storySearchRepository;
 
-    public StoryService(StoryRepository storyRepository, StorySearchRepository storySearchRepository) {
+    private final SearchOutboxService searchOutboxService;
+
+    private final FragmentRepository fragmentRepository;
+
+    private final LocalizedRepository localizedRepository;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final RelationFetcher relationFetcher;
+
+    private final BatchLoader batchLoader;
+
+    public StoryService(StoryRepository storyRepository, StorySearchRepository storySearchRepository,
+                        SearchOutboxService searchOutboxService, FragmentRepository fragmentRepository,
+                        LocalizedRepository localizedRepository, ApplicationEventPublisher applicationEventPublisher,
+                        RelationFetcher relationFetcher, BatchLoader batchLoader) {
         this.storyRepository = storyRepository;
         this.storySearchRepository = storySearchRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.fragmentRepository = fragmentRepository;
+        this.localizedRepository = localizedRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.relationFetcher = relationFetcher;
+        this.batchLoader = batchLoader;
     }
 
     /**
      * Save a story.
      *
-     * @param storyEntity the entity to save.
+     * @param storyEntity the entity to save, an update without version is applied to the current version.
      * @return the persisted entity.
+     * @throws org.springframework.dao.ConcurrencyFailureException if the version of an update is not the current one.
      */
     public StoryEntity save(StoryEntity storyEntity) {
         log.debug("Request to save Story : {}", storyEntity);
+        if (storyEntity.getId() != null && storyEntity.getVersion() == null) {
+            storyRepository.findVersionById(storyEntity.getId()).ifPresent(storyEntity::setVersion);
+        }
         StoryEntity result = storyRepository.save(storyEntity);
-        storySearchRepository.save(result);
+        searchOutboxService.enqueue(StoryEntity.class, result.getId());
+        searchOutboxService.enqueue(FragmentEntity.class, fragmentRepository.findIdsByStoryId(result.getId()), FragmentDocument.STORY);
+        applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(result.getId()));
         return result;
     }
 
@@ -71,6 +118,75 @@ public class StoryService {
         return storyRepository.findById(id);
     }
 
+    /**
+     * Get one story by id, with relations loaded.
+     *
+     * @param id the id of the entity.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entity.
+     */
+    @Transactional(readOnly = true)
+    public Optional<StoryEntity> findOne(Long id, Collection<String> include) {
+        log.debug("Request to get Story : {} with {}", id, include);
+        Optional<StoryEntity> result = storyRepository.findById(id);
+        result.ifPresent(entity -> relationFetcher.fetch(StoryEntity.class, Collections.singletonList(entity), include));
+        return result;
+    }
+
+    /**
+     * Get the stories by ids, in one statement for those not cached.
+     *
+     * @param ids the ids of the entities.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<StoryEntity> findAllById(List<Long> ids) {
+        log.debug("Request to get Storys : {}", ids);
+        return batchLoader.findAllById(StoryEntity.class, ids);
+    }
+
+    /**
+     * Get the stories by ids, in one statement for those not cached, with relations loaded.
+     *
+     * @param ids the ids of the entities.
+     * @param include the names of the relations to load, one statement each.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<StoryEntity> findAllById(List<Long> ids, Collection<String> include) {
+        log.debug("Request to get Storys : {} with {}", ids, include);
+        List<StoryEntity> result = batchLoader.findAllById(StoryEntity.class, ids);
+        relationFetcher.fetch(StoryEntity.class, result, include);
+        return result;
+    }
+
+    /**
+     * Get one story with its fragments, their localizations and tags.
+     * <p>
+     * The aggregate is read in three statements whatever the number of fragments: the story, its fragments
+     * joined with their tags, and the localizations of all its fragments.
+     *
+     * @param id the id of the entity.
+     * @return the aggregate, with fragments sorted by order number.
+     */
+    @Transactional(readOnly = true)
+    public Optional<StoryAggregateDTO> findAggregate(Long id) {
+        log.debug("Request to get Story aggregate : {}", id);
+        return storyRepository.findById(id).map(storyEntity -> {
+            List<FragmentEntity> fragments = fragmentRepository.findAllWithEagerRelationshipsByStoryId(id);
+            Map<Long, List<LocalizedEntity>> localizations = localizedRepository.findAllByStoryId(id).stream()
+                .collect(Collectors.groupingBy(localizedEntity -> localizedEntity.getFragment().getId()));
+            List<FragmentAggregateDTO> fragmentAggregates = fragments.stream()
+                .map(fragmentEntity -> new FragmentAggregateDTO(fragmentEntity,
+                    localizations.getOrDefault(fragmentEntity.getId(), Collections.emptyList()),
+                    fragmentEntity.getTags().stream()
+                        .sorted(Comparator.comparing(TagEntity::getId))
+                        .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+            return new StoryAggregateDTO(storyEntity, fragmentAggregates);
+        });
+    }
+
     /**
      * Delete the story by id.
      *
@@ -79,7 +195,8 @@ public class StoryService {
     public void delete(Long id) {
         log.debug("Request to delete Story : {}", id);
         storyRepository.deleteById(id);
-        storySearchRepository.deleteById(id);
+        searchOutboxService.enqueue(StoryEntity.class, id);
+        applicationEventPublisher.publishEvent(StoryContentChangedEvent.of(id));
     }
 
     /**
@@ -87,10 +204,12 @@ public class StoryService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @return the list of entities, loaded from the database in the order of the documents found.
      */
     @Transactional(readOnly = true)
     public Page<StoryEntity> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Stories for query {}", query);
-        return storySearchRepository.search(queryStringQuery(query), pageable);    }
+        Page<StoryDocument> page = storySearchRepository.search(queryStringQuery(query), pageable);
+        return new PageImpl<>(findAllById(page.map(StoryDocument::getId).getContent()), pageable, page.getTotalElements());
+    }
 }
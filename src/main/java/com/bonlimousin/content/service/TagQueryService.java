@@ -1,21 +1,28 @@
 package com.bonlimousin.content.service;
 
+import java.util.Collection;
 import java.util.List;
-
-import javax.persistence.criteria.JoinType;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import io.github.jhipster.service.QueryService;
-
 import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.config.ApplicationProperties;
 import com.bonlimousin.content.domain.*; // for static metamodels
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.FieldProjector;
+import com.bonlimousin.content.repository.KeysetPager;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.repository.PageReader;
+import com.bonlimousin.content.repository.ScrollReader;
 import com.bonlimousin.content.repository.TagRepository;
 import com.bonlimousin.content.repository.search.TagSearchRepository;
 import com.bonlimousin.content.service.dto.TagCriteria;
@@ -28,7 +35,7 @@ import com.bonlimousin.content.service.dto.TagCriteria;
  */
 @Service
 @Transactional(readOnly = true)
-public class TagQueryService extends QueryService<TagEntity> {
+public class TagQueryService extends CollectionFilterQueryService<TagEntity> {
 
     private final Logger log = LoggerFactory.getLogger(TagQueryService.class);
 
@@ -36,9 +43,24 @@ public class TagQueryService extends QueryService<TagEntity> {
 
     private final TagSearchRepository tagSearchRepository;
 
-    public TagQueryService(TagRepository tagRepository, TagSearchRepository tagSearchRepository) {
+    private final FieldProjector fieldProjector;
+
+    private final KeysetPager keysetPager;
+
+    private final PageReader pageReader;
+
+    private final ScrollReader scrollReader;
+
+    public TagQueryService(TagRepository tagRepository, TagSearchRepository tagSearchRepository,
+                           FieldProjector fieldProjector, KeysetPager keysetPager, PageReader pageReader,
+                           ScrollReader scrollReader, ApplicationProperties applicationProperties) {
+        super(applicationProperties.getQuery().getCollectionFilter());
         this.tagRepository = tagRepository;
         this.tagSearchRepository = tagSearchRepository;
+        this.fieldProjector = fieldProjector;
+        this.keysetPager = keysetPager;
+        this.pageReader = pageReader;
+        this.scrollReader = scrollReader;
     }
 
     /**
@@ -66,6 +88,65 @@ public class TagQueryService extends QueryService<TagEntity> {
         return tagRepository.findAll(specification, page);
     }
 
+    /**
+     * Return a {@link Slice} of {@link TagEntity} which matches the criteria from the database, counting them as told.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param count How to count the matching entities.
+     * @return the matching entities, a {@link Page} if they are counted.
+     */
+    @Transactional(readOnly = true)
+    public Slice<TagEntity> findByCriteria(TagCriteria criteria, Pageable page, CountMode count) {
+        if (count == CountMode.EXACT) {
+            return findByCriteria(criteria, page);
+        }
+        log.debug("find by criteria : {}, page: {}, count: {}", criteria, page, count);
+        final Specification<TagEntity> specification = createSpecification(criteria);
+        return pageReader.findAll(TagEntity.class, specification, page, count);
+    }
+
+    /**
+     * Return a {@link Page} of the values of some fields of the {@link TagEntity} which matches the criteria from the database,
+     * reading only the columns of those fields.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @param fields The names of the fields to read.
+     * @return the values of the matching entities, by field name.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findFieldsByCriteria(TagCriteria criteria, Pageable page, Collection<String> fields) {
+        log.debug("find fields {} by criteria : {}, page: {}", fields, criteria, page);
+        final Specification<TagEntity> specification = createSpecification(criteria);
+        return fieldProjector.findAll(TagEntity.class, specification, page, fields, isDistinct());
+    }
+
+    /**
+     * Return a {@link KeysetSlice} of {@link TagEntity} which matches the criteria from the database, after a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The size and sort of the slice, its number is ignored.
+     * @param after The cursor of the previous slice, or empty for the first slice.
+     * @return the matching entities, with the cursor of the next slice.
+     */
+    @Transactional(readOnly = true)
+    public KeysetSlice<TagEntity> findByCriteriaAfter(TagCriteria criteria, Pageable page, String after) {
+        log.debug("find by criteria : {}, page: {}, after: {}", criteria, page, after);
+        final Specification<TagEntity> specification = createSpecification(criteria);
+        return keysetPager.findAll(TagEntity.class, specification, page, after, isDistinct());
+    }
+
+    /**
+     * Apply an action to each of the matching entities in the database, read one by one from a cursor.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param action the action applied to each entity, which is detached right after.
+     * @return the number of matching entities.
+     */
+    @Transactional(readOnly = true)
+    public long forEachByCriteria(TagCriteria criteria, Consumer<? super TagEntity> action) {
+        log.debug("for each by criteria : {}", criteria);
+        final Specification<TagEntity> specification = createSpecification(criteria);
+        return scrollReader.forEach(TagEntity.class, specification, action);
+    }
+
     /**
      * Return the number of matching entities in the database.
      * @param criteria The object which holds all the filters, which the entities should match.
@@ -93,8 +174,8 @@ public class TagQueryService extends QueryService<TagEntity> {
                 specification = specification.and(buildStringSpecification(criteria.getName(), TagEntity_.name));
             }
             if (criteria.getFragmentId() != null) {
-                specification = specification.and(buildSpecification(criteria.getFragmentId(),
-                    root -> root.join(TagEntity_.fragments, JoinType.LEFT).get(FragmentEntity_.id)));
+                specification = specification.and(buildCollectionSpecification(criteria.getFragmentId(),
+                    TagEntity_.fragments, FragmentEntity_.id));
             }
         }
         return specification;
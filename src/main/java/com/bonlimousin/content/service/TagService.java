@@ -1,16 +1,25 @@
 package com.bonlimousin.content.service;
 
+import com.bonlimousin.content.domain.FragmentEntity;
 import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.TagDocument;
+import com.bonlimousin.content.repository.BatchLoader;
+import com.bonlimousin.content.repository.FragmentRepository;
 import com.bonlimousin.content.repository.TagRepository;
 import com.bonlimousin.content.repository.search.TagSearchRepository;
+import com.bonlimousin.content.service.snapshot.StoryContentChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -28,21 +37,41 @@ public class TagService {
 
     private final TagSearchRepository tagSearchRepository;
 
-    public TagService(TagRepository tagRepository, TagSearchRepository tagSearchRepository) {
+    private final SearchOutboxService searchOutboxService;
+
+    private final FragmentRepository fragmentRepository;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final BatchLoader batchLoader;
+
+    public TagService(TagRepository tagRepository, TagSearchRepository tagSearchRepository,
+                      SearchOutboxService searchOutboxService, FragmentRepository fragmentRepository,
+                      ApplicationEventPublisher applicationEventPublisher, BatchLoader batchLoader) {
         this.tagRepository = tagRepository;
         this.tagSearchRepository = tagSearchRepository;
+        this.searchOutboxService = searchOutboxService;
+        this.fragmentRepository = fragmentRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.batchLoader = batchLoader;
     }
 
     /**
      * Save a tag.
      *
-     * @param tagEntity the entity to save.
+     * @param tagEntity the entity to save, an update without version is applied to the current version.
      * @return the persisted entity.
+     * @throws org.springframework.dao.ConcurrencyFailureException if the version of an update is not the current one.
      */
     public TagEntity save(TagEntity tagEntity) {
         log.debug("Request to save Tag : {}", tagEntity);
+        if (tagEntity.getId() != null && tagEntity.getVersion() == null) {
+            tagRepository.findVersionById(tagEntity.getId()).ifPresent(tagEntity::setVersion);
+        }
         TagEntity result = tagRepository.save(tagEntity);
-        tagSearchRepository.save(result);
+        searchOutboxService.enqueue(TagEntity.class, result.getId());
+        searchOutboxService.enqueue(FragmentEntity.class, fragmentRepository.findIdsByTagId(result.getId()), FragmentDocument.TAGS);
+        publishStoryContentChanged(result.getId());
         return result;
     }
 
@@ -71,6 +100,18 @@ public class TagService {
         return tagRepository.findById(id);
     }
 
+    /**
+     * Get the tags by ids, in one statement for those not cached.
+     *
+     * @param ids the ids of the entities.
+     * @return the entities which exist, in the order of their ids.
+     */
+    @Transactional(readOnly = true)
+    public List<TagEntity> findAllById(List<Long> ids) {
+        log.debug("Request to get Tags : {}", ids);
+        return batchLoader.findAllById(TagEntity.class, ids);
+    }
+
     /**
      * Delete the tag by id.
      *
@@ -78,8 +119,11 @@ public class TagService {
      */
     public void delete(Long id) {
         log.debug("Request to delete Tag : {}", id);
+        publishStoryContentChanged(id);
+        List<Long> fragmentIds = fragmentRepository.findIdsByTagId(id);
         tagRepository.deleteById(id);
-        tagSearchRepository.deleteById(id);
+        searchOutboxService.enqueue(TagEntity.class, id);
+        searchOutboxService.enqueue(FragmentEntity.class, fragmentIds, FragmentDocument.TAGS);
     }
 
     /**
@@ -87,10 +131,16 @@ public class TagService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @return the list of entities, loaded from the database in the order of the documents found.
      */
     @Transactional(readOnly = true)
     public Page<TagEntity> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Tags for query {}", query);
-        return tagSearchRepository.search(queryStringQuery(query), pageable);    }
+        Page<TagDocument> page = tagSearchRepository.search(queryStringQuery(query), pageable);
+        return new PageImpl<>(findAllById(page.map(TagDocument::getId).getContent()), pageable, page.getTotalElements());
+    }
+
+    private void publishStoryContentChanged(Long id) {
+        applicationEventPublisher.publishEvent(new StoryContentChangedEvent(fragmentRepository.findStoryIdsByTagId(id)));
+    }
 }
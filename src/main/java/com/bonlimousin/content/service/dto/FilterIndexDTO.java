@@ -0,0 +1,101 @@
+package com.bonlimousin.content.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO telling whether the column a criteria filter reads is indexed, and whether a trigram index serves its
+ * {@code contains} searches.
+ */
+public class FilterIndexDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String criteria;
+
+    private String filter;
+
+    private String table;
+
+    private String column;
+
+    private boolean relation;
+
+    private boolean indexed;
+
+    private boolean trigramIndexed;
+
+    public FilterIndexDTO() {
+    }
+
+    public FilterIndexDTO(String criteria, String filter, String table, String column, boolean relation, boolean indexed,
+                          boolean trigramIndexed) {
+        this.criteria = criteria;
+        this.filter = filter;
+        this.table = table;
+        this.column = column;
+        this.relation = relation;
+        this.indexed = indexed;
+        this.trigramIndexed = trigramIndexed;
+    }
+
+    public String getCriteria() {
+        return criteria;
+    }
+
+    public void setCriteria(String criteria) {
+        this.criteria = criteria;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    public boolean isRelation() {
+        return relation;
+    }
+
+    public void setRelation(boolean relation) {
+        this.relation = relation;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    public boolean isTrigramIndexed() {
+        return trigramIndexed;
+    }
+
+    public void setTrigramIndexed(boolean trigramIndexed) {
+        this.trigramIndexed = trigramIndexed;
+    }
+
+    @Override
+    public String toString() {
+        return criteria + "." + filter + " (" + table + "." + column + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package com.bonlimousin.content.service.dto;
+
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for a {@link FragmentEntity} of a {@link StoryAggregateDTO}, with its localizations and tags.
+ */
+public class FragmentAggregateDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonIgnoreProperties(value = {"story", "localizedFragments", "tags"})
+    private FragmentEntity fragment;
+
+    @JsonIgnoreProperties("fragment")
+    private List<LocalizedEntity> localizations = new ArrayList<>();
+
+    private List<TagEntity> tags = new ArrayList<>();
+
+    public FragmentAggregateDTO() {
+    }
+
+    public FragmentAggregateDTO(FragmentEntity fragment, List<LocalizedEntity> localizations, List<TagEntity> tags) {
+        this.fragment = fragment;
+        this.localizations = localizations;
+        this.tags = tags;
+    }
+
+    public FragmentEntity getFragment() {
+        return fragment;
+    }
+
+    public void setFragment(FragmentEntity fragment) {
+        this.fragment = fragment;
+    }
+
+    public List<LocalizedEntity> getLocalizations() {
+        return localizations;
+    }
+
+    public void setLocalizations(List<LocalizedEntity> localizations) {
+        this.localizations = localizations;
+    }
+
+    public List<TagEntity> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<TagEntity> tags) {
+        this.tags = tags;
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentAggregateDTO{" +
+            "fragment=" + getFragment() +
+            ", localizations=" + getLocalizations() +
+            ", tags=" + getTags() +
+            "}";
+    }
+}
@@ -0,0 +1,92 @@
+package com.bonlimousin.content.service.dto;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A DTO for the image metadata of the {@link com.bonlimousin.content.domain.FragmentEntity} entity,
+ * returned by image uploads instead of the whole fragment.
+ */
+public class FragmentImageDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private String imageContentType;
+
+    private String imageSha256;
+
+    private Long imageSize;
+
+    private String imageUrl;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getImageContentType() {
+        return imageContentType;
+    }
+
+    public void setImageContentType(String imageContentType) {
+        this.imageContentType = imageContentType;
+    }
+
+    public String getImageSha256() {
+        return imageSha256;
+    }
+
+    public void setImageSha256(String imageSha256) {
+        this.imageSha256 = imageSha256;
+    }
+
+    public Long getImageSize() {
+        return imageSize;
+    }
+
+    public void setImageSize(Long imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FragmentImageDTO that = (FragmentImageDTO) o;
+        return Objects.equals(id, that.id) &&
+            Objects.equals(imageSha256, that.imageSha256);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, imageSha256);
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentImageDTO{" +
+            "id=" + getId() +
+            ", imageContentType='" + getImageContentType() + "'" +
+            ", imageSha256='" + getImageSha256() + "'" +
+            ", imageSize=" + getImageSize() +
+            ", imageUrl='" + getImageUrl() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,225 @@
+package com.bonlimousin.content.service.dto;
+
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A DTO for a {@link com.bonlimousin.content.domain.FragmentEntity} with its texts resolved for a list of languages:
+ * each text comes from the first visible {@link com.bonlimousin.content.domain.LocalizedEntity} having it, or from
+ * the fragment itself.
+ */
+public class LocalizedFragmentDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private Long storyId;
+
+    private FragmentTemplate template;
+
+    private String name;
+
+    private String lang;
+
+    private String title;
+
+    private String ingress;
+
+    private String body;
+
+    private String caption;
+
+    private String imageUrl;
+
+    private String imagePlaceholder;
+
+    private String imageColor;
+
+    private Integer width;
+
+    private Integer height;
+
+    private Integer orderNo;
+
+    private UserRole visibility;
+
+    private List<TagEntity> tags = new ArrayList<>();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getStoryId() {
+        return storyId;
+    }
+
+    public void setStoryId(Long storyId) {
+        this.storyId = storyId;
+    }
+
+    public FragmentTemplate getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(FragmentTemplate template) {
+        this.template = template;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the language of the localization the title was resolved from, or {@code null} for the fragment default.
+     */
+    public String getLang() {
+        return lang;
+    }
+
+    public void setLang(String lang) {
+        this.lang = lang;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getIngress() {
+        return ingress;
+    }
+
+    public void setIngress(String ingress) {
+        this.ingress = ingress;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public void setCaption(String caption) {
+        this.caption = caption;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getImagePlaceholder() {
+        return imagePlaceholder;
+    }
+
+    public void setImagePlaceholder(String imagePlaceholder) {
+        this.imagePlaceholder = imagePlaceholder;
+    }
+
+    public String getImageColor() {
+        return imageColor;
+    }
+
+    public void setImageColor(String imageColor) {
+        this.imageColor = imageColor;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Integer getOrderNo() {
+        return orderNo;
+    }
+
+    public void setOrderNo(Integer orderNo) {
+        this.orderNo = orderNo;
+    }
+
+    public UserRole getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(UserRole visibility) {
+        this.visibility = visibility;
+    }
+
+    public List<TagEntity> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<TagEntity> tags) {
+        this.tags = tags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LocalizedFragmentDTO that = (LocalizedFragmentDTO) o;
+        return Objects.equals(id, that.id) &&
+            Objects.equals(lang, that.lang);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, lang);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalizedFragmentDTO{" +
+            "id=" + getId() +
+            ", storyId=" + getStoryId() +
+            ", template='" + getTemplate() + "'" +
+            ", name='" + getName() + "'" +
+            ", lang='" + getLang() + "'" +
+            ", title='" + getTitle() + "'" +
+            ", orderNo=" + getOrderNo() +
+            ", visibility='" + getVisibility() + "'" +
+            "}";
+    }
+}
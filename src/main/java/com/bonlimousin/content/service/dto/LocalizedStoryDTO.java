@@ -0,0 +1,56 @@
+package com.bonlimousin.content.service.dto;
+
+import com.bonlimousin.content.domain.StoryEntity;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for a {@link StoryEntity} together with its fragments resolved for a list of languages.
+ */
+public class LocalizedStoryDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonIgnoreProperties("fragments")
+    private StoryEntity story;
+
+    private List<LocalizedFragmentDTO> fragments = new ArrayList<>();
+
+    public LocalizedStoryDTO() {
+    }
+
+    public LocalizedStoryDTO(StoryEntity story, List<LocalizedFragmentDTO> fragments) {
+        this.story = story;
+        this.fragments = fragments;
+    }
+
+    public StoryEntity getStory() {
+        return story;
+    }
+
+    public void setStory(StoryEntity story) {
+        this.story = story;
+    }
+
+    /**
+     * @return the fragments of the story, sorted by order number.
+     */
+    public List<LocalizedFragmentDTO> getFragments() {
+        return fragments;
+    }
+
+    public void setFragments(List<LocalizedFragmentDTO> fragments) {
+        this.fragments = fragments;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalizedStoryDTO{" +
+            "story=" + getStory() +
+            ", fragments=" + getFragments() +
+            "}";
+    }
+}
@@ -0,0 +1,114 @@
+package com.bonlimousin.content.service.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A DTO for the progress of the rebuild of a search index.
+ */
+public class ReindexProgressDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The state of the rebuild of an index.
+     */
+    public enum State {
+        PENDING, LOADING, SWAPPED, FAILED
+    }
+
+    private String indexName;
+
+    private String rebuildIndexName;
+
+    private State state;
+
+    private int partitions;
+
+    private long documents;
+
+    private double documentsPerSecond;
+
+    private Instant startedDate;
+
+    private Instant finishedDate;
+
+    private String error;
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public String getRebuildIndexName() {
+        return rebuildIndexName;
+    }
+
+    public void setRebuildIndexName(String rebuildIndexName) {
+        this.rebuildIndexName = rebuildIndexName;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(long documents) {
+        this.documents = documents;
+    }
+
+    public double getDocumentsPerSecond() {
+        return documentsPerSecond;
+    }
+
+    public void setDocumentsPerSecond(double documentsPerSecond) {
+        this.documentsPerSecond = documentsPerSecond;
+    }
+
+    public Instant getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(Instant startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    public Instant getFinishedDate() {
+        return finishedDate;
+    }
+
+    public void setFinishedDate(Instant finishedDate) {
+        this.finishedDate = finishedDate;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return indexName + " -> " + rebuildIndexName + " " + state + " (" + documents + " documents)";
+    }
+}
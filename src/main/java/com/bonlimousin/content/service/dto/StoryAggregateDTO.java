@@ -0,0 +1,57 @@
+package com.bonlimousin.content.service.dto;
+
+import com.bonlimousin.content.domain.StoryEntity;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for a {@link StoryEntity} together with its fragments, their localizations and tags, as needed to
+ * render a story in one request.
+ */
+public class StoryAggregateDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonIgnoreProperties("fragments")
+    private StoryEntity story;
+
+    private List<FragmentAggregateDTO> fragments = new ArrayList<>();
+
+    public StoryAggregateDTO() {
+    }
+
+    public StoryAggregateDTO(StoryEntity story, List<FragmentAggregateDTO> fragments) {
+        this.story = story;
+        this.fragments = fragments;
+    }
+
+    public StoryEntity getStory() {
+        return story;
+    }
+
+    public void setStory(StoryEntity story) {
+        this.story = story;
+    }
+
+    /**
+     * @return the fragments of the story, sorted by order number.
+     */
+    public List<FragmentAggregateDTO> getFragments() {
+        return fragments;
+    }
+
+    public void setFragments(List<FragmentAggregateDTO> fragments) {
+        this.fragments = fragments;
+    }
+
+    @Override
+    public String toString() {
+        return "StoryAggregateDTO{" +
+            "story=" + getStory() +
+            ", fragments=" + getFragments() +
+            "}";
+    }
+}
@@ -0,0 +1,102 @@
+package com.bonlimousin.content.service.image;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the EXIF orientation of a JPEG image from its APP1 segment, without decoding the image.
+ * <p>
+ * Orientations follow the EXIF specification: {@code 1} is upright, {@code 2} to {@code 8} are the mirrored and
+ * rotated variants phone cameras write instead of rotating the pixels.
+ */
+public final class ExifOrientation {
+
+    public static final int UPRIGHT = 1;
+
+    private static final int SOI = 0xffd8;
+
+    private static final int APP1 = 0xffe1;
+
+    private static final int SOS = 0xffda;
+
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * Read the orientation of an image.
+     *
+     * @param content the image, read up to its EXIF segment and not closed by this method.
+     * @return the orientation from {@code 1} to {@code 8}, {@link #UPRIGHT} if the image is no JPEG or carries none.
+     * @throws IOException if the image cannot be read.
+     */
+    public static int read(InputStream content) throws IOException {
+        DataInputStream in = new DataInputStream(content);
+        try {
+            if (in.readUnsignedShort() != SOI) {
+                return UPRIGHT;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xff00) != 0xff00 || marker == SOS) {
+                    return UPRIGHT;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker == APP1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    int orientation = readOrientation(segment);
+                    if (orientation != 0) {
+                        return orientation;
+                    }
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return UPRIGHT;
+        }
+    }
+
+    private static int readOrientation(byte[] segment) {
+        int tiff = EXIF_HEADER.length;
+        if (segment.length < tiff + 8 || !startsWith(segment, EXIF_HEADER)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        buffer.order(segment[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff + buffer.getInt(tiff + 4);
+        if (ifd < tiff || ifd + 2 > segment.length) {
+            return 0;
+        }
+        int entries = buffer.getShort(ifd) & 0xffff;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if ((buffer.getShort(entry) & 0xffff) == ORIENTATION_TAG) {
+                int orientation = buffer.getShort(entry + 8) & 0xffff;
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
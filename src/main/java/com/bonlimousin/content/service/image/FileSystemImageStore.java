@@ -0,0 +1,218 @@
+package com.bonlimousin.content.service.image;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * {@link ImageStore} keeping the content in a local directory, one file per key.
+ * <p>
+ * Files are spread over two levels of sub directories named after the first characters of the key.
+ * Content is written to a temporary file first and moved in place once its key is known, so readers
+ * never see a partial file. Files are served memory-mapped, so reads and ranges need no copy through the heap.
+ * The stored date of a file is its modification time, refreshed when the same content is stored again.
+ */
+@Service
+public class FileSystemImageStore implements ImageStore {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String TEMP_DIRECTORY = "tmp";
+
+    private final Logger log = LoggerFactory.getLogger(FileSystemImageStore.class);
+
+    private final Path root;
+
+    public FileSystemImageStore(ApplicationProperties applicationProperties) throws IOException {
+        this.root = Paths.get(applicationProperties.getImageStore().getDirectory()).toAbsolutePath();
+        Files.createDirectories(root.resolve(TEMP_DIRECTORY));
+        log.info("Storing images in {}", root);
+    }
+
+    @Override
+    public StoredImage store(InputStream content) throws IOException {
+        Path temp = Files.createTempFile(root.resolve(TEMP_DIRECTORY), "image-", ".tmp");
+        try {
+            MessageDigest digest = ImageDigest.newSha256();
+            long size = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            String sha256 = ImageDigest.toHex(digest.digest());
+            Path target = resolve(sha256);
+            if (touch(target)) {
+                log.debug("Image {} is already stored", sha256);
+            } else {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    log.debug("Image {} was stored concurrently", sha256);
+                }
+            }
+            return new StoredImage(sha256, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public Optional<Resource> load(String sha256) {
+        if (!ImageDigest.isSha256Hex(sha256)) {
+            return Optional.empty();
+        }
+        Path path = resolve(sha256);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(new MappedFileResource(path));
+    }
+
+    @Override
+    public Stream<String> findAllStoredBefore(Instant date) throws IOException {
+        return Files.walk(root, 3)
+            .filter(path -> ImageDigest.isSha256Hex(path.getFileName().toString()))
+            .filter(path -> isStoredBefore(path, date))
+            .map(path -> path.getFileName().toString());
+    }
+
+    @Override
+    public boolean deleteIfStoredBefore(String sha256, Instant date) throws IOException {
+        if (!ImageDigest.isSha256Hex(sha256) || !isStoredBefore(resolve(sha256), date)) {
+            return false;
+        }
+        // Moved aside first, so that the content stored again meanwhile is moved back rather than lost
+        Path target = resolve(sha256);
+        Path deleted = root.resolve(TEMP_DIRECTORY).resolve(sha256 + "-" + UUID.randomUUID() + ".deleted");
+        try {
+            Files.move(target, deleted, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (isStoredBefore(deleted, date)) {
+            log.debug("Deleting image {}", sha256);
+            Files.delete(deleted);
+            return true;
+        }
+        try {
+            Files.move(deleted, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.delete(deleted);
+        }
+        return false;
+    }
+
+    private Path resolve(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * Refresh the stored date of a file.
+     *
+     * @return {@code false} if the file does not exist.
+     */
+    private static boolean touch(Path path) throws IOException {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean isStoredBefore(Path path, Instant date) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(date);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A file whose input stream reads from a read-only memory mapping of the file.
+     */
+    static class MappedFileResource extends FileSystemResource {
+
+        MappedFileResource(Path path) {
+            super(path);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+    }
+
+    /**
+     * An input stream over a mapped byte buffer, skipping in constant time.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.bonlimousin.content.service.image;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * The stored image of a fragment, ready to be served.
+ */
+public final class FragmentImage {
+
+    private final String contentType;
+
+    private final String sha256;
+
+    private final Resource resource;
+
+    public FragmentImage(String contentType, String sha256, Resource resource) {
+        this.contentType = contentType;
+        this.sha256 = sha256;
+        this.resource = resource;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+}
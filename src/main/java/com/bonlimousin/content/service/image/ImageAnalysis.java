@@ -0,0 +1,54 @@
+package com.bonlimousin.content.service.image;
+
+/**
+ * What is shown of an image before it is loaded: its size, a tiny placeholder and its dominant color.
+ */
+public final class ImageAnalysis {
+
+    private final int width;
+
+    private final int height;
+
+    private final String placeholder;
+
+    private final String color;
+
+    public ImageAnalysis(int width, int height, String placeholder, String color) {
+        this.width = width;
+        this.height = height;
+        this.placeholder = placeholder;
+        this.color = color;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return a blurred rendition of a few pixels as {@code data:} URI.
+     */
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * @return the dominant color as {@code #rrggbb}.
+     */
+    public String getColor() {
+        return color;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageAnalysis{" +
+            "width=" + width +
+            ", height=" + height +
+            ", placeholder='" + placeholder + "'" +
+            ", color='" + color + "'" +
+            "}";
+    }
+}
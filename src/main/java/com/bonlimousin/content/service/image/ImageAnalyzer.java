@@ -0,0 +1,134 @@
+package com.bonlimousin.content.service.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Computes the {@link ImageAnalysis} of an image with the codecs of the JDK.
+ * <p>
+ * The size is read from the image header. Placeholder and color are computed from a subsampled decode,
+ * so the full resolution image is never held in memory.
+ */
+public final class ImageAnalyzer {
+
+    /**
+     * Longer side of the decoded sample the color is computed from.
+     */
+    private static final int SAMPLE_SIZE = 64;
+
+    /**
+     * Longer side of the placeholder, halved until its data URI fits {@link #MAX_PLACEHOLDER_LENGTH}.
+     */
+    private static final int PLACEHOLDER_SIZE = 16;
+
+    private static final int MAX_PLACEHOLDER_LENGTH = 2048;
+
+    private static final String PLACEHOLDER_PREFIX = "data:image/png;base64,";
+
+    private static final ConvolveOp BLUR = new ConvolveOp(new Kernel(3, 3, boxKernel(3)), ConvolveOp.EDGE_NO_OP, null);
+
+    private ImageAnalyzer() {
+    }
+
+    /**
+     * Analyze an image.
+     *
+     * @param content the image, not closed by this method.
+     * @return the analysis, or empty if the image could not be decoded.
+     * @throws IOException if the image cannot be read.
+     */
+    public static Optional<ImageAnalysis> analyze(InputStream content) throws IOException {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(content)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / SAMPLE_SIZE);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage sample = reader.read(0, param);
+                return Optional.of(new ImageAnalysis(width, height, placeholder(sample), dominantColor(sample)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static String placeholder(BufferedImage sample) throws IOException {
+        int size = PLACEHOLDER_SIZE;
+        String placeholder;
+        do {
+            double scale = Math.min(1d, (double) size / Math.max(sample.getWidth(), sample.getHeight()));
+            BufferedImage tiny = ImageResizer.scale(sample,
+                Math.max(1, (int) Math.round(sample.getWidth() * scale)), Math.max(1, (int) Math.round(sample.getHeight() * scale)));
+            BufferedImage blurred = BLUR.filter(tiny, null);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(blurred, "png", out);
+            placeholder = PLACEHOLDER_PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+            size /= 2;
+        } while (placeholder.length() > MAX_PLACEHOLDER_LENGTH && size > 0);
+        return placeholder.length() > MAX_PLACEHOLDER_LENGTH ? null : placeholder;
+    }
+
+    private static float[] boxKernel(int size) {
+        float[] kernel = new float[size * size];
+        Arrays.fill(kernel, 1f / kernel.length);
+        return kernel;
+    }
+
+    /**
+     * Get the average of the most populated bucket of a 4 bits per channel color histogram, ignoring transparent pixels.
+     */
+    private static String dominantColor(BufferedImage sample) {
+        int[] counts = new int[4096];
+        long[] reds = new long[4096];
+        long[] greens = new long[4096];
+        long[] blues = new long[4096];
+        boolean alpha = sample.getColorModel().hasAlpha();
+        for (int y = 0; y < sample.getHeight(); y++) {
+            for (int x = 0; x < sample.getWidth(); x++) {
+                int argb = sample.getRGB(x, y);
+                if (alpha && (argb >>> 24) < 128) {
+                    continue;
+                }
+                int red = (argb >> 16) & 0xff;
+                int green = (argb >> 8) & 0xff;
+                int blue = argb & 0xff;
+                int bucket = (red >> 4) << 8 | (green >> 4) << 4 | blue >> 4;
+                counts[bucket]++;
+                reds[bucket] += red;
+                greens[bucket] += green;
+                blues[bucket] += blue;
+            }
+        }
+        int dominant = 0;
+        for (int bucket = 1; bucket < counts.length; bucket++) {
+            if (counts[bucket] > counts[dominant]) {
+                dominant = bucket;
+            }
+        }
+        int count = counts[dominant];
+        if (count == 0) {
+            return null;
+        }
+        return String.format("#%02x%02x%02x", reds[dominant] / count, greens[dominant] / count, blues[dominant] / count);
+    }
+}
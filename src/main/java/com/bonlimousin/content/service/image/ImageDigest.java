@@ -0,0 +1,63 @@
+package com.bonlimousin.content.service.image;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class for the SHA-256 keys of stored images.
+ */
+public final class ImageDigest {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ImageDigest() {
+    }
+
+    /**
+     * Create a new SHA-256 message digest.
+     *
+     * @return the message digest.
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Get the hex encoded SHA-256 of some content.
+     *
+     * @param content the content.
+     * @return the lower case hex encoded digest.
+     */
+    public static String sha256Hex(byte[] content) {
+        return toHex(newSha256().digest(content));
+    }
+
+    /**
+     * Encode a digest as lower case hex.
+     *
+     * @param digest the digest.
+     * @return the hex encoded digest.
+     */
+    public static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Check that a string is a valid key of a stored image, which also makes it safe to use as a file name.
+     *
+     * @param sha256 the string to check.
+     * @return true if the string is a lower case hex encoded SHA-256.
+     */
+    public static boolean isSha256Hex(String sha256) {
+        return sha256 != null && sha256.matches("[0-9a-f]{64}");
+    }
+}
@@ -0,0 +1,17 @@
+package com.bonlimousin.content.service.image;
+
+/**
+ * How a resized image fills the box requested by an {@link ImageVariant}.
+ */
+public enum ImageFit {
+
+    /**
+     * Scale the whole image to fit inside the box, keeping its aspect ratio.
+     */
+    CONTAIN,
+
+    /**
+     * Scale the image to cover the box, keeping its aspect ratio, and crop what overflows around the center.
+     */
+    COVER
+}
@@ -0,0 +1,101 @@
+package com.bonlimousin.content.service.image;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Service optimizing uploaded photos before they are served, when {@code application.image-ingest.enabled} is set.
+ * <p>
+ * JPEG images are stripped of their metadata, turned upright and re-encoded as progressive JPEG within the
+ * configured quality and size budget. The result replaces the upload only when it is smaller, or when the upload
+ * had to be turned. Other formats are served as uploaded.
+ */
+@Service
+public class ImageIngestService {
+
+    private static final String JPEG_CONTENT_TYPE = "image/jpeg";
+
+    private final Logger log = LoggerFactory.getLogger(ImageIngestService.class);
+
+    private final ImageStore imageStore;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final Counter recompressedCounter;
+
+    private final Counter keptCounter;
+
+    private final Counter savedBytesCounter;
+
+    public ImageIngestService(ImageStore imageStore, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.imageStore = imageStore;
+        this.applicationProperties = applicationProperties;
+        this.recompressedCounter = Counter.builder("image.ingest.images")
+            .description("Number of uploaded images, by outcome of the ingest stage")
+            .tag("outcome", "recompressed")
+            .register(meterRegistry);
+        this.keptCounter = Counter.builder("image.ingest.images")
+            .description("Number of uploaded images, by outcome of the ingest stage")
+            .tag("outcome", "kept")
+            .register(meterRegistry);
+        this.savedBytesCounter = Counter.builder("image.ingest.saved")
+            .description("Bytes saved by recompressing uploaded images")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Run an uploaded image through the ingest stage.
+     *
+     * @param upload the uploaded image, already in the image store.
+     * @param contentType the content type of the upload.
+     * @return the image to serve. The upload stays in the store, it is up to the caller to keep or release it.
+     */
+    public IngestedImage ingest(StoredImage upload, String contentType) {
+        ApplicationProperties.ImageIngest properties = applicationProperties.getImageIngest();
+        if (!properties.isEnabled() || !isJpeg(contentType)) {
+            return new IngestedImage(upload, contentType, null);
+        }
+        Optional<Resource> resource = imageStore.load(upload.getSha256());
+        if (!resource.isPresent()) {
+            return new IngestedImage(upload, contentType, null);
+        }
+        try {
+            int orientation;
+            try (InputStream in = resource.get().getInputStream()) {
+                orientation = ExifOrientation.read(in);
+            }
+            Optional<byte[]> recompressed;
+            try (InputStream in = resource.get().getInputStream()) {
+                recompressed = ImageRecompressor.recompress(in, orientation, properties.getMaxDimension(),
+                    properties.getQuality(), properties.getMinQuality(), properties.getMaxSize().toBytes());
+            }
+            if (recompressed.isPresent() && (recompressed.get().length < upload.getSize() || orientation != ExifOrientation.UPRIGHT)) {
+                StoredImage image = imageStore.store(new ByteArrayInputStream(recompressed.get()));
+                recompressedCounter.increment();
+                savedBytesCounter.increment(Math.max(0, upload.getSize() - image.getSize()));
+                log.debug("Recompressed image {} from {} to {} bytes", upload.getSha256(), upload.getSize(), image.getSize());
+                return new IngestedImage(image, JPEG_CONTENT_TYPE, upload);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not recompress image {}, keeping it as uploaded", upload.getSha256(), e);
+        }
+        keptCounter.increment();
+        return new IngestedImage(upload, contentType, null);
+    }
+
+    private static boolean isJpeg(String contentType) {
+        return JPEG_CONTENT_TYPE.equalsIgnoreCase(contentType) || "image/jpg".equalsIgnoreCase(contentType)
+            || "image/pjpeg".equalsIgnoreCase(contentType);
+    }
+}
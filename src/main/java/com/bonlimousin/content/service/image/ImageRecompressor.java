@@ -0,0 +1,149 @@
+package com.bonlimousin.content.service.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Re-encodes photos as progressive JPEG with the codecs of the JDK.
+ * <p>
+ * Only pixels are written back, so EXIF, embedded thumbnails and other metadata are dropped. The EXIF orientation
+ * is applied to the pixels first, so the image keeps looking the same once its orientation tag is gone.
+ */
+public final class ImageRecompressor {
+
+    private static final String JPEG = "jpeg";
+
+    private static final int QUALITY_STEP = 5;
+
+    private ImageRecompressor() {
+    }
+
+    /**
+     * Re-encode a JPEG image.
+     *
+     * @param content the original image, not closed by this method.
+     * @param orientation the EXIF orientation of the original, see {@link ExifOrientation}.
+     * @param maxDimension the largest width or height of the result, larger images are scaled down.
+     * @param quality the quality to encode with, from 1 to 100.
+     * @param minQuality the lowest quality the encoder may go down to in order to fit {@code maxSize}.
+     * @param maxSize the size budget in bytes, met unless even {@code minQuality} is too large.
+     * @return the re-encoded image, or empty if the original could not be decoded.
+     * @throws IOException if the image cannot be read.
+     */
+    public static Optional<byte[]> recompress(InputStream content, int orientation, int maxDimension,
+                                              int quality, int minQuality, long maxSize) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = new MemoryCacheImageInputStream(content)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double scale = Math.min(1d, (double) maxDimension / Math.max(width, height));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Keep twice the target resolution for the final passes
+                int subsampling = Math.max(1, (int) (1 / scale / 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                image = reader.read(0, param);
+                if (scale < 1d) {
+                    image = ImageResizer.scale(image,
+                        Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        image = orient(image, orientation);
+        byte[] encoded;
+        int currentQuality = quality;
+        do {
+            encoded = encode(image, currentQuality);
+            currentQuality -= QUALITY_STEP;
+        } while (encoded.length > maxSize && currentQuality >= minQuality);
+        return Optional.of(encoded);
+    }
+
+    /**
+     * Turn the pixels of an image the way its EXIF orientation says it should be displayed.
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2:
+                transform = new AffineTransform(-1, 0, 0, 1, width, 0);
+                break;
+            case 3:
+                transform = new AffineTransform(-1, 0, 0, -1, width, height);
+                break;
+            case 4:
+                transform = new AffineTransform(1, 0, 0, -1, 0, height);
+                break;
+            case 5:
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                transform = new AffineTransform(0, 1, -1, 0, height, 0);
+                break;
+            case 7:
+                transform = new AffineTransform(0, -1, -1, 0, height, width);
+                break;
+            case 8:
+                transform = new AffineTransform(0, -1, 1, 0, 0, width);
+                break;
+            default:
+                if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                    return image;
+                }
+                transform = new AffineTransform();
+        }
+        boolean swap = orientation >= 5 && orientation <= 8;
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    private static byte[] encode(BufferedImage image, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(JPEG).next();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,166 @@
+package com.bonlimousin.content.service.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Resizes images with the codecs of the JDK.
+ * <p>
+ * Large reductions are decoded subsampled and then halved step by step, which keeps both the memory used
+ * for the decoded image and the aliasing of a single bilinear pass low.
+ */
+public final class ImageResizer {
+
+    private static final String JPEG = "jpeg";
+
+    private static final String PNG = "png";
+
+    private ImageResizer() {
+    }
+
+    /**
+     * Get the format resized images are encoded with: PNG for formats that may carry transparency, JPEG otherwise.
+     *
+     * @param contentType the content type of the original image.
+     * @return the ImageIO format name, which is also the subtype of the resulting content type.
+     */
+    public static String outputFormat(String contentType) {
+        if ("image/png".equalsIgnoreCase(contentType) || "image/gif".equalsIgnoreCase(contentType)) {
+            return PNG;
+        }
+        return JPEG;
+    }
+
+    /**
+     * Whether a format is lossy, so that the quality of a variant applies to it.
+     *
+     * @param format the ImageIO format name, see {@link #outputFormat(String)}.
+     * @return {@code true} for JPEG, {@code false} for the lossless PNG.
+     */
+    public static boolean isLossy(String format) {
+        return JPEG.equals(format);
+    }
+
+    /**
+     * Resize an image.
+     *
+     * @param content the original image, not closed by this method.
+     * @param variant the size and quality to resize to.
+     * @param format the format to encode with, see {@link #outputFormat(String)}.
+     * @param out where to write the resized image, not closed by this method.
+     * @return {@code false} if the original could not be decoded and nothing was written.
+     * @throws IOException if the image cannot be read or written.
+     */
+    public static boolean resize(InputStream content, ImageVariant variant, String format, OutputStream out) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = new MemoryCacheImageInputStream(content)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                image = read(reader, variant);
+            } finally {
+                reader.dispose();
+            }
+        }
+        write(image, format, variant.getQuality(), out);
+        return true;
+    }
+
+    private static BufferedImage read(ImageReader reader, ImageVariant variant) throws IOException {
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+        Rectangle region = new Rectangle(sourceWidth, sourceHeight);
+        double scale = (double) variant.getWidth() / sourceWidth;
+        if (variant.getHeight() != null) {
+            double heightScale = (double) variant.getHeight() / sourceHeight;
+            scale = variant.getFit() == ImageFit.COVER ? Math.max(scale, heightScale) : Math.min(scale, heightScale);
+        }
+        scale = Math.min(scale, 1d);
+        if (variant.getFit() == ImageFit.COVER && variant.getHeight() != null) {
+            int cropWidth = Math.min(sourceWidth, (int) Math.round(variant.getWidth() / scale));
+            int cropHeight = Math.min(sourceHeight, (int) Math.round(variant.getHeight() / scale));
+            region = new Rectangle((sourceWidth - cropWidth) / 2, (sourceHeight - cropHeight) / 2, cropWidth, cropHeight);
+        }
+        int targetWidth = Math.max(1, (int) Math.round(region.width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(region.height * scale));
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        // Keep twice the target resolution for the final passes
+        int subsampling = Math.max(1, (int) (1 / scale / 2));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return scale(reader.read(0, param), targetWidth, targetHeight);
+    }
+
+    static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight) {
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height, alpha);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height, boolean alpha) {
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static void write(BufferedImage image, String format, int quality, OutputStream out) throws IOException {
+        BufferedImage encoded = image;
+        if (JPEG.equals(format) && image.getColorModel().hasAlpha()) {
+            encoded = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = encoded.createGraphics();
+            try {
+                graphics.drawImage(image, 0, 0, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (isLossy(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+            }
+            writer.write(null, new IIOImage(encoded, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
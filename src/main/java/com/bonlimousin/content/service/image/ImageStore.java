@@ -0,0 +1,53 @@
+package com.bonlimousin.content.service.image;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage of image bytes, keyed by the hex encoded SHA-256 of the content.
+ * Storing the same bytes twice yields the same key and keeps a single copy, whose stored date is the date it was
+ * last stored.
+ */
+public interface ImageStore {
+
+    /**
+     * Store the content, read to its end in fixed-size chunks.
+     *
+     * @param content the bytes to store, not closed by this method.
+     * @return the key and size of the stored content.
+     * @throws IOException if the content cannot be read or written.
+     */
+    StoredImage store(InputStream content) throws IOException;
+
+    /**
+     * Get the content stored under a key.
+     *
+     * @param sha256 the key of the content.
+     * @return the content, or empty if nothing is stored under the key.
+     */
+    Optional<Resource> load(String sha256);
+
+    /**
+     * Find the keys of the content not stored since a date.
+     *
+     * @param date the date.
+     * @return the keys, a stream to close once consumed.
+     * @throws IOException if the content cannot be listed.
+     */
+    Stream<String> findAllStoredBefore(Instant date) throws IOException;
+
+    /**
+     * Remove the content stored under a key, unless it was stored since a date.
+     *
+     * @param sha256 the key of the content.
+     * @param date the date.
+     * @return {@code true} if the content was removed.
+     * @throws IOException if the content cannot be removed.
+     */
+    boolean deleteIfStoredBefore(String sha256, Instant date) throws IOException;
+}
@@ -0,0 +1,15 @@
+package com.bonlimousin.content.service.image;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an image being read is larger than allowed.
+ */
+public class ImageTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ImageTooLargeException(long maxSize) {
+        super("Image is larger than " + maxSize + " bytes");
+    }
+}
@@ -0,0 +1,77 @@
+package com.bonlimousin.content.service.image;
+
+import java.util.Locale;
+
+/**
+ * A resized rendition of an image: the box it has to fit in and the quality it is encoded with.
+ * Images are never scaled up, a box larger than the image keeps its size.
+ */
+public final class ImageVariant {
+
+    private final int width;
+
+    private final Integer height;
+
+    private final ImageFit fit;
+
+    private final int quality;
+
+    public ImageVariant(int width, Integer height, ImageFit fit, int quality) {
+        this.width = width;
+        this.height = height;
+        this.fit = fit;
+        this.quality = quality;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the box, or {@code null} to only constrain the width.
+     */
+    public Integer getHeight() {
+        return height;
+    }
+
+    public ImageFit getFit() {
+        return fit;
+    }
+
+    /**
+     * @return the encoding quality, from 1 to 100.
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Get the entity tag of this variant of an image, stable as long as the image bytes are. The quality is left out
+     * for lossless formats, which are encoded the same whatever the quality.
+     *
+     * @param sha256 the SHA-256 of the original image.
+     * @param format the format the variant is encoded with, see {@link ImageResizer#outputFormat(String)}.
+     * @return the unquoted entity tag.
+     */
+    public String eTag(String sha256, String format) {
+        StringBuilder eTag = new StringBuilder(sha256).append("-w").append(width);
+        if (height != null) {
+            eTag.append("-h").append(height);
+        }
+        eTag.append('-').append(fit.name().toLowerCase(Locale.ROOT));
+        if (ImageResizer.isLossy(format)) {
+            eTag.append("-q").append(quality);
+        }
+        return eTag.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageVariant{" +
+            "width=" + width +
+            ", height=" + height +
+            ", fit=" + fit +
+            ", quality=" + quality +
+            "}";
+    }
+}
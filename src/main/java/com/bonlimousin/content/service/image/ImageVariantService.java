@@ -0,0 +1,304 @@
+package com.bonlimousin.content.service.image;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Service producing resized variants of images, cached on local disk.
+ * <p>
+ * The cache is bounded in bytes and evicts the least recently used variants. Variants are rendered on the
+ * {@code imageResizeExecutor}, and concurrent requests for a variant being rendered share the same rendering.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final String TEMP_DIRECTORY = "tmp";
+
+    private final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private final Path root;
+
+    private final long maxSize;
+
+    private final int maxDimension;
+
+    private final int defaultQuality;
+
+    private final Executor executor;
+
+    /**
+     * Size of the cached variants by file name, in least recently used first order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    private final ConcurrentMap<String, CompletableFuture<Path>> renderings = new ConcurrentHashMap<>();
+
+    public ImageVariantService(ApplicationProperties applicationProperties,
+                               @Qualifier("imageResizeExecutor") Executor executor) throws IOException {
+        ApplicationProperties.ImageResize properties = applicationProperties.getImageResize();
+        this.root = Paths.get(properties.getCacheDirectory()).toAbsolutePath();
+        this.maxSize = properties.getCacheMaxSize().toBytes();
+        this.maxDimension = properties.getMaxDimension();
+        this.defaultQuality = properties.getDefaultQuality();
+        this.executor = executor;
+        Files.createDirectories(root.resolve(TEMP_DIRECTORY));
+        loadEntries();
+        log.info("Caching image variants in {}, {} bytes in use", root, size);
+    }
+
+    /**
+     * Build a variant from request parameters.
+     *
+     * @param width the width of the box, required.
+     * @param height the height of the box, or {@code null}.
+     * @param fit the name of an {@link ImageFit}, case insensitive, or {@code null} for {@link ImageFit#CONTAIN}.
+     * @param quality the encoding quality from 1 to 100, or {@code null} for the default.
+     * @return the variant.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public ImageVariant variant(int width, Integer height, String fit, Integer quality) {
+        if (width < 1 || width > maxDimension || (height != null && (height < 1 || height > maxDimension))) {
+            throw new IllegalArgumentException("Image width and height must be between 1 and " + maxDimension);
+        }
+        if (quality != null && (quality < 1 || quality > 100)) {
+            throw new IllegalArgumentException("Image quality must be between 1 and 100");
+        }
+        ImageFit imageFit = ImageFit.CONTAIN;
+        if (fit != null) {
+            try {
+                imageFit = ImageFit.valueOf(fit.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown image fit " + fit, e);
+            }
+        }
+        return new ImageVariant(width, height, imageFit, quality != null ? quality : defaultQuality);
+    }
+
+    /**
+     * Get the entity tag of a variant of an image.
+     *
+     * @param original the original image.
+     * @param variant the variant.
+     * @return the unquoted entity tag.
+     */
+    public String eTag(FragmentImage original, ImageVariant variant) {
+        return variant.eTag(original.getSha256(), ImageResizer.outputFormat(original.getContentType()));
+    }
+
+    /**
+     * Get a variant of an image, rendering it if it is not cached yet.
+     * <p>
+     * The variant is opened while it is in the cache, so that it can still be served when a concurrent rendering
+     * evicts it.
+     *
+     * @param original the original image.
+     * @param variant the variant to get.
+     * @return the variant, or the original if its format cannot be decoded or the variant was evicted as soon as it
+     * was rendered. Completes exceptionally with a {@link RejectedExecutionException} if the variant had to be rendered
+     * and the resize queue is full.
+     */
+    public CompletableFuture<FragmentImage> resize(FragmentImage original, ImageVariant variant) {
+        String format = ImageResizer.outputFormat(original.getContentType());
+        String fileName = eTag(original, variant) + "." + format;
+        Resource cached = open(fileName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(toImage(original, format, cached));
+        }
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> rendering = renderings.putIfAbsent(fileName, created);
+        if (rendering == null) {
+            rendering = created;
+            submit(fileName, created, original, variant, format);
+        } else {
+            log.debug("Joining rendering of image variant {}", fileName);
+        }
+        return rendering.thenApply(path -> {
+            Resource rendered = path != null ? open(fileName) : null;
+            return rendered != null ? toImage(original, format, rendered) : original;
+        });
+    }
+
+    private static FragmentImage toImage(FragmentImage original, String format, Resource resource) {
+        return new FragmentImage("image/" + format, original.getSha256(), resource);
+    }
+
+    private void submit(String fileName, CompletableFuture<Path> rendering, FragmentImage original, ImageVariant variant, String format) {
+        try {
+            executor.execute(() -> {
+                try {
+                    rendering.complete(render(fileName, original, variant, format));
+                } catch (Throwable e) {
+                    rendering.completeExceptionally(e);
+                } finally {
+                    renderings.remove(fileName, rendering);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Image resize queue is full, rejecting variant {}", fileName);
+            renderings.remove(fileName, rendering);
+            rendering.completeExceptionally(e);
+        }
+    }
+
+    private Path render(String fileName, FragmentImage original, ImageVariant variant, String format) throws IOException {
+        Path target = root.resolve(fileName);
+        if (Files.exists(target)) {
+            // Rendered by a request that completed between our cache lookup and our rendering
+            add(fileName, Files.size(target));
+            return target;
+        }
+        Path temp = Files.createTempFile(root.resolve(TEMP_DIRECTORY), "variant-", ".tmp");
+        try {
+            boolean resized;
+            try (InputStream in = original.getResource().getInputStream();
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                resized = ImageResizer.resize(in, variant, format, out);
+            }
+            if (!resized) {
+                log.debug("Cannot decode image {}, serving the original", original.getSha256());
+                return null;
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            add(fileName, Files.size(target));
+            log.debug("Rendered image variant {}", fileName);
+            return target;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Open a cached variant. The file is opened under the lock of the entries, before an eviction can delete it: the
+     * open file stays readable once deleted.
+     */
+    private Resource open(String fileName) {
+        Path path = root.resolve(fileName);
+        synchronized (this) {
+            Long fileSize = entries.get(fileName);
+            if (fileSize == null) {
+                return null;
+            }
+            try {
+                return new OpenFileResource(path, Files.newInputStream(path), fileSize);
+            } catch (NoSuchFileException e) {
+                entries.remove(fileName);
+                size -= fileSize;
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void add(String fileName, long fileSize) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(fileName, fileSize);
+            size += fileSize - (previous != null ? previous : 0L);
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (size > maxSize && entries.size() > 1) {
+                Map.Entry<String, Long> entry = eldest.next();
+                size -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(root.resolve(name));
+            } catch (IOException e) {
+                log.warn("Could not evict image variant {}", name, e);
+            }
+        }
+    }
+
+    private void loadEntries() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve(TEMP_DIRECTORY))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            files.filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(ImageVariantService::lastModifiedTime))
+                .forEach(file -> add(file.getFileName().toString(), fileSize(file)));
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A file opened already, whose first input stream is the open one. The later ones, reading a range of the file
+     * again, open it anew.
+     */
+    static class OpenFileResource extends FileSystemResource {
+
+        private final AtomicReference<InputStream> in;
+
+        private final long contentLength;
+
+        OpenFileResource(Path path, InputStream in, long contentLength) {
+            super(path);
+            this.in = new AtomicReference<>(in);
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            InputStream opened = in.getAndSet(null);
+            return opened != null ? opened : super.getInputStream();
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+    }
+}
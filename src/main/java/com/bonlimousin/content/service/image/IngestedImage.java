@@ -0,0 +1,34 @@
+package com.bonlimousin.content.service.image;
+
+/**
+ * The outcome of the ingest stage: the image to serve, and the uploaded original if it was replaced.
+ */
+public final class IngestedImage {
+
+    private final StoredImage image;
+
+    private final String contentType;
+
+    private final StoredImage original;
+
+    public IngestedImage(StoredImage image, String contentType, StoredImage original) {
+        this.image = image;
+        this.contentType = contentType;
+        this.original = original;
+    }
+
+    public StoredImage getImage() {
+        return image;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the uploaded image, or {@code null} if it is served as is.
+     */
+    public StoredImage getOriginal() {
+        return original;
+    }
+}
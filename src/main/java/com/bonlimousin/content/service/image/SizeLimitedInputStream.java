@@ -0,0 +1,57 @@
+package com.bonlimousin.content.service.image;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream failing with an {@link ImageTooLargeException} as soon as more than a maximum number of bytes is read.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxSize;
+
+    private long read;
+
+    public SizeLimitedInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws ImageTooLargeException {
+        read += n;
+        if (read > maxSize) {
+            throw new ImageTooLargeException(maxSize);
+        }
+    }
+}
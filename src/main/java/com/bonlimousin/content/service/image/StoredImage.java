@@ -0,0 +1,32 @@
+package com.bonlimousin.content.service.image;
+
+/**
+ * The key and size of content written to an {@link ImageStore}.
+ */
+public final class StoredImage {
+
+    private final String sha256;
+
+    private final long size;
+
+    public StoredImage(String sha256, long size) {
+        this.sha256 = sha256;
+        this.size = size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredImage{" +
+            "sha256='" + sha256 + "'" +
+            ", size=" + size +
+            "}";
+    }
+}
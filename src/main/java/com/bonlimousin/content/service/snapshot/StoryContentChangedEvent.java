@@ -0,0 +1,39 @@
+package com.bonlimousin.content.service.snapshot;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Event published by the services writing entities that are part of the aggregate of a story, handled once the
+ * transaction has committed.
+ */
+public class StoryContentChangedEvent {
+
+    private final Set<Long> storyIds;
+
+    public StoryContentChangedEvent(Collection<Long> storyIds) {
+        Set<Long> ids = new LinkedHashSet<>(storyIds);
+        ids.removeIf(Objects::isNull);
+        this.storyIds = Collections.unmodifiableSet(ids);
+    }
+
+    public static StoryContentChangedEvent of(Long... storyIds) {
+        Set<Long> ids = new LinkedHashSet<>();
+        Collections.addAll(ids, storyIds);
+        return new StoryContentChangedEvent(ids);
+    }
+
+    public Set<Long> getStoryIds() {
+        return storyIds;
+    }
+
+    @Override
+    public String toString() {
+        return "StoryContentChangedEvent{" +
+            "storyIds=" + storyIds +
+            "}";
+    }
+}
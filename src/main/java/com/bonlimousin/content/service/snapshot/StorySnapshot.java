@@ -0,0 +1,45 @@
+package com.bonlimousin.content.service.snapshot;
+
+import java.io.Serializable;
+
+/**
+ * The serialized {@link com.bonlimousin.content.service.dto.StoryAggregateDTO} of a story, ready to be written
+ * as a response body. Snapshots are shared between readers, their arrays must not be modified.
+ */
+public class StorySnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] json;
+
+    private final byte[] gzip;
+
+    private final String eTag;
+
+    public StorySnapshot(byte[] json, byte[] gzip, String eTag) {
+        this.json = json;
+        this.gzip = gzip;
+        this.eTag = eTag;
+    }
+
+    /**
+     * @return the JSON body.
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return the gzipped JSON body, or {@code null} if snapshots are not gzipped.
+     */
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    /**
+     * @return the strong entity tag of the JSON body.
+     */
+    public String getETag() {
+        return eTag;
+    }
+}
@@ -0,0 +1,154 @@
+package com.bonlimousin.content.service.snapshot;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.service.StoryService;
+import com.bonlimousin.content.service.dto.StoryAggregateDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service keeping the story aggregates serialized in Hazelcast, so that reading a story is a map lookup.
+ * <p>
+ * A snapshot is dropped as soon as a write touching its story commits, and rebuilt once the writes to the story
+ * have been quiet for the rebuild delay. A read finding no snapshot builds it; should that read race with a
+ * write, the stale snapshot it stores lives until the rebuild.
+ */
+@Service
+public class StorySnapshotService {
+
+    public static final String SNAPSHOTS_MAP = "com.bonlimousin.content.service.snapshot.StorySnapshot";
+
+    private final Logger log = LoggerFactory.getLogger(StorySnapshotService.class);
+
+    private final StoryService storyService;
+
+    private final ObjectMapper objectMapper;
+
+    private final IMap<Long, StorySnapshot> snapshots;
+
+    private final TaskScheduler taskScheduler;
+
+    private final Executor taskExecutor;
+
+    private final boolean gzip;
+
+    private final Duration rebuildDelay;
+
+    private final ConcurrentMap<Long, ScheduledFuture<?>> pendingRebuilds = new ConcurrentHashMap<>();
+
+    private final Counter readBuilds;
+
+    private final Counter writeBuilds;
+
+    public StorySnapshotService(StoryService storyService, ObjectMapper objectMapper, HazelcastInstance hazelcastInstance,
+                                TaskScheduler taskScheduler, @Qualifier("taskExecutor") Executor taskExecutor,
+                                ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.storyService = storyService;
+        this.objectMapper = objectMapper;
+        this.snapshots = hazelcastInstance.getMap(SNAPSHOTS_MAP);
+        this.taskScheduler = taskScheduler;
+        this.taskExecutor = taskExecutor;
+        this.gzip = applicationProperties.getStorySnapshot().isGzip();
+        this.rebuildDelay = applicationProperties.getStorySnapshot().getRebuildDelay();
+        this.readBuilds = meterRegistry.counter("story.snapshot.builds", "trigger", "read");
+        this.writeBuilds = meterRegistry.counter("story.snapshot.builds", "trigger", "write");
+    }
+
+    /**
+     * Get the snapshot of a story, building it if there is none.
+     *
+     * @param id the id of the story.
+     * @return the snapshot, empty if the story does not exist.
+     */
+    public Optional<StorySnapshot> findOne(Long id) {
+        StorySnapshot snapshot = snapshots.get(id);
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        readBuilds.increment();
+        return build(id);
+    }
+
+    /**
+     * Drop the snapshots of the changed stories and schedule their rebuild, postponing the rebuilds already pending.
+     *
+     * @param event the changed stories.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStoryContentChanged(StoryContentChangedEvent event) {
+        log.debug("Invalidating snapshots : {}", event);
+        for (Long id : event.getStoryIds()) {
+            snapshots.delete(id);
+            pendingRebuilds.compute(id, (key, pending) -> {
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+                return taskScheduler.schedule(() -> taskExecutor.execute(() -> rebuild(key)), Instant.now().plus(rebuildDelay));
+            });
+        }
+    }
+
+    private void rebuild(Long id) {
+        // A write committing meanwhile schedules another rebuild, which only costs a redundant build
+        pendingRebuilds.remove(id);
+        writeBuilds.increment();
+        try {
+            build(id);
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild snapshot of Story : {}", id, e);
+        }
+    }
+
+    private Optional<StorySnapshot> build(Long id) {
+        log.debug("Building snapshot of Story : {}", id);
+        Optional<StorySnapshot> snapshot = storyService.findAggregate(id).map(this::serialize);
+        if (snapshot.isPresent()) {
+            snapshots.set(id, snapshot.get());
+        } else {
+            snapshots.delete(id);
+        }
+        return snapshot;
+    }
+
+    private StorySnapshot serialize(StoryAggregateDTO storyAggregate) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(storyAggregate);
+            return new StorySnapshot(json, gzip ? gzip(json) : null, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize snapshot of Story " + storyAggregate.getStory().getId(), e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
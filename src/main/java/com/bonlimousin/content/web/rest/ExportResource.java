@@ -0,0 +1,137 @@
+package com.bonlimousin.content.web.rest;
+
+import com.bonlimousin.content.service.FragmentQueryService;
+import com.bonlimousin.content.service.LocalizedQueryService;
+import com.bonlimousin.content.service.StoryQueryService;
+import com.bonlimousin.content.service.TagQueryService;
+import com.bonlimousin.content.service.dto.FragmentCriteria;
+import com.bonlimousin.content.service.dto.LocalizedCriteria;
+import com.bonlimousin.content.service.dto.StoryCriteria;
+import com.bonlimousin.content.service.dto.TagCriteria;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * REST controller exporting all the entities matching criteria as newline-delimited JSON.
+ * <p>
+ * The entities are read one by one from a database cursor and written straight to the response, so that the memory
+ * used stays the same however many entities are exported.
+ */
+@RestController
+@RequestMapping("/api")
+public class ExportResource {
+
+    /**
+     * The media type of newline-delimited JSON, one entity per line.
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final Logger log = LoggerFactory.getLogger(ExportResource.class);
+
+    private final FragmentQueryService fragmentQueryService;
+
+    private final LocalizedQueryService localizedQueryService;
+
+    private final StoryQueryService storyQueryService;
+
+    private final TagQueryService tagQueryService;
+
+    private final ObjectMapper objectMapper;
+
+    public ExportResource(FragmentQueryService fragmentQueryService, LocalizedQueryService localizedQueryService,
+                          StoryQueryService storyQueryService, TagQueryService tagQueryService, ObjectMapper objectMapper) {
+        this.fragmentQueryService = fragmentQueryService;
+        this.localizedQueryService = localizedQueryService;
+        this.storyQueryService = storyQueryService;
+        this.tagQueryService = tagQueryService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * {@code GET  /export/fragments} : export all the fragments, ordered by id.
+     *
+     * @param criteria the criteria which the exported entities should match.
+     * @param response the response the fragments are written to, one per line.
+     * @throws IOException if the response cannot be written.
+     */
+    @GetMapping(value = "/export/fragments", produces = APPLICATION_NDJSON_VALUE)
+    public void exportFragments(FragmentCriteria criteria, HttpServletResponse response) throws IOException {
+        log.debug("REST request to export Fragments by criteria: {}", criteria);
+        export(response, "fragments", action -> fragmentQueryService.forEachByCriteria(criteria, action));
+    }
+
+    /**
+     * {@code GET  /export/localizeds} : export all the localizeds, ordered by id.
+     *
+     * @param criteria the criteria which the exported entities should match.
+     * @param response the response the localizeds are written to, one per line.
+     * @throws IOException if the response cannot be written.
+     */
+    @GetMapping(value = "/export/localizeds", produces = APPLICATION_NDJSON_VALUE)
+    public void exportLocalizeds(LocalizedCriteria criteria, HttpServletResponse response) throws IOException {
+        log.debug("REST request to export Localizeds by criteria: {}", criteria);
+        export(response, "localizeds", action -> localizedQueryService.forEachByCriteria(criteria, action));
+    }
+
+    /**
+     * {@code GET  /export/stories} : export all the stories, ordered by id.
+     *
+     * @param criteria the criteria which the exported entities should match.
+     * @param response the response the stories are written to, one per line.
+     * @throws IOException if the response cannot be written.
+     */
+    @GetMapping(value = "/export/stories", produces = APPLICATION_NDJSON_VALUE)
+    public void exportStories(StoryCriteria criteria, HttpServletResponse response) throws IOException {
+        log.debug("REST request to export Stories by criteria: {}", criteria);
+        export(response, "stories", action -> storyQueryService.forEachByCriteria(criteria, action));
+    }
+
+    /**
+     * {@code GET  /export/tags} : export all the tags, ordered by id.
+     *
+     * @param criteria the criteria which the exported entities should match.
+     * @param response the response the tags are written to, one per line.
+     * @throws IOException if the response cannot be written.
+     */
+    @GetMapping(value = "/export/tags", produces = APPLICATION_NDJSON_VALUE)
+    public void exportTags(TagCriteria criteria, HttpServletResponse response) throws IOException {
+        log.debug("REST request to export Tags by criteria: {}", criteria);
+        export(response, "tags", action -> tagQueryService.forEachByCriteria(criteria, action));
+    }
+
+    private <T> void export(HttpServletResponse response, String name, ToLongFunction<Consumer<T>> forEach) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".ndjson\"");
+        // The response is flushed as its buffer fills, not after each entity
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            long count = forEach.applyAsLong(entity -> {
+                try {
+                    writer.writeValue(generator, entity);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.debug("Exported {} {}", count, name);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
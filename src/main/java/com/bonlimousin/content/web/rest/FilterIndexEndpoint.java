@@ -0,0 +1,35 @@
+package com.bonlimousin.content.web.rest;
+
+import com.bonlimousin.content.service.FilterIndexService;
+import com.bonlimousin.content.service.dto.FilterIndexDTO;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Management endpoint telling whether the columns the criteria filters read are indexed.
+ */
+@Component
+@Endpoint(id = "filterindexes")
+public class FilterIndexEndpoint {
+
+    private final FilterIndexService filterIndexService;
+
+    public FilterIndexEndpoint(FilterIndexService filterIndexService) {
+        this.filterIndexService = filterIndexService;
+    }
+
+    /**
+     * {@code GET /management/filterindexes} : get the filters of the criteria with the column they read.
+     *
+     * @return the filters of the criteria, with whether their column is indexed.
+     * @throws SQLException if the indexes cannot be read from the database metadata.
+     */
+    @ReadOperation
+    public List<FilterIndexDTO> filterIndexes() throws SQLException {
+        return filterIndexService.findFilterIndexes();
+    }
+}
@@ -1,30 +1,67 @@
 package com.bonlimousin.content.web.rest;
 
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.service.FragmentImageService;
 import com.bonlimousin.content.service.FragmentService;
+import com.bonlimousin.content.service.LocalizedFragmentService;
+import com.bonlimousin.content.service.dto.FragmentImageDTO;
+import com.bonlimousin.content.service.dto.LocalizedFragmentDTO;
+import com.bonlimousin.content.service.image.FragmentImage;
+import com.bonlimousin.content.service.image.ImageTooLargeException;
+import com.bonlimousin.content.service.image.ImageVariant;
+import com.bonlimousin.content.service.image.ImageVariantService;
 import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+import com.bonlimousin.content.web.rest.util.ETagUtil;
+import com.bonlimousin.content.web.rest.util.KeysetPaginationUtil;
+import com.bonlimousin.content.web.rest.util.SelectionUtil;
+import com.bonlimousin.content.web.rest.util.SlicePaginationUtil;
+import com.bonlimousin.content.web.rest.util.LanguageUtil;
 import com.bonlimousin.content.service.dto.FragmentCriteria;
 import com.bonlimousin.content.service.FragmentQueryService;
 
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
-import io.github.jhipster.web.util.ResponseUtil;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -40,6 +77,17 @@ public class FragmentResource {
 
     private static final String ENTITY_NAME = "bonContentServiceFragment";
 
+    /**
+     * The relations which may be loaded with the fragments through the {@code include} parameter.
+     */
+    private static final String[] RELATIONS = { "tags", "localizedFragments", "story" };
+
+    /**
+     * The fields of the fragments which may be read alone through the {@code fields} parameter.
+     */
+    private static final String[] FIELDS = { "id", "version", "template", "name", "title", "ingress", "body", "imageContentType", "imageSha256",
+        "imageSize", "imagePlaceholder", "imageColor", "caption", "width", "height", "orderNo", "visibility" };
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -47,9 +95,20 @@ public class FragmentResource {
 
     private final FragmentQueryService fragmentQueryService;
 
-    public FragmentResource(FragmentService fragmentService, FragmentQueryService fragmentQueryService) {
+    private final FragmentImageService fragmentImageService;
+
+    private final ImageVariantService imageVariantService;
+
+    private final LocalizedFragmentService localizedFragmentService;
+
+    public FragmentResource(FragmentService fragmentService, FragmentQueryService fragmentQueryService,
+                            FragmentImageService fragmentImageService, ImageVariantService imageVariantService,
+                            LocalizedFragmentService localizedFragmentService) {
         this.fragmentService = fragmentService;
         this.fragmentQueryService = fragmentQueryService;
+        this.fragmentImageService = fragmentImageService;
+        this.imageVariantService = imageVariantService;
+        this.localizedFragmentService = localizedFragmentService;
     }
 
     /**
@@ -75,20 +134,42 @@ public class FragmentResource {
      * {@code PUT  /fragments} : Updates an existing fragment.
      *
      * @param fragmentEntity the fragmentEntity to update.
+     * @param ifMatch the entity tags the current fragmentEntity must match, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated fragmentEntity,
      * or with status {@code 400 (Bad Request)} if the fragmentEntity is not valid,
+     * or with status {@code 409 (Conflict)} if the version of the fragmentEntity is not the current one,
+     * or with status {@code 412 (Precondition Failed)} if {@code If-Match} does not match the current entity tag,
      * or with status {@code 500 (Internal Server Error)} if the fragmentEntity couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/fragments")
-    public ResponseEntity<FragmentEntity> updateFragment(@Valid @RequestBody FragmentEntity fragmentEntity) throws URISyntaxException {
+    public ResponseEntity<FragmentEntity> updateFragment(@Valid @RequestBody FragmentEntity fragmentEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Fragment : {}", fragmentEntity);
         if (fragmentEntity.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
-        FragmentEntity result = fragmentService.save(fragmentEntity);
+        if (ifMatch != null) {
+            Optional<FragmentEntity> current = fragmentService.findOne(fragmentEntity.getId())
+                .filter(existing -> ETagUtil.matches(ifMatch, eTag(existing)));
+            if (!current.isPresent()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            fragmentEntity.setVersion(current.get().getVersion());
+        }
+        FragmentEntity result;
+        try {
+            result = fragmentService.save(fragmentEntity);
+        } catch (ConcurrencyFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            log.debug("Fragment {} was updated concurrently", fragmentEntity.getId());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, fragmentEntity.getId().toString()))
+            .eTag(eTag(result))
             .body(result);
     }
 
@@ -97,14 +178,90 @@ public class FragmentResource {
      *
      * @param pageable the pagination information.
      * @param criteria the criteria which the requested entities should match.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of fragments in body.
+     * @param include the relations to load with the fragments, among tags, localizedFragments and story.
+     * @param count how to count the fragments, among exact (the default), window, none and estimate.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of fragments in body,
+     * or with status {@code 400 (Bad Request)} if a relation cannot be included or the count mode is unknown.
      */
     @GetMapping("/fragments")
-    public ResponseEntity<List<FragmentEntity>> getAllFragments(FragmentCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<FragmentEntity>> getAllFragments(FragmentCriteria criteria, Pageable pageable,
+            @RequestParam(required = false) String include, @RequestParam(required = false) String count) {
         log.debug("REST request to get Fragments by criteria: {}", criteria);
-        Page<FragmentEntity> page = fragmentQueryService.findByCriteria(criteria, pageable);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        CountMode countMode = SlicePaginationUtil.countMode(count, ENTITY_NAME);
+        Slice<FragmentEntity> page = relations == null ? fragmentQueryService.findByCriteria(criteria, pageable, countMode)
+            : fragmentQueryService.findByCriteria(criteria, pageable, countMode, relations);
+        HttpHeaders headers = SlicePaginationUtil.generateSliceHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, fragment -> fragment.getId() + ":" + eTag(fragment, relations))).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /fragments?after=:cursor} : get the fragments after a cursor, with keyset pagination.
+     * <p>
+     * An empty cursor reads the first fragments, the {@code Link} header points to the next ones. The sort properties
+     * must be required fields, the id completes them.
+     *
+     * @param pageable the size and sort of the fragments, the page number is ignored.
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the previous fragments, empty for the first ones.
+     * @param include the relations to load with the fragments, among tags, localizedFragments and story.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of fragments in body,
+     * or with status {@code 400 (Bad Request)} if the cursor or the sort is invalid, or a relation cannot be included.
+     */
+    @GetMapping(value = "/fragments", params = KeysetPaginationUtil.AFTER)
+    public ResponseEntity<List<FragmentEntity>> getFragmentsAfter(FragmentCriteria criteria, Pageable pageable,
+            @RequestParam String after,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Fragments by criteria: {} after: {}", criteria, after);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        KeysetSlice<FragmentEntity> slice;
+        try {
+            slice = relations == null ? fragmentQueryService.findByCriteriaAfter(criteria, pageable, after)
+                : fragmentQueryService.findByCriteriaAfter(criteria, pageable, after, relations);
+        } catch (InvalidDataAccessApiUsageException e) {
+            throw new BadRequestAlertException(e.getMostSpecificCause().getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), slice);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(slice, fragment -> fragment.getId() + ":" + eTag(fragment, relations))).body(slice.getContent());
+    }
+
+    /**
+     * {@code GET  /fragments?fields=:fields} : get some fields of all the fragments, reading only their columns.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the fields to read, a comma separated list of column fields of the fragment.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of field values of the fragments in body,
+     * or with status {@code 400 (Bad Request)} if a field cannot be read.
+     */
+    @GetMapping(value = "/fragments", params = {"fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<Map<String, Object>>> getAllFragmentsFields(FragmentCriteria criteria, Pageable pageable,
+            @RequestParam String fields) {
+        log.debug("REST request to get fields {} of Fragments by criteria: {}", fields, criteria);
+        Set<String> selectedFields = SelectionUtil.fields(fields, ENTITY_NAME, FIELDS);
+        Page<Map<String, Object>> page = fragmentQueryService.findFieldsByCriteria(criteria, pageable, selectedFields);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, Object::toString)).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /fragments?ids=:ids} : get the fragments with ids, in one statement for those not cached.
+     *
+     * @param ids a comma separated list of the ids of the fragments, at most {@link SelectionUtil#MAX_IDS}.
+     * @param include the relations to load with the fragments, among tags, localizedFragments and story.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of the fragments which exist in body,
+     * in the order of their ids, or with status {@code 400 (Bad Request)} if the ids are invalid or a relation cannot
+     * be included.
+     */
+    @GetMapping(value = "/fragments", params = {"ids", "!fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<FragmentEntity>> getFragmentsById(@RequestParam String ids,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Fragments : {}", ids);
+        List<Long> selectedIds = SelectionUtil.ids(ids, ENTITY_NAME);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        List<FragmentEntity> result = relations == null ? fragmentService.findAllById(selectedIds)
+            : fragmentService.findAllById(selectedIds, relations);
+        return ResponseEntity.ok().eTag(ETagUtil.weak(result, fragment -> fragment.getId() + ":" + eTag(fragment, relations))).body(result);
     }
 
     /**
@@ -123,13 +280,191 @@ public class FragmentResource {
      * {@code GET  /fragments/:id} : get the "id" fragment.
      *
      * @param id the id of the fragmentEntity to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the fragmentEntity, or with status {@code 404 (Not Found)}.
+     * @param include the relations to load with the fragment, among tags, localizedFragments and story.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the fragmentEntity, or with status {@code 304 (Not Modified)}
+     * if it matches {@code If-None-Match}, or with status {@code 400 (Bad Request)} if a relation cannot be included,
+     * or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/fragments/{id}")
-    public ResponseEntity<FragmentEntity> getFragment(@PathVariable Long id) {
+    public ResponseEntity<FragmentEntity> getFragment(@PathVariable Long id, @RequestParam(required = false) String include) {
         log.debug("REST request to get Fragment : {}", id);
-        Optional<FragmentEntity> fragmentEntity = fragmentService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(fragmentEntity);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        Optional<FragmentEntity> fragmentEntity = relations == null ? fragmentService.findOne(id) : fragmentService.findOne(id, relations);
+        return fragmentEntity.map(result -> ResponseEntity.ok().eTag(eTag(result, relations)).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * {@code GET  /fragments/:id?lang=:lang} : get the "id" fragment with its texts resolved for the requested languages.
+     * <p>
+     * The languages of {@code lang}, then of {@code Accept-Language}, then the configured fallback languages are
+     * tried in order for each text, before the text of the fragment itself.
+     *
+     * @param id the id of the fragmentEntity to retrieve.
+     * @param lang a comma separated list of languages, may be empty.
+     * @param acceptLanguage the languages accepted by the client, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the localized fragment, or with status
+     * {@code 400 (Bad Request)} if {@code Accept-Language} is malformed, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping(value = "/fragments/{id}", params = "lang")
+    public ResponseEntity<LocalizedFragmentDTO> getLocalizedFragment(@PathVariable Long id, @RequestParam String lang,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage) {
+        log.debug("REST request to get Fragment : {} in {}", id, lang);
+        List<String> languages;
+        try {
+            languages = LanguageUtil.requestedLanguages(lang, acceptLanguage);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidlanguage");
+        }
+        Optional<LocalizedFragmentDTO> fragment = localizedFragmentService.findOne(id, languages);
+        return fragment.map(result -> ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT_LANGUAGE).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * {@code GET  /fragments/:id/image} : get the raw image of the "id" fragment.
+     * <p>
+     * The response carries the SHA-256 of the image bytes as strong ETag, so {@code If-None-Match} is answered with
+     * {@code 304 (Not Modified)}, and {@code Range} requests are answered with {@code 206 (Partial Content)}.
+     *
+     * @param id the id of the fragmentEntity whose image to retrieve.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the image, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/fragments/{id}/image")
+    public ResponseEntity<Resource> getFragmentImage(@PathVariable Long id) {
+        log.debug("REST request to get image of Fragment : {}", id);
+        Optional<FragmentImage> fragmentImage = fragmentImageService.findImage(id);
+        return fragmentImage.map(image -> ResponseEntity.ok()
+            .contentType(toMediaType(image.getContentType()))
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .eTag(image.getSha256())
+            .body(image.getResource()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * {@code GET  /fragments/:id/image?w=:w} : get a resized variant of the image of the "id" fragment.
+     * <p>
+     * Variants are rendered off the request thread on first request and cached on disk afterwards. The image is never
+     * scaled up, and formats that cannot be decoded are served as is.
+     *
+     * @param id the id of the fragmentEntity whose image to retrieve.
+     * @param width the maximum width.
+     * @param height the maximum height, optional.
+     * @param fit {@code contain} to fit the whole image in the box, or {@code cover} to fill the box and crop the overflow.
+     * @param quality the encoding quality from 1 to 100, optional.
+     * @param ifNoneMatch the entity tags the client has cached.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the resized image, or with status {@code 400 (Bad Request)} if the
+     * size is out of range, or with status {@code 404 (Not Found)}, or with status {@code 503 (Service Unavailable)} if too many variants are being rendered.
+     */
+    @GetMapping(value = "/fragments/{id}/image", params = "w")
+    public CompletableFuture<ResponseEntity<Resource>> getFragmentImageVariant(@PathVariable Long id,
+                                                                              @RequestParam("w") int width,
+                                                                              @RequestParam(value = "h", required = false) Integer height,
+                                                                              @RequestParam(value = "fit", required = false) String fit,
+                                                                              @RequestParam(value = "q", required = false) Integer quality,
+                                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) List<String> ifNoneMatch) {
+        log.debug("REST request to get image variant of Fragment : {}", id);
+        ImageVariant variant;
+        try {
+            variant = imageVariantService.variant(width, height, fit, quality);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidimagevariant");
+        }
+        Optional<FragmentImage> fragmentImage = fragmentImageService.findImage(id);
+        if (!fragmentImage.isPresent()) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        FragmentImage original = fragmentImage.get();
+        String eTag = imageVariantService.eTag(original, variant);
+        if (ifNoneMatch != null && ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || tag.endsWith("\"" + eTag + "\""))) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+        }
+        return imageVariantService.resize(original, variant)
+            .thenApply(image -> ResponseEntity.ok()
+                .contentType(toMediaType(image.getContentType()))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(image == original ? original.getSha256() : eTag)
+                .body(image.getResource()))
+            .exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                if (cause instanceof RejectedExecutionException) {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+                }
+                throw new CompletionException(cause);
+            });
+    }
+
+    /**
+     * {@code PUT  /fragments/:id/image} : replace the image of the "id" fragment with an uploaded file.
+     *
+     * @param id the id of the fragmentEntity whose image to replace.
+     * @param image the {@code image} part of a multipart request, spooled to disk by the container.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the image metadata,
+     * or with status {@code 400 (Bad Request)} if the file is not an image,
+     * or with status {@code 404 (Not Found)},
+     * or with status {@code 413 (Payload Too Large)} if the image is too large.
+     * @throws IOException if the image cannot be read or stored.
+     */
+    @PutMapping(value = "/fragments/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FragmentImageDTO> uploadFragmentImage(@PathVariable Long id, @RequestParam("image") MultipartFile image) throws IOException {
+        log.debug("REST request to upload image of Fragment : {}", id);
+        String contentType = image.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new BadRequestAlertException("Only images can be uploaded", ENTITY_NAME, "invalidimagetype");
+        }
+        try (InputStream in = image.getInputStream()) {
+            return replaceFragmentImage(id, contentType, in);
+        }
+    }
+
+    /**
+     * {@code PUT  /fragments/:id/image} : replace the image of the "id" fragment with the request body.
+     * <p>
+     * The body is streamed to the image store as it arrives, it is never held in memory as a whole.
+     *
+     * @param id the id of the fragmentEntity whose image to replace.
+     * @param contentType the content type of the image.
+     * @param request the request whose body is the image.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the image metadata,
+     * or with status {@code 404 (Not Found)},
+     * or with status {@code 413 (Payload Too Large)} if the image is too large.
+     * @throws IOException if the image cannot be read or stored.
+     */
+    @PutMapping(value = "/fragments/{id}/image", consumes = "image/*")
+    public ResponseEntity<FragmentImageDTO> putFragmentImage(@PathVariable Long id,
+                                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                             HttpServletRequest request) throws IOException {
+        log.debug("REST request to put image of Fragment : {}", id);
+        try (InputStream in = request.getInputStream()) {
+            return replaceFragmentImage(id, contentType, in);
+        }
+    }
+
+    private ResponseEntity<FragmentImageDTO> replaceFragmentImage(Long id, String contentType, InputStream content) throws IOException {
+        // Keep the media type only, parameters such as charset mean nothing for images
+        MediaType mediaType = toMediaType(contentType);
+        try {
+            return fragmentImageService.replaceImage(id, mediaType.getType() + "/" + mediaType.getSubtype(), content)
+                .map(fragmentImageDTO -> ResponseEntity.ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, id.toString()))
+                    .body(fragmentImageDTO))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (ImageTooLargeException e) {
+            log.debug("Rejected image of Fragment {} : {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+    }
+
+    private static MediaType toMediaType(String contentType) {
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 
     /**
@@ -158,6 +493,44 @@ public class FragmentResource {
         log.debug("REST request to search for a page of Fragments for query {}", query);
         Page<FragmentEntity> page = fragmentService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, fragment -> fragment.getId() + ":" + eTag(fragment))).body(page.getContent());
+        }
+
+    /**
+     * {@code SEARCH  /_search/fragment-documents?query=:query} : search for the fragment documents corresponding
+     * to the query, with their story, tags and translations, in one request to the search index.
+     *
+     * @param query the query of the fragment search, {@code localizations.title:...} searches the translations.
+     * @param pageable the pagination information.
+     * @return the result of the search.
+     */
+    @GetMapping("/_search/fragment-documents")
+    public ResponseEntity<List<FragmentDocument>> searchFragmentDocuments(@RequestParam String query, Pageable pageable) {
+        log.debug("REST request to search for a page of Fragment documents for query {}", query);
+        Page<FragmentDocument> page = fragmentService.searchDocuments(query, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
         return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    /**
+     * The entity tag of a fragment, which embeds its story and, when loaded, its tags.
+     */
+    private static String eTag(FragmentEntity fragmentEntity) {
+        return eTag(fragmentEntity, null);
+    }
+
+    private static String eTag(FragmentEntity fragmentEntity, Set<String> relations) {
+        StoryEntity story = fragmentEntity.getStory();
+        Set<TagEntity> tags = fragmentEntity.getTags();
+        Long storyVersion = story != null && Hibernate.isInitialized(story) ? story.getVersion() : null;
+        String tagsDigest = tags != null && Hibernate.isInitialized(tags) ? ETagUtil.digest(tags.stream()
+            .sorted(Comparator.comparing(TagEntity::getId))
+            .map(tag -> tag.getId() + ":" + tag.getVersion())) : null;
+        if (relations == null || !relations.contains("localizedFragments")) {
+            return ETagUtil.strong(fragmentEntity.getVersion(), storyVersion, tagsDigest);
         }
+        return ETagUtil.strong(fragmentEntity.getVersion(), storyVersion, tagsDigest, ETagUtil.digest(fragmentEntity.getLocalizedFragments().stream()
+            .sorted(Comparator.comparing(LocalizedEntity::getId))
+            .map(localized -> localized.getId() + ":" + localized.getVersion())));
+    }
 }
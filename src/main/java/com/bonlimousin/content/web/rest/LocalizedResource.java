@@ -1,22 +1,34 @@
 package com.bonlimousin.content.web.rest;
 
 import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.KeysetSlice;
 import com.bonlimousin.content.service.LocalizedService;
 import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+import com.bonlimousin.content.web.rest.util.ETagUtil;
+import com.bonlimousin.content.web.rest.util.KeysetPaginationUtil;
+import com.bonlimousin.content.web.rest.util.SelectionUtil;
+import com.bonlimousin.content.web.rest.util.SlicePaginationUtil;
 import com.bonlimousin.content.service.dto.LocalizedCriteria;
 import com.bonlimousin.content.service.LocalizedQueryService;
 
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
-import io.github.jhipster.web.util.ResponseUtil;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,7 +36,9 @@ import javax.validation.Valid;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -40,6 +54,16 @@ public class LocalizedResource {
 
     private static final String ENTITY_NAME = "bonContentServiceLocalized";
 
+    /**
+     * The relations which may be loaded with the localizeds through the {@code include} parameter.
+     */
+    private static final String[] RELATIONS = { "fragment" };
+
+    /**
+     * The fields of the localizeds which may be read alone through the {@code fields} parameter.
+     */
+    private static final String[] FIELDS = { "id", "version", "i18n", "title", "ingress", "body", "caption", "visibility" };
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -75,20 +99,42 @@ public class LocalizedResource {
      * {@code PUT  /localizeds} : Updates an existing localized.
      *
      * @param localizedEntity the localizedEntity to update.
+     * @param ifMatch the entity tags the current localizedEntity must match, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated localizedEntity,
      * or with status {@code 400 (Bad Request)} if the localizedEntity is not valid,
+     * or with status {@code 409 (Conflict)} if the version of the localizedEntity is not the current one,
+     * or with status {@code 412 (Precondition Failed)} if {@code If-Match} does not match the current entity tag,
      * or with status {@code 500 (Internal Server Error)} if the localizedEntity couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/localizeds")
-    public ResponseEntity<LocalizedEntity> updateLocalized(@Valid @RequestBody LocalizedEntity localizedEntity) throws URISyntaxException {
+    public ResponseEntity<LocalizedEntity> updateLocalized(@Valid @RequestBody LocalizedEntity localizedEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Localized : {}", localizedEntity);
         if (localizedEntity.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
-        LocalizedEntity result = localizedService.save(localizedEntity);
+        if (ifMatch != null) {
+            Optional<LocalizedEntity> current = localizedService.findOne(localizedEntity.getId())
+                .filter(existing -> ETagUtil.matches(ifMatch, eTag(existing)));
+            if (!current.isPresent()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            localizedEntity.setVersion(current.get().getVersion());
+        }
+        LocalizedEntity result;
+        try {
+            result = localizedService.save(localizedEntity);
+        } catch (ConcurrencyFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            log.debug("Localized {} was updated concurrently", localizedEntity.getId());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, localizedEntity.getId().toString()))
+            .eTag(eTag(result))
             .body(result);
     }
 
@@ -97,14 +143,90 @@ public class LocalizedResource {
      *
      * @param pageable the pagination information.
      * @param criteria the criteria which the requested entities should match.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of localizeds in body.
+     * @param include the relations to load with the localizeds, among fragment.
+     * @param count how to count the localizeds, among exact (the default), window, none and estimate.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of localizeds in body,
+     * or with status {@code 400 (Bad Request)} if a relation cannot be included or the count mode is unknown.
      */
     @GetMapping("/localizeds")
-    public ResponseEntity<List<LocalizedEntity>> getAllLocalizeds(LocalizedCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<LocalizedEntity>> getAllLocalizeds(LocalizedCriteria criteria, Pageable pageable,
+            @RequestParam(required = false) String include, @RequestParam(required = false) String count) {
         log.debug("REST request to get Localizeds by criteria: {}", criteria);
-        Page<LocalizedEntity> page = localizedQueryService.findByCriteria(criteria, pageable);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        CountMode countMode = SlicePaginationUtil.countMode(count, ENTITY_NAME);
+        Slice<LocalizedEntity> page = relations == null ? localizedQueryService.findByCriteria(criteria, pageable, countMode)
+            : localizedQueryService.findByCriteria(criteria, pageable, countMode, relations);
+        HttpHeaders headers = SlicePaginationUtil.generateSliceHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, localized -> localized.getId() + ":" + eTag(localized))).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /localizeds?after=:cursor} : get the localizeds after a cursor, with keyset pagination.
+     * <p>
+     * An empty cursor reads the first localizeds, the {@code Link} header points to the next ones. The sort properties
+     * must be required fields, the id completes them.
+     *
+     * @param pageable the size and sort of the localizeds, the page number is ignored.
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the previous localizeds, empty for the first ones.
+     * @param include the relations to load with the localizeds, among fragment.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of localizeds in body,
+     * or with status {@code 400 (Bad Request)} if the cursor or the sort is invalid, or a relation cannot be included.
+     */
+    @GetMapping(value = "/localizeds", params = KeysetPaginationUtil.AFTER)
+    public ResponseEntity<List<LocalizedEntity>> getLocalizedsAfter(LocalizedCriteria criteria, Pageable pageable,
+            @RequestParam String after,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Localizeds by criteria: {} after: {}", criteria, after);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        KeysetSlice<LocalizedEntity> slice;
+        try {
+            slice = relations == null ? localizedQueryService.findByCriteriaAfter(criteria, pageable, after)
+                : localizedQueryService.findByCriteriaAfter(criteria, pageable, after, relations);
+        } catch (InvalidDataAccessApiUsageException e) {
+            throw new BadRequestAlertException(e.getMostSpecificCause().getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), slice);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(slice, localized -> localized.getId() + ":" + eTag(localized))).body(slice.getContent());
+    }
+
+    /**
+     * {@code GET  /localizeds?fields=:fields} : get some fields of all the localizeds, reading only their columns.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the fields to read, a comma separated list of column fields of the localized.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of field values of the localizeds in body,
+     * or with status {@code 400 (Bad Request)} if a field cannot be read.
+     */
+    @GetMapping(value = "/localizeds", params = {"fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<Map<String, Object>>> getAllLocalizedsFields(LocalizedCriteria criteria, Pageable pageable,
+            @RequestParam String fields) {
+        log.debug("REST request to get fields {} of Localizeds by criteria: {}", fields, criteria);
+        Set<String> selectedFields = SelectionUtil.fields(fields, ENTITY_NAME, FIELDS);
+        Page<Map<String, Object>> page = localizedQueryService.findFieldsByCriteria(criteria, pageable, selectedFields);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, Object::toString)).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /localizeds?ids=:ids} : get the localizeds with ids, in one statement for those not cached.
+     *
+     * @param ids a comma separated list of the ids of the localizeds, at most {@link SelectionUtil#MAX_IDS}.
+     * @param include the relations to load with the localizeds, among fragment.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of the localizeds which exist in body,
+     * in the order of their ids, or with status {@code 400 (Bad Request)} if the ids are invalid or a relation cannot
+     * be included.
+     */
+    @GetMapping(value = "/localizeds", params = {"ids", "!fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<LocalizedEntity>> getLocalizedsById(@RequestParam String ids,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Localizeds : {}", ids);
+        List<Long> selectedIds = SelectionUtil.ids(ids, ENTITY_NAME);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        List<LocalizedEntity> result = relations == null ? localizedService.findAllById(selectedIds)
+            : localizedService.findAllById(selectedIds, relations);
+        return ResponseEntity.ok().eTag(ETagUtil.weak(result, localized -> localized.getId() + ":" + eTag(localized))).body(result);
     }
 
     /**
@@ -123,13 +245,18 @@ public class LocalizedResource {
      * {@code GET  /localizeds/:id} : get the "id" localized.
      *
      * @param id the id of the localizedEntity to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the localizedEntity, or with status {@code 404 (Not Found)}.
+     * @param include the relations to load with the localized, among fragment.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the localizedEntity, or with status {@code 304 (Not Modified)}
+     * if it matches {@code If-None-Match}, or with status {@code 400 (Bad Request)} if a relation cannot be included,
+     * or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/localizeds/{id}")
-    public ResponseEntity<LocalizedEntity> getLocalized(@PathVariable Long id) {
+    public ResponseEntity<LocalizedEntity> getLocalized(@PathVariable Long id, @RequestParam(required = false) String include) {
         log.debug("REST request to get Localized : {}", id);
-        Optional<LocalizedEntity> localizedEntity = localizedService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(localizedEntity);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        Optional<LocalizedEntity> localizedEntity = relations == null ? localizedService.findOne(id) : localizedService.findOne(id, relations);
+        return localizedEntity.map(result -> ResponseEntity.ok().eTag(eTag(result)).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
     /**
@@ -158,6 +285,18 @@ public class LocalizedResource {
         log.debug("REST request to search for a page of Localizeds for query {}", query);
         Page<LocalizedEntity> page = localizedService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, localized -> localized.getId() + ":" + eTag(localized))).body(page.getContent());
         }
+
+    /**
+     * The entity tag of a localized, which embeds its fragment and the story of the fragment.
+     */
+    private static String eTag(LocalizedEntity localizedEntity) {
+        FragmentEntity fragment = localizedEntity.getFragment();
+        boolean fragmentLoaded = fragment != null && Hibernate.isInitialized(fragment);
+        StoryEntity story = fragmentLoaded ? fragment.getStory() : null;
+        return ETagUtil.strong(localizedEntity.getVersion(),
+            fragmentLoaded ? fragment.getVersion() : null,
+            story != null && Hibernate.isInitialized(story) ? story.getVersion() : null);
+    }
 }
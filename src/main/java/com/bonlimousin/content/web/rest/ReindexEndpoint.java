@@ -0,0 +1,44 @@
+package com.bonlimousin.content.web.rest;
+
+import com.bonlimousin.content.service.ReindexService;
+import com.bonlimousin.content.service.dto.ReindexProgressDTO;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Management endpoint rebuilding the search indexes from the database.
+ */
+@Component
+@Endpoint(id = "reindex")
+public class ReindexEndpoint {
+
+    private final ReindexService reindexService;
+
+    public ReindexEndpoint(ReindexService reindexService) {
+        this.reindexService = reindexService;
+    }
+
+    /**
+     * {@code GET /management/reindex} : get the progress of the last rebuild of the search indexes.
+     *
+     * @return the progress and throughput of the rebuild of each index.
+     */
+    @ReadOperation
+    public List<ReindexProgressDTO> progress() {
+        return reindexService.getProgress();
+    }
+
+    /**
+     * {@code POST /management/reindex} : start rebuilding the search indexes, unless they are being rebuilt already.
+     *
+     * @return the progress of the rebuild of each index.
+     */
+    @WriteOperation
+    public List<ReindexProgressDTO> start() {
+        return reindexService.start();
+    }
+}
@@ -1,30 +1,49 @@
 package com.bonlimousin.content.web.rest;
 
+import com.bonlimousin.content.domain.FragmentEntity;
 import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.KeysetSlice;
+import com.bonlimousin.content.service.LocalizedFragmentService;
 import com.bonlimousin.content.service.StoryService;
+import com.bonlimousin.content.service.dto.LocalizedStoryDTO;
+import com.bonlimousin.content.service.snapshot.StorySnapshot;
+import com.bonlimousin.content.service.snapshot.StorySnapshotService;
 import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+import com.bonlimousin.content.web.rest.util.ETagUtil;
+import com.bonlimousin.content.web.rest.util.KeysetPaginationUtil;
+import com.bonlimousin.content.web.rest.util.SelectionUtil;
+import com.bonlimousin.content.web.rest.util.SlicePaginationUtil;
+import com.bonlimousin.content.web.rest.util.LanguageUtil;
 import com.bonlimousin.content.service.dto.StoryCriteria;
 import com.bonlimousin.content.service.StoryQueryService;
 
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
-import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -40,6 +59,16 @@ public class StoryResource {
 
     private static final String ENTITY_NAME = "bonContentServiceStory";
 
+    /**
+     * The relations which may be loaded with the stories through the {@code include} parameter.
+     */
+    private static final String[] RELATIONS = { "fragments" };
+
+    /**
+     * The fields of the stories which may be read alone through the {@code fields} parameter.
+     */
+    private static final String[] FIELDS = { "id", "version", "category", "name", "visibility" };
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -47,9 +76,16 @@ public class StoryResource {
 
     private final StoryQueryService storyQueryService;
 
-    public StoryResource(StoryService storyService, StoryQueryService storyQueryService) {
+    private final StorySnapshotService storySnapshotService;
+
+    private final LocalizedFragmentService localizedFragmentService;
+
+    public StoryResource(StoryService storyService, StoryQueryService storyQueryService, StorySnapshotService storySnapshotService,
+                         LocalizedFragmentService localizedFragmentService) {
         this.storyService = storyService;
         this.storyQueryService = storyQueryService;
+        this.storySnapshotService = storySnapshotService;
+        this.localizedFragmentService = localizedFragmentService;
     }
 
     /**
@@ -75,20 +111,42 @@ public class StoryResource {
      * {@code PUT  /stories} : Updates an existing story.
      *
      * @param storyEntity the storyEntity to update.
+     * @param ifMatch the entity tags the current storyEntity must match, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated storyEntity,
      * or with status {@code 400 (Bad Request)} if the storyEntity is not valid,
+     * or with status {@code 409 (Conflict)} if the version of the storyEntity is not the current one,
+     * or with status {@code 412 (Precondition Failed)} if {@code If-Match} does not match the current entity tag,
      * or with status {@code 500 (Internal Server Error)} if the storyEntity couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/stories")
-    public ResponseEntity<StoryEntity> updateStory(@Valid @RequestBody StoryEntity storyEntity) throws URISyntaxException {
+    public ResponseEntity<StoryEntity> updateStory(@Valid @RequestBody StoryEntity storyEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Story : {}", storyEntity);
         if (storyEntity.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
-        StoryEntity result = storyService.save(storyEntity);
+        if (ifMatch != null) {
+            Optional<StoryEntity> current = storyService.findOne(storyEntity.getId())
+                .filter(existing -> ETagUtil.matches(ifMatch, eTag(existing)));
+            if (!current.isPresent()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            storyEntity.setVersion(current.get().getVersion());
+        }
+        StoryEntity result;
+        try {
+            result = storyService.save(storyEntity);
+        } catch (ConcurrencyFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            log.debug("Story {} was updated concurrently", storyEntity.getId());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, storyEntity.getId().toString()))
+            .eTag(eTag(result))
             .body(result);
     }
 
@@ -97,14 +155,90 @@ public class StoryResource {
      *
      * @param pageable the pagination information.
      * @param criteria the criteria which the requested entities should match.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stories in body.
+     * @param include the relations to load with the stories, among fragments.
+     * @param count how to count the stories, among exact (the default), window, none and estimate.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stories in body,
+     * or with status {@code 400 (Bad Request)} if a relation cannot be included or the count mode is unknown.
      */
     @GetMapping("/stories")
-    public ResponseEntity<List<StoryEntity>> getAllStories(StoryCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<StoryEntity>> getAllStories(StoryCriteria criteria, Pageable pageable,
+            @RequestParam(required = false) String include, @RequestParam(required = false) String count) {
         log.debug("REST request to get Stories by criteria: {}", criteria);
-        Page<StoryEntity> page = storyQueryService.findByCriteria(criteria, pageable);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        CountMode countMode = SlicePaginationUtil.countMode(count, ENTITY_NAME);
+        Slice<StoryEntity> page = relations == null ? storyQueryService.findByCriteria(criteria, pageable, countMode)
+            : storyQueryService.findByCriteria(criteria, pageable, countMode, relations);
+        HttpHeaders headers = SlicePaginationUtil.generateSliceHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, story -> story.getId() + ":" + eTag(story, relations))).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /stories?after=:cursor} : get the stories after a cursor, with keyset pagination.
+     * <p>
+     * An empty cursor reads the first stories, the {@code Link} header points to the next ones. The sort properties
+     * must be required fields, the id completes them.
+     *
+     * @param pageable the size and sort of the stories, the page number is ignored.
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the previous stories, empty for the first ones.
+     * @param include the relations to load with the stories, among fragments.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stories in body,
+     * or with status {@code 400 (Bad Request)} if the cursor or the sort is invalid, or a relation cannot be included.
+     */
+    @GetMapping(value = "/stories", params = KeysetPaginationUtil.AFTER)
+    public ResponseEntity<List<StoryEntity>> getStoriesAfter(StoryCriteria criteria, Pageable pageable,
+            @RequestParam String after,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Stories by criteria: {} after: {}", criteria, after);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        KeysetSlice<StoryEntity> slice;
+        try {
+            slice = relations == null ? storyQueryService.findByCriteriaAfter(criteria, pageable, after)
+                : storyQueryService.findByCriteriaAfter(criteria, pageable, after, relations);
+        } catch (InvalidDataAccessApiUsageException e) {
+            throw new BadRequestAlertException(e.getMostSpecificCause().getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), slice);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(slice, story -> story.getId() + ":" + eTag(story, relations))).body(slice.getContent());
+    }
+
+    /**
+     * {@code GET  /stories?fields=:fields} : get some fields of all the stories, reading only their columns.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the fields to read, a comma separated list of column fields of the story.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of field values of the stories in body,
+     * or with status {@code 400 (Bad Request)} if a field cannot be read.
+     */
+    @GetMapping(value = "/stories", params = {"fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<Map<String, Object>>> getAllStoriesFields(StoryCriteria criteria, Pageable pageable,
+            @RequestParam String fields) {
+        log.debug("REST request to get fields {} of Stories by criteria: {}", fields, criteria);
+        Set<String> selectedFields = SelectionUtil.fields(fields, ENTITY_NAME, FIELDS);
+        Page<Map<String, Object>> page = storyQueryService.findFieldsByCriteria(criteria, pageable, selectedFields);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, Object::toString)).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /stories?ids=:ids} : get the stories with ids, in one statement for those not cached.
+     *
+     * @param ids a comma separated list of the ids of the stories, at most {@link SelectionUtil#MAX_IDS}.
+     * @param include the relations to load with the stories, among fragments.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of the stories which exist in body,
+     * in the order of their ids, or with status {@code 400 (Bad Request)} if the ids are invalid or a relation cannot
+     * be included.
+     */
+    @GetMapping(value = "/stories", params = {"ids", "!fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<StoryEntity>> getStoriesById(@RequestParam String ids,
+            @RequestParam(required = false) String include) {
+        log.debug("REST request to get Stories : {}", ids);
+        List<Long> selectedIds = SelectionUtil.ids(ids, ENTITY_NAME);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        List<StoryEntity> result = relations == null ? storyService.findAllById(selectedIds)
+            : storyService.findAllById(selectedIds, relations);
+        return ResponseEntity.ok().eTag(ETagUtil.weak(result, story -> story.getId() + ":" + eTag(story, relations))).body(result);
     }
 
     /**
@@ -123,13 +257,80 @@ public class StoryResource {
      * {@code GET  /stories/:id} : get the "id" story.
      *
      * @param id the id of the storyEntity to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the storyEntity, or with status {@code 404 (Not Found)}.
+     * @param include the relations to load with the story, among fragments.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the storyEntity, or with status {@code 304 (Not Modified)}
+     * if it matches {@code If-None-Match}, or with status {@code 400 (Bad Request)} if a relation cannot be included,
+     * or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/stories/{id}")
-    public ResponseEntity<StoryEntity> getStory(@PathVariable Long id) {
+    public ResponseEntity<StoryEntity> getStory(@PathVariable Long id, @RequestParam(required = false) String include) {
         log.debug("REST request to get Story : {}", id);
-        Optional<StoryEntity> storyEntity = storyService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(storyEntity);
+        Set<String> relations = SelectionUtil.relations(include, ENTITY_NAME, RELATIONS);
+        Optional<StoryEntity> storyEntity = relations == null ? storyService.findOne(id) : storyService.findOne(id, relations);
+        return storyEntity.map(result -> ResponseEntity.ok().eTag(eTag(result, relations)).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * {@code GET  /stories/:id/full} : get the "id" story with its fragments, their localizations and tags.
+     * <p>
+     * The body is the pre-serialized snapshot of the story, gzipped if the client accepts it. The gzipped body has its
+     * own entity tag, either entity tag revalidates the story.
+     *
+     * @param id the id of the storyEntity to retrieve.
+     * @param acceptEncoding the content codings accepted by the client, if any.
+     * @param ifNoneMatch the entity tags the client has a representation for, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the story aggregate, or with status
+     * {@code 304 (Not Modified)} if it matches {@code If-None-Match}, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping(value = "/stories/{id}/full", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getStoryAggregate(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.debug("REST request to get Story aggregate : {}", id);
+        Optional<StorySnapshot> storySnapshot = storySnapshotService.findOne(id);
+        return storySnapshot.map(snapshot -> {
+            boolean gzip = snapshot.getGzip() != null && acceptsGzip(acceptEncoding);
+            String gzipETag = ETagUtil.coded(snapshot.getETag(), "gzip");
+            if (ifNoneMatch != null && ETagUtil.matchesWeakly(ifNoneMatch, snapshot.getETag(), gzipETag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(gzip ? gzipETag : snapshot.getETag())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .<byte[]>build();
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                return response.eTag(gzipETag).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+            }
+            return response.eTag(snapshot.getETag()).body(snapshot.getJson());
+        }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * {@code GET  /stories/:id/full?lang=:lang} : get the "id" story with the texts of its fragments resolved for the
+     * requested languages, leaving out the fragments the current user may not see.
+     *
+     * @param id the id of the storyEntity to retrieve.
+     * @param lang a comma separated list of languages, may be empty.
+     * @param acceptLanguage the languages accepted by the client, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the localized story, or with status
+     * {@code 400 (Bad Request)} if {@code Accept-Language} is malformed, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping(value = "/stories/{id}/full", params = "lang")
+    public ResponseEntity<LocalizedStoryDTO> getLocalizedStory(@PathVariable Long id, @RequestParam String lang,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage) {
+        log.debug("REST request to get Story : {} in {}", id, lang);
+        List<String> languages;
+        try {
+            languages = LanguageUtil.requestedLanguages(lang, acceptLanguage);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidlanguage");
+        }
+        Optional<LocalizedStoryDTO> story = localizedFragmentService.findStory(id, languages);
+        return story.map(result -> ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT_LANGUAGE).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
     /**
@@ -158,6 +359,32 @@ public class StoryResource {
         log.debug("REST request to search for a page of Stories for query {}", query);
         Page<StoryEntity> page = storyService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, story -> story.getId() + ":" + eTag(story))).body(page.getContent());
         }
+
+    private static String eTag(StoryEntity storyEntity) {
+        return ETagUtil.strong(storyEntity.getVersion());
+    }
+
+    private static String eTag(StoryEntity storyEntity, Set<String> relations) {
+        if (relations == null || !relations.contains("fragments")) {
+            return eTag(storyEntity);
+        }
+        return ETagUtil.strong(storyEntity.getVersion(), ETagUtil.digest(storyEntity.getFragments().stream()
+            .sorted(Comparator.comparing(FragmentEntity::getId))
+            .map(fragment -> fragment.getId() + ":" + fragment.getVersion())));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.trim().split(";");
+            if (parameters[0].trim().equalsIgnoreCase("gzip")) {
+                return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
 }
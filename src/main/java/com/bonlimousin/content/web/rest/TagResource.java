@@ -1,22 +1,31 @@
 package com.bonlimousin.content.web.rest;
 
 import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.KeysetSlice;
 import com.bonlimousin.content.service.TagService;
 import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+import com.bonlimousin.content.web.rest.util.ETagUtil;
+import com.bonlimousin.content.web.rest.util.KeysetPaginationUtil;
+import com.bonlimousin.content.web.rest.util.SelectionUtil;
+import com.bonlimousin.content.web.rest.util.SlicePaginationUtil;
 import com.bonlimousin.content.service.dto.TagCriteria;
 import com.bonlimousin.content.service.TagQueryService;
 
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
-import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,7 +33,9 @@ import javax.validation.Valid;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -40,6 +51,11 @@ public class TagResource {
 
     private static final String ENTITY_NAME = "bonContentServiceTag";
 
+    /**
+     * The fields of the tags which may be read alone through the {@code fields} parameter.
+     */
+    private static final String[] FIELDS = { "id", "version", "name" };
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -75,20 +91,42 @@ public class TagResource {
      * {@code PUT  /tags} : Updates an existing tag.
      *
      * @param tagEntity the tagEntity to update.
+     * @param ifMatch the entity tags the current tagEntity must match, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated tagEntity,
      * or with status {@code 400 (Bad Request)} if the tagEntity is not valid,
+     * or with status {@code 409 (Conflict)} if the version of the tagEntity is not the current one,
+     * or with status {@code 412 (Precondition Failed)} if {@code If-Match} does not match the current entity tag,
      * or with status {@code 500 (Internal Server Error)} if the tagEntity couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/tags")
-    public ResponseEntity<TagEntity> updateTag(@Valid @RequestBody TagEntity tagEntity) throws URISyntaxException {
+    public ResponseEntity<TagEntity> updateTag(@Valid @RequestBody TagEntity tagEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Tag : {}", tagEntity);
         if (tagEntity.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
-        TagEntity result = tagService.save(tagEntity);
+        if (ifMatch != null) {
+            Optional<TagEntity> current = tagService.findOne(tagEntity.getId())
+                .filter(existing -> ETagUtil.matches(ifMatch, eTag(existing)));
+            if (!current.isPresent()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            tagEntity.setVersion(current.get().getVersion());
+        }
+        TagEntity result;
+        try {
+            result = tagService.save(tagEntity);
+        } catch (ConcurrencyFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            log.debug("Tag {} was updated concurrently", tagEntity.getId());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, tagEntity.getId().toString()))
+            .eTag(eTag(result))
             .body(result);
     }
 
@@ -97,14 +135,77 @@ public class TagResource {
      *
      * @param pageable the pagination information.
      * @param criteria the criteria which the requested entities should match.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of tags in body.
+     * @param count how to count the tags, among exact (the default), window, none and estimate.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of tags in body,
+     * or with status {@code 400 (Bad Request)} if the count mode is unknown.
      */
     @GetMapping("/tags")
-    public ResponseEntity<List<TagEntity>> getAllTags(TagCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<TagEntity>> getAllTags(TagCriteria criteria, Pageable pageable,
+            @RequestParam(required = false) String count) {
         log.debug("REST request to get Tags by criteria: {}", criteria);
-        Page<TagEntity> page = tagQueryService.findByCriteria(criteria, pageable);
+        CountMode countMode = SlicePaginationUtil.countMode(count, ENTITY_NAME);
+        Slice<TagEntity> page = tagQueryService.findByCriteria(criteria, pageable, countMode);
+        HttpHeaders headers = SlicePaginationUtil.generateSliceHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, tag -> tag.getId() + ":" + eTag(tag))).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /tags?after=:cursor} : get the tags after a cursor, with keyset pagination.
+     * <p>
+     * An empty cursor reads the first tags, the {@code Link} header points to the next ones. The sort properties
+     * must be required fields, the id completes them.
+     *
+     * @param pageable the size and sort of the tags, the page number is ignored.
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the previous tags, empty for the first ones.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of tags in body,
+     * or with status {@code 400 (Bad Request)} if the cursor or the sort is invalid.
+     */
+    @GetMapping(value = "/tags", params = KeysetPaginationUtil.AFTER)
+    public ResponseEntity<List<TagEntity>> getTagsAfter(TagCriteria criteria, Pageable pageable,
+            @RequestParam String after) {
+        log.debug("REST request to get Tags by criteria: {} after: {}", criteria, after);
+        KeysetSlice<TagEntity> slice;
+        try {
+            slice = tagQueryService.findByCriteriaAfter(criteria, pageable, after);
+        } catch (InvalidDataAccessApiUsageException e) {
+            throw new BadRequestAlertException(e.getMostSpecificCause().getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), slice);
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(slice, tag -> tag.getId() + ":" + eTag(tag))).body(slice.getContent());
+    }
+
+    /**
+     * {@code GET  /tags?fields=:fields} : get some fields of all the tags, reading only their columns.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the fields to read, a comma separated list of column fields of the tag.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of field values of the tags in body,
+     * or with status {@code 400 (Bad Request)} if a field cannot be read.
+     */
+    @GetMapping(value = "/tags", params = {"fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<Map<String, Object>>> getAllTagsFields(TagCriteria criteria, Pageable pageable,
+            @RequestParam String fields) {
+        log.debug("REST request to get fields {} of Tags by criteria: {}", fields, criteria);
+        Set<String> selectedFields = SelectionUtil.fields(fields, ENTITY_NAME, FIELDS);
+        Page<Map<String, Object>> page = tagQueryService.findFieldsByCriteria(criteria, pageable, selectedFields);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, Object::toString)).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /tags?ids=:ids} : get the tags with ids, in one statement for those not cached.
+     *
+     * @param ids a comma separated list of the ids of the tags, at most {@link SelectionUtil#MAX_IDS}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of the tags which exist in body,
+     * in the order of their ids, or with status {@code 400 (Bad Request)} if the ids are invalid.
+     */
+    @GetMapping(value = "/tags", params = {"ids", "!fields", "!" + KeysetPaginationUtil.AFTER})
+    public ResponseEntity<List<TagEntity>> getTagsById(@RequestParam String ids) {
+        log.debug("REST request to get Tags : {}", ids);
+        List<TagEntity> result = tagService.findAllById(SelectionUtil.ids(ids, ENTITY_NAME));
+        return ResponseEntity.ok().eTag(ETagUtil.weak(result, tag -> tag.getId() + ":" + eTag(tag))).body(result);
     }
 
     /**
@@ -123,13 +224,15 @@ public class TagResource {
      * {@code GET  /tags/:id} : get the "id" tag.
      *
      * @param id the id of the tagEntity to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the tagEntity, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the tagEntity, or with status {@code 304 (Not Modified)}
+     * if it matches {@code If-None-Match}, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/tags/{id}")
     public ResponseEntity<TagEntity> getTag(@PathVariable Long id) {
         log.debug("REST request to get Tag : {}", id);
         Optional<TagEntity> tagEntity = tagService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(tagEntity);
+        return tagEntity.map(result -> ResponseEntity.ok().eTag(eTag(result)).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
     /**
@@ -158,6 +261,10 @@ public class TagResource {
         log.debug("REST request to search for a page of Tags for query {}", query);
         Page<TagEntity> page = tagService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(ETagUtil.weak(page, tag -> tag.getId() + ":" + eTag(tag))).body(page.getContent());
         }
+
+    private static String eTag(TagEntity tagEntity) {
+        return ETagUtil.strong(tagEntity.getVersion());
+    }
 }
@@ -0,0 +1,124 @@
+package com.bonlimousin.content.web.rest.util;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Utility class for entity tags derived from the {@code @Version} of the entities making up a representation.
+ */
+public final class ETagUtil {
+
+    private ETagUtil() {
+    }
+
+    /**
+     * Build a strong entity tag from the versions of the entities making up a representation.
+     *
+     * @param versions the versions, {@code null} for an absent entity.
+     * @return the quoted entity tag.
+     */
+    public static String strong(Object... versions) {
+        return Arrays.stream(versions)
+            .map(String::valueOf)
+            .collect(Collectors.joining("-", "\"", "\""));
+    }
+
+    /**
+     * Build a weak entity tag for a page of entities from the page metadata and the entity tags of its content.
+     *
+     * @param page the page.
+     * @param eTag the function computing the entity tag of an entity of the page.
+     * @param <T> the type of the entities.
+     * @return the weak entity tag.
+     */
+    public static <T> String weak(Page<T> page, Function<? super T, String> eTag) {
+        Stream<Object> metadata = Stream.of(page.getNumber(), page.getSize(), page.getTotalElements());
+        return "W/\"" + digest(Stream.concat(metadata, page.getContent().stream().map(eTag))) + "\"";
+    }
+
+    /**
+     * Build a weak entity tag for a slice of entities from its extent and the entity tags of its content.
+     *
+     * @param slice the slice, read without counting the entities unless it is a page.
+     * @param eTag the function computing the entity tag of an entity of the slice.
+     * @param <T> the type of the entities.
+     * @return the weak entity tag.
+     */
+    public static <T> String weak(Slice<T> slice, Function<? super T, String> eTag) {
+        if (slice instanceof Page) {
+            return weak((Page<T>) slice, eTag);
+        }
+        Stream<Object> metadata = Stream.of(slice.getSize(), slice.hasNext());
+        return "W/\"" + digest(Stream.concat(metadata, slice.getContent().stream().map(eTag))) + "\"";
+    }
+
+    /**
+     * Build a weak entity tag for a list of entities from the entity tags of its content.
+     *
+     * @param entities the entities.
+     * @param eTag the function computing the entity tag of an entity of the list.
+     * @param <T> the type of the entities.
+     * @return the weak entity tag.
+     */
+    public static <T> String weak(List<T> entities, Function<? super T, String> eTag) {
+        return "W/\"" + digest(entities.stream().map(eTag)) + "\"";
+    }
+
+    /**
+     * Digest the parts of a representation, e.g. the ids and versions of the entities of a collection.
+     *
+     * @param parts the parts of the representation, in order.
+     * @return the hex encoded digest.
+     */
+    public static String digest(Stream<?> parts) {
+        String joined = parts.map(String::valueOf).collect(Collectors.joining(","));
+        return DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Build the strong entity tag of a content coding of a representation, distinct from the entity tag of the
+     * representation itself, as strong validators differ between content codings.
+     *
+     * @param eTag the quoted strong entity tag of the representation.
+     * @param contentCoding the content coding, e.g. {@code gzip}.
+     * @return the quoted entity tag of the coded representation.
+     */
+    public static String coded(String eTag, String contentCoding) {
+        return eTag.substring(0, eTag.length() - 1) + "-" + contentCoding + "\"";
+    }
+
+    /**
+     * Check an {@code If-None-Match} header against the entity tags of a representation, using the weak comparison.
+     *
+     * @param ifNoneMatch the header value, a list of entity tags or {@code *}.
+     * @param eTags the current entity tags of the representation, one per content coding.
+     * @return {@code true} if one of the entity tags matches, so that the representation is not modified.
+     */
+    public static boolean matchesWeakly(String ifNoneMatch, String... eTags) {
+        return Arrays.stream(ifNoneMatch.split(","))
+            .map(String::trim)
+            .map(candidate -> candidate.startsWith("W/") ? candidate.substring(2) : candidate)
+            .anyMatch(candidate -> candidate.equals("*") || Arrays.asList(eTags).contains(candidate));
+    }
+
+    /**
+     * Check an {@code If-Match} header against the current entity tag, using the strong comparison.
+     *
+     * @param ifMatch the header value, a list of entity tags or {@code *}.
+     * @param eTag the current strong entity tag.
+     * @return {@code true} if the precondition holds.
+     */
+    public static boolean matches(String ifMatch, String eTag) {
+        return Arrays.stream(ifMatch.split(","))
+            .map(String::trim)
+            .anyMatch(candidate -> candidate.equals("*") || candidate.equals(eTag));
+    }
+}
@@ -0,0 +1,40 @@
+package com.bonlimousin.content.web.rest.util;
+
+import com.bonlimousin.content.repository.KeysetSlice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Utility class for handling keyset pagination, the counterpart of {@link io.github.jhipster.web.util.PaginationUtil}
+ * for slices read after a cursor.
+ */
+public final class KeysetPaginationUtil {
+
+    /**
+     * The request parameter carrying the cursor.
+     */
+    public static final String AFTER = "after";
+
+    private KeysetPaginationUtil() {
+    }
+
+    /**
+     * Generate the {@code Link} header of a slice, pointing to the next slice if there is one.
+     * <p>
+     * There is no total count header: counting the entities would cost as much as reading them all.
+     *
+     * @param uriBuilder the builder of the current request URI.
+     * @param slice the slice.
+     * @return the HTTP headers.
+     */
+    public static HttpHeaders generateKeysetHttpHeaders(UriComponentsBuilder uriBuilder, KeysetSlice<?> slice) {
+        HttpHeaders headers = new HttpHeaders();
+        if (slice.getNextCursor() != null) {
+            String next = uriBuilder.replaceQueryParam(AFTER, slice.getNextCursor())
+                .replaceQueryParam("page")
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+}
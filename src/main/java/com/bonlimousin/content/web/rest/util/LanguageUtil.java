@@ -0,0 +1,52 @@
+package com.bonlimousin.content.web.rest.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Utility class for the languages requested by a client, through a {@code lang} parameter or {@code Accept-Language}.
+ */
+public final class LanguageUtil {
+
+    private LanguageUtil() {
+    }
+
+    /**
+     * List the languages requested by a client, the {@code lang} parameter first, in order of preference.
+     *
+     * @param lang a comma separated list of language tags, or {@code null}.
+     * @param acceptLanguage the {@code Accept-Language} header, or {@code null}.
+     * @return the primary language subtags, lower case and without duplicates.
+     * @throws IllegalArgumentException if the {@code Accept-Language} header is malformed.
+     */
+    public static List<String> requestedLanguages(String lang, String acceptLanguage) {
+        List<String> languages = new ArrayList<>();
+        if (lang != null) {
+            Arrays.stream(lang.split(","))
+                .map(LanguageUtil::primaryLanguage)
+                .forEach(language -> add(languages, language));
+        }
+        if (acceptLanguage != null && !acceptLanguage.trim().isEmpty()) {
+            // Ranges are sorted by descending weight, and ranges weighted 0 are dropped
+            Locale.LanguageRange.parse(acceptLanguage).stream()
+                .filter(range -> range.getWeight() > 0)
+                .map(range -> primaryLanguage(range.getRange()))
+                .forEach(language -> add(languages, language));
+        }
+        return languages;
+    }
+
+    private static String primaryLanguage(String tag) {
+        String language = tag.trim().toLowerCase(Locale.ROOT).replace('_', '-');
+        int separator = language.indexOf('-');
+        return separator < 0 ? language : language.substring(0, separator);
+    }
+
+    private static void add(List<String> languages, String language) {
+        if (!language.isEmpty() && !language.equals("*") && !languages.contains(language)) {
+            languages.add(language);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.bonlimousin.content.web.rest.util;
+
+import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Utility class for the parameters selecting what to read of the requested entities: the relations to load with
+ * {@code include}, the fields to read with {@code fields}, the entities to read with {@code ids}.
+ */
+public final class SelectionUtil {
+
+    /**
+     * The maximum number of entities which may be read through the {@code ids} parameter.
+     */
+    public static final int MAX_IDS = 1000;
+
+    private SelectionUtil() {
+    }
+
+    /**
+     * Parse an {@code include} parameter.
+     *
+     * @param include a comma separated list of relation names, or {@code null}.
+     * @param entityName the name of the requested entity, for error reporting.
+     * @param relations the relations which may be included.
+     * @return the relations to include, without duplicates, or {@code null} if the parameter is absent.
+     * @throws BadRequestAlertException if a relation may not be included.
+     */
+    public static Set<String> relations(String include, String entityName, String... relations) {
+        return parse(include, entityName, "invalidinclude", "Cannot include ", relations);
+    }
+
+    /**
+     * Parse a {@code fields} parameter.
+     *
+     * @param fields a comma separated list of field names, or {@code null}.
+     * @param entityName the name of the requested entity, for error reporting.
+     * @param allowed the fields which may be read.
+     * @return the fields to read, without duplicates, or {@code null} if the parameter is absent.
+     * @throws BadRequestAlertException if a field may not be read or none is requested.
+     */
+    public static Set<String> fields(String fields, String entityName, String... allowed) {
+        Set<String> result = parse(fields, entityName, "invalidfields", "Cannot read ", allowed);
+        if (result != null && result.isEmpty()) {
+            throw new BadRequestAlertException("No field to read", entityName, "invalidfields");
+        }
+        return result;
+    }
+
+    /**
+     * Parse an {@code ids} parameter.
+     *
+     * @param ids a comma separated list of ids.
+     * @param entityName the name of the requested entity, for error reporting.
+     * @return the ids, in order, without duplicates.
+     * @throws BadRequestAlertException if an id is not a number, or there are more than {@link #MAX_IDS} ids.
+     */
+    public static List<Long> ids(String ids, String entityName) {
+        Set<Long> result = new LinkedHashSet<>();
+        for (String id : ids.split(",")) {
+            if (id.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                result.add(Long.valueOf(id.trim()));
+            } catch (NumberFormatException e) {
+                throw new BadRequestAlertException("Invalid id " + id.trim(), entityName, "invalidids");
+            }
+        }
+        if (result.size() > MAX_IDS) {
+            throw new BadRequestAlertException("Cannot read more than " + MAX_IDS + " ids", entityName, "invalidids");
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static Set<String> parse(String value, String entityName, String errorKey, String message, String... names) {
+        if (value == null) {
+            return null;
+        }
+        List<String> allowed = Arrays.asList(names);
+        Set<String> result = Arrays.stream(value.split(","))
+            .map(String::trim)
+            .filter(name -> !name.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        for (String name : result) {
+            if (!allowed.contains(name)) {
+                throw new BadRequestAlertException(message + name + ", only " + allowed, entityName, errorKey);
+            }
+        }
+        return result;
+    }
+}
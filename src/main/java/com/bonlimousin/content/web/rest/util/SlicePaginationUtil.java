@@ -0,0 +1,86 @@
+package com.bonlimousin.content.web.rest.util;
+
+import com.bonlimousin.content.repository.CountMode;
+import com.bonlimousin.content.repository.EstimatedSlice;
+import com.bonlimousin.content.web.rest.errors.BadRequestAlertException;
+import io.github.jhipster.web.util.PaginationUtil;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Utility class for handling pagination when the entities may not be counted, the counterpart of
+ * {@link PaginationUtil} for slices.
+ */
+public final class SlicePaginationUtil {
+
+    private static final String HEADER_X_TOTAL_COUNT_ESTIMATE = "X-Total-Count-Estimate";
+
+    private SlicePaginationUtil() {
+    }
+
+    /**
+     * Parse a {@code count} parameter.
+     *
+     * @param count how to count the entities, among exact, window, none and estimate, or {@code null}.
+     * @param entityName the name of the requested entity, for error reporting.
+     * @return the count mode, {@link CountMode#EXACT} if the parameter is absent.
+     * @throws BadRequestAlertException if the count mode is unknown.
+     */
+    public static CountMode countMode(String count, String entityName) {
+        if (count == null) {
+            return CountMode.EXACT;
+        }
+        try {
+            return CountMode.valueOf(count.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Cannot count " + count + ", only exact, window, none or estimate",
+                entityName, "invalidcount");
+        }
+    }
+
+    /**
+     * Generate the pagination headers of a slice: those of {@link PaginationUtil} for a page, otherwise the links
+     * to the first, previous and next slices and the estimated number of entities if there is one.
+     *
+     * @param uriBuilder the builder of the current request URI.
+     * @param slice the slice.
+     * @param <T> the type of the entities.
+     * @return the HTTP headers.
+     */
+    public static <T> HttpHeaders generateSliceHttpHeaders(UriComponentsBuilder uriBuilder, Slice<T> slice) {
+        if (slice instanceof Page) {
+            return PaginationUtil.generatePaginationHttpHeaders(uriBuilder, (Page<T>) slice);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (slice instanceof EstimatedSlice) {
+            headers.add(HEADER_X_TOTAL_COUNT_ESTIMATE, Long.toString(((EstimatedSlice<T>) slice).getEstimatedTotal()));
+        }
+        int pageNumber = slice.getNumber();
+        int pageSize = slice.getSize();
+        List<String> links = new ArrayList<>();
+        if (slice.hasNext()) {
+            links.add(link(uriBuilder, pageNumber + 1, pageSize, "next"));
+        }
+        if (pageNumber > 0) {
+            links.add(link(uriBuilder, pageNumber - 1, pageSize, "prev"));
+        }
+        links.add(link(uriBuilder, 0, pageSize, "first"));
+        headers.add(HttpHeaders.LINK, String.join(",", links));
+        return headers;
+    }
+
+    private static String link(UriComponentsBuilder uriBuilder, int pageNumber, int pageSize, String relType) {
+        String uri = uriBuilder.replaceQueryParam("page", Integer.toString(pageNumber))
+            .replaceQueryParam("size", Integer.toString(pageSize))
+            .toUriString()
+            .replace(",", "%2C")
+            .replace(";", "%3B");
+        return "<" + uri + ">; rel=\"" + relType + "\"";
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Utility classes for the REST controllers.
+ */
+package com.bonlimousin.content.web.rest.util;
@@ -0,0 +1,115 @@
+package com.bonlimousin.content.config;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark of the conversions of the {@link EntityMapper} between search documents and maps, against the JSON string
+ * round-trip they replace, on documents of the size of the content.
+ * <p>
+ * The median time and the bytes allocated per conversion are logged per strategy. The benchmarks are not part of the
+ * default build, they run with the {@code benchmark} Maven profile.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class EntityMapperBenchmarkIT {
+
+    private static final int WARMUP = 2000;
+
+    private static final int RUNS = 5000;
+
+    private final Logger log = LoggerFactory.getLogger(EntityMapperBenchmarkIT.class);
+
+    @Autowired
+    private EntityMapper entityMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void convertDocuments() {
+        FragmentDocument fragment = FragmentDocument.of(EntityMapperIT.createFragment());
+        LocalizedDocument localized = LocalizedDocument.of(EntityMapperIT.createLocalized());
+
+        for (Object document : Arrays.asList(fragment, localized)) {
+            String name = document.getClass().getSimpleName();
+            Map<String, Object> source = entityMapper.mapObject(document);
+            Result mapRoundTrip = measure(name + ".mapObject round-trip", () -> roundTripMapObject(document));
+            Result map = measure(name + ".mapObject", () -> entityMapper.mapObject(document));
+            Result readRoundTrip = measure(name + ".readObject round-trip", () -> roundTripReadObject(source, document.getClass()));
+            Result read = measure(name + ".readObject", () -> entityMapper.readObject(source, document.getClass()));
+            log.info("{}", mapRoundTrip);
+            log.info("{}", map);
+            log.info("{}", readRoundTrip);
+            log.info("{}", read);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> roundTripMapObject(Object document) {
+        try {
+            return objectMapper.readValue(entityMapper.mapToString(document), HashMap.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T roundTripReadObject(Map<String, Object> source, Class<T> type) {
+        try {
+            return entityMapper.mapToObject(entityMapper.mapToString(source), type);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Result measure(String name, Supplier<Object> conversion) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            conversion.get();
+        }
+        long[] nanos = new long[RUNS];
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            conversion.get();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        Arrays.sort(nanos);
+        return new Result(name, nanos[RUNS / 2], allocated / RUNS);
+    }
+
+    private static class Result {
+
+        private final String name;
+
+        private final long medianNanos;
+
+        private final long bytesPerOperation;
+
+        Result(String name, long medianNanos, long bytesPerOperation) {
+            this.name = name;
+            this.medianNanos = medianNanos;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s median=%dns allocated=%dB/op", name, medianNanos, bytesPerOperation);
+        }
+    }
+}
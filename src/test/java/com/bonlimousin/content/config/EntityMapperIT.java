@@ -0,0 +1,95 @@
+package com.bonlimousin.content.config;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.domain.enumeration.UserRole;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the {@link EntityMapper} of the search documents.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class EntityMapperIT {
+
+    @Autowired
+    private EntityMapper entityMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void convertDocumentsLikeTheJsonRoundTrip() throws Exception {
+        FragmentDocument fragment = FragmentDocument.of(createFragment());
+        LocalizedDocument localized = LocalizedDocument.of(createLocalized());
+
+        for (Object document : Arrays.asList(fragment, localized)) {
+            Map<String, Object> source = entityMapper.mapObject(document);
+            Map<String, Object> roundTrip = objectMapper.readValue(entityMapper.mapToString(document), HashMap.class);
+            assertThat(objectMapper.readTree(entityMapper.mapToString(source)))
+                .isEqualTo(objectMapper.readTree(entityMapper.mapToString(roundTrip)));
+            assertThat(entityMapper.mapToString(entityMapper.readObject(source, document.getClass())))
+                .isEqualTo(entityMapper.mapToString(document));
+        }
+    }
+
+    static FragmentEntity createFragment() {
+        FragmentEntity fragment = new FragmentEntity()
+            .template(FragmentTemplate.V1)
+            .name("Limousin heifers at pasture")
+            .title("Our heifers are out on the summer pasture")
+            .ingress(paragraphs(1))
+            .body(paragraphs(12))
+            .caption("The heifers on the northern pasture, June")
+            .orderNo(3)
+            .visibility(UserRole.ROLE_ANONYMOUS)
+            .story(new StoryEntity().name("Summer"));
+        fragment.setId(1042L);
+        fragment.getStory().setId(17L);
+        for (long i = 1; i <= 6; i++) {
+            TagEntity tag = new TagEntity().name("Tag " + i);
+            tag.setId(i);
+            fragment.addTag(tag);
+        }
+        return fragment;
+    }
+
+    static LocalizedEntity createLocalized() {
+        LocalizedEntity localized = new LocalizedEntity()
+            .i18n("sv")
+            .title("Våra kvigor är ute på sommarbete")
+            .ingress(paragraphs(1))
+            .body(paragraphs(12))
+            .caption("Kvigorna på norra betet, juni")
+            .visibility(UserRole.ROLE_ANONYMOUS)
+            .fragment(createFragment());
+        localized.setId(2084L);
+        return localized;
+    }
+
+    private static String paragraphs(int count) {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            html.append("<p>The Limousin is a hardy breed, <strong>well suited</strong> to grazing all year round. ")
+                .append("Our herd is kept on natural pastures, and the calves stay with their mothers until weaning ")
+                .append("in the autumn, when they are weighed and registered with the breed association.</p>\n");
+        }
+        return html.toString();
+    }
+}
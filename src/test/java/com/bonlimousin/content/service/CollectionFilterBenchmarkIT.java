@@ -0,0 +1,193 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.config.ApplicationProperties.Query.CollectionFilter;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.repository.FieldProjector;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.KeysetPager;
+import com.bonlimousin.content.repository.PageReader;
+import com.bonlimousin.content.repository.RelationFetcher;
+import com.bonlimousin.content.repository.ScrollReader;
+import com.bonlimousin.content.repository.search.FragmentSearchRepository;
+import com.bonlimousin.content.service.dto.FragmentCriteria;
+import com.bonlimousin.content.web.rest.StoryResourceIT;
+import io.github.jhipster.service.filter.LongFilter;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark of the strategies filtering fragments on their tags, on a generated dataset.
+ * <p>
+ * Each fragment has several of a few tags, so that a filter on some tags matches most fragments through several of
+ * their tags. The rows read, the count and the median time to read a page with its count are logged per strategy.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class CollectionFilterBenchmarkIT {
+
+    private static final int FRAGMENTS = 2000;
+
+    private static final int TAGS = 10;
+
+    private static final int TAGS_PER_FRAGMENT = 4;
+
+    private static final int RUNS = 15;
+
+    private final Logger log = LoggerFactory.getLogger(CollectionFilterBenchmarkIT.class);
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private FragmentRepository fragmentRepository;
+
+    @Autowired
+    private FragmentSearchRepository fragmentSearchRepository;
+
+    @Autowired
+    private RelationFetcher relationFetcher;
+
+    @Autowired
+    private FieldProjector fieldProjector;
+
+    @Autowired
+    private KeysetPager keysetPager;
+
+    @Autowired
+    private PageReader pageReader;
+
+    @Autowired
+    private ScrollReader scrollReader;
+
+    @Test
+    @Transactional
+    public void filterFragmentsOnTags() {
+        List<TagEntity> tags = generateDataset();
+        FragmentCriteria criteria = new FragmentCriteria();
+        LongFilter tagId = new LongFilter();
+        tagId.setIn(Arrays.asList(tags.get(0).getId(), tags.get(1).getId(), tags.get(2).getId()));
+        criteria.setTagId(tagId);
+
+        Result join = measure(CollectionFilter.JOIN, criteria);
+        Result semiJoin = measure(CollectionFilter.SEMI_JOIN, criteria);
+        log.info("Filtering {} fragments on 3 of their {} tags, {} each", FRAGMENTS, TAGS, TAGS_PER_FRAGMENT);
+        log.info("{}", join);
+        log.info("{}", semiJoin);
+
+        // Each matching fragment is read once, and counted once
+        assertThat(semiJoin.rows).isEqualTo(semiJoin.fragments);
+        assertThat(semiJoin.count).isEqualTo(semiJoin.fragments);
+        assertThat(join.fragments).isEqualTo(semiJoin.fragments);
+        assertThat(join.rows).isGreaterThan(join.fragments);
+        assertThat(join.count).isEqualTo(join.rows);
+    }
+
+    private List<TagEntity> generateDataset() {
+        StoryEntity story = StoryResourceIT.createEntity(em);
+        em.persist(story);
+        List<TagEntity> tags = new ArrayList<>();
+        for (int i = 0; i < TAGS; i++) {
+            TagEntity tag = new TagEntity().name("Tag " + i);
+            em.persist(tag);
+            tags.add(tag);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < FRAGMENTS; i++) {
+            FragmentEntity fragment = new FragmentEntity()
+                .template(FragmentTemplate.V1)
+                .name("Fragment " + i)
+                .orderNo(i)
+                .story(story);
+            List<TagEntity> shuffled = new ArrayList<>(tags);
+            Collections.shuffle(shuffled, random);
+            shuffled.subList(0, TAGS_PER_FRAGMENT).forEach(fragment::addTag);
+            em.persist(fragment);
+            if (i % 100 == 99) {
+                em.flush();
+                em.clear();
+                story = em.merge(story);
+                tags = tags.stream().map(em::merge).collect(Collectors.toList());
+            }
+        }
+        em.flush();
+        em.clear();
+        return tags;
+    }
+
+    private Result measure(CollectionFilter collectionFilter, FragmentCriteria criteria) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getQuery().setCollectionFilter(collectionFilter);
+        FragmentQueryService fragmentQueryService = new FragmentQueryService(fragmentRepository, fragmentSearchRepository,
+            relationFetcher, fieldProjector, keysetPager, pageReader, scrollReader, applicationProperties);
+
+        List<FragmentEntity> rows = fragmentQueryService.findByCriteria(criteria);
+        long fragments = rows.stream().map(FragmentEntity::getId).distinct().count();
+        long count = fragmentQueryService.countByCriteria(criteria);
+        List<FragmentEntity> keysetPage = fragmentQueryService
+            .findByCriteriaAfter(criteria, PageRequest.of(0, 50, Sort.by("id")), null).getContent();
+        assertThat(keysetPage).extracting(FragmentEntity::getId).doesNotHaveDuplicates();
+        Page<Map<String, Object>> fieldPage = fragmentQueryService
+            .findFieldsByCriteria(criteria, PageRequest.of(0, 50, Sort.by("id")), Collections.singletonList("id"));
+        assertThat(fieldPage.getContent()).extracting(values -> values.get("id")).doesNotHaveDuplicates();
+        assertThat(fieldPage.getTotalElements()).isEqualTo(fragments);
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            em.clear();
+            long start = System.nanoTime();
+            Page<FragmentEntity> page = fragmentQueryService.findByCriteria(criteria, PageRequest.of(20, 20, Sort.by("id")));
+            nanos[i] = System.nanoTime() - start;
+            assertThat(page.getContent()).isNotEmpty();
+        }
+        Arrays.sort(nanos);
+        return new Result(collectionFilter, rows.size(), fragments, count, nanos[RUNS / 2] / 1000);
+    }
+
+    private static class Result {
+
+        private final CollectionFilter collectionFilter;
+
+        private final long rows;
+
+        private final long fragments;
+
+        private final long count;
+
+        private final long medianMicros;
+
+        Result(CollectionFilter collectionFilter, long rows, long fragments, long count, long medianMicros) {
+            this.collectionFilter = collectionFilter;
+            this.rows = rows;
+            this.fragments = fragments;
+            this.count = count;
+            this.medianMicros = medianMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s rows=%d fragments=%d count=%d page with count=%dus",
+                collectionFilter, rows, fragments, count, medianMicros);
+        }
+    }
+}
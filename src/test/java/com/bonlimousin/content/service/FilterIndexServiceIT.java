@@ -0,0 +1,76 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.service.dto.FilterIndexDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link FilterIndexService}.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class FilterIndexServiceIT {
+
+    @Autowired
+    private FilterIndexService filterIndexService;
+
+    @Test
+    public void findFilterIndexes() throws Exception {
+        List<FilterIndexDTO> filterIndexes = filterIndexService.findFilterIndexes();
+
+        assertThat(filterIndexes).extracting(FilterIndexDTO::getCriteria)
+            .containsOnly("FragmentCriteria", "LocalizedCriteria", "StoryCriteria", "TagCriteria");
+        assertThat(filterIndex(filterIndexes, "FragmentCriteria", "storyId"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.getTable()).isEqualTo("bon_content_fragment");
+                assertThat(filterIndex.getColumn()).isEqualTo("story_id");
+                assertThat(filterIndex.isRelation()).isTrue();
+                assertThat(filterIndex.isIndexed()).isTrue();
+            });
+        assertThat(filterIndex(filterIndexes, "FragmentCriteria", "tagId"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.getTable()).isEqualTo("bon_content_fragment_tag");
+                assertThat(filterIndex.getColumn()).isEqualTo("fragment_id");
+                assertThat(filterIndex.isIndexed()).isTrue();
+            });
+        assertThat(filterIndex(filterIndexes, "TagCriteria", "fragmentId"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.getTable()).isEqualTo("bon_content_fragment_tag");
+                assertThat(filterIndex.getColumn()).isEqualTo("tag_id");
+                assertThat(filterIndex.isIndexed()).isTrue();
+            });
+        assertThat(filterIndex(filterIndexes, "StoryCriteria", "fragmentId"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.getTable()).isEqualTo("bon_content_fragment");
+                assertThat(filterIndex.getColumn()).isEqualTo("story_id");
+                assertThat(filterIndex.isIndexed()).isTrue();
+            });
+        assertThat(filterIndex(filterIndexes, "LocalizedCriteria", "fragmentId"))
+            .hasValueSatisfying(filterIndex -> assertThat(filterIndex.isIndexed()).isTrue());
+        assertThat(filterIndex(filterIndexes, "StoryCriteria", "category"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.isRelation()).isFalse();
+                assertThat(filterIndex.isIndexed()).isTrue();
+            });
+        assertThat(filterIndex(filterIndexes, "StoryCriteria", "id"))
+            .hasValueSatisfying(filterIndex -> assertThat(filterIndex.isIndexed()).isTrue());
+        // The trigram indexes are only created on PostgreSQL
+        assertThat(filterIndex(filterIndexes, "FragmentCriteria", "title"))
+            .hasValueSatisfying(filterIndex -> {
+                assertThat(filterIndex.isIndexed()).isFalse();
+                assertThat(filterIndex.isTrigramIndexed()).isFalse();
+            });
+    }
+
+    private Optional<FilterIndexDTO> filterIndex(List<FilterIndexDTO> filterIndexes, String criteria, String filter) {
+        return filterIndexes.stream()
+            .filter(filterIndex -> filterIndex.getCriteria().equals(criteria) && filterIndex.getFilter().equals(filter))
+            .findFirst();
+    }
+}
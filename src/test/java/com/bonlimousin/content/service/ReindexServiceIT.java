@@ -0,0 +1,172 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.repository.SearchRebuildRepository;
+import com.bonlimousin.content.repository.TagRepository;
+import com.bonlimousin.content.service.dto.ReindexProgressDTO;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.indices.CreateIndex;
+import io.searchbox.indices.DeleteIndex;
+import io.searchbox.indices.aliases.GetAliases;
+import io.searchbox.indices.aliases.ModifyAliases;
+import io.searchbox.indices.settings.UpdateSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for {@link ReindexService}.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class ReindexServiceIT {
+
+    @Autowired
+    private ReindexService reindexService;
+
+    @Autowired
+    private SearchRebuildRepository searchRebuildRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @MockBean
+    private JestClient jestClient;
+
+    private final List<Action<?>> actions = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<TagEntity> tags = new ArrayList<>();
+
+    @BeforeEach
+    public void initTest() {
+        // More tags than read in one chunk
+        for (int i = 0; i < 5; i++) {
+            tags.add(tagRepository.save(new TagEntity().name("Reindexed tag " + i)));
+        }
+    }
+
+    @AfterEach
+    public void cleanup() {
+        tagRepository.deleteAll(tags);
+    }
+
+    @Test
+    public void reindexSwapsTheAliasToTheNewIndex() throws Exception {
+        mockElasticsearch(null);
+
+        List<ReindexProgressDTO> progress = reindexService.reindex();
+
+        ReindexProgressDTO tagProgress = tagProgress(progress);
+        assertThat(tagProgress.getState()).isEqualTo(ReindexProgressDTO.State.SWAPPED);
+        assertThat(tagProgress.getRebuildIndexName()).startsWith("tag_");
+        assertThat(tagProgress.getPartitions()).isBetween(1, 2);
+        assertThat(tagProgress.getDocuments()).isGreaterThanOrEqualTo(tags.size());
+        assertThat(tagProgress.getFinishedDate()).isNotNull();
+        assertThat(progress).extracting(ReindexProgressDTO::getIndexName)
+            .containsOnly("fragment", "localized", "story", "tag");
+        assertThat(reindexService.getProgress()).hasSameSizeAs(progress);
+
+        // The new indexes are created with the settings of their documents, and refresh disabled while loading
+        assertThat(payloads(CreateIndex.class)).contains("\"analysis\"").contains("\"refresh_interval\":\"-1\"");
+        assertThat(payloads(UpdateSettings.class)).contains("\"refresh_interval\":\"1s\"")
+            .contains("\"refresh_interval\":\"5s\"");
+        // The tags are created in the new index
+        String loaded = payloads(Bulk.class);
+        for (TagEntity tag : tags) {
+            assertThat(loaded).contains("Reindexed tag " + tags.indexOf(tag));
+        }
+        assertThat(loaded).contains("\"create\"").contains("\"_index\":\"" + tagProgress.getRebuildIndexName() + "\"");
+        // The alias is added to the new index, the current index created before the alias is removed
+        String swapped = payloads(ModifyAliases.class);
+        assertThat(swapped).contains("\"add\"").contains("\"index\":\"" + tagProgress.getRebuildIndexName() + "\"")
+            .contains("\"alias\":\"tag\"").contains("\"remove_index\":{\"index\":\"tag\"}");
+        assertThat(searchRebuildRepository.count()).isZero();
+    }
+
+    @Test
+    public void reindexKeepsTheCurrentIndexWhenLoadingFails() throws Exception {
+        mockElasticsearch("{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}");
+
+        ReindexProgressDTO tagProgress = tagProgress(reindexService.reindex());
+
+        assertThat(tagProgress.getState()).isEqualTo(ReindexProgressDTO.State.FAILED);
+        assertThat(tagProgress.getError()).contains("mapper_parsing_exception");
+        assertThat(payloads(ModifyAliases.class)).doesNotContain("\"alias\":\"tag\"");
+        assertThat(actions).filteredOn(action -> action instanceof DeleteIndex)
+            .extracting(action -> action.getURI(null))
+            .anySatisfy(uri -> assertThat(uri).contains(tagProgress.getRebuildIndexName()));
+        assertThat(searchRebuildRepository.count()).isZero();
+    }
+
+    private ReindexProgressDTO tagProgress(List<ReindexProgressDTO> progress) {
+        return progress.stream().filter(index -> index.getIndexName().equals("tag")).findFirst().get();
+    }
+
+    private String payloads(Class<?> type) {
+        return actions.stream().filter(type::isInstance)
+            .map(action -> String.valueOf(action.getData(new Gson())))
+            .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Answer all the requests as succeeded, each index exists without alias, and the bulk items fail with the error
+     * given, if any.
+     */
+    private void mockElasticsearch(String bulkItemError) throws Exception {
+        when(jestClient.execute(any())).thenAnswer(invocation -> {
+            Action<?> action = invocation.getArgument(0);
+            actions.add(action);
+            if (action instanceof Bulk) {
+                List<String> items = new ArrayList<>();
+                String[] lines = ((Bulk) action).getData(new Gson()).split("\n");
+                for (int i = 0; i < lines.length; i++) {
+                    JsonObject line = JsonParser.parseString(lines[i]).getAsJsonObject();
+                    String operation = line.keySet().iterator().next();
+                    JsonObject metadata = line.getAsJsonObject(operation);
+                    items.add("{\"" + operation + "\":{\"_index\":\"" + metadata.get("_index").getAsString() +
+                        "\",\"_type\":\"" + metadata.get("_type").getAsString() +
+                        "\",\"_id\":\"" + metadata.get("_id").getAsString() + "\"," +
+                        (bulkItemError != null && !operation.equals("delete") ? "\"status\":400,\"error\":" + bulkItemError
+                            : "\"status\":201") + "}}");
+                    if (!operation.equals("delete")) {
+                        i++;
+                    }
+                }
+                return result(new BulkResult(new Gson()), "{\"took\":1,\"errors\":false,\"items\":[" +
+                    String.join(",", items) + "]}");
+            }
+            if (action instanceof GetAliases) {
+                String index = action.getURI(null).split("/")[0];
+                return result(new JestResult(new Gson()), "{\"" + index + "\":{\"aliases\":{}}}");
+            }
+            return result(new JestResult(new Gson()), "{\"acknowledged\":true}");
+        });
+    }
+
+    private static <T extends JestResult> T result(T result, String json) {
+        result.setJsonString(json);
+        result.setJsonObject(JsonParser.parseString(json).getAsJsonObject());
+        result.setSucceeded(true);
+        result.setResponseCode(200);
+        return result;
+    }
+}
@@ -0,0 +1,342 @@
+package com.bonlimousin.content.service;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.config.ApplicationProperties;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.SearchOutboxEntity;
+import com.bonlimousin.content.domain.SearchRebuildEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
+import com.bonlimousin.content.repository.SearchRebuildRepository;
+import com.bonlimousin.content.repository.StoryRepository;
+import com.bonlimousin.content.repository.TagRepository;
+import com.bonlimousin.content.web.rest.StoryResourceIT;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for {@link SearchOutboxService}.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+public class SearchOutboxServiceIT {
+
+    private static final long MISSING_ID = Long.MAX_VALUE;
+
+    @Autowired
+    private SearchOutboxService searchOutboxService;
+
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
+    @Autowired
+    private SearchRebuildRepository searchRebuildRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private StoryRepository storyRepository;
+
+    @Autowired
+    private FragmentRepository fragmentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @MockBean
+    private JestClient jestClient;
+
+    private TagEntity tagEntity;
+
+    private StoryEntity storyEntity;
+
+    private FragmentEntity fragmentEntity;
+
+    @BeforeEach
+    public void initTest() {
+        searchOutboxRepository.deleteAll();
+        tagEntity = tagRepository.save(new TagEntity().name("Outbox tag"));
+        // The tag is updated twice, then a missing tag is deleted
+        new TransactionTemplate(transactionManager).execute(status -> {
+            searchOutboxService.enqueue(TagEntity.class, tagEntity.getId());
+            searchOutboxService.enqueue(TagEntity.class, tagEntity.getId());
+            searchOutboxService.enqueue(TagEntity.class, MISSING_ID);
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void cleanup() {
+        searchOutboxRepository.deleteAll();
+        searchRebuildRepository.deleteAll();
+        if (fragmentEntity != null) {
+            fragmentRepository.deleteById(fragmentEntity.getId());
+            storyRepository.deleteById(storyEntity.getId());
+        }
+        tagRepository.deleteById(tagEntity.getId());
+    }
+
+    @Test
+    public void flushIndexesEachDocumentOnce() throws Exception {
+        when(jestClient.execute(any(Bulk.class))).thenReturn(bulkResult(
+            "{\"index\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":200}}",
+            "{\"delete\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}"));
+
+        searchOutboxService.flush();
+
+        // One bulk request, indexing the tag once from its current state and deleting the missing tag
+        ArgumentCaptor<Bulk> bulk = ArgumentCaptor.forClass(Bulk.class);
+        verify(jestClient, times(1)).execute(bulk.capture());
+        String[] lines = bulk.getValue().getData(new Gson()).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).contains("\"index\"").contains("\"" + tagEntity.getId() + "\"");
+        assertThat(lines[1]).contains("Outbox tag").doesNotContain("\"version\"");
+        assertThat(lines[2]).contains("\"delete\"").contains("\"" + MISSING_ID + "\"");
+        assertThat(searchOutboxRepository.count()).isZero();
+        assertThat(meterRegistry.get("search.outbox.lag").gauge().value()).isZero();
+    }
+
+    @Test
+    public void flushWritesToTheRebuiltIndex() throws Exception {
+        searchRebuildRepository.save(new SearchRebuildEntity().indexName("tag").rebuildIndexName("tag_rebuilt")
+            .startedDate(Instant.now()));
+        when(jestClient.execute(any(Bulk.class))).thenReturn(bulkResult(
+            "{\"index\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":200}}",
+            "{\"index\":{\"_index\":\"tag_rebuilt\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":201}}",
+            "{\"delete\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}",
+            "{\"delete\":{\"_index\":\"tag_rebuilt\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}"));
+
+        searchOutboxService.flush();
+
+        // Each document is written to the index and to the index being rebuilt
+        ArgumentCaptor<Bulk> bulk = ArgumentCaptor.forClass(Bulk.class);
+        verify(jestClient, times(1)).execute(bulk.capture());
+        String[] lines = bulk.getValue().getData(new Gson()).split("\n");
+        assertThat(lines).hasSize(6);
+        assertThat(lines[0]).contains("\"_index\":\"tag\"");
+        assertThat(lines[2]).contains("\"_index\":\"tag_rebuilt\"");
+        assertThat(lines[4]).contains("\"delete\"").contains("\"_index\":\"tag\"");
+        assertThat(lines[5]).contains("\"delete\"").contains("\"_index\":\"tag_rebuilt\"");
+        assertThat(searchOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    public void flushRetriesFailedDocuments() throws Exception {
+        when(jestClient.execute(any(Bulk.class))).thenReturn(bulkResult(
+            "{\"index\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":429," +
+                "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}}}",
+            "{\"delete\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}"));
+
+        searchOutboxService.flush();
+
+        // The entries of the failed document are kept for a later attempt
+        List<SearchOutboxEntity> entries = searchOutboxRepository.findAll();
+        assertThat(entries).hasSize(2).allSatisfy(entry -> {
+            assertThat(entry.getEntityId()).isEqualTo(tagEntity.getId());
+            assertThat(entry.getAttempts()).isEqualTo(1);
+            assertThat(entry.getNextAttemptDate()).isAfter(Instant.now());
+        });
+        assertThat(meterRegistry.get("search.outbox.lag").gauge().value()).isGreaterThanOrEqualTo(0);
+
+        // They are not due yet
+        searchOutboxService.flush();
+        verify(jestClient, times(1)).execute(any(Bulk.class));
+    }
+
+    @Test
+    public void flushRetriesWhenElasticsearchIsUnavailable() throws Exception {
+        when(jestClient.execute(any(Bulk.class))).thenThrow(new IOException("Connection refused"));
+
+        searchOutboxService.flush();
+
+        assertThat(searchOutboxRepository.findAll()).hasSize(3)
+            .allSatisfy(entry -> assertThat(entry.getAttempts()).isEqualTo(1));
+    }
+
+    @Test
+    public void flushUpdatesThePartsOfTheDocuments() throws Exception {
+        enqueueFragmentTags();
+        when(jestClient.execute(any(Bulk.class))).thenReturn(bulkResult(
+            "{\"index\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":200}}",
+            "{\"delete\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}",
+            "{\"update\":{\"_index\":\"fragment\",\"_type\":\"fragment\",\"_id\":\"" + fragmentEntity.getId() + "\",\"status\":200}}"));
+
+        searchOutboxService.flush();
+
+        // The tags of the fragment are updated, the fragment of the missing id is left to its own deletion
+        ArgumentCaptor<Bulk> bulk = ArgumentCaptor.forClass(Bulk.class);
+        verify(jestClient, times(1)).execute(bulk.capture());
+        String[] lines = bulk.getValue().getData(new Gson()).split("\n");
+        assertThat(lines).hasSize(5);
+        assertThat(lines[3]).contains("\"update\"").contains("\"" + fragmentEntity.getId() + "\"");
+        assertThat(lines[4]).contains("\"doc\"").contains("\"tags\"").contains("Outbox tag")
+            .doesNotContain("\"name\":\"Outbox fragment\"").doesNotContain("\"localizations\"");
+        assertThat(searchOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    public void flushIndexesTheWholeDocumentWhenMissing() throws Exception {
+        enqueueFragmentTags();
+        when(jestClient.execute(any(Bulk.class))).thenReturn(bulkResult(
+            "{\"index\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + tagEntity.getId() + "\",\"status\":200}}",
+            "{\"delete\":{\"_index\":\"tag\",\"_type\":\"tag\",\"_id\":\"" + MISSING_ID + "\",\"status\":404}}",
+            "{\"update\":{\"_index\":\"fragment\",\"_type\":\"fragment\",\"_id\":\"" + fragmentEntity.getId() + "\",\"status\":404," +
+                "\"error\":{\"type\":\"document_missing_exception\",\"reason\":\"document missing\"}}}"),
+            bulkResult(
+            "{\"index\":{\"_index\":\"fragment\",\"_type\":\"fragment\",\"_id\":\"" + fragmentEntity.getId() + "\",\"status\":201}}"));
+
+        searchOutboxService.flush();
+        assertThat(searchOutboxRepository.findAll()).hasSize(1)
+            .allSatisfy(entry -> assertThat(entry.getPart()).isNull());
+        searchOutboxService.flush();
+
+        // The document missing from the index is indexed whole by the next flush
+        ArgumentCaptor<Bulk> bulk = ArgumentCaptor.forClass(Bulk.class);
+        verify(jestClient, times(2)).execute(bulk.capture());
+        String[] lines = bulk.getValue().getData(new Gson()).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("\"index\"").contains("\"" + fragmentEntity.getId() + "\"");
+        assertThat(lines[1]).contains("\"name\":\"Outbox fragment\"").contains("Outbox tag");
+        assertThat(searchOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    public void flushIndexesAnEntityInOneInstanceAtATime() throws Exception {
+        // The first entry of the tag is due later, after the first instance locked the second one
+        List<SearchOutboxEntity> entries = searchOutboxRepository.findAll(Sort.by("id"));
+        Instant later = Instant.now().plusMillis(500);
+        searchOutboxRepository.save(entries.get(0).nextAttemptDate(later));
+        int batchSize = applicationProperties.getSearchOutbox().getBatchSize();
+        applicationProperties.getSearchOutbox().setBatchSize(1);
+        Set<String> indexing = ConcurrentHashMap.newKeySet();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch firstReleased = new CountDownLatch(1);
+        when(jestClient.execute(any(Bulk.class))).thenAnswer(invocation -> {
+            BulkResult result = succeeded(invocation.getArgument(0));
+            List<String> ids = result.getItems().stream().map(item -> item.id).collect(Collectors.toList());
+            ids.forEach(id -> overlapped.compareAndSet(false, !indexing.add(id)));
+            try {
+                if (firstStarted.getCount() > 0) {
+                    firstStarted.countDown();
+                    firstReleased.await(10, TimeUnit.SECONDS);
+                } else {
+                    secondStarted.countDown();
+                }
+                return result;
+            } finally {
+                indexing.removeAll(ids);
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(searchOutboxService::flush);
+            assertThat(firstStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            Thread.sleep(Math.max(0, Duration.between(Instant.now(), later).toMillis()) + 100);
+            Future<?> second = executor.submit(searchOutboxService::flush);
+            // The second instance does not index the tag while the first one is indexing it
+            secondStarted.await(1, TimeUnit.SECONDS);
+            firstReleased.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            firstReleased.countDown();
+            executor.shutdownNow();
+            applicationProperties.getSearchOutbox().setBatchSize(batchSize);
+        }
+
+        assertThat(overlapped.get()).isFalse();
+        searchOutboxService.flush();
+        assertThat(searchOutboxRepository.count()).isZero();
+    }
+
+    private void enqueueFragmentTags() {
+        storyEntity = storyRepository.save(StoryResourceIT.createEntity(null));
+        fragmentEntity = fragmentRepository.save(new FragmentEntity()
+            .template(FragmentTemplate.V1)
+            .name("Outbox fragment")
+            .orderNo(1)
+            .story(storyEntity)
+            .addTag(tagEntity));
+        // The tag of the fragment is renamed, and the fragment of a missing id
+        new TransactionTemplate(transactionManager).execute(status -> {
+            searchOutboxService.enqueue(FragmentEntity.class, Arrays.asList(fragmentEntity.getId(), MISSING_ID),
+                FragmentDocument.TAGS);
+            return null;
+        });
+    }
+
+    /**
+     * Build the result of a bulk request whose actions all succeed.
+     */
+    private static BulkResult succeeded(Bulk bulk) {
+        List<String> items = new ArrayList<>();
+        for (String line : bulk.getData(new Gson()).split("\n")) {
+            JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+            for (String op : Arrays.asList("index", "delete", "update")) {
+                if (object.size() == 1 && object.has(op)) {
+                    JsonObject metadata = object.getAsJsonObject(op);
+                    metadata.addProperty("status", 200);
+                    items.add(object.toString());
+                }
+            }
+        }
+        return bulkResult(items.toArray(new String[0]));
+    }
+
+    private static BulkResult bulkResult(String... items) {
+        String json = "{\"took\":1,\"errors\":false,\"items\":[" + String.join(",", items) + "]}";
+        BulkResult result = new BulkResult(new Gson());
+        result.setJsonString(json);
+        result.setJsonObject(JsonParser.parseString(json).getAsJsonObject());
+        result.setSucceeded(true);
+        return result;
+    }
+}
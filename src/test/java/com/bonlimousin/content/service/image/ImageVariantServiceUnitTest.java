@@ -0,0 +1,80 @@
+package com.bonlimousin.content.service.image;
+
+import com.bonlimousin.content.config.ApplicationProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ImageVariantService}.
+ */
+public class ImageVariantServiceUnitTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    @Test
+    public void serveVariantEvictedBeforeItIsRead() throws Exception {
+        // A cache holding a single variant, rendered on the calling thread
+        ApplicationProperties applicationProperties = applicationProperties();
+        applicationProperties.getImageResize().setCacheMaxSize(DataSize.ofBytes(1));
+        ImageVariantService imageVariantService = new ImageVariantService(applicationProperties, Runnable::run);
+        FragmentImage original = new FragmentImage("image/png", "sha", new ByteArrayResource(createImage(40, 20)));
+
+        ImageVariant smallVariant = imageVariantService.variant(10, null, null, null);
+        FragmentImage small = imageVariantService.resize(original, smallVariant).get();
+        FragmentImage large = imageVariantService.resize(original, imageVariantService.variant(20, null, null, null)).get();
+        assertThat(cacheDirectory.resolve(imageVariantService.eTag(original, smallVariant) + ".png")).doesNotExist();
+
+        // The evicted variant was opened before its eviction
+        try (InputStream in = small.getResource().getInputStream()) {
+            byte[] bytes = StreamUtils.copyToByteArray(in);
+            assertThat(bytes).hasSize((int) small.getResource().contentLength());
+            assertThat(ImageIO.read(new ByteArrayInputStream(bytes)).getWidth()).isEqualTo(10);
+        }
+        try (InputStream in = large.getResource().getInputStream()) {
+            assertThat(ImageIO.read(in).getWidth()).isEqualTo(20);
+        }
+    }
+
+    @Test
+    public void eTagOfLosslessVariantIgnoresQuality() throws Exception {
+        ImageVariantService imageVariantService = new ImageVariantService(applicationProperties(), Runnable::run);
+        FragmentImage png = new FragmentImage("image/png", "sha", new ByteArrayResource(new byte[0]));
+        FragmentImage jpeg = new FragmentImage("image/jpeg", "sha", new ByteArrayResource(new byte[0]));
+
+        assertThat(imageVariantService.eTag(png, imageVariantService.variant(10, null, null, 50))).isEqualTo("sha-w10-contain");
+        assertThat(imageVariantService.eTag(jpeg, imageVariantService.variant(10, null, null, 50))).isEqualTo("sha-w10-contain-q50");
+    }
+
+    private ApplicationProperties applicationProperties() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getImageResize().setCacheDirectory(cacheDirectory.toString());
+        return applicationProperties;
+    }
+
+    private static byte[] createImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width * 3 / 4, height);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,105 @@
+package com.bonlimousin.content.web.rest;
+
+import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
+import com.bonlimousin.content.repository.ScrollReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the {@link ExportResource} REST controller.
+ */
+@SpringBootTest(classes = BonContentServiceApp.class)
+@AutoConfigureMockMvc
+@WithMockUser
+public class ExportResourceIT {
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MockMvc restExportMockMvc;
+
+    @Test
+    @Transactional
+    public void exportFragments() throws Exception {
+        // Initialize the database with more fragments than fetched at once from the cursor
+        StoryEntity story = StoryResourceIT.createEntity(em);
+        em.persist(story);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i <= ScrollReader.FETCH_SIZE; i++) {
+            FragmentEntity fragment = new FragmentEntity()
+                .template(FragmentTemplate.V1)
+                .name("Fragment " + i)
+                .orderNo(i)
+                .story(story);
+            em.persist(fragment);
+            ids.add(fragment.getId());
+        }
+        em.flush();
+        em.clear();
+
+        // Export the fragments of the story, one per line
+        String export = restExportMockMvc.perform(get("/api/export/fragments?storyId.equals=" + story.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(ExportResource.APPLICATION_NDJSON_VALUE))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("fragments.ndjson")))
+            .andReturn().getResponse().getContentAsString();
+        assertThat(export).endsWith("\n");
+        String[] lines = export.split("\n");
+        List<Long> exportedIds = new ArrayList<>();
+        for (String line : lines) {
+            JsonNode fragment = objectMapper.readTree(line);
+            exportedIds.add(fragment.get("id").asLong());
+            assertThat(fragment.get("story").get("id").asLong()).isEqualTo(story.getId());
+        }
+        assertThat(exportedIds).isEqualTo(ids);
+        assertThat(objectMapper.readTree(lines[0]).get("name").asText()).isEqualTo("Fragment 0");
+    }
+
+    @Test
+    @Transactional
+    public void exportTags() throws Exception {
+        // Initialize the database
+        TagEntity tag = new TagEntity().name("Exported tag");
+        em.persist(tag);
+        em.persist(new TagEntity().name("Other tag"));
+        em.flush();
+        em.clear();
+
+        // Export the tags matching the criteria
+        String export = restExportMockMvc.perform(get("/api/export/tags?name.equals=Exported tag"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertThat(export.split("\n")).hasSize(1);
+        assertThat(objectMapper.readTree(export).get("id").asLong()).isEqualTo(tag.getId());
+
+        // Nothing matches
+        restExportMockMvc.perform(get("/api/export/tags?name.equals=Missing tag"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(""));
+    }
+}
@@ -2,25 +2,53 @@ package com.bonlimousin.content.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
+import javax.imageio.ImageIO;
 import javax.persistence.EntityManager;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -31,23 +59,42 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.Base64Utils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import com.bonlimousin.content.BonContentServiceApp;
+import com.bonlimousin.content.config.ApplicationProperties;
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.search.FragmentDocument;
+import com.bonlimousin.content.domain.FragmentImageEntity;
 import com.bonlimousin.content.domain.LocalizedEntity;
 import com.bonlimousin.content.domain.StoryEntity;
 import com.bonlimousin.content.domain.TagEntity;
 import com.bonlimousin.content.domain.enumeration.FragmentTemplate;
 import com.bonlimousin.content.domain.enumeration.UserRole;
+import com.bonlimousin.content.repository.FragmentImageRepository;
 import com.bonlimousin.content.repository.FragmentRepository;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
 import com.bonlimousin.content.repository.search.FragmentSearchRepository;
+import com.bonlimousin.content.service.FragmentImageAnalysisService;
+import com.bonlimousin.content.service.FragmentImageService;
 import com.bonlimousin.content.service.FragmentQueryService;
 import com.bonlimousin.content.service.FragmentService;
+import com.bonlimousin.content.service.image.ImageDigest;
+import com.bonlimousin.content.service.image.ImageStore;
+import com.bonlimousin.content.service.image.StoredImage;
 /**
  * Integration tests for the {@link FragmentResource} REST controller.
  */
@@ -77,6 +124,9 @@ public class FragmentResourceIT {
     private static final String DEFAULT_IMAGE_CONTENT_TYPE = "image/jpg";
     private static final String UPDATED_IMAGE_CONTENT_TYPE = "image/png";
 
+    private static final String DEFAULT_IMAGE_PLACEHOLDER = "data:image/png;base64,AAAA";
+    private static final String DEFAULT_IMAGE_COLOR = "#aaaaaa";
+
     private static final String DEFAULT_CAPTION = "AAAAAAAAAA";
     private static final String UPDATED_CAPTION = "BBBBBBBBBB";
 
@@ -101,6 +151,9 @@ public class FragmentResourceIT {
     @Mock
     private FragmentRepository fragmentRepositoryMock;
 
+    @Autowired
+    private FragmentImageRepository fragmentImageRepository;
+
     @Mock
     private FragmentService fragmentServiceMock;
 
@@ -115,9 +168,27 @@ public class FragmentResourceIT {
     @Autowired
     private FragmentSearchRepository mockFragmentSearchRepository;
 
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
     @Autowired
     private FragmentQueryService fragmentQueryService;
 
+    @Autowired
+    private FragmentImageService fragmentImageService;
+
+    @Autowired
+    private FragmentImageAnalysisService fragmentImageAnalysisService;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private EntityManager em;
 
@@ -191,6 +262,16 @@ public class FragmentResourceIT {
         return fragmentEntity;
     }
 
+    /**
+     * Convert a fragment to JSON, including the image which is write-only and hence left out by Jackson.
+     */
+    @SuppressWarnings("unchecked")
+    private static byte[] convertFragmentToJsonBytes(FragmentEntity fragmentEntity) throws IOException {
+        Map<String, Object> json = new ObjectMapper().readValue(TestUtil.convertObjectToJsonBytes(fragmentEntity), Map.class);
+        json.put("image", fragmentEntity.getImage());
+        return TestUtil.convertObjectToJsonBytes(json);
+    }
+
     @BeforeEach
     public void initTest() {
         fragmentEntity = createEntity(em);
@@ -203,7 +284,7 @@ public class FragmentResourceIT {
         // Create the Fragment
         restFragmentMockMvc.perform(post("/api/fragments")
             .contentType(MediaType.APPLICATION_JSON)
-            .content(TestUtil.convertObjectToJsonBytes(fragmentEntity)))
+            .content(convertFragmentToJsonBytes(fragmentEntity)))
             .andExpect(status().isCreated());
 
         // Validate the Fragment in the database
@@ -215,7 +296,8 @@ public class FragmentResourceIT {
         assertThat(testFragment.getTitle()).isEqualTo(DEFAULT_TITLE);
         assertThat(testFragment.getIngress()).isEqualTo(DEFAULT_INGRESS);
         assertThat(testFragment.getBody()).isEqualTo(DEFAULT_BODY);
-        assertThat(testFragment.getImage()).isEqualTo(DEFAULT_IMAGE);
+        assertThat(testFragment.getImageSha256()).isEqualTo(ImageDigest.sha256Hex(DEFAULT_IMAGE));
+        assertThat(testFragment.getImageSize()).isEqualTo(DEFAULT_IMAGE.length);
         assertThat(testFragment.getImageContentType()).isEqualTo(DEFAULT_IMAGE_CONTENT_TYPE);
         assertThat(testFragment.getCaption()).isEqualTo(DEFAULT_CAPTION);
         assertThat(testFragment.getWidth()).isEqualTo(DEFAULT_WIDTH);
@@ -223,8 +305,8 @@ public class FragmentResourceIT {
         assertThat(testFragment.getOrderNo()).isEqualTo(DEFAULT_ORDER_NO);
         assertThat(testFragment.getVisibility()).isEqualTo(DEFAULT_VISIBILITY);
 
-        // Validate the Fragment in Elasticsearch
-        verify(mockFragmentSearchRepository, times(1)).save(testFragment);
+        // Validate the Fragment is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", testFragment.getId())).isEqualTo(1);
     }
 
     @Test
@@ -245,8 +327,8 @@ public class FragmentResourceIT {
         List<FragmentEntity> fragmentList = fragmentRepository.findAll();
         assertThat(fragmentList).hasSize(databaseSizeBeforeCreate);
 
-        // Validate the Fragment in Elasticsearch
-        verify(mockFragmentSearchRepository, times(0)).save(fragmentEntity);
+        // Validate the Fragment is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", fragmentEntity.getId())).isEqualTo(0);
     }
 
 
@@ -324,13 +406,157 @@ public class FragmentResourceIT {
             .andExpect(jsonPath("$.[*].ingress").value(hasItem(DEFAULT_INGRESS)))
             .andExpect(jsonPath("$.[*].body").value(hasItem(DEFAULT_BODY.toString())))
             .andExpect(jsonPath("$.[*].imageContentType").value(hasItem(DEFAULT_IMAGE_CONTENT_TYPE)))
-            .andExpect(jsonPath("$.[*].image").value(hasItem(Base64Utils.encodeToString(DEFAULT_IMAGE))))
+            .andExpect(jsonPath("$.[*].imageUrl").value(hasItem("/api/fragments/" + fragmentEntity.getId() + "/image")))
+            .andExpect(jsonPath("$.[*].image").doesNotExist())
             .andExpect(jsonPath("$.[*].caption").value(hasItem(DEFAULT_CAPTION)))
             .andExpect(jsonPath("$.[*].width").value(hasItem(DEFAULT_WIDTH)))
             .andExpect(jsonPath("$.[*].height").value(hasItem(DEFAULT_HEIGHT)))
             .andExpect(jsonPath("$.[*].orderNo").value(hasItem(DEFAULT_ORDER_NO)))
             .andExpect(jsonPath("$.[*].visibility").value(hasItem(DEFAULT_VISIBILITY.toString())));
     }
+
+    @Test
+    @Transactional
+    public void getFragmentsById() throws Exception {
+        // Initialize the database
+        TagEntity tag = TagResourceIT.createEntity(em);
+        em.persist(tag);
+        fragmentRepository.saveAndFlush(fragmentEntity.addTag(tag));
+        FragmentEntity otherFragment = createEntity(em).orderNo(UPDATED_ORDER_NO);
+        fragmentRepository.saveAndFlush(otherFragment);
+        em.clear();
+        String ids = otherFragment.getId() + "," + Long.MAX_VALUE + "," + fragmentEntity.getId() + "," + otherFragment.getId();
+
+        // Get the fragments in the order of their ids, skipping the missing one and the duplicate
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            restFragmentMockMvc.perform(get("/api/fragments?ids=" + ids))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+                .andExpect(jsonPath("$[*].id").value(contains(otherFragment.getId().intValue(), fragmentEntity.getId().intValue())))
+                .andExpect(jsonPath("$[1].tags[*].id").value(contains(tag.getId().intValue())));
+            // One statement for the fragments, one for their story, one for their tags
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+
+            // The fragments of the persistence context are not queried again
+            statistics.clear();
+            restFragmentMockMvc.perform(get("/api/fragments?ids=" + fragmentEntity.getId() + "&include=tags"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(fragmentEntity.getId().intValue())));
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        // Invalid ids are rejected
+        restFragmentMockMvc.perform(get("/api/fragments?ids=1,x"))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments?ids=" + fragmentEntity.getId() + "&include=image"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getAllFragmentsFields() throws Exception {
+        // Initialize the database with two fragments sharing two tags, so that filtering on tags joins two rows each
+        TagEntity tag = TagResourceIT.createEntity(em);
+        TagEntity otherTag = TagResourceIT.createEntity(em).name("Other tag");
+        em.persist(tag);
+        em.persist(otherTag);
+        fragmentRepository.saveAndFlush(fragmentEntity.addTag(tag).addTag(otherTag));
+        FragmentEntity otherFragment = createEntity(em).orderNo(UPDATED_ORDER_NO).addTag(tag).addTag(otherTag);
+        fragmentRepository.saveAndFlush(otherFragment);
+        em.clear();
+
+        // Get some fields of the fragments without loading them
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            restFragmentMockMvc.perform(get("/api/fragments?fields=name,orderNo,template&sort=orderNo,desc&size=1&tagId.in="
+                + tag.getId() + "," + otherTag.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().string("X-Total-Count", "2"))
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value(DEFAULT_NAME))
+                .andExpect(jsonPath("$[0].orderNo").value(UPDATED_ORDER_NO))
+                .andExpect(jsonPath("$[0].template").value(DEFAULT_TEMPLATE.toString()))
+                .andExpect(jsonPath("$[0].id").doesNotExist())
+                .andExpect(jsonPath("$[0].body").doesNotExist());
+            assertThat(statistics.getEntityLoadCount()).isZero();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+        restFragmentMockMvc.perform(get("/api/fragments?fields=id&sort=id,asc&tagId.in=" + tag.getId() + "," + otherTag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[*].id").value(contains(fragmentEntity.getId().intValue(), otherFragment.getId().intValue())));
+
+        // Fields which are not columns of the fragment are rejected
+        restFragmentMockMvc.perform(get("/api/fragments?fields=name,imageOriginalSha256"))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments?fields=tags"))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments?fields="))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentsAfter() throws Exception {
+        // Initialize the database with fragments sharing order numbers and two tags, so that filtering on tags joins two rows each
+        TagEntity tag = TagResourceIT.createEntity(em);
+        TagEntity otherTag = TagResourceIT.createEntity(em).name("Other tag");
+        em.persist(tag);
+        em.persist(otherTag);
+        List<FragmentEntity> fragments = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            fragments.add(fragmentRepository.saveAndFlush(createEntity(em).orderNo(i / 2).addTag(tag).addTag(otherTag)));
+        }
+        em.clear();
+        List<Long> expectedIds = fragments.stream()
+            .sorted(Comparator.comparing(FragmentEntity::getOrderNo).reversed().thenComparing(FragmentEntity::getId))
+            .map(FragmentEntity::getId)
+            .collect(Collectors.toList());
+
+        // Walk the fragments two by two, following the links
+        List<Long> ids = new ArrayList<>();
+        String next = "/api/fragments?after=&size=2&sort=orderNo,desc&tagId.in=" + tag.getId() + "," + otherTag.getId();
+        String cursor = null;
+        int pages = 0;
+        while (next != null) {
+            MockHttpServletResponse response = restFragmentMockMvc.perform(get(next))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().doesNotExist("X-Total-Count"))
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+                .andReturn().getResponse();
+            for (Number id : JsonPath.<List<Number>>read(response.getContentAsString(), "$[*].id")) {
+                ids.add(id.longValue());
+            }
+            String link = response.getHeader(HttpHeaders.LINK);
+            next = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+            if (cursor == null && next != null) {
+                assertThat(link).endsWith("; rel=\"next\"");
+                cursor = UriComponentsBuilder.fromUriString(next).build().getQueryParams().getFirst("after");
+            }
+            pages++;
+        }
+        assertThat(ids).containsExactlyElementsOf(expectedIds);
+        assertThat(pages).isEqualTo(3);
+
+        // The cursor must be read with the sort it was built with, on required fields only
+        restFragmentMockMvc.perform(get("/api/fragments?size=2&sort=name,asc&after=" + cursor))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments?after=&sort=title,asc"))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments?after=garbage"))
+            .andExpect(status().isBadRequest());
+    }
     
     @SuppressWarnings({"unchecked"})
     public void getAllFragmentsWithEagerRelationshipsIsEnabled() throws Exception {
@@ -369,7 +595,8 @@ public class FragmentResourceIT {
             .andExpect(jsonPath("$.ingress").value(DEFAULT_INGRESS))
             .andExpect(jsonPath("$.body").value(DEFAULT_BODY.toString()))
             .andExpect(jsonPath("$.imageContentType").value(DEFAULT_IMAGE_CONTENT_TYPE))
-            .andExpect(jsonPath("$.image").value(Base64Utils.encodeToString(DEFAULT_IMAGE)))
+            .andExpect(jsonPath("$.imageUrl").value("/api/fragments/" + fragmentEntity.getId() + "/image"))
+            .andExpect(jsonPath("$.image").doesNotExist())
             .andExpect(jsonPath("$.caption").value(DEFAULT_CAPTION))
             .andExpect(jsonPath("$.width").value(DEFAULT_WIDTH))
             .andExpect(jsonPath("$.height").value(DEFAULT_HEIGHT))
@@ -1167,6 +1394,35 @@ public class FragmentResourceIT {
         defaultFragmentShouldNotBeFound("tagId.equals=" + (tagId + 1));
     }
 
+    @Test
+    @Transactional
+    public void getAllFragmentsByTagsMatchingOnce() throws Exception {
+        // Initialize the database with a fragment having two tags and one without
+        TagEntity tag = TagResourceIT.createEntity(em);
+        TagEntity otherTag = TagResourceIT.createEntity(em).name("Other tag");
+        em.persist(tag);
+        em.persist(otherTag);
+        fragmentRepository.saveAndFlush(fragmentEntity.addTag(tag).addTag(otherTag));
+        FragmentEntity untagged = fragmentRepository.saveAndFlush(createEntity(em).orderNo(UPDATED_ORDER_NO));
+
+        // The fragment matches both tags but is listed and counted once
+        restFragmentMockMvc.perform(get("/api/fragments?tagId.in=" + tag.getId() + "," + otherTag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[*].id").value(contains(fragmentEntity.getId().intValue())));
+        restFragmentMockMvc.perform(get("/api/fragments?tagId.notEquals=" + tag.getId() + "&id.in="
+                + fragmentEntity.getId() + "," + untagged.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(fragmentEntity.getId().intValue())));
+        restFragmentMockMvc.perform(get("/api/fragments?tagId.specified=false&id.in="
+                + fragmentEntity.getId() + "," + untagged.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(untagged.getId().intValue())));
+        restFragmentMockMvc.perform(get("/api/fragments/count?tagId.specified=true&tagId.in=" + tag.getId() + "," + otherTag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().string("1"));
+    }
+
 
     @Test
     @Transactional
@@ -1197,7 +1453,8 @@ public class FragmentResourceIT {
             .andExpect(jsonPath("$.[*].ingress").value(hasItem(DEFAULT_INGRESS)))
             .andExpect(jsonPath("$.[*].body").value(hasItem(DEFAULT_BODY.toString())))
             .andExpect(jsonPath("$.[*].imageContentType").value(hasItem(DEFAULT_IMAGE_CONTENT_TYPE)))
-            .andExpect(jsonPath("$.[*].image").value(hasItem(Base64Utils.encodeToString(DEFAULT_IMAGE))))
+            .andExpect(jsonPath("$.[*].imageUrl").value(hasItem("/api/fragments/" + fragmentEntity.getId() + "/image")))
+            .andExpect(jsonPath("$.[*].image").doesNotExist())
             .andExpect(jsonPath("$.[*].caption").value(hasItem(DEFAULT_CAPTION)))
             .andExpect(jsonPath("$.[*].width").value(hasItem(DEFAULT_WIDTH)))
             .andExpect(jsonPath("$.[*].height").value(hasItem(DEFAULT_HEIGHT)))
@@ -1228,6 +1485,194 @@ public class FragmentResourceIT {
             .andExpect(content().string("0"));
     }
 
+    @Test
+    @Transactional
+    public void getAllFragmentsWithInclude() throws Exception {
+        // Initialize the database with fragments of distinct stories, each with a tag and a localization
+        List<Long> ids = new ArrayList<>();
+        TagEntity tag = TagResourceIT.createEntity(em);
+        em.persist(tag);
+        for (int i = 0; i < 3; i++) {
+            StoryEntity story = StoryResourceIT.createEntity(em).name("Story " + i);
+            em.persist(story);
+            FragmentEntity fragment = createEntity(em).story(story).addTag(tag);
+            em.persist(fragment);
+            em.persist(LocalizedResourceIT.createEntity(em).fragment(fragment));
+            ids.add(fragment.getId());
+        }
+        em.flush();
+
+        // Get a page of one and a page of all three fragments with their relations, counting the statements
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        long[] statements = new long[2];
+        try {
+            for (int size : new int[] { 1, 20 }) {
+                em.clear();
+                statistics.clear();
+                restFragmentMockMvc.perform(get("/api/fragments?sort=id,asc&include=tags,localizedFragments&size=" + size
+                    + "&id.in=" + ids.get(0) + "," + ids.get(1) + "," + ids.get(2)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.length()").value(Math.min(size, 3)))
+                    .andExpect(jsonPath("$[*].tags[0].id").value(everyItem(is(tag.getId().intValue()))))
+                    .andExpect(jsonPath("$[*].localizedFragments.length()").value(everyItem(is(1))))
+                    .andExpect(jsonPath("$[*].story.id").value(everyItem(notNullValue())));
+                statements[size == 1 ? 0 : 1] = statistics.getPrepareStatementCount();
+            }
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+        // Only the partial page counts the fragments, otherwise the statements do not depend on the page size
+        assertThat(statements[1]).isEqualTo(statements[0] - 1);
+
+        // Get a fragment with only its localizations
+        em.clear();
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?include=localizedFragments", ids.get(0)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.localizedFragments[0].title").value(LocalizedResourceIT.createEntity(em).getTitle()))
+            .andExpect(jsonPath("$.tags").doesNotExist());
+
+        // Relations which cannot be included are rejected
+        restFragmentMockMvc.perform(get("/api/fragments?include=tags,fragments"))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?include=imageSha256", ids.get(0)))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getAllFragmentsCountModes() throws Exception {
+        // Initialize the database with three tagged fragments
+        TagEntity tag = TagResourceIT.createEntity(em);
+        em.persist(tag);
+        for (int i = 0; i < 3; i++) {
+            fragmentRepository.saveAndFlush(createEntity(em).orderNo(i).addTag(tag));
+        }
+        em.clear();
+        String filter = "/api/fragments?size=2&sort=orderNo,asc&tagId.equals=" + tag.getId();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            // The exact count is a second query
+            statistics.clear();
+            restFragmentMockMvc.perform(get(filter))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "3"));
+            assertThat(statistics.getQueryExecutionCount()).isEqualTo(2);
+
+            // The window count is read along with the page
+            statistics.clear();
+            restFragmentMockMvc.perform(get(filter + "&count=window"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].orderNo").value(contains(0, 1)))
+                .andExpect(header().string("X-Total-Count", "3"))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"last\"")));
+            assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+
+            // Without count, one more fragment tells if there is a next page
+            statistics.clear();
+            restFragmentMockMvc.perform(get(filter + "&count=none"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].orderNo").value(contains(0, 1)))
+                .andExpect(header().doesNotExist("X-Total-Count"))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"next\"")));
+            assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+        restFragmentMockMvc.perform(get(filter + "&count=none&page=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].orderNo").value(contains(2)))
+            .andExpect(header().string(HttpHeaders.LINK, not(containsString("rel=\"next\""))))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"prev\"")));
+
+        // The statistics estimate the fragments of the table, at least those read so far
+        MockHttpServletResponse response = restFragmentMockMvc.perform(get("/api/fragments?size=2&count=estimate"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andReturn().getResponse();
+        assertThat(Long.parseLong(response.getHeader("X-Total-Count-Estimate"))).isGreaterThanOrEqualTo(3);
+        // but not the filtered fragments, which are counted
+        restFragmentMockMvc.perform(get(filter + "&count=estimate"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(header().doesNotExist("X-Total-Count-Estimate"));
+
+        restFragmentMockMvc.perform(get(filter + "&count=approximately"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getLocalizedFragment() throws Exception {
+        // Initialize the database with a swedish, an english and an admin only german localization
+        fragmentRepository.saveAndFlush(fragmentEntity.visibility(UserRole.ROLE_USER));
+        em.persist(LocalizedResourceIT.createEntity(em).fragment(fragmentEntity).visibility(null)
+            .i18n("sv").title("Svensk titel").ingress(null).body("Svensk text").caption(null));
+        em.persist(LocalizedResourceIT.createEntity(em).fragment(fragmentEntity).visibility(UserRole.ROLE_ANONYMOUS)
+            .i18n("en").title("English title").ingress("English ingress").body("English text").caption(null));
+        em.persist(LocalizedResourceIT.createEntity(em).fragment(fragmentEntity).visibility(UserRole.ROLE_ADMIN)
+            .i18n("de").title("Deutscher Titel").body("Deutscher Text"));
+        em.flush();
+        em.clear();
+
+        // Get the fragment in swedish, falling back to english then to the fragment, counting the statements
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            for (int i = 0; i < 2; i++) {
+                statistics.clear();
+                restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=sv", fragmentEntity.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                    .andExpect(jsonPath("$.id").value(fragmentEntity.getId().intValue()))
+                    .andExpect(jsonPath("$.storyId").value(fragmentEntity.getStory().getId().intValue()))
+                    .andExpect(jsonPath("$.lang").value("sv"))
+                    .andExpect(jsonPath("$.title").value("Svensk titel"))
+                    .andExpect(jsonPath("$.ingress").value("English ingress"))
+                    .andExpect(jsonPath("$.body").value("Svensk text"))
+                    .andExpect(jsonPath("$.caption").value(DEFAULT_CAPTION))
+                    .andExpect(jsonPath("$.localizedFragments").doesNotExist());
+                // The second read is served from the cache
+                assertThat(statistics.getPrepareStatementCount()).isBetween(i == 0 ? 1L : 0L, i == 0 ? 3L : 0L);
+            }
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        // The languages of Accept-Language follow those of lang, skipping the localizations the user may not see
+        MockHttpServletResponse response = restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=", fragmentEntity.getId())
+            .header(HttpHeaders.ACCEPT_LANGUAGE, "de, en-GB;q=0.8"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.lang").value("en"))
+            .andExpect(jsonPath("$.title").value("English title"))
+            .andExpect(jsonPath("$.body").value("English text"))
+            .andReturn().getResponse();
+        assertThat(response.getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT_LANGUAGE);
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=fr", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.lang").value("en"));
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=", fragmentEntity.getId())
+            .header(HttpHeaders.ACCEPT_LANGUAGE, "sv;q=x"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getLocalizedFragmentNotVisible() throws Exception {
+        // Initialize the database with a fragment only visible to administrators
+        fragmentRepository.saveAndFlush(fragmentEntity.visibility(UserRole.ROLE_ADMIN));
+
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=sv", fragmentEntity.getId()))
+            .andExpect(status().isNotFound());
+        restFragmentMockMvc.perform(get("/api/fragments/{id}?lang=sv", fragmentEntity.getId())
+            .with(user("admin").roles("ADMIN")))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.title").value(DEFAULT_TITLE))
+            .andExpect(jsonPath("$.lang").doesNotExist());
+    }
+
     @Test
     @Transactional
     public void getNonExistingFragment() throws Exception {
@@ -1236,6 +1681,429 @@ public class FragmentResourceIT {
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    @Transactional
+    public void getFragmentImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        // Get the raw image of the fragment
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(DEFAULT_IMAGE_CONTENT_TYPE))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + ImageDigest.sha256Hex(DEFAULT_IMAGE) + "\""))
+            .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+            .andExpect(content().bytes(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageNotModified() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        // Revalidate the image with its ETag
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + ImageDigest.sha256Hex(DEFAULT_IMAGE) + "\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageRange() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        // Get the first byte of the image
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId())
+            .header(HttpHeaders.RANGE, "bytes=0-0"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-0/" + DEFAULT_IMAGE.length))
+            .andExpect(content().bytes(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void getLegacyFragmentImage() throws Exception {
+        // Initialize the database with an image stored before the image store was introduced
+        fragmentRepository.saveAndFlush(fragmentEntity);
+        fragmentImageRepository.saveAndFlush(new FragmentImageEntity().fragmentId(fragmentEntity.getId()).image(DEFAULT_IMAGE));
+
+        // Get the raw image of the fragment
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + ImageDigest.sha256Hex(DEFAULT_IMAGE) + "\""))
+            .andExpect(content().bytes(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void migrateLegacyFragmentImages() throws Exception {
+        // Initialize the database with an image stored before the image store was introduced, committed for the migration to see it
+        fragmentRepository.saveAndFlush(fragmentEntity);
+        fragmentImageRepository.saveAndFlush(new FragmentImageEntity().fragmentId(fragmentEntity.getId()).image(DEFAULT_IMAGE));
+        Long id = fragmentEntity.getId();
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        try {
+            fragmentImageService.migrateLegacyImages();
+
+            FragmentEntity migratedFragment = fragmentRepository.findById(id).get();
+            assertThat(migratedFragment.getImageSha256()).isEqualTo(ImageDigest.sha256Hex(DEFAULT_IMAGE));
+            assertThat(migratedFragment.getImageSize()).isEqualTo(DEFAULT_IMAGE.length);
+            assertThat(fragmentImageRepository.existsById(id)).isFalse();
+            restFragmentMockMvc.perform(get("/api/fragments/{id}/image", id))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(DEFAULT_IMAGE));
+        } finally {
+            TestTransaction.start();
+            TestTransaction.flagForCommit();
+            FragmentEntity migratedFragment = em.find(FragmentEntity.class, id);
+            em.remove(migratedFragment);
+            em.remove(migratedFragment.getStory());
+            TestTransaction.end();
+        }
+    }
+
+    @Test
+    @Transactional
+    public void releaseFragmentImageOfRolledBackTransaction() throws Exception {
+        byte[] image = createImage(13, 17, "png");
+        String sha256 = ImageDigest.sha256Hex(image);
+        fragmentImageService.prepareSave(fragmentEntity.image(image).imageContentType("image/png"));
+        assertThat(imageStore.load(sha256)).isPresent();
+
+        // The image stored by the transaction is released when it rolls back
+        Duration gracePeriod = applicationProperties.getImageStore().getSweepGracePeriod();
+        applicationProperties.getImageStore().setSweepGracePeriod(Duration.ZERO);
+        try {
+            Thread.sleep(10);
+            TestTransaction.flagForRollback();
+            TestTransaction.end();
+        } finally {
+            applicationProperties.getImageStore().setSweepGracePeriod(gracePeriod);
+            TestTransaction.start();
+        }
+        assertThat(imageStore.load(sha256)).isNotPresent();
+    }
+
+    @Test
+    @Transactional
+    public void sweepUnusedFragmentImages() throws Exception {
+        StoredImage unused = imageStore.store(new ByteArrayInputStream(createImage(11, 19, "png")));
+        StoredImage storedAgain = imageStore.store(new ByteArrayInputStream(createImage(11, 23, "png")));
+        Thread.sleep(300);
+        imageStore.store(new ByteArrayInputStream(createImage(11, 23, "png")));
+        StoredImage recent = imageStore.store(new ByteArrayInputStream(createImage(11, 29, "png")));
+
+        Duration gracePeriod = applicationProperties.getImageStore().getSweepGracePeriod();
+        applicationProperties.getImageStore().setSweepGracePeriod(Duration.ofMillis(200));
+        try {
+            fragmentImageService.sweepUnusedImages();
+        } finally {
+            applicationProperties.getImageStore().setSweepGracePeriod(gracePeriod);
+        }
+
+        // The images stored within the grace period are kept, as an upload of them may not have committed yet
+        assertThat(imageStore.load(unused.getSha256())).isNotPresent();
+        assertThat(imageStore.load(storedAgain.getSha256())).isPresent();
+        assertThat(imageStore.load(recent.getSha256())).isPresent();
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageVariant() throws Exception {
+        // Initialize the database
+        byte[] image = createImage(40, 20, "png");
+        fragmentService.save(fragmentEntity.image(image).imageContentType("image/png"));
+
+        // Get a variant of the image, rendered off the request thread
+        MvcResult mvcResult = restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10", fragmentEntity.getId()))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        byte[] variant = restFragmentMockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("image/png"))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + ImageDigest.sha256Hex(image) + "-w10-contain\""))
+            .andReturn().getResponse().getContentAsByteArray();
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(variant));
+        assertThat(resized.getWidth()).isEqualTo(10);
+        assertThat(resized.getHeight()).isEqualTo(5);
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageVariantCover() throws Exception {
+        // Initialize the database
+        byte[] image = createImage(40, 20, "jpeg");
+        fragmentService.save(fragmentEntity.image(image).imageContentType("image/jpeg"));
+
+        // Get a cropped variant of the image
+        MvcResult mvcResult = restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10&h=10&fit=cover&q=50", fragmentEntity.getId()))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        byte[] variant = restFragmentMockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("image/jpeg"))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + ImageDigest.sha256Hex(image) + "-w10-h10-cover-q50\""))
+            .andReturn().getResponse().getContentAsByteArray();
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(variant));
+        assertThat(resized.getWidth()).isEqualTo(10);
+        assertThat(resized.getHeight()).isEqualTo(10);
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageVariantNotModified() throws Exception {
+        // Initialize the database
+        byte[] image = createImage(40, 20, "png");
+        fragmentService.save(fragmentEntity.image(image).imageContentType("image/png"));
+
+        // Revalidate the variant with its ETag
+        MvcResult mvcResult = restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10", fragmentEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + ImageDigest.sha256Hex(image) + "-w10-contain\""))
+            .andReturn();
+        restFragmentMockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isNotModified())
+            .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageVariantOfUndecodableImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        // The original is served when it cannot be resized
+        MvcResult mvcResult = restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10", fragmentEntity.getId()))
+            .andReturn();
+        restFragmentMockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + ImageDigest.sha256Hex(DEFAULT_IMAGE) + "\""))
+            .andExpect(content().bytes(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentImageVariantWithInvalidSize() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=0", fragmentEntity.getId()))
+            .andExpect(status().isBadRequest());
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10&fit=stretch", fragmentEntity.getId()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getNonExistingFragmentImageVariant() throws Exception {
+        MvcResult mvcResult = restFragmentMockMvc.perform(get("/api/fragments/{id}/image?w=10", Long.MAX_VALUE))
+            .andReturn();
+        restFragmentMockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isNotFound());
+    }
+
+    private static byte[] createImage(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width * 3 / 4, height);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    @Transactional
+    public void putFragmentImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        byte[] image = createImage(40, 20, "png");
+
+        // Replace the image with a raw body, only the image metadata is returned
+        restFragmentMockMvc.perform(put("/api/fragments/{id}/image", fragmentEntity.getId())
+            .contentType(MediaType.IMAGE_PNG)
+            .content(image))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.id").value(fragmentEntity.getId().intValue()))
+            .andExpect(jsonPath("$.imageContentType").value(MediaType.IMAGE_PNG_VALUE))
+            .andExpect(jsonPath("$.imageSha256").value(ImageDigest.sha256Hex(image)))
+            .andExpect(jsonPath("$.imageSize").value(image.length))
+            .andExpect(jsonPath("$.imageUrl").value("/api/fragments/" + fragmentEntity.getId() + "/image"))
+            .andExpect(jsonPath("$.name").doesNotExist());
+
+        // Validate the Fragment in the database
+        FragmentEntity testFragment = fragmentRepository.findById(fragmentEntity.getId()).get();
+        assertThat(testFragment.getImageContentType()).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+        assertThat(testFragment.getImageSha256()).isEqualTo(ImageDigest.sha256Hex(image));
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(image));
+
+        // Validate the Fragment is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", testFragment.getId())).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void uploadFragmentImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        byte[] image = createImage(40, 20, "jpeg");
+
+        // Replace the image with a multipart upload
+        restFragmentMockMvc.perform(multipart("/api/fragments/{id}/image", fragmentEntity.getId())
+            .file(new MockMultipartFile("image", "photo.jpg", MediaType.IMAGE_JPEG_VALUE, image))
+            .with(request -> {
+                request.setMethod("PUT");
+                return request;
+            }))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imageContentType").value(MediaType.IMAGE_JPEG_VALUE))
+            .andExpect(jsonPath("$.imageSha256").value(ImageDigest.sha256Hex(image)))
+            .andExpect(jsonPath("$.imageSize").value(image.length));
+
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getImageSha256()).isEqualTo(ImageDigest.sha256Hex(image));
+    }
+
+    @Test
+    @Transactional
+    public void uploadFragmentImageThatIsNotAnImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        restFragmentMockMvc.perform(multipart("/api/fragments/{id}/image", fragmentEntity.getId())
+            .file(new MockMultipartFile("image", "notes.txt", MediaType.TEXT_PLAIN_VALUE, UPDATED_IMAGE))
+            .with(request -> {
+                request.setMethod("PUT");
+                return request;
+            }))
+            .andExpect(status().isBadRequest());
+
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getImageSha256()).isEqualTo(ImageDigest.sha256Hex(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void putFragmentImageTooLarge() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+
+        // The test configuration accepts images up to 64KB
+        restFragmentMockMvc.perform(put("/api/fragments/{id}/image", fragmentEntity.getId())
+            .contentType(MediaType.IMAGE_PNG)
+            .content(new byte[64 * 1024 + 1]))
+            .andExpect(status().isPayloadTooLarge());
+
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getImageSha256()).isEqualTo(ImageDigest.sha256Hex(DEFAULT_IMAGE));
+    }
+
+    @Test
+    @Transactional
+    public void putNonExistingFragmentImage() throws Exception {
+        restFragmentMockMvc.perform(put("/api/fragments/{id}/image", Long.MAX_VALUE)
+            .contentType(MediaType.IMAGE_PNG)
+            .content(UPDATED_IMAGE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void putFragmentImageThroughIngest() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        byte[] upload = createPhoto(40, 20, 6);
+        double savedBefore = meterRegistry.get("image.ingest.saved").counter().count();
+
+        applicationProperties.getImageIngest().setEnabled(true);
+        try {
+            // The upload is stripped of its metadata and turned upright
+            restFragmentMockMvc.perform(put("/api/fragments/{id}/image", fragmentEntity.getId())
+                .contentType(MediaType.IMAGE_JPEG)
+                .content(upload))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imageContentType").value(MediaType.IMAGE_JPEG_VALUE))
+                .andExpect(jsonPath("$.imageSha256").value(not(ImageDigest.sha256Hex(upload))))
+                .andExpect(jsonPath("$.imageSize").value(lessThan(upload.length)));
+        } finally {
+            applicationProperties.getImageIngest().setEnabled(false);
+        }
+
+        FragmentEntity testFragment = fragmentRepository.findById(fragmentEntity.getId()).get();
+        assertThat(testFragment.getImageOriginalSha256()).isNull();
+        byte[] stored = restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(stored));
+        assertThat(image.getWidth()).isEqualTo(20);
+        assertThat(image.getHeight()).isEqualTo(40);
+        assertThat(meterRegistry.get("image.ingest.saved").counter().count()).isEqualTo(savedBefore + upload.length - stored.length);
+    }
+
+    @Test
+    @Transactional
+    public void putFragmentImageThroughIngestKeepingOriginal() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        byte[] upload = createPhoto(40, 20, 1);
+
+        applicationProperties.getImageIngest().setEnabled(true);
+        applicationProperties.getImageIngest().setKeepOriginal(true);
+        try {
+            restFragmentMockMvc.perform(put("/api/fragments/{id}/image", fragmentEntity.getId())
+                .contentType(MediaType.IMAGE_JPEG)
+                .content(upload))
+                .andExpect(status().isOk());
+        } finally {
+            applicationProperties.getImageIngest().setEnabled(false);
+            applicationProperties.getImageIngest().setKeepOriginal(false);
+        }
+
+        FragmentEntity testFragment = fragmentRepository.findById(fragmentEntity.getId()).get();
+        assertThat(testFragment.getImageSha256()).isNotEqualTo(ImageDigest.sha256Hex(upload));
+        assertThat(testFragment.getImageOriginalSha256()).isEqualTo(ImageDigest.sha256Hex(upload));
+        assertThat(imageStore.load(testFragment.getImageOriginalSha256())).isPresent();
+    }
+
+    /**
+     * Create a JPEG carrying an EXIF orientation and a few kilobytes of other metadata, like phone cameras do.
+     */
+    private static byte[] createPhoto(int width, int height, int orientation) throws IOException {
+        byte[] jpeg = createImage(width, height, "jpeg");
+        ByteBuffer exif = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 12 + 4);
+        exif.putShort((short) 0xffe1).putShort((short) (exif.capacity() - 2))
+            .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII))
+            .put((byte) 'M').put((byte) 'M').putShort((short) 0x002a).putInt(8)
+            .putShort((short) 1)
+            .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+            .putInt(0);
+        ByteBuffer padding = ByteBuffer.allocate(2 + 2 + 16 * 1024);
+        padding.putShort((short) 0xffe2).putShort((short) (padding.capacity() - 2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(exif.array());
+        out.write(padding.array());
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    @Test
+    @Transactional
+    public void getNonExistingFragmentImage() throws Exception {
+        // Initialize the database
+        fragmentRepository.saveAndFlush(fragmentEntity.image(null).imageContentType(null));
+
+        // Get the image of a fragment without one, and of an unknown fragment
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isNotFound());
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void updateFragment() throws Exception {
@@ -1264,7 +2132,7 @@ public class FragmentResourceIT {
 
         restFragmentMockMvc.perform(put("/api/fragments")
             .contentType(MediaType.APPLICATION_JSON)
-            .content(TestUtil.convertObjectToJsonBytes(updatedFragmentEntity)))
+            .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
             .andExpect(status().isOk());
 
         // Validate the Fragment in the database
@@ -1276,7 +2144,8 @@ public class FragmentResourceIT {
         assertThat(testFragment.getTitle()).isEqualTo(UPDATED_TITLE);
         assertThat(testFragment.getIngress()).isEqualTo(UPDATED_INGRESS);
         assertThat(testFragment.getBody()).isEqualTo(UPDATED_BODY);
-        assertThat(testFragment.getImage()).isEqualTo(UPDATED_IMAGE);
+        assertThat(testFragment.getImageSha256()).isEqualTo(ImageDigest.sha256Hex(UPDATED_IMAGE));
+        assertThat(testFragment.getImageSize()).isEqualTo(UPDATED_IMAGE.length);
         assertThat(testFragment.getImageContentType()).isEqualTo(UPDATED_IMAGE_CONTENT_TYPE);
         assertThat(testFragment.getCaption()).isEqualTo(UPDATED_CAPTION);
         assertThat(testFragment.getWidth()).isEqualTo(UPDATED_WIDTH);
@@ -1284,8 +2153,243 @@ public class FragmentResourceIT {
         assertThat(testFragment.getOrderNo()).isEqualTo(UPDATED_ORDER_NO);
         assertThat(testFragment.getVisibility()).isEqualTo(UPDATED_VISIBILITY);
 
-        // Validate the Fragment in Elasticsearch
-        verify(mockFragmentSearchRepository, times(2)).save(testFragment);
+        // Validate the Fragment is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", testFragment.getId())).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void updateFragmentWithoutImage() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        em.flush();
+
+        // Update the fragment as read from the api, that is without the image bytes
+        FragmentEntity updatedFragmentEntity = fragmentRepository.findById(fragmentEntity.getId()).get();
+        em.detach(updatedFragmentEntity);
+        updatedFragmentEntity.name(UPDATED_NAME);
+
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isOk());
+
+        // The stored image is kept
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getImageSha256()).isEqualTo(ImageDigest.sha256Hex(DEFAULT_IMAGE));
+        restFragmentMockMvc.perform(get("/api/fragments/{id}/image", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(DEFAULT_IMAGE));
+
+        // Clearing the content type removes the stored image, applied to the current version
+        updatedFragmentEntity.imageContentType(null).setVersion(null);
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imageUrl").doesNotExist());
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getImageSha256()).isNull();
+    }
+
+    @Test
+    @Transactional
+    public void updateFragmentKeepsImageAnalysis() throws Exception {
+        // Initialize the database with an analyzed image
+        fragmentService.save(fragmentEntity);
+        fragmentEntity.imagePlaceholder(DEFAULT_IMAGE_PLACEHOLDER).imageColor(DEFAULT_IMAGE_COLOR);
+        em.flush();
+
+        // Update the fragment as read from the api, that is without the image bytes
+        FragmentEntity updatedFragmentEntity = fragmentRepository.findById(fragmentEntity.getId()).get();
+        em.detach(updatedFragmentEntity);
+        updatedFragmentEntity.name(UPDATED_NAME).imagePlaceholder(null).imageColor(null);
+
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imagePlaceholder").value(DEFAULT_IMAGE_PLACEHOLDER))
+            .andExpect(jsonPath("$.imageColor").value(DEFAULT_IMAGE_COLOR));
+
+        // A new image drops the analysis of the previous one, applied to the current version
+        updatedFragmentEntity.image(UPDATED_IMAGE).setVersion(null);
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imagePlaceholder").doesNotExist())
+            .andExpect(jsonPath("$.imageColor").doesNotExist());
+    }
+
+    @Test
+    @Transactional
+    public void analyzeFragmentImage() throws Exception {
+        // Initialize the database with a stored image, committed for the asynchronous analysis to see it
+        byte[] image = createImage(40, 20, "png");
+        StoredImage storedImage = imageStore.store(new ByteArrayInputStream(image));
+        fragmentRepository.saveAndFlush(fragmentEntity.width(null).height(null)
+            .imageContentType("image/png").imageSha256(storedImage.getSha256()).imageSize(storedImage.getSize()));
+        Long id = fragmentEntity.getId();
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        try {
+            fragmentImageAnalysisService.analyze(id, storedImage.getSha256()).get();
+
+            restFragmentMockMvc.perform(get("/api/fragments/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.width").value(40))
+                .andExpect(jsonPath("$.height").value(20))
+                .andExpect(jsonPath("$.imagePlaceholder").value(startsWith("data:image/png;base64,")))
+                .andExpect(jsonPath("$.imageColor").value("#ff0000"));
+        } finally {
+            TestTransaction.start();
+            TestTransaction.flagForCommit();
+            FragmentEntity analyzedFragment = em.find(FragmentEntity.class, id);
+            em.remove(analyzedFragment);
+            em.remove(analyzedFragment.getStory());
+            TestTransaction.end();
+        }
+    }
+
+    @Test
+    @Transactional
+    public void getFragmentNotModified() throws Exception {
+        // Initialize the database
+        fragmentRepository.saveAndFlush(fragmentEntity);
+
+        // Get the fragment with its entity tag, then revalidate it
+        String eTag = restFragmentMockMvc.perform(get("/api/fragments/{id}", fragmentEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"0-")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restFragmentMockMvc.perform(get("/api/fragments/{id}", fragmentEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // Get all the fragmentList with its weak entity tag, then revalidate it
+        String listETag = restFragmentMockMvc.perform(get("/api/fragments?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restFragmentMockMvc.perform(get("/api/fragments?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isNotModified());
+
+        // Update the story embedded in the fragment
+        fragmentEntity.getStory().setName("Renamed story");
+        em.flush();
+
+        restFragmentMockMvc.perform(get("/api/fragments/{id}", fragmentEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+        restFragmentMockMvc.perform(get("/api/fragments?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(listETag)));
+    }
+
+    @Test
+    @Transactional
+    public void updateFragmentWithIfMatch() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        em.flush();
+        String eTag = restFragmentMockMvc.perform(get("/api/fragments/{id}", fragmentEntity.getId()))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Update the fragment without version, guarded by its entity tag
+        FragmentEntity updatedFragmentEntity = fragmentRepository.findById(fragmentEntity.getId()).get();
+        em.detach(updatedFragmentEntity);
+        updatedFragmentEntity
+            .name(UPDATED_NAME)
+            .setVersion(null);
+
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .header(HttpHeaders.IF_MATCH, "\"42\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isPreconditionFailed());
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getName()).isEqualTo(DEFAULT_NAME);
+
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .header(HttpHeaders.IF_MATCH, eTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG));
+        assertThat(fragmentRepository.findById(fragmentEntity.getId()).get().getName()).isEqualTo(UPDATED_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void updateFragmentAfterImageAnalysis() throws Exception {
+        // Initialize the database with a stored image, committed for the analysis to see it
+        StoredImage storedImage = imageStore.store(new ByteArrayInputStream(createImage(40, 20, "png")));
+        fragmentRepository.saveAndFlush(fragmentEntity.width(null).height(null)
+            .imageContentType("image/png").imageSha256(storedImage.getSha256()).imageSize(storedImage.getSize()));
+        Long id = fragmentEntity.getId();
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        try {
+            String eTag = restFragmentMockMvc.perform(get("/api/fragments/{id}", id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+            fragmentImageAnalysisService.analyze(id, storedImage.getSha256()).get();
+
+            // The analysis changes the entity tag, so the representations cached before it are revalidated
+            MockHttpServletResponse response = restFragmentMockMvc.perform(get("/api/fragments/{id}", id)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.width").value(40))
+                .andExpect(jsonPath("$.imagePlaceholder").value(startsWith("data:image/png;base64,")))
+                .andReturn().getResponse();
+            FragmentEntity updatedFragmentEntity = fragmentEntity.name(UPDATED_NAME).image(null);
+            updatedFragmentEntity.setVersion(null);
+            restFragmentMockMvc.perform(put("/api/fragments")
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+                .andExpect(status().isPreconditionFailed());
+
+            // The client updates the fragment as read again after the analysis
+            restFragmentMockMvc.perform(put("/api/fragments")
+                .header(HttpHeaders.IF_MATCH, response.getHeader(HttpHeaders.ETAG))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value(UPDATED_NAME))
+                .andExpect(jsonPath("$.imagePlaceholder").value(startsWith("data:image/png;base64,")));
+        } finally {
+            TestTransaction.start();
+            TestTransaction.flagForCommit();
+            FragmentEntity analyzedFragment = em.find(FragmentEntity.class, id);
+            em.remove(analyzedFragment);
+            em.remove(analyzedFragment.getStory());
+            TestTransaction.end();
+        }
+    }
+
+    @Test
+    @Transactional
+    public void updateFragmentWithStaleVersion() throws Exception {
+        // Initialize the database
+        fragmentService.save(fragmentEntity);
+        em.flush();
+
+        // Update the fragment from a version that is not the current one
+        FragmentEntity updatedFragmentEntity = fragmentRepository.findById(fragmentEntity.getId()).get();
+        em.detach(updatedFragmentEntity);
+        updatedFragmentEntity
+            .name(UPDATED_NAME)
+            .setVersion(updatedFragmentEntity.getVersion() + 1);
+
+        restFragmentMockMvc.perform(put("/api/fragments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(convertFragmentToJsonBytes(updatedFragmentEntity)))
+            .andExpect(status().isConflict());
     }
 
     @Test
@@ -1303,8 +2407,8 @@ public class FragmentResourceIT {
         List<FragmentEntity> fragmentList = fragmentRepository.findAll();
         assertThat(fragmentList).hasSize(databaseSizeBeforeUpdate);
 
-        // Validate the Fragment in Elasticsearch
-        verify(mockFragmentSearchRepository, times(0)).save(fragmentEntity);
+        // Validate the Fragment is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", fragmentEntity.getId())).isEqualTo(0);
     }
 
     @Test
@@ -1324,8 +2428,8 @@ public class FragmentResourceIT {
         List<FragmentEntity> fragmentList = fragmentRepository.findAll();
         assertThat(fragmentList).hasSize(databaseSizeBeforeDelete - 1);
 
-        // Validate the Fragment in Elasticsearch
-        verify(mockFragmentSearchRepository, times(1)).deleteById(fragmentEntity.getId());
+        // Validate the Fragment is queued for Elasticsearch, once when saved and once when deleted
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", fragmentEntity.getId())).isEqualTo(2);
     }
 
     @Test
@@ -1335,7 +2439,7 @@ public class FragmentResourceIT {
         // Initialize the database
         fragmentService.save(fragmentEntity);
         when(mockFragmentSearchRepository.search(queryStringQuery("id:" + fragmentEntity.getId()), PageRequest.of(0, 20)))
-            .thenReturn(new PageImpl<>(Collections.singletonList(fragmentEntity), PageRequest.of(0, 1), 1));
+            .thenReturn(new PageImpl<>(Collections.singletonList(FragmentDocument.of(fragmentEntity)), PageRequest.of(0, 1), 1));
 
         // Search the fragment
         restFragmentMockMvc.perform(get("/api/_search/fragments?query=id:" + fragmentEntity.getId()))
@@ -1348,11 +2452,41 @@ public class FragmentResourceIT {
             .andExpect(jsonPath("$.[*].ingress").value(hasItem(DEFAULT_INGRESS)))
             .andExpect(jsonPath("$.[*].body").value(hasItem(DEFAULT_BODY.toString())))
             .andExpect(jsonPath("$.[*].imageContentType").value(hasItem(DEFAULT_IMAGE_CONTENT_TYPE)))
-            .andExpect(jsonPath("$.[*].image").value(hasItem(Base64Utils.encodeToString(DEFAULT_IMAGE))))
+            .andExpect(jsonPath("$.[*].imageUrl").value(hasItem("/api/fragments/" + fragmentEntity.getId() + "/image")))
+            .andExpect(jsonPath("$.[*].image").doesNotExist())
             .andExpect(jsonPath("$.[*].caption").value(hasItem(DEFAULT_CAPTION)))
             .andExpect(jsonPath("$.[*].width").value(hasItem(DEFAULT_WIDTH)))
             .andExpect(jsonPath("$.[*].height").value(hasItem(DEFAULT_HEIGHT)))
             .andExpect(jsonPath("$.[*].orderNo").value(hasItem(DEFAULT_ORDER_NO)))
             .andExpect(jsonPath("$.[*].visibility").value(hasItem(DEFAULT_VISIBILITY.toString())));
     }
+
+    @Test
+    @Transactional
+    public void searchFragmentDocuments() throws Exception {
+        // Initialize the database
+        TagEntity tag = TagResourceIT.createEntity(em);
+        em.persist(tag);
+        fragmentEntity.addTag(tag);
+        fragmentService.save(fragmentEntity);
+        LocalizedEntity localized = LocalizedResourceIT.createEntity(em).fragment(fragmentEntity);
+        em.persist(localized);
+        fragmentEntity.addLocalizedFragment(localized);
+        when(mockFragmentSearchRepository.search(queryStringQuery("localizations.title:" + localized.getTitle()), PageRequest.of(0, 20)))
+            .thenReturn(new PageImpl<>(Collections.singletonList(FragmentDocument.of(fragmentEntity)), PageRequest.of(0, 1), 1));
+
+        // Search the fragment documents, with their story, tags and translations
+        restFragmentMockMvc.perform(get("/api/_search/fragment-documents?query=localizations.title:" + localized.getTitle()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[0].id").value(fragmentEntity.getId().intValue()))
+            .andExpect(jsonPath("$.[0].name").value(DEFAULT_NAME))
+            .andExpect(jsonPath("$.[0].story.id").value(fragmentEntity.getStory().getId().intValue()))
+            .andExpect(jsonPath("$.[0].story.name").value(fragmentEntity.getStory().getName()))
+            .andExpect(jsonPath("$.[0].tags.[0].name").value(tag.getName()))
+            .andExpect(jsonPath("$.[0].localizations.[0].i18n").value(localized.geti18n()))
+            .andExpect(jsonPath("$.[0].localizations.[0].title").value(localized.getTitle()))
+            .andExpect(jsonPath("$.[0].image").doesNotExist());
+    }
 }
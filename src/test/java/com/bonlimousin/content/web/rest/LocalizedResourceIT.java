@@ -3,14 +3,15 @@ package com.bonlimousin.content.web.rest;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
 import static org.hamcrest.Matchers.hasItem;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -28,6 +29,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
@@ -36,8 +38,10 @@ import org.springframework.transaction.annotation.Transactional;
 import com.bonlimousin.content.BonContentServiceApp;
 import com.bonlimousin.content.domain.FragmentEntity;
 import com.bonlimousin.content.domain.LocalizedEntity;
+import com.bonlimousin.content.domain.search.LocalizedDocument;
 import com.bonlimousin.content.domain.enumeration.UserRole;
 import com.bonlimousin.content.repository.LocalizedRepository;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
 import com.bonlimousin.content.repository.search.LocalizedSearchRepository;
 import com.bonlimousin.content.service.LocalizedQueryService;
 import com.bonlimousin.content.service.LocalizedService;
@@ -82,6 +86,9 @@ public class LocalizedResourceIT {
     @Autowired
     private LocalizedSearchRepository mockLocalizedSearchRepository;
 
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
     @Autowired
     private LocalizedQueryService localizedQueryService;
 
@@ -172,8 +179,8 @@ public class LocalizedResourceIT {
         assertThat(testLocalized.getCaption()).isEqualTo(DEFAULT_CAPTION);
         assertThat(testLocalized.getVisibility()).isEqualTo(DEFAULT_VISIBILITY);
 
-        // Validate the Localized in Elasticsearch
-        verify(mockLocalizedSearchRepository, times(1)).save(testLocalized);
+        // Validate the Localized is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("localized", testLocalized.getId())).isEqualTo(1);
     }
 
     @Test
@@ -194,8 +201,8 @@ public class LocalizedResourceIT {
         List<LocalizedEntity> localizedList = localizedRepository.findAll();
         assertThat(localizedList).hasSize(databaseSizeBeforeCreate);
 
-        // Validate the Localized in Elasticsearch
-        verify(mockLocalizedSearchRepository, times(0)).save(localizedEntity);
+        // Validate the Localized is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("localized", localizedEntity.getId())).isEqualTo(0);
     }
 
 
@@ -255,6 +262,22 @@ public class LocalizedResourceIT {
             .andExpect(jsonPath("$.[*].caption").value(hasItem(DEFAULT_CAPTION)))
             .andExpect(jsonPath("$.[*].visibility").value(hasItem(DEFAULT_VISIBILITY.toString())));
     }
+
+    @Test
+    @Transactional
+    public void getAllLocalizedsFields() throws Exception {
+        // Initialize the database
+        localizedRepository.saveAndFlush(localizedEntity);
+
+        // Get the languages and titles of the localizeds
+        restLocalizedMockMvc.perform(get("/api/localizeds?fields=i18n,title&id.equals=" + localizedEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].i18n").value(DEFAULT_I_18_N))
+            .andExpect(jsonPath("$[0].title").value(DEFAULT_TITLE))
+            .andExpect(jsonPath("$[0].body").doesNotExist());
+        restLocalizedMockMvc.perform(get("/api/localizeds?fields=fragment"))
+            .andExpect(status().isBadRequest());
+    }
     
     @Test
     @Transactional
@@ -713,6 +736,20 @@ public class LocalizedResourceIT {
             .andExpect(content().string("0"));
     }
 
+    @Test
+    @Transactional
+    public void getLocalizedWithInclude() throws Exception {
+        // Initialize the database
+        localizedRepository.saveAndFlush(localizedEntity);
+        em.clear();
+
+        restLocalizedMockMvc.perform(get("/api/localizeds/{id}?include=fragment", localizedEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.fragment.id").value(localizedEntity.getFragment().getId().intValue()));
+        restLocalizedMockMvc.perform(get("/api/localizeds?include=fragment.tags"))
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     public void getNonExistingLocalized() throws Exception {
@@ -757,8 +794,100 @@ public class LocalizedResourceIT {
         assertThat(testLocalized.getCaption()).isEqualTo(UPDATED_CAPTION);
         assertThat(testLocalized.getVisibility()).isEqualTo(UPDATED_VISIBILITY);
 
-        // Validate the Localized in Elasticsearch
-        verify(mockLocalizedSearchRepository, times(2)).save(testLocalized);
+        // Validate the Localized is queued for Elasticsearch, and the translations of its fragment
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("localized", testLocalized.getId())).isEqualTo(2);
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("fragment", localizedEntity.getFragment().getId())).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void getLocalizedNotModified() throws Exception {
+        // Initialize the database
+        localizedRepository.saveAndFlush(localizedEntity);
+
+        // Get the localized with its entity tag, then revalidate it
+        String eTag = restLocalizedMockMvc.perform(get("/api/localizeds/{id}", localizedEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"0-")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restLocalizedMockMvc.perform(get("/api/localizeds/{id}", localizedEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // Get all the localizedList with its weak entity tag, then revalidate it
+        String listETag = restLocalizedMockMvc.perform(get("/api/localizeds?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restLocalizedMockMvc.perform(get("/api/localizeds?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isNotModified());
+
+        // Update the fragment embedded in the localized
+        localizedEntity.getFragment().setCaption("Updated caption");
+        em.flush();
+
+        restLocalizedMockMvc.perform(get("/api/localizeds/{id}", localizedEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+        restLocalizedMockMvc.perform(get("/api/localizeds?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(listETag)));
+    }
+
+    @Test
+    @Transactional
+    public void updateLocalizedWithIfMatch() throws Exception {
+        // Initialize the database
+        localizedService.save(localizedEntity);
+        em.flush();
+        String eTag = restLocalizedMockMvc.perform(get("/api/localizeds/{id}", localizedEntity.getId()))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Update the localized without version, guarded by its entity tag
+        LocalizedEntity updatedLocalizedEntity = localizedRepository.findById(localizedEntity.getId()).get();
+        em.detach(updatedLocalizedEntity);
+        updatedLocalizedEntity
+            .title(UPDATED_TITLE)
+            .setVersion(null);
+
+        restLocalizedMockMvc.perform(put("/api/localizeds")
+            .header(HttpHeaders.IF_MATCH, "\"42\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedLocalizedEntity)))
+            .andExpect(status().isPreconditionFailed());
+        assertThat(localizedRepository.findById(localizedEntity.getId()).get().getTitle()).isEqualTo(DEFAULT_TITLE);
+
+        restLocalizedMockMvc.perform(put("/api/localizeds")
+            .header(HttpHeaders.IF_MATCH, eTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedLocalizedEntity)))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG));
+        assertThat(localizedRepository.findById(localizedEntity.getId()).get().getTitle()).isEqualTo(UPDATED_TITLE);
+    }
+
+    @Test
+    @Transactional
+    public void updateLocalizedWithStaleVersion() throws Exception {
+        // Initialize the database
+        localizedService.save(localizedEntity);
+        em.flush();
+
+        // Update the localized from a version that is not the current one
+        LocalizedEntity updatedLocalizedEntity = localizedRepository.findById(localizedEntity.getId()).get();
+        em.detach(updatedLocalizedEntity);
+        updatedLocalizedEntity
+            .title(UPDATED_TITLE)
+            .setVersion(updatedLocalizedEntity.getVersion() + 1);
+
+        restLocalizedMockMvc.perform(put("/api/localizeds")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedLocalizedEntity)))
+            .andExpect(status().isConflict());
     }
 
     @Test
@@ -776,8 +905,8 @@ public class LocalizedResourceIT {
         List<LocalizedEntity> localizedList = localizedRepository.findAll();
         assertThat(localizedList).hasSize(databaseSizeBeforeUpdate);
 
-        // Validate the Localized in Elasticsearch
-        verify(mockLocalizedSearchRepository, times(0)).save(localizedEntity);
+        // Validate the Localized is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("localized", localizedEntity.getId())).isEqualTo(0);
     }
 
     @Test
@@ -797,8 +926,8 @@ public class LocalizedResourceIT {
         List<LocalizedEntity> localizedList = localizedRepository.findAll();
         assertThat(localizedList).hasSize(databaseSizeBeforeDelete - 1);
 
-        // Validate the Localized in Elasticsearch
-        verify(mockLocalizedSearchRepository, times(1)).deleteById(localizedEntity.getId());
+        // Validate the Localized is queued for Elasticsearch, once when saved and once when deleted
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("localized", localizedEntity.getId())).isEqualTo(2);
     }
 
     @Test
@@ -808,7 +937,7 @@ public class LocalizedResourceIT {
         // Initialize the database
         localizedService.save(localizedEntity);
         when(mockLocalizedSearchRepository.search(queryStringQuery("id:" + localizedEntity.getId()), PageRequest.of(0, 20)))
-            .thenReturn(new PageImpl<>(Collections.singletonList(localizedEntity), PageRequest.of(0, 1), 1));
+            .thenReturn(new PageImpl<>(Collections.singletonList(LocalizedDocument.of(localizedEntity)), PageRequest.of(0, 1), 1));
 
         // Search the localized
         restLocalizedMockMvc.perform(get("/api/_search/localizeds?query=id:" + localizedEntity.getId()))
@@ -2,13 +2,24 @@ package com.bonlimousin.content.web.rest;
 
 import com.bonlimousin.content.BonContentServiceApp;
 import com.bonlimousin.content.domain.StoryEntity;
+import com.bonlimousin.content.domain.search.StoryDocument;
 import com.bonlimousin.content.domain.FragmentEntity;
+import com.bonlimousin.content.domain.TagEntity;
 import com.bonlimousin.content.repository.StoryRepository;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
 import com.bonlimousin.content.repository.search.StorySearchRepository;
 import com.bonlimousin.content.service.StoryService;
 import com.bonlimousin.content.service.dto.StoryCriteria;
+import com.bonlimousin.content.service.snapshot.StorySnapshot;
+import com.bonlimousin.content.service.snapshot.StorySnapshotService;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import com.bonlimousin.content.service.StoryQueryService;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -19,17 +30,28 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StreamUtils;
 import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -68,12 +90,21 @@ public class StoryResourceIT {
     @Autowired
     private StorySearchRepository mockStorySearchRepository;
 
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
     @Autowired
     private StoryQueryService storyQueryService;
 
     @Autowired
     private EntityManager em;
 
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private MockMvc restStoryMockMvc;
 
@@ -129,8 +160,8 @@ public class StoryResourceIT {
         assertThat(testStory.getName()).isEqualTo(DEFAULT_NAME);
         assertThat(testStory.getVisibility()).isEqualTo(DEFAULT_VISIBILITY);
 
-        // Validate the Story in Elasticsearch
-        verify(mockStorySearchRepository, times(1)).save(testStory);
+        // Validate the Story is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("story", testStory.getId())).isEqualTo(1);
     }
 
     @Test
@@ -151,8 +182,8 @@ public class StoryResourceIT {
         List<StoryEntity> storyList = storyRepository.findAll();
         assertThat(storyList).hasSize(databaseSizeBeforeCreate);
 
-        // Validate the Story in Elasticsearch
-        verify(mockStorySearchRepository, times(0)).save(storyEntity);
+        // Validate the Story is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("story", storyEntity.getId())).isEqualTo(0);
     }
 
 
@@ -209,6 +240,22 @@ public class StoryResourceIT {
             .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME)))
             .andExpect(jsonPath("$.[*].visibility").value(hasItem(DEFAULT_VISIBILITY.toString())));
     }
+
+    @Test
+    @Transactional
+    public void getAllStoriesFields() throws Exception {
+        // Initialize the database
+        storyRepository.saveAndFlush(storyEntity);
+
+        // Get the ids and names of the stories
+        restStoryMockMvc.perform(get("/api/stories?fields=id,name&id.equals=" + storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(storyEntity.getId().intValue()))
+            .andExpect(jsonPath("$[0].name").value(DEFAULT_NAME))
+            .andExpect(jsonPath("$[0].category").doesNotExist());
+        restStoryMockMvc.perform(get("/api/stories?fields=fragments"))
+            .andExpect(status().isBadRequest());
+    }
     
     @Test
     @Transactional
@@ -226,6 +273,184 @@ public class StoryResourceIT {
             .andExpect(jsonPath("$.visibility").value(DEFAULT_VISIBILITY.toString()));
     }
 
+    @Test
+    @Transactional
+    public void getStoryWithInclude() throws Exception {
+        // Initialize the database with two fragments
+        storyRepository.saveAndFlush(storyEntity);
+        for (int orderNo = 1; orderNo <= 2; orderNo++) {
+            em.persist(FragmentResourceIT.createEntity(em).orderNo(orderNo).story(storyEntity));
+        }
+        em.flush();
+        em.clear();
+
+        String eTag = restStoryMockMvc.perform(get("/api/stories/{id}?include=fragments", storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.fragments.length()").value(2))
+            .andExpect(jsonPath("$.fragments[0].story").doesNotExist())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        em.clear();
+        restStoryMockMvc.perform(get("/api/stories/{id}", storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+            .andExpect(jsonPath("$.fragments").doesNotExist());
+        restStoryMockMvc.perform(get("/api/stories?id.equals={id}&include=fragments", storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].fragments.length()").value(2));
+        restStoryMockMvc.perform(get("/api/stories?include=tags"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getStoryAggregate() throws Exception {
+        // Initialize the database with fragments in reverse order, each with two localizations and a tag
+        storyRepository.saveAndFlush(storyEntity);
+        TagEntity tag = TagResourceIT.createEntity(em);
+        em.persist(tag);
+        for (int orderNo = 3; orderNo > 0; orderNo--) {
+            FragmentEntity fragment = FragmentResourceIT.createEntity(em).orderNo(orderNo).story(storyEntity).addTag(tag);
+            em.persist(fragment);
+            em.persist(LocalizedResourceIT.createEntity(em).i18n("sv").fragment(fragment));
+            em.persist(LocalizedResourceIT.createEntity(em).i18n("en").fragment(fragment));
+        }
+        em.flush();
+        em.clear();
+
+        // Get the story aggregate, counting the statements
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        String eTag;
+        try {
+            statistics.clear();
+            eTag = restStoryMockMvc.perform(get("/api/stories/{id}/full", storyEntity.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.story.id").value(storyEntity.getId().intValue()))
+                .andExpect(jsonPath("$.story.name").value(DEFAULT_NAME))
+                .andExpect(jsonPath("$.fragments.length()").value(3))
+                .andExpect(jsonPath("$.fragments[*].fragment.orderNo").value(contains(1, 2, 3)))
+                .andExpect(jsonPath("$.fragments[0].fragment.story").doesNotExist())
+                .andExpect(jsonPath("$.fragments[0].localizations[*].i18n").value(containsInAnyOrder("sv", "en")))
+                .andExpect(jsonPath("$.fragments[0].localizations[0].fragment").doesNotExist())
+                .andExpect(jsonPath("$.fragments[0].tags[*].id").value(contains(tag.getId().intValue())))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            assertThat(statistics.getPrepareStatementCount()).isBetween(1L, 3L);
+
+            // Get it again from its snapshot, without statements
+            statistics.clear();
+            restStoryMockMvc.perform(get("/api/stories/{id}/full", storyEntity.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(jsonPath("$.fragments.length()").value(3));
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        // Revalidate the story aggregate
+        restStoryMockMvc.perform(get("/api/stories/{id}/full", storyEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void rebuildStorySnapshotAfterWrites() throws Exception {
+        // Initialize the database, committed so that the snapshot is rebuilt
+        StoryEntity story = storyService.save(storyEntity);
+        try {
+            awaitStorySnapshot(story.getId(), DEFAULT_NAME);
+
+            // Update the story in a burst, followed by a single rebuild
+            Counter rebuilds = meterRegistry.get("story.snapshot.builds").tag("trigger", "write").counter();
+            double rebuildsBefore = rebuilds.count();
+            for (int i = 1; i <= 3; i++) {
+                story = storyService.save(story.name("Burst " + i));
+            }
+            assertThat(hazelcastInstance.getMap(StorySnapshotService.SNAPSHOTS_MAP).containsKey(story.getId())).isFalse();
+            awaitStorySnapshot(story.getId(), "Burst 3");
+            assertThat(rebuilds.count() - rebuildsBefore).isEqualTo(1.0);
+
+            // Get the snapshot gzipped, then plain
+            MockHttpServletResponse gzipped = restStoryMockMvc.perform(get("/api/stories/{id}/full", story.getId())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse();
+            assertThat(gzipped.getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT_ENCODING);
+            String gzipETag = gzipped.getHeader(HttpHeaders.ETAG);
+            assertThat(gzipETag).endsWith("-gzip\"");
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getContentAsByteArray()))) {
+                assertThat(new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8)).contains("\"Burst 3\"");
+            }
+            restStoryMockMvc.perform(get("/api/stories/{id}/full", story.getId())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, not(gzipETag)))
+                .andExpect(jsonPath("$.story.name").value("Burst 3"));
+
+            // Either entity tag revalidates the story, in either content coding
+            restStoryMockMvc.perform(get("/api/stories/{id}/full", story.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, gzipETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, not(gzipETag)));
+            restStoryMockMvc.perform(get("/api/stories/{id}/full", story.getId())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/" + gzipETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, gzipETag));
+        } finally {
+            storyService.delete(story.getId());
+        }
+    }
+
+    private StorySnapshot awaitStorySnapshot(Long id, String name) throws InterruptedException {
+        IMap<Long, StorySnapshot> snapshots = hazelcastInstance.getMap(StorySnapshotService.SNAPSHOTS_MAP);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            StorySnapshot snapshot = snapshots.get(id);
+            if (snapshot != null && new String(snapshot.getJson(), StandardCharsets.UTF_8).contains("\"" + name + "\"")) {
+                return snapshot;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("No snapshot of story " + id + " named " + name);
+    }
+
+    @Test
+    @Transactional
+    public void getLocalizedStory() throws Exception {
+        // Initialize the database with a public and an admin only fragment, each localized in swedish
+        storyRepository.saveAndFlush(storyEntity);
+        for (UserRole visibility : new UserRole[] { null, UserRole.ROLE_ADMIN }) {
+            FragmentEntity fragment = FragmentResourceIT.createEntity(em).story(storyEntity).visibility(visibility);
+            em.persist(fragment);
+            em.persist(LocalizedResourceIT.createEntity(em).i18n("sv").title("Svensk titel").visibility(null).fragment(fragment));
+        }
+        em.flush();
+        em.clear();
+
+        restStoryMockMvc.perform(get("/api/stories/{id}/full?lang=sv", storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.story.id").value(storyEntity.getId().intValue()))
+            .andExpect(jsonPath("$.fragments.length()").value(1))
+            .andExpect(jsonPath("$.fragments[0].lang").value("sv"))
+            .andExpect(jsonPath("$.fragments[0].title").value("Svensk titel"));
+
+        restStoryMockMvc.perform(get("/api/stories/{id}/full?lang=", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getNonExistingStoryAggregate() throws Exception {
+        // Get the story aggregate
+        restStoryMockMvc.perform(get("/api/stories/{id}/full", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
 
     @Test
     @Transactional
@@ -521,8 +746,99 @@ public class StoryResourceIT {
         assertThat(testStory.getName()).isEqualTo(UPDATED_NAME);
         assertThat(testStory.getVisibility()).isEqualTo(UPDATED_VISIBILITY);
 
-        // Validate the Story in Elasticsearch
-        verify(mockStorySearchRepository, times(2)).save(testStory);
+        // Validate the Story is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("story", testStory.getId())).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void getStoryNotModified() throws Exception {
+        // Initialize the database
+        storyRepository.saveAndFlush(storyEntity);
+
+        // Get the story with its entity tag, then revalidate it
+        String eTag = restStoryMockMvc.perform(get("/api/stories/{id}", storyEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restStoryMockMvc.perform(get("/api/stories/{id}", storyEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // Get all the storyList with its weak entity tag, then revalidate it
+        String listETag = restStoryMockMvc.perform(get("/api/stories?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restStoryMockMvc.perform(get("/api/stories?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isNotModified());
+
+        // Update the story
+        storyEntity.setName(UPDATED_NAME);
+        em.flush();
+
+        restStoryMockMvc.perform(get("/api/stories/{id}", storyEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+        restStoryMockMvc.perform(get("/api/stories?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(listETag)));
+    }
+
+    @Test
+    @Transactional
+    public void updateStoryWithIfMatch() throws Exception {
+        // Initialize the database
+        storyService.save(storyEntity);
+        em.flush();
+        String eTag = restStoryMockMvc.perform(get("/api/stories/{id}", storyEntity.getId()))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Update the story without version, guarded by its entity tag
+        StoryEntity updatedStoryEntity = storyRepository.findById(storyEntity.getId()).get();
+        em.detach(updatedStoryEntity);
+        updatedStoryEntity
+            .name(UPDATED_NAME)
+            .setVersion(null);
+
+        restStoryMockMvc.perform(put("/api/stories")
+            .header(HttpHeaders.IF_MATCH, "\"42\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedStoryEntity)))
+            .andExpect(status().isPreconditionFailed());
+        assertThat(storyRepository.findById(storyEntity.getId()).get().getName()).isEqualTo(DEFAULT_NAME);
+
+        restStoryMockMvc.perform(put("/api/stories")
+            .header(HttpHeaders.IF_MATCH, eTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedStoryEntity)))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG));
+        assertThat(storyRepository.findById(storyEntity.getId()).get().getName()).isEqualTo(UPDATED_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void updateStoryWithStaleVersion() throws Exception {
+        // Initialize the database
+        storyService.save(storyEntity);
+        em.flush();
+
+        // Update the story from a version that is not the current one
+        StoryEntity updatedStoryEntity = storyRepository.findById(storyEntity.getId()).get();
+        em.detach(updatedStoryEntity);
+        updatedStoryEntity
+            .name(UPDATED_NAME)
+            .setVersion(updatedStoryEntity.getVersion() + 1);
+
+        restStoryMockMvc.perform(put("/api/stories")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedStoryEntity)))
+            .andExpect(status().isConflict());
     }
 
     @Test
@@ -540,8 +856,8 @@ public class StoryResourceIT {
         List<StoryEntity> storyList = storyRepository.findAll();
         assertThat(storyList).hasSize(databaseSizeBeforeUpdate);
 
-        // Validate the Story in Elasticsearch
-        verify(mockStorySearchRepository, times(0)).save(storyEntity);
+        // Validate the Story is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("story", storyEntity.getId())).isEqualTo(0);
     }
 
     @Test
@@ -561,8 +877,8 @@ public class StoryResourceIT {
         List<StoryEntity> storyList = storyRepository.findAll();
         assertThat(storyList).hasSize(databaseSizeBeforeDelete - 1);
 
-        // Validate the Story in Elasticsearch
-        verify(mockStorySearchRepository, times(1)).deleteById(storyEntity.getId());
+        // Validate the Story is queued for Elasticsearch, once when saved and once when deleted
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("story", storyEntity.getId())).isEqualTo(2);
     }
 
     @Test
@@ -572,7 +888,7 @@ public class StoryResourceIT {
         // Initialize the database
         storyService.save(storyEntity);
         when(mockStorySearchRepository.search(queryStringQuery("id:" + storyEntity.getId()), PageRequest.of(0, 20)))
-            .thenReturn(new PageImpl<>(Collections.singletonList(storyEntity), PageRequest.of(0, 1), 1));
+            .thenReturn(new PageImpl<>(Collections.singletonList(StoryDocument.of(storyEntity)), PageRequest.of(0, 1), 1));
 
         // Search the story
         restStoryMockMvc.perform(get("/api/_search/stories?query=id:" + storyEntity.getId()))
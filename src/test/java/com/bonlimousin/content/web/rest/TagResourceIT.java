@@ -2,8 +2,10 @@ package com.bonlimousin.content.web.rest;
 
 import com.bonlimousin.content.BonContentServiceApp;
 import com.bonlimousin.content.domain.TagEntity;
+import com.bonlimousin.content.domain.search.TagDocument;
 import com.bonlimousin.content.domain.FragmentEntity;
 import com.bonlimousin.content.repository.TagRepository;
+import com.bonlimousin.content.repository.SearchOutboxRepository;
 import com.bonlimousin.content.repository.search.TagSearchRepository;
 import com.bonlimousin.content.service.TagService;
 import com.bonlimousin.content.service.dto.TagCriteria;
@@ -19,9 +21,11 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.EntityManager;
 import java.util.Collections;
@@ -29,7 +33,11 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -60,6 +68,9 @@ public class TagResourceIT {
     @Autowired
     private TagSearchRepository mockTagSearchRepository;
 
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
     @Autowired
     private TagQueryService tagQueryService;
 
@@ -115,8 +126,8 @@ public class TagResourceIT {
         TagEntity testTag = tagList.get(tagList.size() - 1);
         assertThat(testTag.getName()).isEqualTo(DEFAULT_NAME);
 
-        // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(1)).save(testTag);
+        // Validate the Tag is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("tag", testTag.getId())).isEqualTo(1);
     }
 
     @Test
@@ -137,8 +148,8 @@ public class TagResourceIT {
         List<TagEntity> tagList = tagRepository.findAll();
         assertThat(tagList).hasSize(databaseSizeBeforeCreate);
 
-        // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tagEntity);
+        // Validate the Tag is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("tag", tagEntity.getId())).isEqualTo(0);
     }
 
 
@@ -174,7 +185,74 @@ public class TagResourceIT {
             .andExpect(jsonPath("$.[*].id").value(hasItem(tagEntity.getId().intValue())))
             .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME)));
     }
+
+    @Test
+    @Transactional
+    public void getAllTagsFields() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tagEntity);
+
+        // Get the names of the tags
+        restTagMockMvc.perform(get("/api/tags?fields=name&sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME)))
+            .andExpect(jsonPath("$.[*].id").isEmpty());
+        restTagMockMvc.perform(get("/api/tags?fields=fragments"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getTagsAfter() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tagEntity);
+        TagEntity otherTag = tagRepository.saveAndFlush(createEntity(em).name("Other tag"));
+
+        // Get the tags one by one
+        MvcResult first = restTagMockMvc.perform(get("/api/tags?after=&size=1&sort=id,asc&id.in=" + tagEntity.getId() + "," + otherTag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(tagEntity.getId().intValue())))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"next\"")))
+            .andReturn();
+        String link = first.getResponse().getHeader(HttpHeaders.LINK);
+        restTagMockMvc.perform(get(link.substring(link.indexOf('<') + 1, link.indexOf('>'))))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(otherTag.getId().intValue())))
+            .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    @Transactional
+    public void getAllTagsWithoutCount() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tagEntity);
+
+        // Get all the tags without counting them
+        restTagMockMvc.perform(get("/api/tags?sort=id,desc&count=none"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(tagEntity.getId().intValue())))
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"first\"")));
+    }
     
+    @Test
+    @Transactional
+    public void getTagsById() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tagEntity);
+        TagEntity otherTag = tagRepository.saveAndFlush(createEntity(em).name(UPDATED_NAME));
+
+        // Get the tags in the order of their ids
+        restTagMockMvc.perform(get("/api/tags?ids=" + otherTag.getId() + "," + tagEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$[*].id").value(contains(otherTag.getId().intValue(), tagEntity.getId().intValue())))
+            .andExpect(jsonPath("$[*].name").value(contains(UPDATED_NAME, DEFAULT_NAME)));
+        restTagMockMvc.perform(get("/api/tags?ids=" + Long.MAX_VALUE))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(0));
+    }
+
     @Test
     @Transactional
     public void getTag() throws Exception {
@@ -374,8 +452,99 @@ public class TagResourceIT {
         TagEntity testTag = tagList.get(tagList.size() - 1);
         assertThat(testTag.getName()).isEqualTo(UPDATED_NAME);
 
-        // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(2)).save(testTag);
+        // Validate the Tag is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("tag", testTag.getId())).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void getTagNotModified() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tagEntity);
+
+        // Get the tag with its entity tag, then revalidate it
+        String eTag = restTagMockMvc.perform(get("/api/tags/{id}", tagEntity.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restTagMockMvc.perform(get("/api/tags/{id}", tagEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // Get all the tagList with its weak entity tag, then revalidate it
+        String listETag = restTagMockMvc.perform(get("/api/tags?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restTagMockMvc.perform(get("/api/tags?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isNotModified());
+
+        // Update the tag
+        tagEntity.setName(UPDATED_NAME);
+        em.flush();
+
+        restTagMockMvc.perform(get("/api/tags/{id}", tagEntity.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+        restTagMockMvc.perform(get("/api/tags?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, listETag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(listETag)));
+    }
+
+    @Test
+    @Transactional
+    public void updateTagWithIfMatch() throws Exception {
+        // Initialize the database
+        tagService.save(tagEntity);
+        em.flush();
+        String eTag = restTagMockMvc.perform(get("/api/tags/{id}", tagEntity.getId()))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Update the tag without version, guarded by its entity tag
+        TagEntity updatedTagEntity = tagRepository.findById(tagEntity.getId()).get();
+        em.detach(updatedTagEntity);
+        updatedTagEntity
+            .name(UPDATED_NAME)
+            .setVersion(null);
+
+        restTagMockMvc.perform(put("/api/tags")
+            .header(HttpHeaders.IF_MATCH, "\"42\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedTagEntity)))
+            .andExpect(status().isPreconditionFailed());
+        assertThat(tagRepository.findById(tagEntity.getId()).get().getName()).isEqualTo(DEFAULT_NAME);
+
+        restTagMockMvc.perform(put("/api/tags")
+            .header(HttpHeaders.IF_MATCH, eTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedTagEntity)))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG));
+        assertThat(tagRepository.findById(tagEntity.getId()).get().getName()).isEqualTo(UPDATED_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void updateTagWithStaleVersion() throws Exception {
+        // Initialize the database
+        tagService.save(tagEntity);
+        em.flush();
+
+        // Update the tag from a version that is not the current one
+        TagEntity updatedTagEntity = tagRepository.findById(tagEntity.getId()).get();
+        em.detach(updatedTagEntity);
+        updatedTagEntity
+            .name(UPDATED_NAME)
+            .setVersion(updatedTagEntity.getVersion() + 1);
+
+        restTagMockMvc.perform(put("/api/tags")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedTagEntity)))
+            .andExpect(status().isConflict());
     }
 
     @Test
@@ -393,8 +562,8 @@ public class TagResourceIT {
         List<TagEntity> tagList = tagRepository.findAll();
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
-        // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tagEntity);
+        // Validate the Tag is queued for Elasticsearch
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("tag", tagEntity.getId())).isEqualTo(0);
     }
 
     @Test
@@ -414,8 +583,8 @@ public class TagResourceIT {
         List<TagEntity> tagList = tagRepository.findAll();
         assertThat(tagList).hasSize(databaseSizeBeforeDelete - 1);
 
-        // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(1)).deleteById(tagEntity.getId());
+        // Validate the Tag is queued for Elasticsearch, once when saved and once when deleted
+        assertThat(searchOutboxRepository.countByIndexNameAndEntityId("tag", tagEntity.getId())).isEqualTo(2);
     }
 
     @Test
@@ -425,7 +594,7 @@ public class TagResourceIT {
         // Initialize the database
         tagService.save(tagEntity);
         when(mockTagSearchRepository.search(queryStringQuery("id:" + tagEntity.getId()), PageRequest.of(0, 20)))
-            .thenReturn(new PageImpl<>(Collections.singletonList(tagEntity), PageRequest.of(0, 1), 1));
+            .thenReturn(new PageImpl<>(Collections.singletonList(TagDocument.of(tagEntity)), PageRequest.of(0, 1), 1));
 
         // Search the tag
         restTagMockMvc.perform(get("/api/_search/tags?query=id:" + tagEntity.getId()))